@@ -0,0 +1,95 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.benchmark;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.config.CHProfile;
+import com.graphhopper.config.LMProfile;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.util.shapes.BBox;
+import com.graphhopper.util.shapes.GHPoint;
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Imports (or loads) the graph that is shared by all benchmarks of one JVM fork. By default the bundled
+ * core/files/andorra.osm.gz is used, use -Dgh.benchmark.osm=... to benchmark another file. The graph is stored in
+ * target/ so only the first fork pays for the import.
+ */
+public class BenchmarkGraph {
+    /**
+     * All benchmarks use this seed so that two runs query exactly the same points and node pairs
+     */
+    public static final long SEED = 42;
+    public static final String PROFILE = "car";
+    private static GraphHopper hopper;
+
+    public static synchronized GraphHopper get() {
+        if (hopper == null)
+            hopper = importOrLoad(getOSMFile());
+        return hopper;
+    }
+
+    static String getOSMFile() {
+        String osmFile = System.getProperty("gh.benchmark.osm", "");
+        if (!osmFile.isEmpty())
+            return osmFile;
+        // allow running the benchmarks from the root folder and from the module folder
+        for (String candidate : List.of("core/files/andorra.osm.gz", "../core/files/andorra.osm.gz"))
+            if (new File(candidate).exists())
+                return candidate;
+        throw new IllegalStateException("Cannot find core/files/andorra.osm.gz, specify the OSM file via -Dgh.benchmark.osm");
+    }
+
+    static GraphHopperConfig createConfig(String osmFile, String graphLocation) {
+        GraphHopperConfig config = new GraphHopperConfig();
+        config.putObject("datareader.file", osmFile);
+        config.putObject("graph.location", graphLocation);
+        config.putObject("import.osm.ignored_highways", "");
+        config.putObject("prepare.min_network_size", 200);
+        config.putObject("graph.encoded_values", "car_access, car_average_speed, road_class, road_environment, max_speed, surface");
+        config.setProfiles(List.of(TestProfiles.accessAndSpeed(PROFILE)));
+        config.setCHProfiles(List.of(new CHProfile(PROFILE)));
+        config.setLMProfiles(List.of(new LMProfile(PROFILE)));
+        return config;
+    }
+
+    private static GraphHopper importOrLoad(String osmFile) {
+        String name = new File(osmFile).getName().replaceAll("\\..*", "");
+        String graphLocation = System.getProperty("gh.benchmark.graph_location", "target/jmh-graph-" + name);
+        GraphHopper hopper = new GraphHopper().init(createConfig(osmFile, graphLocation));
+        hopper.importOrLoad();
+        return hopper;
+    }
+
+    /**
+     * @return random points within the bounds of the graph, always the same ones for the same count
+     */
+    public static GHPoint[] createRandomPoints(GraphHopper hopper, int count) {
+        BBox bounds = hopper.getBaseGraph().getBounds();
+        Random rnd = new Random(SEED);
+        GHPoint[] points = new GHPoint[count];
+        for (int i = 0; i < count; i++)
+            points[i] = new GHPoint(bounds.minLat + rnd.nextDouble() * (bounds.maxLat - bounds.minLat),
+                    bounds.minLon + rnd.nextDouble() * (bounds.maxLon - bounds.minLon));
+        return points;
+    }
+}
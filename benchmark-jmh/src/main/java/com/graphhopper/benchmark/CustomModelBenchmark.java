@@ -0,0 +1,63 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.benchmark;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.routing.ev.EncodedValueLookup;
+import com.graphhopper.routing.weighting.TurnCostProvider;
+import com.graphhopper.routing.weighting.custom.CustomModelParser;
+import com.graphhopper.routing.weighting.custom.CustomWeighting;
+import com.graphhopper.util.CustomModel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.graphhopper.json.Statement.*;
+import static com.graphhopper.json.Statement.Op.LIMIT;
+import static com.graphhopper.json.Statement.Op.MULTIPLY;
+
+/**
+ * Parses and compiles a custom model like it is done for every flexible request that contains a custom_model.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomModelBenchmark {
+    private EncodedValueLookup lookup;
+    private CustomModel customModel;
+
+    @Setup
+    public void setup() {
+        GraphHopper hopper = BenchmarkGraph.get();
+        lookup = hopper.getEncodingManager();
+        CustomModel queryModel = new CustomModel().
+                addToPriority(If("road_class == MOTORWAY", MULTIPLY, "0.5")).
+                addToPriority(ElseIf("road_environment == TUNNEL", MULTIPLY, "0.8")).
+                addToSpeed(If("surface == GRAVEL", LIMIT, "40")).
+                addToSpeed(If("max_speed < 50", MULTIPLY, "0.9"));
+        customModel = CustomModel.merge(hopper.getProfile(BenchmarkGraph.PROFILE).getCustomModel(), queryModel);
+    }
+
+    @Benchmark
+    public CustomWeighting createWeighting() {
+        return CustomModelParser.createWeighting(lookup, TurnCostProvider.NO_TURN_COST_PROVIDER, customModel);
+    }
+}
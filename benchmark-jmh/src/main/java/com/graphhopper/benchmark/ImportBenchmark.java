@@ -0,0 +1,64 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.benchmark;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.util.Helper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Imports the OSM file into a fresh graph folder, without CH and LM preparations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ImportBenchmark {
+    private File graphLocation;
+
+    @Setup(Level.Invocation)
+    public void setup() throws IOException {
+        graphLocation = Files.createTempDirectory("gh-jmh-import").toFile();
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+        Helper.removeDir(graphLocation);
+    }
+
+    @Benchmark
+    public int importOSM() {
+        GraphHopperConfig config = BenchmarkGraph.createConfig(BenchmarkGraph.getOSMFile(), graphLocation.getAbsolutePath());
+        config.setCHProfiles(Collections.emptyList());
+        config.setLMProfiles(Collections.emptyList());
+        GraphHopper hopper = new GraphHopper().init(config);
+        hopper.importOrLoad();
+        int edges = hopper.getBaseGraph().getEdges();
+        hopper.close();
+        return edges;
+    }
+}
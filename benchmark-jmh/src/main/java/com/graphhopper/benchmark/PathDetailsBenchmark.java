@@ -0,0 +1,73 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.benchmark;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.routing.DijkstraBidirectionCH;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.util.details.PathDetail;
+import com.graphhopper.util.details.PathDetailsBuilderFactory;
+import com.graphhopper.util.details.PathDetailsFromEdges;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calculates path details for a fixed set of long paths, which are calculated once during the setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PathDetailsBenchmark {
+    private static final List<String> DETAILS = List.of("street_name", "road_class", "max_speed", "average_speed", "distance", "time");
+    private GraphHopper hopper;
+    private Weighting weighting;
+    private PathDetailsBuilderFactory factory;
+    private final List<Path> paths = new ArrayList<>();
+    private int index;
+
+    @Setup
+    public void setup() {
+        hopper = BenchmarkGraph.get();
+        RoutingCHGraph chGraph = hopper.getCHGraphs().get(BenchmarkGraph.PROFILE);
+        weighting = chGraph.getWeighting();
+        factory = hopper.getPathDetailsBuilderFactory();
+        Random rnd = new Random(BenchmarkGraph.SEED);
+        int nodes = hopper.getBaseGraph().getNodes();
+        while (paths.size() < 100) {
+            Path path = new DijkstraBidirectionCH(chGraph).calcPath(rnd.nextInt(nodes), rnd.nextInt(nodes));
+            if (path.isFound() && path.getEdgeCount() > 10)
+                paths.add(path);
+        }
+    }
+
+    @Benchmark
+    public Map<String, List<PathDetail>> calcDetails() {
+        index = (index + 1) % paths.size();
+        return PathDetailsFromEdges.calcDetails(paths.get(index), hopper.getEncodingManager(), weighting, DETAILS, factory, 0, hopper.getBaseGraph());
+    }
+}
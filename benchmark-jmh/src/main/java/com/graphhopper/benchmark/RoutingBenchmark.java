@@ -0,0 +1,91 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.benchmark;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.routing.AStarBidirection;
+import com.graphhopper.routing.DijkstraBidirectionCH;
+import com.graphhopper.routing.lm.LMApproximator;
+import com.graphhopper.routing.lm.LandmarkStorage;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.RoutingCHGraph;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point-to-point queries between random nodes using CH and LM, i.e. the work of the routing algorithm without
+ * snapping and path merging.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoutingBenchmark {
+    private static final int QUERIES = 1_000;
+    private BaseGraph graph;
+    private RoutingCHGraph chGraph;
+    private LandmarkStorage landmarks;
+    private Weighting weighting;
+    private int[] from;
+    private int[] to;
+    private int index;
+
+    @Param({"8"})
+    public int activeLandmarks;
+
+    @Setup
+    public void setup() {
+        GraphHopper hopper = BenchmarkGraph.get();
+        graph = hopper.getBaseGraph();
+        chGraph = hopper.getCHGraphs().get(BenchmarkGraph.PROFILE);
+        landmarks = hopper.getLandmarks().get(BenchmarkGraph.PROFILE);
+        weighting = landmarks.getWeighting();
+        Random rnd = new Random(BenchmarkGraph.SEED);
+        from = new int[QUERIES];
+        to = new int[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            from[i] = rnd.nextInt(graph.getNodes());
+            to[i] = rnd.nextInt(graph.getNodes());
+        }
+    }
+
+    private int nextQuery() {
+        index = (index + 1) % QUERIES;
+        return index;
+    }
+
+    @Benchmark
+    public double dijkstraBidirectionCH() {
+        int i = nextQuery();
+        return new DijkstraBidirectionCH(chGraph).calcPath(from[i], to[i]).getWeight();
+    }
+
+    @Benchmark
+    public double aStarBidirectionLM() {
+        int i = nextQuery();
+        AStarBidirection algo = new AStarBidirection(graph, weighting, TraversalMode.NODE_BASED);
+        algo.setApproximation(LMApproximator.forLandmarks(graph, weighting, landmarks, activeLandmarks));
+        return algo.calcPath(from[i], to[i]).getWeight();
+    }
+}
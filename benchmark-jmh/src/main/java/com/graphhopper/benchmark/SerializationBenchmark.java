@@ -0,0 +1,86 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.benchmark;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.jackson.Jackson;
+import com.graphhopper.jackson.ResponsePathSerializer;
+import com.graphhopper.jackson.ResponsePathWriter;
+import com.graphhopper.util.shapes.GHPoint;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializes full route responses (points, instructions and path details) to JSON, once via a JSON tree and once
+ * streamed like the route resource does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+    private final ObjectMapper objectMapper = Jackson.newObjectMapper();
+    private final ResponsePathSerializer.Info info = new ResponsePathSerializer.Info(List.of("GraphHopper"), 0, "");
+    private final List<GHResponse> responses = new ArrayList<>();
+    private final ResponsePathWriter writer = new ResponsePathWriter();
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private int index;
+
+    @Param({"true", "false"})
+    public boolean pointsEncoded;
+
+    @Setup
+    public void setup() {
+        GraphHopper hopper = BenchmarkGraph.get();
+        GHPoint[] points = BenchmarkGraph.createRandomPoints(hopper, 200);
+        for (int i = 0; i + 1 < points.length && responses.size() < 50; i += 2) {
+            GHResponse rsp = hopper.route(new GHRequest(points[i], points[i + 1]).setProfile(BenchmarkGraph.PROFILE).
+                    setPathDetails(List.of("street_name", "road_class", "max_speed", "average_speed")));
+            if (!rsp.hasErrors())
+                responses.add(rsp);
+        }
+    }
+
+    @Benchmark
+    public byte[] serialize() throws JsonProcessingException {
+        index = (index + 1) % responses.size();
+        return objectMapper.writeValueAsBytes(ResponsePathSerializer.jsonObject(responses.get(index), info, true, true, false, pointsEncoded, 1e5));
+    }
+
+    @Benchmark
+    public int serializeStreaming() throws IOException {
+        index = (index + 1) % responses.size();
+        out.reset();
+        try (JsonGenerator gen = objectMapper.createGenerator(out)) {
+            writer.writeJson(gen, responses.get(index), info, true, true, false, pointsEncoded, 1e5);
+        }
+        return out.size();
+    }
+}
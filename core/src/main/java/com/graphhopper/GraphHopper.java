@@ -26,12 +26,14 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.graphhopper.config.CHProfile;
 import com.graphhopper.config.LMProfile;
 import com.graphhopper.config.Profile;
+import com.graphhopper.isochrone.algorithm.PhastStatePool;
 import com.graphhopper.jackson.Jackson;
 import com.graphhopper.reader.dem.*;
 import com.graphhopper.reader.osm.OSMReader;
 import com.graphhopper.reader.osm.RestrictionTagParser;
 import com.graphhopper.routing.*;
 import com.graphhopper.routing.ch.CHPreparationHandler;
+import com.graphhopper.routing.ch.CHQueryStatePool;
 import com.graphhopper.routing.ch.PrepareContractionHierarchies;
 import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.lm.LMConfig;
@@ -53,6 +55,7 @@ import com.graphhopper.routing.weighting.custom.NameValidator;
 import com.graphhopper.storage.*;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.Snap;
 import com.graphhopper.util.*;
 import com.graphhopper.util.Parameters.Landmark;
 import com.graphhopper.util.Parameters.Routing;
@@ -68,8 +71,12 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.DateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.ObjIntConsumer;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
@@ -130,6 +137,9 @@ public class GraphHopper {
     private final LMPreparationHandler lmPreparationHandler = new LMPreparationHandler();
     private final CHPreparationHandler chPreparationHandler = new CHPreparationHandler();
     private Map<String, RoutingCHGraph> chGraphs = Collections.emptyMap();
+    private CHQueryStatePool chQueryStatePool;
+    private PhastStatePool phastStatePool;
+    private ExecutorService batchExecutor;
     private Map<String, LandmarkStorage> landmarks = Collections.emptyMap();
 
     // for data reader
@@ -395,6 +405,14 @@ public class GraphHopper {
         return chGraphs;
     }
 
+    /**
+     * @return the pool the PHAST searches on the CH graphs take their state from, or null if the state is allocated
+     * for every search, see {@link RouterConfig#setPhastStatePoolSize(int)}
+     */
+    public PhastStatePool getPhastStatePool() {
+        return phastStatePool;
+    }
+
     /**
      * @return a mapping between profile names and according landmark preparations. The map will be empty before loading
      * or import.
@@ -510,9 +528,11 @@ public class GraphHopper {
         for (Map.Entry<String, Object> entry : ghConfig.asPMap().toMap().entrySet()) {
             if (entry.getKey().startsWith("graph.dataaccess.type."))
                 dataAccessConfig.put(entry.getKey().substring("graph.dataaccess.type.".length()), entry.getValue().toString());
-            if (entry.getKey().startsWith("graph.dataaccess.mmap.preload."))
+            if (entry.getKey().startsWith("graph.dataaccess.mmap.preload.") || entry.getKey().startsWith("graph.dataaccess.mmap.prefetch."))
                 dataAccessConfig.put(entry.getKey().substring("graph.dataaccess.mmap.".length()), entry.getValue().toString());
         }
+        // MMAP_RO maps the existing files without copying them and without ever writing, so no import or lock file
+        allowWrites = ghConfig.getBool("graph.allow_writes", allowWrites && !(dataAccessDefaultType.isMMap() && !dataAccessDefaultType.isAllowWrites()));
 
         sortGraph = ghConfig.getBool("graph.sort", sortGraph);
         if (ghConfig.getBool("max_speed_calculator.enabled", false))
@@ -586,6 +606,8 @@ public class GraphHopper {
         osmReaderConfig.setPreferredLanguage(ghConfig.getString("datareader.preferred_language", osmReaderConfig.getPreferredLanguage()));
         osmReaderConfig.setMaxWayPointDistance(ghConfig.getDouble(Routing.INIT_WAY_POINT_MAX_DISTANCE, osmReaderConfig.getMaxWayPointDistance()));
         osmReaderConfig.setWorkerThreads(ghConfig.getInt("datareader.worker_threads", osmReaderConfig.getWorkerThreads()));
+        osmReaderConfig.setTagParserThreads(ghConfig.getInt("datareader.tag_parser_threads", osmReaderConfig.getTagParserThreads()));
+        osmReaderConfig.setPagedNodeIdMap(ghConfig.getBool("datareader.paged_node_id_map", osmReaderConfig.isPagedNodeIdMap()));
 
         // index
         preciseIndexResolution = ghConfig.getInt("index.high_resolution", preciseIndexResolution);
@@ -604,6 +626,11 @@ public class GraphHopper {
         routerConfig.setMaxRoundTripRetries(ghConfig.getInt(RoundTrip.INIT_MAX_RETRIES, routerConfig.getMaxRoundTripRetries()));
         routerConfig.setNonChMaxWaypointDistance(ghConfig.getInt(Parameters.NON_CH.MAX_NON_CH_POINT_DISTANCE, routerConfig.getNonChMaxWaypointDistance()));
         routerConfig.setInstructionsEnabled(ghConfig.getBool(Routing.INIT_INSTRUCTIONS, routerConfig.isInstructionsEnabled()));
+        routerConfig.setMaxMatrixPoints(ghConfig.getInt(Routing.INIT_MAX_MATRIX_POINTS, routerConfig.getMaxMatrixPoints()));
+        routerConfig.setMaxBatchSize(ghConfig.getInt(Routing.INIT_MAX_BATCH_SIZE, routerConfig.getMaxBatchSize()));
+        routerConfig.setBatchThreads(ghConfig.getInt(Routing.INIT_BATCH_THREADS, routerConfig.getBatchThreads()));
+        routerConfig.setCHQueryStatePoolSize(ghConfig.getInt(Parameters.CH.INIT_QUERY_STATE_POOL_SIZE, routerConfig.getCHQueryStatePoolSize()));
+        routerConfig.setPhastStatePoolSize(ghConfig.getInt(Parameters.CH.INIT_PHAST_STATE_POOL_SIZE, routerConfig.getPhastStatePoolSize()));
         int activeLandmarkCount = ghConfig.getInt(Landmark.ACTIVE_COUNT_DEFAULT, Math.min(8, lmPreparationHandler.getLandmarks()));
         if (activeLandmarkCount > lmPreparationHandler.getLandmarks())
             throw new IllegalArgumentException("Default value for active landmarks " + activeLandmarkCount
@@ -1334,6 +1361,54 @@ public class GraphHopper {
         return createRouter().route(request);
     }
 
+    /**
+     * @see Router#route(GHRequest, List)
+     */
+    public GHResponse route(GHRequest request, List<Snap> snaps) {
+        return createRouter().route(request, snaps);
+    }
+
+    /**
+     * @see Router#snap(GHRequest)
+     */
+    public List<Snap> snap(GHRequest request) {
+        return createRouter().snap(request);
+    }
+
+    /**
+     * Calculates the weights, times and/or distances between all sources and targets of the given request. This
+     * requires a CH preparation for the requested profile.
+     */
+    public GHMatrixResponse matrix(GHMatrixRequest request) {
+        return createRouter().matrix(request);
+    }
+
+    /**
+     * Calculates the routes for all the given requests, see {@link Router#routeBatch(List, ExecutorService, ObjIntConsumer)}.
+     * All batches share the same routing.batch_threads worker threads.
+     */
+    public void routeBatch(List<GHRequest> requests, ObjIntConsumer<GHResponse> responseHandler) {
+        createRouter().routeBatch(requests, getBatchExecutor(), responseHandler);
+    }
+
+    public List<GHResponse> routeBatch(List<GHRequest> requests) {
+        return createRouter().routeBatch(requests, getBatchExecutor());
+    }
+
+    private synchronized ExecutorService getBatchExecutor() {
+        if (routerConfig.getBatchThreads() <= 1)
+            return null;
+        if (batchExecutor == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            batchExecutor = Executors.newFixedThreadPool(routerConfig.getBatchThreads(), r -> {
+                Thread thread = new Thread(r, "gh-batch-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return batchExecutor;
+    }
+
     private Router createRouter() {
         if (baseGraph == null || !fullyLoaded)
             throw new IllegalStateException("Do a successful call to load or importOrLoad before routing");
@@ -1350,7 +1425,7 @@ public class GraphHopper {
                                     PathDetailsBuilderFactory pathBuilderFactory, TranslationMap trMap, RouterConfig routerConfig,
                                     WeightingFactory weightingFactory, Map<String, RoutingCHGraph> chGraphs, Map<String, LandmarkStorage> landmarks) {
         return new Router(baseGraph, encodingManager, locationIndex, profilesByName, pathBuilderFactory,
-                trMap, routerConfig, weightingFactory, chGraphs, landmarks
+                trMap, routerConfig, weightingFactory, chGraphs, landmarks, chQueryStatePool
         );
     }
 
@@ -1449,6 +1524,11 @@ public class GraphHopper {
             } else
                 throw new IllegalStateException("CH graph should be either loaded or prepared: " + profile.getProfile());
         }
+        // the pool is shared by all routers, i.e. all requests, so the query states are reused across them
+        if (!chGraphs.isEmpty() && routerConfig.getCHQueryStatePoolSize() > 0)
+            chQueryStatePool = new CHQueryStatePool(routerConfig.getCHQueryStatePoolSize());
+        if (!chGraphs.isEmpty() && routerConfig.getPhastStatePoolSize() > 0)
+            phastStatePool = new PhastStatePool(routerConfig.getPhastStatePoolSize());
     }
 
     protected Map<String, PrepareContractionHierarchies.Result> prepareCH(boolean closeEarly, List<CHConfig> configsToPrepare) {
@@ -1535,6 +1615,12 @@ public class GraphHopper {
      * remove the files created in graphhopperLocation you have to call clean().
      */
     public void close() {
+        synchronized (this) {
+            if (batchExecutor != null) {
+                batchExecutor.shutdownNow();
+                batchExecutor = null;
+            }
+        }
         if (baseGraph != null)
             baseGraph.close();
         if (properties != null)
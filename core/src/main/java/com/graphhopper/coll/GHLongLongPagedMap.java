@@ -0,0 +1,150 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import com.carrotsearch.hppc.LongIntHashMap;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.util.Helper;
+
+/**
+ * A LongLongMap that stores the values in pages of a {@link DataAccess}. Each page covers a range of consecutive keys
+ * and is allocated once the first key of this range is added. This is memory efficient for dense keys like the OSM
+ * node IDs of a larger area and, depending on the DAType used for it in the directory, keeps the data outside of the
+ * Java heap or in a memory mapped file. Values can have 4-8 bytes, delete is not supported.
+ */
+public class GHLongLongPagedMap implements LongLongMap {
+    private final Directory directory;
+    private final String name;
+    private final int bytesPerValue;
+    private final long emptyValue;
+    private final long maxValue;
+    private final int pageBits;
+    private final long pageMask;
+    // maps the key range of a page to its index in the DataAccess
+    private final LongIntHashMap pages = new LongIntHashMap();
+    private DataAccess da;
+    private long size;
+
+    /**
+     * @param pageBits the number of keys per page is 2^pageBits
+     */
+    public GHLongLongPagedMap(Directory directory, String name, int bytesPerValue, long emptyValue, int pageBits) {
+        if (bytesPerValue < 4 || bytesPerValue > 8)
+            throw new IllegalArgumentException("Values must have 4 to 8 bytes but requested was " + bytesPerValue);
+        if (pageBits < 1 || pageBits > 24)
+            throw new IllegalArgumentException("pageBits must be in [1, 24] but was " + pageBits);
+        this.directory = directory;
+        this.name = name;
+        this.bytesPerValue = bytesPerValue;
+        // reserve one bit for negative values
+        this.maxValue = (1L << (bytesPerValue * 8 - 1)) - 1;
+        if (emptyValue > maxValue || emptyValue < -maxValue - 1)
+            throw new IllegalArgumentException("emptyValue " + emptyValue + " cannot be stored with " + bytesPerValue + " bytes");
+        this.emptyValue = emptyValue;
+        this.pageBits = pageBits;
+        this.pageMask = (1L << pageBits) - 1;
+    }
+
+    @Override
+    public long put(long key, long value) {
+        if (value == emptyValue)
+            throw new IllegalArgumentException("Value cannot be the 'empty value' " + emptyValue);
+        if (value > maxValue || value < -maxValue - 1)
+            throw new IllegalArgumentException("Value " + value + " exceeds the range of " + bytesPerValue + " bytes");
+        long pointer = getPointer(key, true);
+        long old = read(pointer);
+        write(pointer, value);
+        if (old == emptyValue)
+            size++;
+        return old;
+    }
+
+    @Override
+    public long get(long key) {
+        long pointer = getPointer(key, false);
+        return pointer < 0 ? emptyValue : read(pointer);
+    }
+
+    private long getPointer(long key, boolean create) {
+        long pageKey = key >> pageBits;
+        int page = pages.getOrDefault(pageKey, -1);
+        if (page < 0) {
+            if (!create)
+                return -1;
+            page = pages.size();
+            if (da == null)
+                da = directory.create(name).create(((long) bytesPerValue) << pageBits);
+            // new pages contain zeros only, which is the stored representation of emptyValue
+            da.ensureCapacity(((long) page + 1) * (bytesPerValue << pageBits));
+            pages.put(pageKey, page);
+        }
+        return (((long) page << pageBits) | (key & pageMask)) * bytesPerValue;
+    }
+
+    private long read(long pointer) {
+        long stored = da.getInt(pointer) & 0xFFFF_FFFFL;
+        for (int i = 4; i < bytesPerValue; i++)
+            stored |= (da.getByte(pointer + i) & 0xFFL) << (8 * i);
+        // sign-extend and undo the xor, see write
+        int shift = 64 - 8 * bytesPerValue;
+        return ((stored << shift) >> shift) ^ emptyValue;
+    }
+
+    private void write(long pointer, long value) {
+        // xor with emptyValue so that the zeros of a new page are read as emptyValue
+        long stored = value ^ emptyValue;
+        da.setInt(pointer, (int) stored);
+        for (int i = 4; i < bytesPerValue; i++)
+            da.setByte(pointer + i, (byte) (stored >>> (8 * i)));
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public long getMaxValue() {
+        return maxValue;
+    }
+
+    @Override
+    public void optimize() {
+    }
+
+    @Override
+    public int getMemoryUsage() {
+        return da == null ? 0 : Math.round(da.getCapacity() / Helper.MB);
+    }
+
+    @Override
+    public void clear() {
+        pages.clear();
+        size = 0;
+        if (da != null) {
+            directory.remove(name);
+            da = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "size:" + size + ", pages:" + pages.size() + ", " + getMemoryUsage() + "MB";
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.isochrone.algorithm;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.coll.MinHeapWithUpdate;
+import com.graphhopper.routing.AbstractRoutingAlgorithm;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.GHUtility;
+
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import static com.graphhopper.isochrone.algorithm.ShortestPathTree.ExploreType.*;
+
+/**
+ * Computes the same shortest path tree as {@link ShortestPathTree}, but keeps the weight, time, distance and parent of
+ * the labels in arrays indexed by node (or edge key for edge-based traversal) and uses a {@link MinHeapWithUpdate}
+ * with decrease-key instead of creating an object for every label. The arrays are pooled per thread and reused by
+ * the next search on the same thread, which only resets the entries the previous search touched.
+ * <p>
+ * The label passed to the consumer is a flyweight that is overwritten for the next label, so it must not be kept
+ * after the consumer returns. Its parent is set, but the parent of the parent is not.
+ */
+public class ArrayShortestPathTree extends AbstractRoutingAlgorithm implements ShortestPathTreeSearch {
+    private static final ThreadLocal<SoftReference<Labels>> POOL = new ThreadLocal<>();
+    private static final int NO_LABEL = -1;
+
+    private final boolean reverseFlow;
+    private final int labelCount;
+    private final ShortestPathTree.IsoLabel label = new ShortestPathTree.IsoLabel(-1, EdgeIterator.NO_EDGE, 0, 0, 0, null);
+    private final ShortestPathTree.IsoLabel parentLabel = new ShortestPathTree.IsoLabel(-1, EdgeIterator.NO_EDGE, 0, 0, 0, null);
+    private ShortestPathTree.ExploreType exploreType = TIME;
+    private double limit = -1;
+    // the number of labels in the queue that are below the limit, we are finished when there are none left
+    private int queuedBelowLimit;
+    private int visitedNodes;
+
+    public ArrayShortestPathTree(Graph g, Weighting weighting, boolean reverseFlow, TraversalMode traversalMode) {
+        super(g, weighting, traversalMode);
+        this.reverseFlow = reverseFlow;
+        // the start label of an edge-based search has no edge key, so it gets an extra id
+        labelCount = traversalMode.isEdgeBased() ? 2 * g.getEdges() + 1 : g.getNodes();
+    }
+
+    @Override
+    public Path calcPath(int from, int to) {
+        throw new IllegalStateException("call search instead");
+    }
+
+    @Override
+    public void setTimeLimit(double limit) {
+        exploreType = TIME;
+        this.limit = limit;
+    }
+
+    @Override
+    public void setDistanceLimit(double limit) {
+        exploreType = DISTANCE;
+        this.limit = limit;
+    }
+
+    @Override
+    public void setWeightLimit(double limit) {
+        exploreType = WEIGHT;
+        this.limit = limit;
+    }
+
+    @Override
+    public void search(int from, Consumer<ShortestPathTree.IsoLabel> consumer) {
+        checkAlreadyRun();
+        Labels labels = acquire(labelCount);
+        try {
+            search(labels, from, consumer);
+        } finally {
+            labels.release();
+        }
+    }
+
+    private void search(Labels labels, int from, Consumer<ShortestPathTree.IsoLabel> consumer) {
+        MinHeapWithUpdate heap = labels.heap;
+        int start = traversalMode.isEdgeBased() ? labelCount - 1 : from;
+        labels.set(start, from, EdgeIterator.NO_EDGE, 0, 0, 0, NO_LABEL);
+        heap.push(start, 0);
+        if (getExploreValue(labels, start) < limit)
+            queuedBelowLimit++;
+        while (queuedBelowLimit > 0) {
+            int id = heap.poll();
+            double exploreValue = getExploreValue(labels, id);
+            if (exploreValue < limit)
+                queuedBelowLimit--;
+            if (exploreValue <= limit)
+                consumer.accept(toIsoLabel(labels, id));
+            visitedNodes++;
+
+            int edge = labels.edges[id];
+            EdgeIterator iter = edgeExplorer.setBaseNode(labels.nodes[id]);
+            while (iter.next()) {
+                if (!accept(iter, edge))
+                    continue;
+                double nextWeight = GHUtility.calcWeightWithTurnWeight(weighting, iter, reverseFlow, edge) + labels.weights[id];
+                if (Double.isInfinite(nextWeight))
+                    continue;
+                int nextId = traversalMode.createTraversalId(iter, reverseFlow);
+                // this also skips labels that were polled already
+                if (nextWeight >= labels.weights[nextId])
+                    continue;
+                boolean queued = heap.contains(nextId);
+                if (queued && getExploreValue(labels, nextId) < limit)
+                    queuedBelowLimit--;
+                double nextDistance = iter.getDistance() + labels.distances[id];
+                long nextTime = GHUtility.calcMillisWithTurnMillis(weighting, iter, reverseFlow, edge) + labels.times[id];
+                labels.set(nextId, iter.getAdjNode(), iter.getEdge(), nextWeight, nextTime, nextDistance, id);
+                if (getExploreValue(labels, nextId) < limit)
+                    queuedBelowLimit++;
+                if (queued)
+                    heap.update(nextId, (float) nextWeight);
+                else
+                    heap.push(nextId, (float) nextWeight);
+            }
+        }
+    }
+
+    private ShortestPathTree.IsoLabel toIsoLabel(Labels labels, int id) {
+        fill(label, labels, id);
+        int parent = labels.parents[id];
+        if (parent == NO_LABEL) {
+            label.parent = null;
+        } else {
+            fill(parentLabel, labels, parent);
+            label.parent = parentLabel;
+        }
+        return label;
+    }
+
+    private static void fill(ShortestPathTree.IsoLabel label, Labels labels, int id) {
+        label.node = labels.nodes[id];
+        label.edge = labels.edges[id];
+        label.weight = labels.weights[id];
+        label.time = labels.times[id];
+        label.distance = labels.distances[id];
+        label.parent = null;
+    }
+
+    private double getExploreValue(Labels labels, int id) {
+        if (exploreType == TIME)
+            return labels.times[id];
+        if (exploreType == WEIGHT)
+            return labels.weights[id];
+        return labels.distances[id];
+    }
+
+    @Override
+    public String getName() {
+        return "reachability_array";
+    }
+
+    @Override
+    public int getVisitedNodes() {
+        return visitedNodes;
+    }
+
+    private static Labels acquire(int size) {
+        SoftReference<Labels> ref = POOL.get();
+        Labels labels = ref == null ? null : ref.get();
+        if (labels != null && labels.inUse)
+            // another search is running on this thread, e.g. one started from the consumer of the other
+            labels = new Labels(size);
+        else if (labels == null || labels.size < size) {
+            labels = new Labels(size);
+            POOL.set(new SoftReference<>(labels));
+        }
+        labels.inUse = true;
+        return labels;
+    }
+
+    /**
+     * The labels of a search, weights[id] is infinite for ids that were not reached (yet).
+     */
+    static class Labels {
+        final int size;
+        final double[] weights;
+        final long[] times;
+        final double[] distances;
+        final int[] parents;
+        final int[] nodes;
+        final int[] edges;
+        final MinHeapWithUpdate heap;
+        final IntArrayList touched = new IntArrayList();
+        boolean inUse;
+
+        Labels(int size) {
+            this.size = size;
+            weights = new double[size];
+            Arrays.fill(weights, Double.POSITIVE_INFINITY);
+            times = new long[size];
+            distances = new double[size];
+            parents = new int[size];
+            nodes = new int[size];
+            edges = new int[size];
+            heap = new MinHeapWithUpdate(size);
+        }
+
+        void set(int id, int node, int edge, double weight, long time, double distance, int parent) {
+            if (weights[id] == Double.POSITIVE_INFINITY)
+                touched.add(id);
+            nodes[id] = node;
+            edges[id] = edge;
+            weights[id] = weight;
+            times[id] = time;
+            distances[id] = distance;
+            parents[id] = parent;
+        }
+
+        void release() {
+            for (int i = 0; i < touched.size(); i++)
+                weights[touched.get(i)] = Double.POSITIVE_INFINITY;
+            touched.clear();
+            heap.clear();
+            inUse = false;
+        }
+    }
+}
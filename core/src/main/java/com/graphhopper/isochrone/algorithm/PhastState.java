@@ -0,0 +1,63 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.isochrone.algorithm;
+
+import com.graphhopper.coll.MinHeapWithUpdate;
+
+/**
+ * The arrays of a {@link ShortestPathTreeCH} search, i.e. one entry per label for the weight, time, distance, parent
+ * and edges plus the heap of the upward search. The edge-based arrays are only there if the state was created for an
+ * edge-based graph. {@link ShortestPathTreeCH} initializes the part of the arrays it uses at the start of every search.
+ *
+ * @see PhastStatePool
+ */
+class PhastState {
+    final int labelCapacity;
+    final int nodeCapacity;
+    final boolean edgeBased;
+    final double[] weights;
+    final long[] times;
+    final double[] distances;
+    final int[] parents;
+    final int[] chEdges;
+    final int[] lastEdges;
+    final int[] labelNodes;
+    final int[] firstLabels;
+    final int[] nextLabels;
+    final MinHeapWithUpdate heap;
+
+    PhastState(int labelCapacity, int nodeCapacity, boolean edgeBased) {
+        this.labelCapacity = labelCapacity;
+        this.nodeCapacity = nodeCapacity;
+        this.edgeBased = edgeBased;
+        weights = new double[labelCapacity];
+        times = new long[labelCapacity];
+        distances = new double[labelCapacity];
+        parents = new int[labelCapacity];
+        chEdges = new int[labelCapacity];
+        lastEdges = new int[labelCapacity];
+        labelNodes = edgeBased ? new int[labelCapacity] : null;
+        firstLabels = edgeBased ? new int[nodeCapacity] : null;
+        nextLabels = edgeBased ? new int[labelCapacity] : null;
+        heap = new MinHeapWithUpdate(labelCapacity);
+    }
+
+    boolean fits(int labels, int nodes, boolean edgeBased) {
+        return labels <= labelCapacity && nodes <= nodeCapacity && (!edgeBased || this.edgeBased);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.isochrone.algorithm;
+
+import java.util.ArrayDeque;
+
+/**
+ * A bounded pool of the states of {@link ShortestPathTreeCH} searches, so the arrays that span the entire graph are
+ * not allocated for every isochrone or shortest path tree request. The pool creates at most maxStates of them (lazily)
+ * and searches that find the pool exhausted allocate a state of their own. The states do not depend on the weighting,
+ * so one pool can be used for all CH profiles of a graph.
+ */
+public class PhastStatePool {
+    // leave some room for the virtual nodes and edges of the query graph, so a state can be used for many queries
+    private static final int VIRTUAL_SLACK = 1024;
+    private final int maxStates;
+    private final ArrayDeque<PhastState> states = new ArrayDeque<>();
+    private int createdStates;
+
+    public PhastStatePool(int maxStates) {
+        if (maxStates < 1)
+            throw new IllegalArgumentException("maxStates must be positive, was: " + maxStates);
+        this.maxStates = maxStates;
+    }
+
+    /**
+     * @return a state that can hold the given number of labels and nodes, or null if all states are in use
+     */
+    synchronized PhastState acquire(int labels, int nodes, boolean edgeBased) {
+        PhastState state = states.poll();
+        if (state == null) {
+            if (createdStates == maxStates)
+                return null;
+            createdStates++;
+            return new PhastState(labels + VIRTUAL_SLACK, nodes + VIRTUAL_SLACK, edgeBased);
+        } else if (!state.fits(labels, nodes, edgeBased)) {
+            // keep the state large enough for the previous searches, too, so states are not replaced back and forth
+            // when node- and edge-based profiles are used alternately
+            return new PhastState(Math.max(labels + VIRTUAL_SLACK, state.labelCapacity),
+                    Math.max(nodes + VIRTUAL_SLACK, state.nodeCapacity), edgeBased || state.edgeBased);
+        }
+        return state;
+    }
+
+    synchronized void release(PhastState state) {
+        states.push(state);
+    }
+
+    public int getMaxStates() {
+        return maxStates;
+    }
+}
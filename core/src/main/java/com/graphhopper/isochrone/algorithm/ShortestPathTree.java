@@ -50,7 +50,7 @@ import static java.util.Comparator.comparingLong;
  * @author Peter Karich
  * @author Michael Zilske
  */
-public class ShortestPathTree extends AbstractRoutingAlgorithm {
+public class ShortestPathTree extends AbstractRoutingAlgorithm implements ShortestPathTreeSearch {
 
     enum ExploreType {TIME, DISTANCE, WEIGHT}
 
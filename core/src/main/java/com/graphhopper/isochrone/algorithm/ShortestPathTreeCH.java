@@ -0,0 +1,461 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.isochrone.algorithm;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.coll.MinHeapWithUpdate;
+import com.graphhopper.routing.ch.ShortcutUnpacker;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.RoutingCHEdgeExplorer;
+import com.graphhopper.storage.RoutingCHEdgeIterator;
+import com.graphhopper.storage.RoutingCHEdgeIteratorState;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import static com.graphhopper.isochrone.algorithm.ShortestPathTree.ExploreType.*;
+
+/**
+ * Computes a shortest path tree on a {@link RoutingCHGraph} with PHAST: an upward search from the start node is
+ * followed by one sweep over all nodes in descending level order. When a node is swept all nodes with a higher level
+ * are final already, so it is enough to look at its edges coming from higher level nodes once. Unlike
+ * {@link ShortestPathTree} this always covers the entire graph, but it needs no priority queue for that and keeps its
+ * state in plain arrays instead of one label object per node, so it is much faster for large limits.
+ * <p>
+ * Node- and edge-based CH graphs are supported. For edge-based graphs there is one label per edge key, just like for
+ * edge-based {@link ShortestPathTree}s. Use a {@link com.graphhopper.routing.querygraph.QueryRoutingCHGraph} with
+ * only the start node snapped if the start node is a virtual node.
+ * <p>
+ * The arrays of the search span the entire graph, so they are borrowed from a {@link PhastStatePool} if one is given.
+ * <p>
+ * The times and distances are calculated by unpacking the shortcuts of the tree, but only for labels whose parent
+ * lies within the limit. The labels are handed to the consumer in order of increasing weight. The parent of a label is
+ * the label of the node before it on its path in the base graph, but the parent of the parent is not set.
+ */
+public class ShortestPathTreeCH implements ShortestPathTreeSearch {
+    private static final int NO_LABEL = -1;
+    // marks labels whose weight changed since their time and distance were calculated
+    private static final long UNFINISHED = -1;
+
+    private final RoutingCHGraph graph;
+    private final PhastStatePool pool;
+    private final Weighting weighting;
+    private final boolean reverseFlow;
+    private final boolean edgeBased;
+    private final int baseNodes;
+    private final RoutingCHEdgeExplorer upExplorer;
+    private final RoutingCHEdgeExplorer downExplorer;
+    private final ShortcutUnpacker unpacker;
+    private final UnpackVisitor visitor = new UnpackVisitor();
+    private double limit = -1;
+    private ShortestPathTree.ExploreType exploreType = TIME;
+    private int visitedNodes;
+    private boolean alreadyRun;
+
+    // one label per node for node-based graphs, and one per edge key plus one for the start node for edge-based graphs
+    private final int labelCount;
+    // the arrays of the state used by the current search, they can be larger than labelCount
+    private double[] weights;
+    private long[] times;
+    private double[] distances;
+    private int[] parents;
+    private int[] chEdges;
+    private int[] lastEdges;
+    // edge-based only: the node of every label, and a linked list of the labels at every node
+    private int[] labelNodes;
+    private int[] firstLabels;
+    private int[] nextLabels;
+    private MinHeapWithUpdate heap;
+
+    public ShortestPathTreeCH(RoutingCHGraph graph, boolean reverseFlow) {
+        this(graph, reverseFlow, null);
+    }
+
+    /**
+     * @param pool the pool to borrow the state of the search from, or null to allocate it for this search
+     */
+    public ShortestPathTreeCH(RoutingCHGraph graph, boolean reverseFlow, PhastStatePool pool) {
+        this.graph = graph;
+        this.pool = pool;
+        this.weighting = graph.getBaseGraph().wrapWeighting(graph.getWeighting());
+        this.reverseFlow = reverseFlow;
+        this.edgeBased = graph.isEdgeBased();
+        this.baseNodes = graph.getBaseGraph().getBaseGraph().getNodes();
+        this.upExplorer = reverseFlow ? graph.createInEdgeExplorer() : graph.createOutEdgeExplorer();
+        this.downExplorer = reverseFlow ? graph.createOutEdgeExplorer() : graph.createInEdgeExplorer();
+        this.unpacker = new ShortcutUnpacker(graph, visitor, edgeBased);
+        labelCount = edgeBased ? 2 * graph.getBaseGraph().getEdges() + 1 : graph.getNodes();
+    }
+
+    @Override
+    public void setTimeLimit(double limit) {
+        exploreType = TIME;
+        this.limit = limit;
+    }
+
+    @Override
+    public void setDistanceLimit(double limit) {
+        exploreType = DISTANCE;
+        this.limit = limit;
+    }
+
+    @Override
+    public void setWeightLimit(double limit) {
+        exploreType = WEIGHT;
+        this.limit = limit;
+    }
+
+    @Override
+    public void search(int from, Consumer<ShortestPathTree.IsoLabel> consumer) {
+        if (alreadyRun)
+            throw new IllegalStateException("Create a new instance per call");
+        alreadyRun = true;
+        PhastState state = pool == null ? null : pool.acquire(labelCount, graph.getNodes(), edgeBased);
+        try {
+            useState(state == null ? new PhastState(labelCount, graph.getNodes(), edgeBased) : state);
+            search(from);
+            emitLabels(consumer);
+        } finally {
+            if (state != null)
+                pool.release(state);
+        }
+    }
+
+    private void useState(PhastState state) {
+        weights = state.weights;
+        times = state.times;
+        distances = state.distances;
+        parents = state.parents;
+        chEdges = state.chEdges;
+        lastEdges = state.lastEdges;
+        labelNodes = state.labelNodes;
+        firstLabels = state.firstLabels;
+        nextLabels = state.nextLabels;
+        heap = state.heap;
+    }
+
+    private void search(int from) {
+        Arrays.fill(weights, 0, labelCount, Double.POSITIVE_INFINITY);
+        // a reused state must not have labels that are marked UNFINISHED already
+        Arrays.fill(times, 0, labelCount, 0);
+        Arrays.fill(parents, 0, labelCount, NO_LABEL);
+        Arrays.fill(chEdges, 0, labelCount, EdgeIterator.NO_EDGE);
+        Arrays.fill(lastEdges, 0, labelCount, EdgeIterator.NO_EDGE);
+        if (edgeBased)
+            Arrays.fill(firstLabels, 0, graph.getNodes(), NO_LABEL);
+        heap.clear();
+
+        int source = edgeBased ? labelCount - 1 : from;
+        setLabel(source, from, 0, NO_LABEL, EdgeIterator.NO_EDGE);
+        times[source] = 0;
+        distances[source] = 0;
+        searchUpward(source);
+        sweepDownward();
+    }
+
+    private void searchUpward(int source) {
+        heap.push(source, 0);
+        while (!heap.isEmpty()) {
+            int label = heap.poll();
+            visitedNodes++;
+            if (label != source)
+                finish(label);
+            int node = getNode(label);
+            RoutingCHEdgeIterator iter = upExplorer.setBaseNode(node);
+            while (iter.next()) {
+                int adjNode = iter.getAdjNode();
+                // like CH queries we accept all edges of the start node
+                if ((label != source && !isUpward(node, adjNode)) || (!edgeBased && iter.getEdge() == chEdges[label]))
+                    continue;
+                double weight = weights[label] + iter.getWeight(reverseFlow);
+                int next = adjNode;
+                if (edgeBased) {
+                    weight += reverseFlow
+                            ? graph.getTurnWeight(GHUtility.getEdgeFromEdgeKey(iter.getOrigEdgeKeyLast()), node, getEdge(label))
+                            : graph.getTurnWeight(getEdge(label), node, GHUtility.getEdgeFromEdgeKey(iter.getOrigEdgeKeyFirst()));
+                    next = reverseFlow ? keyAtFarEnd(iter, iter.getOrigEdgeKeyFirst()) : iter.getOrigEdgeKeyLast();
+                }
+                if (weight < weights[next]) {
+                    setLabel(next, adjNode, weight, label, iter.getEdge());
+                    // labels are settled again if they improve later on, so ordering by float values is fine
+                    if (heap.contains(next))
+                        heap.update(next, (float) weight);
+                    else
+                        heap.push(next, (float) weight);
+                }
+            }
+        }
+    }
+
+    private void sweepDownward() {
+        IntArrayList improved = new IntArrayList();
+        int[] nodes = sortByLevelDescending();
+        for (int node : nodes) {
+            visitedNodes++;
+            relaxFromNeighbors(node, true, improved);
+            if (edgeBased && !improved.isEmpty())
+                relaxLoops(node, improved);
+            finishAll(improved);
+        }
+        if (!edgeBased)
+            return;
+        // edge-based CH queries accept any edge at the far end of the path, also one that comes from (or leads to) a
+        // lower level node, so we do the same here. going from the lowest to the highest level picks up chains of such
+        // edges, too.
+        for (int i = nodes.length - 1; i >= 0; i--) {
+            relaxFromNeighbors(nodes[i], false, improved);
+            finishAll(improved);
+        }
+    }
+
+    private void relaxFromNeighbors(int node, boolean higher, IntArrayList improved) {
+        int level = graph.getLevel(node);
+        RoutingCHEdgeIterator iter = downExplorer.setBaseNode(node);
+        while (iter.next()) {
+            int adjNode = iter.getAdjNode();
+            int adjLevel = graph.getLevel(adjNode);
+            if (higher ? adjLevel <= level : adjLevel >= level)
+                continue;
+            double edgeWeight = iter.getWeight(!reverseFlow);
+            if (Double.isInfinite(edgeWeight))
+                continue;
+            if (!edgeBased) {
+                relax(node, node, weights[adjNode] + edgeWeight, adjNode, iter.getEdge(), improved);
+                continue;
+            }
+            int next = reverseFlow ? iter.getOrigEdgeKeyFirst() : keyAtFarEnd(iter, iter.getOrigEdgeKeyLast());
+            int origEdgeAtAdjNode = GHUtility.getEdgeFromEdgeKey(reverseFlow ? iter.getOrigEdgeKeyLast() : iter.getOrigEdgeKeyFirst());
+            for (int label = firstLabels[adjNode]; label != NO_LABEL; label = nextLabels[label]) {
+                double turnWeight = reverseFlow
+                        ? graph.getTurnWeight(origEdgeAtAdjNode, adjNode, getEdge(label))
+                        : graph.getTurnWeight(getEdge(label), adjNode, origEdgeAtAdjNode);
+                relax(next, node, weights[label] + edgeWeight + turnWeight, label, iter.getEdge(), improved);
+            }
+        }
+    }
+
+    private void finishAll(IntArrayList improved) {
+        for (int i = 0; i < improved.size(); i++)
+            finish(improved.get(i));
+        improved.clear();
+    }
+
+    /**
+     * Edge-based CH has loop shortcuts, e.g. for u-turns at lower level nodes. The upward search uses them like any
+     * other edge, but labels found by the sweep still need them.
+     */
+    private void relaxLoops(int node, IntArrayList improved) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            RoutingCHEdgeIterator iter = downExplorer.setBaseNode(node);
+            while (iter.next()) {
+                if (iter.getAdjNode() != node)
+                    continue;
+                double edgeWeight = iter.getWeight(!reverseFlow);
+                if (Double.isInfinite(edgeWeight))
+                    continue;
+                int next = reverseFlow ? iter.getOrigEdgeKeyFirst() : iter.getOrigEdgeKeyLast();
+                int origEdge = GHUtility.getEdgeFromEdgeKey(reverseFlow ? iter.getOrigEdgeKeyLast() : iter.getOrigEdgeKeyFirst());
+                for (int label = firstLabels[node]; label != NO_LABEL; label = nextLabels[label]) {
+                    double turnWeight = reverseFlow
+                            ? graph.getTurnWeight(origEdge, node, getEdge(label))
+                            : graph.getTurnWeight(getEdge(label), node, origEdge);
+                    changed |= relax(next, node, weights[label] + edgeWeight + turnWeight, label, iter.getEdge(), improved);
+                }
+            }
+        }
+    }
+
+    private boolean relax(int label, int node, double weight, int parent, int chEdge, IntArrayList improved) {
+        if (weight >= weights[label])
+            return false;
+        setLabel(label, node, weight, parent, chEdge);
+        if (times[label] != UNFINISHED) {
+            times[label] = UNFINISHED;
+            improved.add(label);
+        }
+        return true;
+    }
+
+    private void setLabel(int label, int node, double weight, int parent, int chEdge) {
+        if (edgeBased && weights[label] == Double.POSITIVE_INFINITY) {
+            labelNodes[label] = node;
+            nextLabels[label] = firstLabels[node];
+            firstLabels[node] = label;
+        }
+        weights[label] = weight;
+        parents[label] = parent;
+        chEdges[label] = chEdge;
+    }
+
+    /**
+     * Calculates the time and distance of a label from the ones of its parent, unless the parent is beyond the limit
+     * already, which means the label is, too. Loop shortcuts can make a label the parent of another one at the same
+     * node, so the parent is finished first if needed.
+     */
+    private void finish(int label) {
+        int parent = parents[label];
+        if (times[parent] == UNFINISHED)
+            finish(parent);
+        if (getExploreValue(parent) > limit || (exploreType == WEIGHT && weights[label] > limit)) {
+            times[label] = Long.MAX_VALUE;
+            distances[label] = Double.POSITIVE_INFINITY;
+            return;
+        }
+        unpack(label);
+        times[label] = visitor.time == Long.MAX_VALUE ? Long.MAX_VALUE : times[parent] + visitor.time;
+        distances[label] = distances[parent] + visitor.distance;
+        lastEdges[label] = visitor.lastEdge;
+    }
+
+    private void unpack(int label) {
+        visitor.reset();
+        int prevOrNextEdge = edgeBased ? getEdge(parents[label]) : EdgeIterator.NO_EDGE;
+        if (reverseFlow)
+            unpacker.visitOriginalEdgesBwd(chEdges[label], getNode(label), false, prevOrNextEdge);
+        else
+            unpacker.visitOriginalEdgesFwd(chEdges[label], getNode(label), false, prevOrNextEdge);
+    }
+
+    private void emitLabels(Consumer<ShortestPathTree.IsoLabel> consumer) {
+        int count = 0;
+        long[] sorted = new long[16];
+        for (int label = 0; label < labelCount; label++) {
+            if (weights[label] == Double.POSITIVE_INFINITY || getExploreValue(label) > limit)
+                continue;
+            if (count == sorted.length)
+                sorted = Arrays.copyOf(sorted, 2 * count);
+            // weights are not negative, so the bits of their float values sort like the values themselves
+            sorted[count++] = ((long) Float.floatToIntBits((float) weights[label]) << 32) | label;
+        }
+        Arrays.sort(sorted, 0, count);
+        for (int i = 0; i < count; i++)
+            consumer.accept(createIsoLabel((int) sorted[i]));
+    }
+
+    private ShortestPathTree.IsoLabel createIsoLabel(int label) {
+        int parent = parents[label];
+        if (parent == NO_LABEL)
+            return new ShortestPathTree.IsoLabel(getNode(label), EdgeIterator.NO_EDGE, 0, 0, 0, null);
+        unpack(label);
+        int prevEdge = visitor.edges > 1 ? visitor.prevEdge : lastEdges[parent];
+        ShortestPathTree.IsoLabel prev = new ShortestPathTree.IsoLabel(visitor.prevNode, prevEdge, weights[label] - visitor.lastWeight,
+                times[label] - visitor.lastTime, distances[label] - visitor.lastDistance, null);
+        return new ShortestPathTree.IsoLabel(getNode(label), lastEdges[label], weights[label], times[label], distances[label], prev);
+    }
+
+    /**
+     * The nodes of the base graph in descending level order, by counting sort. Virtual nodes are left out, they are
+     * only reached by the upward search.
+     */
+    private int[] sortByLevelDescending() {
+        int maxLevel = 0;
+        for (int node = 0; node < baseNodes; node++)
+            maxLevel = Math.max(maxLevel, graph.getLevel(node));
+        int[] starts = new int[maxLevel + 2];
+        for (int node = 0; node < baseNodes; node++)
+            starts[maxLevel - graph.getLevel(node) + 1]++;
+        for (int i = 1; i < starts.length; i++)
+            starts[i] += starts[i - 1];
+        int[] result = new int[baseNodes];
+        for (int node = 0; node < baseNodes; node++)
+            result[starts[maxLevel - graph.getLevel(node)]++] = node;
+        return result;
+    }
+
+    private boolean isUpward(int base, int adj) {
+        // always accept virtual edges, see #288
+        if (base >= baseNodes || adj >= baseNodes)
+            return true;
+        return graph.getLevel(base) <= graph.getLevel(adj);
+    }
+
+    /**
+     * The edge key of the original edge at the adjacent node of the given edge state, in travel direction. Needed when
+     * the edge state points against the travel direction, see TraversalMode#createTraversalId.
+     */
+    private static int keyAtFarEnd(RoutingCHEdgeIteratorState edgeState, int key) {
+        if (!edgeState.isShortcut() && edgeState.getBaseNode() != edgeState.getAdjNode())
+            return GHUtility.reverseEdgeKey(key);
+        return key;
+    }
+
+    private int getNode(int label) {
+        return edgeBased ? labelNodes[label] : label;
+    }
+
+    /**
+     * @return the original edge a label was reached with (or leaves with for reverse flow) or NO_EDGE for the start
+     */
+    private int getEdge(int label) {
+        if (!edgeBased || label == labelCount - 1)
+            return EdgeIterator.NO_EDGE;
+        return GHUtility.getEdgeFromEdgeKey(label);
+    }
+
+    private double getExploreValue(int label) {
+        if (exploreType == TIME)
+            return times[label];
+        if (exploreType == WEIGHT)
+            return weights[label];
+        return distances[label];
+    }
+
+    @Override
+    public int getVisitedNodes() {
+        return visitedNodes;
+    }
+
+    private class UnpackVisitor implements ShortcutUnpacker.Visitor {
+        long time;
+        double distance;
+        int edges;
+        int lastEdge;
+        int prevEdge;
+        int prevNode;
+        double lastWeight;
+        long lastTime;
+        double lastDistance;
+
+        void reset() {
+            time = 0;
+            distance = 0;
+            edges = 0;
+            lastEdge = prevEdge = EdgeIterator.NO_EDGE;
+        }
+
+        @Override
+        public void visit(EdgeIteratorState edge, boolean reverse, int prevOrNextEdgeId) {
+            // the original edges are visited from the parent towards the label, and they all point towards the label
+            lastTime = GHUtility.calcMillisWithTurnMillis(weighting, edge, reverse, prevOrNextEdgeId);
+            lastWeight = GHUtility.calcWeightWithTurnWeight(weighting, edge, reverse, prevOrNextEdgeId);
+            lastDistance = edge.getDistance();
+            time = time == Long.MAX_VALUE || lastTime == Long.MAX_VALUE ? Long.MAX_VALUE : time + lastTime;
+            distance += lastDistance;
+            prevEdge = lastEdge;
+            lastEdge = edge.getEdge();
+            prevNode = edge.getBaseNode();
+            edges++;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.isochrone.algorithm;
+
+import java.util.function.Consumer;
+
+/**
+ * A one-to-all search that hands out the labels of all nodes (or edges, for edge-based traversal) that can be
+ * reached within a given travel time, distance or weight.
+ *
+ * @see ShortestPathTree
+ * @see ShortestPathTreeCH
+ */
+public interface ShortestPathTreeSearch {
+
+    /**
+     * Time limit in milliseconds
+     */
+    void setTimeLimit(double limit);
+
+    /**
+     * Distance limit in meter
+     */
+    void setDistanceLimit(double limit);
+
+    void setWeightLimit(double limit);
+
+    void search(int from, Consumer<ShortestPathTree.IsoLabel> consumer);
+
+    int getVisitedNodes();
+}
@@ -21,6 +21,7 @@ package com.graphhopper.reader.osm;
 import com.carrotsearch.hppc.LongScatterSet;
 import com.carrotsearch.hppc.LongSet;
 import com.graphhopper.coll.GHLongLongBTree;
+import com.graphhopper.coll.GHLongLongPagedMap;
 import com.graphhopper.coll.LongLongMap;
 import com.graphhopper.reader.ReaderNode;
 import com.graphhopper.search.KVStorage;
@@ -80,10 +81,24 @@ class OSMNodeData {
     private long nextArtificialOSMNodeId = -Long.MAX_VALUE;
 
     public OSMNodeData(PointAccess nodeAccess, Directory directory) {
-        // We use a b-tree that can store as many entries as there are longs. A tree is also more
-        // memory efficient, because there is no waste for empty entries, and it also avoids
-        // allocating big arrays when growing the size.
-        idsByOsmNodeIds = new GHLongLongBTree(200, 5, EMPTY_NODE);
+        this(nodeAccess, directory, false);
+    }
+
+    /**
+     * @param pagedNodeIdMap if true the internal node ids are stored in a {@link GHLongLongPagedMap} instead of a
+     *                       b-tree, see {@link com.graphhopper.routing.OSMReaderConfig#setPagedNodeIdMap}
+     */
+    public OSMNodeData(PointAccess nodeAccess, Directory directory, boolean pagedNodeIdMap) {
+        if (pagedNodeIdMap)
+            // The paged map allocates one page for every range of 2^16 OSM node IDs that contains at least one node
+            // of an accepted way. This wastes some space for empty entries, but for larger areas the OSM node IDs are
+            // dense enough and the data does not live in millions of small objects on the Java heap.
+            idsByOsmNodeIds = new GHLongLongPagedMap(directory, "tmp_osm_node_ids", 5, EMPTY_NODE, 16);
+        else
+            // We use a b-tree that can store as many entries as there are longs. A tree is also more
+            // memory efficient, because there is no waste for empty entries, and it also avoids
+            // allocating big arrays when growing the size.
+            idsByOsmNodeIds = new GHLongLongBTree(200, 5, EMPTY_NODE);
         towerNodes = nodeAccess;
         pillarNodes = new PillarInfo(towerNodes.is3D(), directory);
 
@@ -53,6 +53,10 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.LongToIntFunction;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -99,6 +103,12 @@ public class OSMReader {
     private WayToEdgesMap restrictedWaysToEdgesMap = new WayToEdgesMap();
     private List<ReaderRelation> restrictionRelations = new ArrayList<>();
 
+    // state of the optional tag parser pipeline, see OSMReaderConfig.setTagParserThreads
+    private ExecutorService tagParserExecutor;
+    private final ArrayDeque<Future<EdgeBatch>> parsingBatches = new ArrayDeque<>();
+    private EdgeBatch currentBatch;
+    private int nextEdgeId;
+
     public OSMReader(BaseGraph baseGraph, OSMParsers osmParsers, OSMReaderConfig config) {
         this.baseGraph = baseGraph;
         this.edgeIntAccess = baseGraph.getEdgeAccess();
@@ -162,7 +172,7 @@ public class OSMReader {
         if (!baseGraph.isInitialized())
             throw new IllegalStateException("BaseGraph must be initialize before we can read OSM");
 
-        WaySegmentParser waySegmentParser = new WaySegmentParser.Builder(baseGraph.getNodeAccess(), baseGraph.getDirectory())
+        WaySegmentParser waySegmentParser = new WaySegmentParser.Builder(baseGraph.getNodeAccess(), baseGraph.getDirectory(), config.isPagedNodeIdMap())
                 .setElevationProvider(this::getElevation)
                 .setWayFilter(this::acceptWay)
                 .setSplitNodeFilter(this::isBarrierNode)
@@ -172,7 +182,27 @@ public class OSMReader {
                 .setEdgeHandler(this::addEdge)
                 .setWorkerThreads(config.getWorkerThreads())
                 .build();
-        waySegmentParser.readOSM(osmFile);
+        if (config.getTagParserThreads() > 1) {
+            tagParserExecutor = Executors.newFixedThreadPool(config.getTagParserThreads(), r -> {
+                Thread thread = new Thread(r, "tag-parser");
+                thread.setDaemon(true);
+                return thread;
+            });
+            nextEdgeId = baseGraph.getEdges();
+        }
+        try {
+            waySegmentParser.readOSM(osmFile);
+            if (tagParserExecutor != null) {
+                submitCurrentBatch();
+                while (!parsingBatches.isEmpty())
+                    commitBatch(parsingBatches.poll());
+            }
+        } finally {
+            if (tagParserExecutor != null) {
+                tagParserExecutor.shutdownNow();
+                tagParserExecutor = null;
+            }
+        }
         osmDataDate = waySegmentParser.getTimestamp();
         if (baseGraph.getNodes() == 0)
             throw new RuntimeException("Graph after reading OSM must not be empty");
@@ -374,8 +404,16 @@ public class OSMReader {
 
         setArtificialWayTags(pointList, way, distance, nodeTags);
         IntsRef relationFlags = getRelFlagsMap(way.getId());
+        if (tagParserExecutor != null) {
+            addPendingEdge(fromIndex, toIndex, distance, pointList, way, relationFlags);
+            return;
+        }
         EdgeIteratorState edge = baseGraph.edge(fromIndex, toIndex).setDistance(distance);
         osmParsers.handleWayTags(edge.getEdge(), edgeIntAccess, way, relationFlags);
+        finishEdge(edge, fromIndex, toIndex, pointList, way);
+    }
+
+    private void finishEdge(EdgeIteratorState edge, int fromIndex, int toIndex, PointList pointList, ReaderWay way) {
         Map<String, KValue> map = way.getTag("key_values", Collections.emptyMap());
         if (!map.isEmpty())
             edge.setKeyValues(map);
@@ -393,6 +431,63 @@ public class OSMReader {
         restrictedWaysToEdgesMap.putIfReserved(way.getId(), edge.getEdge());
     }
 
+    /**
+     * Queues an edge whose way tags were already enriched. We take a snapshot of the way, because the same ReaderWay
+     * object is modified again for the next segment. The edge ID is determined here already, because edges are
+     * committed in the same order as they were queued.
+     */
+    private void addPendingEdge(int fromIndex, int toIndex, double distance, PointList pointList, ReaderWay way, IntsRef relationFlags) {
+        if (currentBatch == null)
+            currentBatch = new EdgeBatch(nextEdgeId, baseGraph.getIntsForFlags(), config.getTagParserBatchSize());
+        ReaderWay wayCopy = new ReaderWay(way.getId());
+        wayCopy.setTags(way.getTags());
+        wayCopy.getNodes().addAll(way.getNodes());
+        currentBatch.add(new PendingEdge(fromIndex, toIndex, distance, pointList, wayCopy, relationFlags));
+        nextEdgeId++;
+        if (currentBatch.size() == config.getTagParserBatchSize())
+            submitCurrentBatch();
+    }
+
+    private void submitCurrentBatch() {
+        if (currentBatch == null)
+            return;
+        EdgeBatch batch = currentBatch;
+        currentBatch = null;
+        parsingBatches.add(tagParserExecutor.submit(() -> {
+            for (int i = 0; i < batch.size(); i++) {
+                PendingEdge e = batch.edges.get(i);
+                osmParsers.handleWayTags(batch.firstEdgeId + i, batch, e.way, e.relationFlags);
+            }
+            return batch;
+        }));
+        // limit the number of batches in flight and write the oldest ones to the graph
+        while (parsingBatches.size() > 2 * config.getTagParserThreads())
+            commitBatch(parsingBatches.poll());
+    }
+
+    private void commitBatch(Future<EdgeBatch> future) {
+        EdgeBatch batch;
+        try {
+            batch = future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+            throw new RuntimeException(ex.getCause());
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            PendingEdge e = batch.edges.get(i);
+            EdgeIteratorState edge = baseGraph.edge(e.fromIndex, e.toIndex).setDistance(e.distance);
+            if (edge.getEdge() != batch.firstEdgeId + i)
+                throw new IllegalStateException("Unexpected edge ID " + edge.getEdge() + ", expected: " + (batch.firstEdgeId + i));
+            for (int j = 0; j < batch.intsPerEdge; j++)
+                edgeIntAccess.setInt(edge.getEdge(), j, batch.getInt(edge.getEdge(), j));
+            finishEdge(edge, e.fromIndex, e.toIndex, e.pointList, e.way);
+        }
+    }
+
     private void checkCoordinates(int nodeIndex, GHPoint point) {
         final double tolerance = 1.e-6;
         if (Math.abs(nodeAccess.getLat(nodeIndex) - point.getLat()) > tolerance || Math.abs(nodeAccess.getLon(nodeIndex) - point.getLon()) > tolerance)
@@ -690,4 +785,58 @@ public class OSMReader {
         return getClass().getSimpleName();
     }
 
+    private static class PendingEdge {
+        final int fromIndex;
+        final int toIndex;
+        final double distance;
+        final PointList pointList;
+        final ReaderWay way;
+        final IntsRef relationFlags;
+
+        PendingEdge(int fromIndex, int toIndex, double distance, PointList pointList, ReaderWay way, IntsRef relationFlags) {
+            this.fromIndex = fromIndex;
+            this.toIndex = toIndex;
+            this.distance = distance;
+            this.pointList = pointList;
+            this.way = way;
+            this.relationFlags = IntsRef.deepCopyOf(relationFlags);
+        }
+    }
+
+    /**
+     * A batch of consecutive edges whose flags are written into a single int array by the tag parsers before the
+     * edges are added to the graph.
+     */
+    private static class EdgeBatch implements EdgeIntAccess {
+        final int firstEdgeId;
+        final int intsPerEdge;
+        final List<PendingEdge> edges;
+        private final int[] flags;
+
+        EdgeBatch(int firstEdgeId, int intsPerEdge, int capacity) {
+            this.firstEdgeId = firstEdgeId;
+            this.intsPerEdge = intsPerEdge;
+            this.edges = new ArrayList<>(capacity);
+            this.flags = new int[capacity * intsPerEdge];
+        }
+
+        void add(PendingEdge edge) {
+            edges.add(edge);
+        }
+
+        int size() {
+            return edges.size();
+        }
+
+        @Override
+        public int getInt(int edgeId, int index) {
+            return flags[(edgeId - firstEdgeId) * intsPerEdge + index];
+        }
+
+        @Override
+        public void setInt(int edgeId, int index, int value) {
+            flags[(edgeId - firstEdgeId) * intsPerEdge + index] = value;
+        }
+    }
+
 }
@@ -416,7 +416,16 @@ public class WaySegmentParser {
          * @param directory   the directory to be used to store temporary data
          */
         public Builder(PointAccess pointAccess, Directory directory) {
-            waySegmentParser = new WaySegmentParser(new OSMNodeData(pointAccess, directory));
+            this(pointAccess, directory, false);
+        }
+
+        /**
+         * @param pointAccess    used to store tower node coordinates while parsing the ways
+         * @param directory      the directory to be used to store temporary data
+         * @param pagedNodeIdMap true if the OSM node IDs should be mapped with a paged DataAccess instead of a b-tree
+         */
+        public Builder(PointAccess pointAccess, Directory directory, boolean pagedNodeIdMap) {
+            waySegmentParser = new WaySegmentParser(new OSMNodeData(pointAccess, directory, pagedNodeIdMap));
         }
 
         /**
@@ -33,6 +33,9 @@ public class OSMReaderConfig {
     private int ramerElevationSmoothingMax = 5;
     private double longEdgeSamplingDistance = Double.MAX_VALUE;
     private int workerThreads = 2;
+    private int tagParserThreads = 1;
+    private int tagParserBatchSize = 1024;
+    private boolean pagedNodeIdMap = false;
     private double defaultElevation = 0;
 
     public List<String> getIgnoredHighways() {
@@ -157,6 +160,51 @@ public class OSMReaderConfig {
         return this;
     }
 
+    public int getTagParserThreads() {
+        return tagParserThreads;
+    }
+
+    /**
+     * Sets the number of threads that run the tag parsers for the edges created from OSM ways. With more than one
+     * thread the edges are parsed in batches and still added to the graph in the same order, so the resulting graph
+     * is identical to the one of the single-threaded import.
+     */
+    public OSMReaderConfig setTagParserThreads(int tagParserThreads) {
+        if (tagParserThreads < 1)
+            throw new IllegalArgumentException("tag parser threads must be at least 1 but was " + tagParserThreads);
+        this.tagParserThreads = tagParserThreads;
+        return this;
+    }
+
+    public int getTagParserBatchSize() {
+        return tagParserBatchSize;
+    }
+
+    /**
+     * Sets the number of edges that are passed to the tag parser threads at once
+     */
+    public OSMReaderConfig setTagParserBatchSize(int tagParserBatchSize) {
+        if (tagParserBatchSize < 1)
+            throw new IllegalArgumentException("tag parser batch size must be at least 1 but was " + tagParserBatchSize);
+        this.tagParserBatchSize = tagParserBatchSize;
+        return this;
+    }
+
+    public boolean isPagedNodeIdMap() {
+        return pagedNodeIdMap;
+    }
+
+    /**
+     * Enable this to store the mapping of OSM node IDs to internal node IDs during import in pages of a DataAccess
+     * instead of an in-memory b-tree. This needs less heap for big imports, especially when the temporary data
+     * accesses are configured as OFF_HEAP or MMAP, e.g. with graph.dataaccess.type.tmp_osm_node_ids. For small areas
+     * with scattered OSM node IDs the b-tree needs less memory.
+     */
+    public OSMReaderConfig setPagedNodeIdMap(boolean pagedNodeIdMap) {
+        this.pagedNodeIdMap = pagedNodeIdMap;
+        return this;
+    }
+
     public double getDefaultElevation() {
         return defaultElevation;
     }
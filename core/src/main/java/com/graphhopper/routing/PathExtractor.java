@@ -70,6 +70,7 @@ public class PathExtractor {
 
     private void setExtractionTime(long nanos) {
         path.setDebugInfo("path extraction: " + nanos / 1000 + " μs");
+        path.setExtractionNanos(nanos);
     }
 
     protected void onEdge(int edge, int adjNode, int prevEdge) {
@@ -18,18 +18,22 @@
 
 package com.graphhopper.routing;
 
+import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.cursors.IntCursor;
+import com.graphhopper.GHMatrixRequest;
+import com.graphhopper.GHMatrixResponse;
 import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
 import com.graphhopper.ResponsePath;
 import com.graphhopper.config.Profile;
+import com.graphhopper.routing.ch.CHQueryStatePool;
 import com.graphhopper.routing.ch.CHRoutingAlgorithmFactory;
-import com.graphhopper.routing.ev.BooleanEncodedValue;
-import com.graphhopper.routing.ev.EncodedValueLookup;
-import com.graphhopper.routing.ev.Subnetwork;
+import com.graphhopper.routing.ch.ManyToManyCH;
+import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.lm.LMRoutingAlgorithmFactory;
 import com.graphhopper.routing.lm.LandmarkStorage;
 import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.QueryRoutingCHGraph;
 import com.graphhopper.routing.util.*;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.routing.weighting.custom.CustomWeighting;
@@ -41,6 +45,8 @@ import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.storage.index.Snap;
 import com.graphhopper.util.*;
 import com.graphhopper.util.details.PathDetailsBuilderFactory;
+import com.graphhopper.util.exceptions.ConnectionNotFoundException;
+import com.graphhopper.util.exceptions.MaximumNodesExceededException;
 import com.graphhopper.util.exceptions.PointDistanceExceededException;
 import com.graphhopper.util.exceptions.PointNotFoundException;
 import com.graphhopper.util.exceptions.PointOutOfBoundsException;
@@ -48,6 +54,13 @@ import com.graphhopper.util.shapes.BBox;
 import com.graphhopper.util.shapes.GHPoint;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.ObjIntConsumer;
 
 import static com.graphhopper.util.DistanceCalcEarth.DIST_EARTH;
 import static com.graphhopper.util.Parameters.Algorithms.ALT_ROUTE;
@@ -66,6 +79,7 @@ public class Router {
     protected final WeightingFactory weightingFactory;
     protected final Map<String, RoutingCHGraph> chGraphs;
     protected final Map<String, LandmarkStorage> landmarks;
+    protected final CHQueryStatePool chQueryStatePool;
     protected final boolean chEnabled;
     protected final boolean lmEnabled;
 
@@ -73,6 +87,18 @@ public class Router {
                   Map<String, Profile> profilesByName, PathDetailsBuilderFactory pathDetailsBuilderFactory,
                   TranslationMap translationMap, RouterConfig routerConfig, WeightingFactory weightingFactory,
                   Map<String, RoutingCHGraph> chGraphs, Map<String, LandmarkStorage> landmarks) {
+        this(graph, encodingManager, locationIndex, profilesByName, pathDetailsBuilderFactory, translationMap, routerConfig,
+                weightingFactory, chGraphs, landmarks, null);
+    }
+
+    /**
+     * @param chQueryStatePool the pool the node-based CH queries take their state from, or null to allocate the state
+     *                         for every query
+     */
+    public Router(BaseGraph graph, EncodingManager encodingManager, LocationIndex locationIndex,
+                  Map<String, Profile> profilesByName, PathDetailsBuilderFactory pathDetailsBuilderFactory,
+                  TranslationMap translationMap, RouterConfig routerConfig, WeightingFactory weightingFactory,
+                  Map<String, RoutingCHGraph> chGraphs, Map<String, LandmarkStorage> landmarks, CHQueryStatePool chQueryStatePool) {
         this.graph = graph;
         this.encodingManager = encodingManager;
         this.locationIndex = locationIndex;
@@ -83,6 +109,7 @@ public class Router {
         this.weightingFactory = weightingFactory;
         this.chGraphs = chGraphs;
         this.landmarks = landmarks;
+        this.chQueryStatePool = chQueryStatePool;
         // note that his is not the same as !ghStorage.getCHConfigs().isEmpty(), because the GHStorage might have some
         // CHGraphs that were not built yet (and possibly no CH profiles were configured).
         this.chEnabled = !chGraphs.isEmpty();
@@ -95,28 +122,31 @@ public class Router {
     }
 
     public GHResponse route(GHRequest request) {
+        return route(request, null);
+    }
+
+    /**
+     * Like {@link #route(GHRequest)}, but uses the given snaps instead of snapping the points of the request again.
+     *
+     * @param snaps the result of {@link #snap(GHRequest)} for the same request, or null to snap the points. They must
+     *              not have been used for a QueryGraph yet, because it modifies them. Round trips cannot reuse snaps.
+     */
+    public GHResponse route(GHRequest request, List<Snap> snaps) {
         try {
-            checkNoLegacyParameters(request);
-            checkAtLeastOnePoint(request);
-            checkIfPointsAreInBoundsAndNotNull(request.getPoints());
-            checkHeadings(request);
-            checkPointHints(request);
-            checkCurbsides(request);
-            checkNoBlockArea(request);
-            checkCustomModel(request);
-
-            Solver solver = createSolver(request);
-            solver.checkRequest();
-            solver.init();
+            Solver solver = createCheckedSolver(request);
+            if (snaps != null && snaps.size() != request.getPoints().size())
+                throw new IllegalArgumentException("Expected one snap per point, but got " + snaps.size() + " snaps for " + request.getPoints().size() + " points");
 
             if (ROUND_TRIP.equalsIgnoreCase(request.getAlgorithm())) {
                 if (!(solver instanceof FlexSolver))
                     throw new IllegalArgumentException("algorithm=round_trip only works with a flexible algorithm");
+                if (snaps != null)
+                    throw new IllegalArgumentException("algorithm=round_trip cannot reuse snaps");
                 return routeRoundTrip(request, (FlexSolver) solver);
             } else if (ALT_ROUTE.equalsIgnoreCase(request.getAlgorithm())) {
-                return routeAlt(request, solver);
+                return routeAlt(request, solver, snaps);
             } else {
-                return routeVia(request, solver);
+                return routeVia(request, solver, snaps);
             }
         } catch (MultiplePointsNotFoundException ex) {
             GHResponse ghRsp = new GHResponse();
@@ -131,6 +161,340 @@ public class Router {
         }
     }
 
+    /**
+     * Snaps the points of the given request to the graph exactly like {@link #route(GHRequest)} does for a (non
+     * round trip) request, but without calculating a route.
+     *
+     * @throws IllegalArgumentException if the request is invalid or one of the points cannot be snapped
+     */
+    public List<Snap> snap(GHRequest request) {
+        Solver solver = createCheckedSolver(request);
+        try {
+            return ViaRouting.lookup(encodingManager, request.getPoints(), solver.createSnapFilter(), locationIndex,
+                    request.getSnapPreventions(), request.getPointHints(), solver.createDirectedEdgeFilter(), request.getHeadings());
+        } catch (MultiplePointsNotFoundException ex) {
+            throw new IllegalArgumentException("Cannot find points " + ex.getPointsNotFound());
+        }
+    }
+
+    private Solver createCheckedSolver(GHRequest request) {
+        checkNoLegacyParameters(request);
+        checkAtLeastOnePoint(request);
+        checkIfPointsAreInBoundsAndNotNull(request.getPoints());
+        checkHeadings(request);
+        checkPointHints(request);
+        checkCurbsides(request);
+        checkNoBlockArea(request);
+        checkCustomModel(request);
+
+        Solver solver = createSolver(request);
+        solver.checkRequest();
+        solver.init();
+        return solver;
+    }
+
+    /**
+     * Calculates the routes for all the given requests and returns the responses in the same order.
+     *
+     * @see #routeBatch(List, ExecutorService, ObjIntConsumer)
+     */
+    public List<GHResponse> routeBatch(List<GHRequest> requests, ExecutorService executor) {
+        GHResponse[] responses = new GHResponse[requests.size()];
+        routeBatch(requests, executor, (response, index) -> responses[index] = response);
+        return Arrays.asList(responses);
+    }
+
+    /**
+     * Calculates the routes for all the given requests. Requests that only differ in their points are routed together:
+     * every distinct point is snapped only once, there is a single QueryGraph for all of them and every worker thread
+     * uses a single path calculator for all requests. Requests using headings, curbsides, point hints, pass_through,
+     * a custom model or a special algorithm are routed separately, just like with {@link #route(GHRequest)}.
+     *
+     * @param executor        runs the routing on up to {@link RouterConfig#getBatchThreads()} threads at once. It is
+     *                        usually shared by all batches, or null to route in the calling thread.
+     * @param responseHandler is called with the response and the index of the request as soon as a route is finished,
+     *                        i.e. not necessarily in the order of the requests. It is called from the calling or one
+     *                        of the worker threads, but never concurrently.
+     */
+    public void routeBatch(List<GHRequest> requests, ExecutorService executor, ObjIntConsumer<GHResponse> responseHandler) {
+        if (requests.size() > routerConfig.getMaxBatchSize())
+            throw new IllegalArgumentException("The number of requests must not exceed " + routerConfig.getMaxBatchSize() + ", but was: " + requests.size());
+        ObjIntConsumer<GHResponse> handler = new ObjIntConsumer<>() {
+            @Override
+            public synchronized void accept(GHResponse response, int index) {
+                responseHandler.accept(response, index);
+            }
+        };
+        IntArrayList separate = new IntArrayList();
+        Map<List<Object>, IntArrayList> groups = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            GHRequest request = requests.get(i);
+            if (canBeRoutedInBatch(request))
+                groups.computeIfAbsent(Arrays.asList(request.getProfile(), request.getAlgorithm(), request.getHints().toMap(), request.getSnapPreventions()),
+                        k -> new IntArrayList()).add(i);
+            else
+                separate.add(i);
+        }
+        int threads = executor == null ? 1 : Math.max(1, routerConfig.getBatchThreads());
+        runInBatch(executor, threads, separate.size(), t -> i -> {
+            int index = separate.get(i);
+            handler.accept(route(requests.get(index)), index);
+        });
+        for (IntArrayList group : groups.values())
+            routeGroup(requests, group, handler, executor, threads);
+    }
+
+    private static boolean canBeRoutedInBatch(GHRequest request) {
+        return request.getPoints().size() >= 2
+                && !ROUND_TRIP.equalsIgnoreCase(request.getAlgorithm())
+                && !ALT_ROUTE.equalsIgnoreCase(request.getAlgorithm())
+                && request.getHeadings().isEmpty()
+                && request.getCurbsides().isEmpty()
+                && request.getPointHints().isEmpty()
+                && request.getCustomModel() == null
+                && !getPassThrough(request.getHints());
+    }
+
+    private void routeGroup(List<GHRequest> requests, IntArrayList group, ObjIntConsumer<GHResponse> handler,
+                            ExecutorService executor, int threads) {
+        IntArrayList valid = new IntArrayList(group.size());
+        for (IntCursor c : group) {
+            GHRequest request = requests.get(c.value);
+            try {
+                checkNoLegacyParameters(request);
+                checkIfPointsAreInBoundsAndNotNull(request.getPoints());
+                checkNoBlockArea(request);
+                // the requests of a group only differ in their points, but the solver also checks those, e.g. the
+                // maximum waypoint distance without CH
+                createSolver(request).checkRequest();
+                valid.add(c.value);
+            } catch (IllegalArgumentException ex) {
+                handler.accept(new GHResponse().addError(ex), c.value);
+            }
+        }
+        if (valid.isEmpty())
+            return;
+
+        GHRequest first = requests.get(valid.get(0));
+        Solver solver;
+        try {
+            solver = createSolver(first);
+            solver.init();
+        } catch (IllegalArgumentException ex) {
+            for (IntCursor c : valid)
+                handler.accept(new GHResponse().addError(ex), c.value);
+            return;
+        }
+
+        // snap every distinct point only once
+        StopWatch sw = new StopWatch().start();
+        EdgeFilter snapFilter = solver.createSnapFilter();
+        EdgeFilter strictSnapFilter = first.getSnapPreventions().isEmpty()
+                ? snapFilter
+                : new SnapPreventionEdgeFilter(snapFilter, encodingManager.getEnumEncodedValue(RoadClass.KEY, RoadClass.class),
+                encodingManager.getEnumEncodedValue(RoadEnvironment.KEY, RoadEnvironment.class), first.getSnapPreventions());
+        Map<GHPoint, Snap> snapsByPoint = new HashMap<>();
+        List<Snap> distinctSnaps = new ArrayList<>();
+        for (IntCursor c : valid) {
+            for (GHPoint point : requests.get(c.value).getPoints()) {
+                if (snapsByPoint.containsKey(point))
+                    continue;
+                Snap snap = locationIndex.findClosest(point.lat, point.lon, strictSnapFilter);
+                if (!snap.isValid() && strictSnapFilter != snapFilter)
+                    snap = locationIndex.findClosest(point.lat, point.lon, snapFilter);
+                snapsByPoint.put(point, snap);
+                if (snap.isValid())
+                    distinctSnaps.add(snap);
+            }
+        }
+        // note that creating the query graph changes the closest nodes of the snaps, so we do this before routing
+        QueryGraph queryGraph = QueryGraph.create(graph, distinctSnaps);
+        String idLookup = "idLookup:" + sw.stop().getSeconds() + "s, distinct points: " + snapsByPoint.size();
+        DirectedEdgeFilter directedEdgeFilter = solver.createDirectedEdgeFilter();
+        String curbsideStrictness = getCurbsideStrictness(first.getHints());
+        PathCalculator[] pathCalculators = new PathCalculator[threads];
+        for (int t = 0; t < threads; t++)
+            pathCalculators[t] = solver.createPathCalculator(queryGraph);
+
+        runInBatch(executor, threads, valid.size(), t -> i -> {
+            int index = valid.get(i);
+            GHRequest request = requests.get(index);
+            GHResponse ghRsp = new GHResponse();
+            List<Snap> snaps = new ArrayList<>(request.getPoints().size());
+            for (int p = 0; p < request.getPoints().size(); p++) {
+                Snap snap = snapsByPoint.get(request.getPoints().get(p));
+                if (!snap.isValid())
+                    ghRsp.addError(new PointNotFoundException("Cannot find point " + p + ": " + request.getPoints().get(p), p));
+                snaps.add(snap);
+            }
+            if (!ghRsp.hasErrors()) {
+                try {
+                    ghRsp.addDebugInfo(idLookup);
+                    ViaRouting.Result result = ViaRouting.calcPaths(request.getPoints(), queryGraph, snaps, directedEdgeFilter,
+                            pathCalculators[t], request.getCurbsides(), curbsideStrictness, request.getHeadings(), false);
+                    addViaResponsePath(ghRsp, request, solver, queryGraph, snaps, result);
+                } catch (IllegalArgumentException ex) {
+                    ghRsp = new GHResponse().addError(ex);
+                }
+            }
+            handler.accept(ghRsp, index);
+        });
+    }
+
+    /**
+     * Runs the given task for all indices in [0, size), either in the calling thread (if executor is null) or using
+     * the given number of threads. Every thread t uses its own task created via tasks.apply(t).
+     */
+    private static void runInBatch(ExecutorService executor, int threads, int size, IntFunction<IntConsumer> tasks) {
+        if (size == 0)
+            return;
+        if (executor == null) {
+            IntConsumer task = tasks.apply(0);
+            for (int i = 0; i < size; i++)
+                task.accept(i);
+            return;
+        }
+        AtomicInteger next = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>(threads);
+        for (int t = 0; t < Math.min(threads, size); t++) {
+            IntConsumer task = tasks.apply(t);
+            futures.add(executor.submit(() -> {
+                for (int i = next.getAndIncrement(); i < size; i = next.getAndIncrement())
+                    task.accept(i);
+            }));
+        }
+        try {
+            for (Future<?> future : futures)
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    public GHMatrixResponse matrix(GHMatrixRequest request) {
+        GHMatrixResponse ghRsp = new GHMatrixResponse();
+        try {
+            if (!request.getPoints().isEmpty() && request.hasFromOrToPoints())
+                throw new IllegalArgumentException("Use either 'points' or 'from_points' and 'to_points', but not both");
+            if (!request.getHints().isEmpty())
+                throw new IllegalArgumentException("Unsupported parameters for matrix requests: " + new TreeSet<>(request.getHints().toMap().keySet()));
+            List<GHPoint> fromPoints = request.getFromPoints();
+            List<GHPoint> toPoints = request.getToPoints();
+            if (fromPoints.isEmpty() || toPoints.isEmpty())
+                throw new IllegalArgumentException("You have to pass at least one source and one target, either via 'points' or via 'from_points' and 'to_points'");
+            if (fromPoints.size() > routerConfig.getMaxMatrixPoints() || toPoints.size() > routerConfig.getMaxMatrixPoints())
+                throw new IllegalArgumentException("The number of sources and targets must not exceed " + routerConfig.getMaxMatrixPoints()
+                        + ", but was: " + fromPoints.size() + "x" + toPoints.size());
+            if (request.getOutArrays().isEmpty())
+                throw new IllegalArgumentException("You have to request at least one of 'weights', 'times' or 'distances' using 'out_arrays'");
+            for (String outArray : request.getOutArrays())
+                if (!List.of("weights", "times", "distances").contains(outArray))
+                    throw new IllegalArgumentException("Unknown out_arrays value '" + outArray + "', use 'weights', 'times' or 'distances'");
+            if (request.getFailFast()) {
+                checkIfPointsAreInBoundsAndNotNull(fromPoints);
+                checkIfPointsAreInBoundsAndNotNull(toPoints);
+            }
+            if (Helper.isEmpty(request.getProfile()))
+                throw new IllegalArgumentException("You need to specify a profile to perform a matrix request, see docs/core/profiles.md");
+            Profile profile = profilesByName.get(request.getProfile());
+            if (profile == null)
+                throw new IllegalArgumentException("The requested profile '" + request.getProfile() + "' does not exist.\nAvailable profiles: " + profilesByName.keySet());
+            RoutingCHGraph chGraph = chGraphs.get(profile.getName());
+            if (chGraph == null)
+                throw new IllegalArgumentException("Matrix requests require a CH preparation for the requested profile: '" + profile.getName() + "'" +
+                        "\navailable CH profiles: " + chGraphs.keySet());
+
+            BooleanEncodedValue inSubnetworkEnc = encodingManager.getBooleanEncodedValue(Subnetwork.key(profile.getName()));
+            EdgeFilter snapFilter = new DefaultSnapFilter(chGraph.getWeighting(), inSubnetworkEnc);
+            if (!request.getSnapPreventions().isEmpty())
+                snapFilter = new SnapPreventionEdgeFilter(snapFilter, encodingManager.getEnumEncodedValue(RoadClass.KEY, RoadClass.class),
+                        encodingManager.getEnumEncodedValue(RoadEnvironment.KEY, RoadEnvironment.class), request.getSnapPreventions());
+            StopWatch sw = new StopWatch().start();
+            List<Snap> snaps = new ArrayList<>(fromPoints.size() + toPoints.size());
+            Snap[] fromSnaps = snapMatrixPoints(fromPoints, snapFilter, snaps, ghRsp.getInvalidFromPoints());
+            Snap[] toSnaps = snapMatrixPoints(toPoints, snapFilter, snaps, ghRsp.getInvalidToPoints());
+            if (request.getFailFast() && (!ghRsp.getInvalidFromPoints().isEmpty() || !ghRsp.getInvalidToPoints().isEmpty())) {
+                for (int p : ghRsp.getInvalidFromPoints())
+                    ghRsp.addError(new PointNotFoundException("Cannot find from_points " + p + ": " + fromPoints.get(p), p));
+                for (int p : ghRsp.getInvalidToPoints())
+                    ghRsp.addError(new PointNotFoundException("Cannot find to_points " + p + ": " + toPoints.get(p), p));
+                return ghRsp;
+            }
+            ghRsp.getHints().putObject("snapping_ms", sw.stop().getMillis());
+
+            // all snaps share one query graph, so that the CH graph can be used for all sources and targets at once
+            QueryGraph queryGraph = QueryGraph.create(graph, snaps);
+            ManyToManyCH manyToMany = new ManyToManyCH(new QueryRoutingCHGraph(chGraph, queryGraph)).
+                    setMaxVisitedNodes(routerConfig.getMaxVisitedNodes());
+            boolean calcTimesDist = request.getOutArrays().contains("times") || request.getOutArrays().contains("distances");
+            ManyToManyCH.Result result = manyToMany.calc(getClosestNodes(fromSnaps), getClosestNodes(toSnaps), calcTimesDist);
+            ghRsp.getHints().putObject("visited_nodes.sum", manyToMany.getVisitedNodes());
+            if (manyToMany.isMaxVisitedNodesExceeded()) {
+                int maxVisitedNodes = routerConfig.getMaxVisitedNodes();
+                ghRsp.addError(new MaximumNodesExceededException("No matrix found due to maximum nodes exceeded " + maxVisitedNodes, maxVisitedNodes));
+                return ghRsp;
+            }
+
+            for (int from = 0; from < fromPoints.size(); from++) {
+                for (int to = 0; to < toPoints.size(); to++) {
+                    if (fromSnaps[from] == null || toSnaps[to] == null || result.isConnected(from, to))
+                        continue;
+                    ghRsp.getDisconnectedPoints().add(new int[]{from, to});
+                    if (calcTimesDist) {
+                        result.times[from][to] = Long.MAX_VALUE;
+                        result.distances[from][to] = Double.POSITIVE_INFINITY;
+                    }
+                }
+            }
+            if (request.getFailFast() && !ghRsp.getDisconnectedPoints().isEmpty()) {
+                int[] pair = ghRsp.getDisconnectedPoints().get(0);
+                Map<String, Object> details = new HashMap<>(2);
+                details.put("from", pair[0]);
+                details.put("to", pair[1]);
+                ghRsp.addError(new ConnectionNotFoundException("Connection between locations not found for "
+                        + ghRsp.getDisconnectedPoints().size() + " pairs, e.g. from " + pair[0] + " to " + pair[1], details));
+                return ghRsp;
+            }
+            if (request.getOutArrays().contains("weights"))
+                ghRsp.setWeights(result.weights);
+            if (request.getOutArrays().contains("times"))
+                ghRsp.setTimes(result.times);
+            if (request.getOutArrays().contains("distances"))
+                ghRsp.setDistances(result.distances);
+            return ghRsp;
+        } catch (IllegalArgumentException ex) {
+            ghRsp.addError(ex);
+            return ghRsp;
+        }
+    }
+
+    private Snap[] snapMatrixPoints(List<GHPoint> points, EdgeFilter snapFilter, List<Snap> allSnaps, List<Integer> invalidPoints) {
+        Snap[] snaps = new Snap[points.size()];
+        for (int i = 0; i < points.size(); i++) {
+            GHPoint point = points.get(i);
+            Snap snap = point == null ? null : locationIndex.findClosest(point.lat, point.lon, snapFilter);
+            if (snap == null || !snap.isValid()) {
+                invalidPoints.add(i);
+                continue;
+            }
+            snaps[i] = snap;
+            allSnaps.add(snap);
+        }
+        return snaps;
+    }
+
+    private static int[] getClosestNodes(Snap[] snaps) {
+        int[] nodes = new int[snaps.length];
+        for (int i = 0; i < snaps.length; i++)
+            nodes[i] = snaps[i] == null ? -1 : snaps[i].getClosestNode();
+        return nodes;
+    }
+
     private void checkNoLegacyParameters(GHRequest request) {
         if (request.getHints().has("vehicle"))
             throw new IllegalArgumentException("GHRequest may no longer contain a vehicle, use the profile parameter instead, see docs/core/profiles.md");
@@ -201,7 +565,7 @@ public class Router {
 
     protected Solver createCHSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig,
                                     EncodingManager encodingManager, Map<String, RoutingCHGraph> chGraphs) {
-        return new CHSolver(request, profilesByName, routerConfig, encodingManager, chGraphs);
+        return new CHSolver(request, profilesByName, routerConfig, encodingManager, chGraphs, chQueryStatePool);
     }
 
     protected Solver createLMSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig,
@@ -223,32 +587,38 @@ public class Router {
         RoundTripRouting.Params params = new RoundTripRouting.Params(request.getHints(), startHeading, routerConfig.getMaxRoundTripRetries());
         List<Snap> snaps = RoundTripRouting.lookup(request.getPoints(), solver.createSnapFilter(), locationIndex, params);
         ghRsp.addDebugInfo("idLookup:" + sw.stop().getSeconds() + "s");
+        ghRsp.addTiming("snap", sw.getNanos());
 
+        sw = new StopWatch().start();
         QueryGraph queryGraph = QueryGraph.create(graph, snaps);
         FlexiblePathCalculator pathCalculator = solver.createPathCalculator(queryGraph);
+        ghRsp.addTiming("query_graph", sw.stop().getNanos());
 
+        sw = new StopWatch().start();
         RoundTripRouting.Result result = RoundTripRouting.calcPaths(snaps, pathCalculator);
+        long extractionNanos = result.paths.stream().mapToLong(Path::getExtractionNanos).sum();
+        ghRsp.addTiming("search", sw.stop().getNanos() - extractionNanos).addTiming("path_extraction", extractionNanos);
         // we merge the different legs of the roundtrip into one response path
         // note that the waypoints are not just the snapped points of the snaps, as usual, because we do some kind of tweak
         // to avoid 'unnecessary tails' in the roundtrip algo
-        ResponsePath responsePath = concatenatePaths(request, solver.weighting, queryGraph, result.paths, result.wayPoints);
+        ResponsePath responsePath = concatenatePaths(ghRsp, request, solver.weighting, queryGraph, result.paths, result.wayPoints);
         ghRsp.add(responsePath);
         ghRsp.getHints().putObject("visited_nodes.sum", result.visitedNodes);
         ghRsp.getHints().putObject("visited_nodes.average", (float) result.visitedNodes / (snaps.size() - 1));
         return ghRsp;
     }
 
-    protected GHResponse routeAlt(GHRequest request, Solver solver) {
+    protected GHResponse routeAlt(GHRequest request, Solver solver, List<Snap> snaps) {
         if (request.getPoints().size() > 2)
             throw new IllegalArgumentException("Currently alternative routes work only with start and end point. You tried to use: " + request.getPoints().size() + " points");
         GHResponse ghRsp = new GHResponse();
-        StopWatch sw = new StopWatch().start();
         DirectedEdgeFilter directedEdgeFilter = solver.createDirectedEdgeFilter();
-        List<Snap> snaps = ViaRouting.lookup(encodingManager, request.getPoints(), solver.createSnapFilter(), locationIndex,
-                request.getSnapPreventions(), request.getPointHints(), directedEdgeFilter, request.getHeadings());
-        ghRsp.addDebugInfo("idLookup:" + sw.stop().getSeconds() + "s");
+        if (snaps == null)
+            snaps = lookup(ghRsp, request, solver, directedEdgeFilter);
+        StopWatch sw = new StopWatch().start();
         QueryGraph queryGraph = QueryGraph.create(graph, snaps);
         PathCalculator pathCalculator = solver.createPathCalculator(queryGraph);
+        ghRsp.addTiming("query_graph", sw.stop().getNanos());
         boolean passThrough = getPassThrough(request.getHints());
         String curbsideStrictness = getCurbsideStrictness(request.getHints());
         if (passThrough)
@@ -260,45 +630,61 @@ public class Router {
                 pathCalculator, request.getCurbsides(), curbsideStrictness, request.getHeadings(), passThrough);
         if (result.paths.isEmpty())
             throw new RuntimeException("Empty paths for alternative route calculation not expected");
+        ghRsp.addTiming("search", result.searchNanos).addTiming("path_extraction", result.extractionNanos);
 
         // each path represents a different alternative and we do the path merging for each of them
+        sw = new StopWatch().start();
         PathMerger pathMerger = createPathMerger(request, solver.weighting, queryGraph);
         for (Path path : result.paths) {
             PointList waypoints = getWaypoints(snaps);
             ResponsePath responsePath = pathMerger.doWork(waypoints, Collections.singletonList(path), encodingManager, translationMap.getWithFallBack(request.getLocale()));
             ghRsp.add(responsePath);
         }
+        addPathMergerTimings(ghRsp, pathMerger, sw.stop().getNanos());
         ghRsp.getHints().putObject("visited_nodes.sum", result.visitedNodes);
         ghRsp.getHints().putObject("visited_nodes.average", (float) result.visitedNodes / (snaps.size() - 1));
         return ghRsp;
     }
 
-    protected GHResponse routeVia(GHRequest request, Solver solver) {
-        GHResponse ghRsp = new GHResponse();
+    private List<Snap> lookup(GHResponse ghRsp, GHRequest request, Solver solver, DirectedEdgeFilter directedEdgeFilter) {
         StopWatch sw = new StopWatch().start();
-        DirectedEdgeFilter directedEdgeFilter = solver.createDirectedEdgeFilter();
         List<Snap> snaps = ViaRouting.lookup(encodingManager, request.getPoints(), solver.createSnapFilter(), locationIndex,
                 request.getSnapPreventions(), request.getPointHints(), directedEdgeFilter, request.getHeadings());
         ghRsp.addDebugInfo("idLookup:" + sw.stop().getSeconds() + "s");
+        ghRsp.addTiming("snap", sw.getNanos());
+        return snaps;
+    }
+
+    protected GHResponse routeVia(GHRequest request, Solver solver, List<Snap> snaps) {
+        GHResponse ghRsp = new GHResponse();
+        DirectedEdgeFilter directedEdgeFilter = solver.createDirectedEdgeFilter();
+        if (snaps == null)
+            snaps = lookup(ghRsp, request, solver, directedEdgeFilter);
         // (base) query graph used to resolve headings, curbsides etc. this is not necessarily the same thing as
         // the (possibly implementation specific) query graph used by PathCalculator
+        StopWatch sw = new StopWatch().start();
         QueryGraph queryGraph = QueryGraph.create(graph, snaps);
         PathCalculator pathCalculator = solver.createPathCalculator(queryGraph);
+        ghRsp.addTiming("query_graph", sw.stop().getNanos());
         boolean passThrough = getPassThrough(request.getHints());
         String curbsideStrictness = getCurbsideStrictness(request.getHints());
         ViaRouting.Result result = ViaRouting.calcPaths(request.getPoints(), queryGraph, snaps, directedEdgeFilter,
                 pathCalculator, request.getCurbsides(), curbsideStrictness, request.getHeadings(), passThrough);
+        ghRsp.addTiming("search", result.searchNanos).addTiming("path_extraction", result.extractionNanos);
+        addViaResponsePath(ghRsp, request, solver, queryGraph, snaps, result);
+        return ghRsp;
+    }
 
+    private void addViaResponsePath(GHResponse ghRsp, GHRequest request, Solver solver, QueryGraph queryGraph, List<Snap> snaps, ViaRouting.Result result) {
         if (request.getPoints().size() != result.paths.size() + 1)
             throw new RuntimeException("There should be exactly one more point than paths. points:" + request.getPoints().size() + ", paths:" + result.paths.size());
 
         // here each path represents one leg of the via-route and we merge them all together into one response path
-        ResponsePath responsePath = concatenatePaths(request, solver.weighting, queryGraph, result.paths, getWaypoints(snaps));
+        ResponsePath responsePath = concatenatePaths(ghRsp, request, solver.weighting, queryGraph, result.paths, getWaypoints(snaps));
         responsePath.addDebugInfo(result.debug);
         ghRsp.add(responsePath);
         ghRsp.getHints().putObject("visited_nodes.sum", result.visitedNodes);
         ghRsp.getHints().putObject("visited_nodes.average", (float) result.visitedNodes / (snaps.size() - 1));
-        return ghRsp;
     }
 
     private PathMerger createPathMerger(GHRequest request, Weighting weighting, Graph graph) {
@@ -322,9 +708,18 @@ public class Router {
         return pathMerger;
     }
 
-    private ResponsePath concatenatePaths(GHRequest request, Weighting weighting, QueryGraph queryGraph, List<Path> paths, PointList waypoints) {
+    private ResponsePath concatenatePaths(GHResponse ghRsp, GHRequest request, Weighting weighting, QueryGraph queryGraph, List<Path> paths, PointList waypoints) {
+        StopWatch sw = new StopWatch().start();
         PathMerger pathMerger = createPathMerger(request, weighting, queryGraph);
-        return pathMerger.doWork(waypoints, paths, encodingManager, translationMap.getWithFallBack(request.getLocale()));
+        ResponsePath responsePath = pathMerger.doWork(waypoints, paths, encodingManager, translationMap.getWithFallBack(request.getLocale()));
+        addPathMergerTimings(ghRsp, pathMerger, sw.stop().getNanos());
+        return responsePath;
+    }
+
+    private static void addPathMergerTimings(GHResponse ghRsp, PathMerger pathMerger, long totalNanos) {
+        ghRsp.addTiming("instructions", pathMerger.getInstructionsNanos())
+                .addTiming("path_details", pathMerger.getPathDetailsNanos())
+                .addTiming("path_merging", totalNanos - pathMerger.getInstructionsNanos() - pathMerger.getPathDetailsNanos());
     }
 
     private PointList getWaypoints(List<Snap> snaps) {
@@ -447,10 +842,13 @@ public class Router {
 
     private static class CHSolver extends Solver {
         private final Map<String, RoutingCHGraph> chGraphs;
+        private final CHQueryStatePool chQueryStatePool;
 
-        CHSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig, EncodedValueLookup lookup, Map<String, RoutingCHGraph> chGraphs) {
+        CHSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig, EncodedValueLookup lookup,
+                 Map<String, RoutingCHGraph> chGraphs, CHQueryStatePool chQueryStatePool) {
             super(request, profilesByName, routerConfig, lookup);
             this.chGraphs = chGraphs;
+            this.chQueryStatePool = chQueryStatePool;
         }
 
         @Override
@@ -486,7 +884,9 @@ public class Router {
             opts.putObject(ALGORITHM, request.getAlgorithm());
             opts.putObject(MAX_VISITED_NODES, getMaxVisitedNodes(request.getHints()));
             opts.putObject(TIMEOUT_MS, getTimeoutMillis(request.getHints()));
-            return new CHPathCalculator(new CHRoutingAlgorithmFactory(getRoutingCHGraph(profile.getName()), queryGraph), opts);
+            CHRoutingAlgorithmFactory algoFactory = new CHRoutingAlgorithmFactory(getRoutingCHGraph(profile.getName()), queryGraph)
+                    .setQueryStatePool(chQueryStatePool);
+            return new CHPathCalculator(algoFactory, opts);
         }
 
         private RoutingCHGraph getRoutingCHGraph(String profileName) {
@@ -31,6 +31,11 @@ public class RouterConfig {
     private boolean simplifyResponse = true;
     private double elevationWayPointMaxDistance = Double.MAX_VALUE;
     private int activeLandmarkCount = 8;
+    private int maxMatrixPoints = 1_000;
+    private int maxBatchSize = 10_000;
+    private int batchThreads = 1;
+    private int chQueryStatePoolSize = 0;
+    private int phastStatePoolSize = 0;
 
     public int getMaxVisitedNodes() {
         return maxVisitedNodes;
@@ -119,4 +124,66 @@ public class RouterConfig {
     public void setElevationWayPointMaxDistance(double elevationWayPointMaxDistance) {
         this.elevationWayPointMaxDistance = elevationWayPointMaxDistance;
     }
+
+    public int getMaxMatrixPoints() {
+        return maxMatrixPoints;
+    }
+
+    /**
+     * Limits the number of sources and the number of targets of a single matrix request.
+     */
+    public void setMaxMatrixPoints(int maxMatrixPoints) {
+        this.maxMatrixPoints = maxMatrixPoints;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Limits the number of route requests of a single batch.
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public int getBatchThreads() {
+        return batchThreads;
+    }
+
+    /**
+     * The number of threads used to calculate the routes of a single batch.
+     */
+    public void setBatchThreads(int batchThreads) {
+        this.batchThreads = batchThreads;
+    }
+
+    public int getCHQueryStatePoolSize() {
+        return chQueryStatePoolSize;
+    }
+
+    /**
+     * The number of states of node-based CH queries that are kept and reused for the next queries. Every state takes
+     * about 64 bytes per node of the graph. Use 0 to allocate the state for every query.
+     */
+    public void setCHQueryStatePoolSize(int chQueryStatePoolSize) {
+        if (chQueryStatePoolSize < 0)
+            throw new IllegalArgumentException("CH query state pool size must not be negative, was: " + chQueryStatePoolSize);
+        this.chQueryStatePoolSize = chQueryStatePoolSize;
+    }
+
+    public int getPhastStatePoolSize() {
+        return phastStatePoolSize;
+    }
+
+    /**
+     * The number of PHAST states (see ShortestPathTreeCH) that are kept and reused for the next isochrone and shortest
+     * path tree requests. Every state takes about 48 bytes per node of the graph, or 56 bytes per edge key for edge-based
+     * profiles. Use 0 to allocate the state for every request.
+     */
+    public void setPhastStatePoolSize(int phastStatePoolSize) {
+        if (phastStatePoolSize < 0)
+            throw new IllegalArgumentException("PHAST state pool size must not be negative, was: " + phastStatePoolSize);
+        this.phastStatePoolSize = phastStatePoolSize;
+    }
 }
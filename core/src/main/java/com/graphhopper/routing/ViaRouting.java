@@ -30,6 +30,7 @@ import com.graphhopper.storage.index.Snap;
 import com.graphhopper.util.EdgeIterator;
 import com.graphhopper.util.EdgeIteratorState;
 import com.graphhopper.util.Helper;
+import com.graphhopper.util.StopWatch;
 import com.graphhopper.util.shapes.GHPoint;
 
 import java.util.ArrayList;
@@ -137,7 +138,9 @@ public class ViaRouting {
             edgeRestrictions.setTargetInEdge(ignoreThrowOrAcceptImpossibleCurbsides(curbsides, edgeRestrictions.getTargetInEdge(), leg + 1, curbsideStrictness));
 
             // calculate paths
+            StopWatch sw = new StopWatch().start();
             List<Path> paths = pathCalculator.calcPaths(fromSnap.getClosestNode(), toSnap.getClosestNode(), edgeRestrictions);
+            long calcNanos = sw.stop().getNanos();
             result.debug += pathCalculator.getDebugString();
 
             // for alternative routing we get multiple paths and add all of them (which is ok, because we do not allow
@@ -150,7 +153,10 @@ public class ViaRouting {
 
                 result.paths.add(path);
                 result.debug += ", " + path.getDebugInfo();
+                result.extractionNanos += path.getExtractionNanos();
+                calcNanos -= path.getExtractionNanos();
             }
+            result.searchNanos += calcNanos;
 
             result.visitedNodes += pathCalculator.getVisitedNodes();
             result.debug += ", visited nodes sum: " + result.visitedNodes;
@@ -163,6 +169,9 @@ public class ViaRouting {
         public List<Path> paths;
         public long visitedNodes;
         public String debug = "";
+        // the time spent in the routing algorithms, excluding the path extraction
+        public long searchNanos;
+        public long extractionNanos;
 
         Result(int legs) {
             paths = new ArrayList<>(legs);
@@ -0,0 +1,288 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.coll.MinHeapWithUpdate;
+import com.graphhopper.routing.*;
+import com.graphhopper.storage.RoutingCHEdgeExplorer;
+import com.graphhopper.storage.RoutingCHEdgeIterator;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.util.EdgeIterator;
+
+import java.util.Collections;
+import java.util.List;
+
+import static com.graphhopper.util.EdgeIterator.ANY_EDGE;
+
+/**
+ * Calculates the same paths as {@link DijkstraBidirectionCH}, but keeps the shortest path trees in the primitive arrays
+ * of a {@link CHQueryState} borrowed from a {@link CHQueryStatePool} instead of a hash map of {@link SPTEntry}s and a
+ * priority queue that are allocated for every query. Only the entries of the final path are created as objects. If
+ * the pool has no state left this falls back to {@link DijkstraBidirectionCH}.
+ */
+public class ArrayDijkstraBidirectionCH implements EdgeToEdgeRoutingAlgorithm {
+    private static final int NO_NODE = -1;
+    private final RoutingCHGraph graph;
+    private final CHQueryStatePool pool;
+    private final RoutingCHEdgeExplorer inEdgeExplorer;
+    private final RoutingCHEdgeExplorer outEdgeExplorer;
+    private final int baseNodes;
+    private CHQueryState.Tree fwd;
+    private CHQueryState.Tree bwd;
+    private int currFrom;
+    private int currTo;
+    private double currFromWeight;
+    private double currToWeight;
+    private int bestNode;
+    private double bestWeight;
+    private boolean finishedFrom;
+    private boolean finishedTo;
+    private int visitedNodes;
+    private int maxVisitedNodes = Integer.MAX_VALUE;
+    private long timeoutMillis = Long.MAX_VALUE;
+    private long finishTimeMillis = Long.MAX_VALUE;
+    private boolean alreadyRun;
+
+    public ArrayDijkstraBidirectionCH(RoutingCHGraph graph, CHQueryStatePool pool) {
+        if (graph.isEdgeBased())
+            throw new IllegalArgumentException("ArrayDijkstraBidirectionCH only supports node-based CH graphs");
+        this.graph = graph;
+        this.pool = pool;
+        inEdgeExplorer = graph.createInEdgeExplorer();
+        outEdgeExplorer = graph.createOutEdgeExplorer();
+        baseNodes = graph.getBaseGraph().getBaseGraph().getNodes();
+    }
+
+    @Override
+    public List<Path> calcPaths(int from, int to) {
+        return Collections.singletonList(calcPath(from, to));
+    }
+
+    @Override
+    public Path calcPath(int from, int to) {
+        return calcPath(from, to, ANY_EDGE, ANY_EDGE);
+    }
+
+    @Override
+    public Path calcPath(int from, int to, int fromOutEdge, int toInEdge) {
+        if (fromOutEdge != ANY_EDGE || toInEdge != ANY_EDGE)
+            throw new IllegalArgumentException("Restricting the start/target edges is only possible for edge-based graph traversal");
+        if (alreadyRun)
+            throw new IllegalStateException("Create a new instance per call");
+        alreadyRun = true;
+        CHQueryState state = pool.acquire(graph.getNodes());
+        if (state == null)
+            return calcPathWithoutState(from, to);
+        try {
+            fwd = state.fwd;
+            bwd = state.bwd;
+            setupFinishTime();
+            init(from, to);
+            runAlgo();
+            return extractPath();
+        } finally {
+            fwd = null;
+            bwd = null;
+            pool.release(state);
+        }
+    }
+
+    private Path calcPathWithoutState(int from, int to) {
+        DijkstraBidirectionCH algo = new DijkstraBidirectionCH(graph);
+        algo.setMaxVisitedNodes(maxVisitedNodes);
+        algo.setTimeoutMillis(timeoutMillis);
+        Path path = algo.calcPath(from, to);
+        visitedNodes = algo.getVisitedNodes();
+        return path;
+    }
+
+    private void init(int from, int to) {
+        fwd.set(from, 0, NO_NODE, EdgeIterator.NO_EDGE);
+        fwd.heap.push(from, 0);
+        bwd.set(to, 0, NO_NODE, EdgeIterator.NO_EDGE);
+        bwd.heap.push(to, 0);
+        currFrom = from;
+        currTo = to;
+        currFromWeight = 0;
+        currToWeight = 0;
+        bestNode = from == to ? from : NO_NODE;
+        bestWeight = from == to ? 0 : Double.MAX_VALUE;
+        finishedFrom = !fillEdgesFrom();
+        finishedTo = !fillEdgesTo();
+    }
+
+    private void runAlgo() {
+        while (!finished() && !isMaxVisitedNodesExceeded() && !isTimeoutExceeded()) {
+            if (!finishedFrom)
+                finishedFrom = !fillEdgesFrom();
+
+            if (!finishedTo)
+                finishedTo = !fillEdgesTo();
+        }
+    }
+
+    private boolean finished() {
+        // we need to finish BOTH searches for CH!
+        if (finishedFrom && finishedTo)
+            return true;
+
+        return currFromWeight >= bestWeight && currToWeight >= bestWeight;
+    }
+
+    private boolean fillEdgesFrom() {
+        if (fwd.heap.isEmpty())
+            return false;
+        currFrom = fwd.heap.poll();
+        currFromWeight = fwd.weights[currFrom];
+        visitedNodes++;
+        if (!isStallable(currFrom, fwd, inEdgeExplorer, false))
+            fillEdges(currFrom, fwd, bwd, outEdgeExplorer, false);
+        return true;
+    }
+
+    private boolean fillEdgesTo() {
+        if (bwd.heap.isEmpty())
+            return false;
+        currTo = bwd.heap.poll();
+        currToWeight = bwd.weights[currTo];
+        visitedNodes++;
+        if (!isStallable(currTo, bwd, outEdgeExplorer, true))
+            fillEdges(currTo, bwd, fwd, inEdgeExplorer, true);
+        return true;
+    }
+
+    private void fillEdges(int node, CHQueryState.Tree tree, CHQueryState.Tree other, RoutingCHEdgeExplorer explorer, boolean reverse) {
+        MinHeapWithUpdate heap = tree.heap;
+        int incEdge = tree.edges[node];
+        double nodeWeight = tree.weights[node];
+        RoutingCHEdgeIterator iter = explorer.setBaseNode(node);
+        while (iter.next()) {
+            if (iter.getEdge() == incEdge || !acceptLevel(iter.getBaseNode(), iter.getAdjNode()))
+                continue;
+            double weight = iter.getWeight(reverse) + nodeWeight;
+            if (Double.isInfinite(weight))
+                continue;
+            int adjNode = iter.getAdjNode();
+            if (weight >= tree.getWeight(adjNode))
+                continue;
+            // nodes that are reached but no longer in the heap were settled already and cannot be improved
+            boolean queued = tree.isReached(adjNode) && heap.contains(adjNode);
+            tree.set(adjNode, weight, node, iter.getEdge());
+            if (queued)
+                heap.update(adjNode, (float) weight);
+            else
+                heap.push(adjNode, (float) weight);
+
+            double otherWeight = other.getWeight(adjNode);
+            if (weight + otherWeight < bestWeight) {
+                bestNode = adjNode;
+                bestWeight = weight + otherWeight;
+            }
+        }
+    }
+
+    /**
+     * @see DijkstraBidirectionCH
+     */
+    private boolean isStallable(int node, CHQueryState.Tree tree, RoutingCHEdgeExplorer explorer, boolean reverse) {
+        int incEdge = tree.edges[node];
+        double nodeWeight = tree.weights[node];
+        RoutingCHEdgeIterator iter = explorer.setBaseNode(node);
+        while (iter.next()) {
+            if (iter.getEdge() == incEdge)
+                continue;
+            // we have to be careful because of rounded shortcut weights in combination with virtual via nodes, see #1574
+            final double precision = 0.001;
+            if (tree.getWeight(iter.getAdjNode()) + iter.getWeight(!reverse) - nodeWeight < -precision)
+                return true;
+        }
+        return false;
+    }
+
+    private boolean acceptLevel(int base, int adj) {
+        // always accept virtual edges, see #288
+        if (base >= baseNodes || adj >= baseNodes)
+            return true;
+        return graph.getLevel(base) <= graph.getLevel(adj);
+    }
+
+    private Path extractPath() {
+        if (!finished() || bestNode == NO_NODE)
+            return new Path(graph.getBaseGraph());
+        return new NodeBasedCHBidirPathExtractor(graph).extract(createEntry(fwd, bestNode), createEntry(bwd, bestNode), bestWeight);
+    }
+
+    /**
+     * Creates the {@link SPTEntry}s from the root of the given tree to the given node, which is cheap because we only
+     * do this for the nodes of the final path.
+     */
+    private static SPTEntry createEntry(CHQueryState.Tree tree, int node) {
+        IntArrayList nodes = new IntArrayList();
+        for (int n = node; n != NO_NODE; n = tree.parents[n])
+            nodes.add(n);
+        int root = nodes.get(nodes.size() - 1);
+        SPTEntry entry = new SPTEntry(root, tree.weights[root]);
+        for (int i = nodes.size() - 2; i >= 0; i--) {
+            int n = nodes.get(i);
+            entry = new SPTEntry(tree.edges[n], n, tree.weights[n], entry);
+        }
+        return entry;
+    }
+
+    @Override
+    public void setMaxVisitedNodes(int numberOfNodes) {
+        this.maxVisitedNodes = numberOfNodes;
+    }
+
+    @Override
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    private void setupFinishTime() {
+        try {
+            this.finishTimeMillis = Math.addExact(System.currentTimeMillis(), timeoutMillis);
+        } catch (ArithmeticException e) {
+            this.finishTimeMillis = Long.MAX_VALUE;
+        }
+    }
+
+    private boolean isMaxVisitedNodesExceeded() {
+        return maxVisitedNodes < visitedNodes;
+    }
+
+    private boolean isTimeoutExceeded() {
+        return finishTimeMillis < Long.MAX_VALUE && System.currentTimeMillis() > finishTimeMillis;
+    }
+
+    @Override
+    public String getName() {
+        return "dijkstrabi|ch|array";
+    }
+
+    @Override
+    public int getVisitedNodes() {
+        return visitedNodes;
+    }
+
+    @Override
+    public String toString() {
+        return getName() + "|" + graph.getWeighting();
+    }
+}
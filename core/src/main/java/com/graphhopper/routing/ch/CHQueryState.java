@@ -0,0 +1,91 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.coll.MinHeapWithUpdate;
+
+import java.util.Arrays;
+
+/**
+ * The state of a node-based bidirectional CH query, i.e. the weight, parent node and parent edge of every node for the
+ * forward and the backward search plus their heaps. The arrays are sized to the graph and are not cleared between
+ * queries: every entry is stamped with the version of the query that wrote it and {@link #reset()} simply increments
+ * the version, which invalidates all entries at once.
+ *
+ * @see CHQueryStatePool
+ */
+class CHQueryState {
+    final int capacity;
+    final Tree fwd;
+    final Tree bwd;
+
+    CHQueryState(int capacity) {
+        this.capacity = capacity;
+        fwd = new Tree(capacity);
+        bwd = new Tree(capacity);
+    }
+
+    void reset() {
+        fwd.reset();
+        bwd.reset();
+    }
+
+    static class Tree {
+        private final int[] versions;
+        final double[] weights;
+        final int[] parents;
+        final int[] edges;
+        final MinHeapWithUpdate heap;
+        private int version;
+
+        Tree(int capacity) {
+            versions = new int[capacity];
+            weights = new double[capacity];
+            parents = new int[capacity];
+            edges = new int[capacity];
+            heap = new MinHeapWithUpdate(capacity);
+        }
+
+        void reset() {
+            heap.clear();
+            if (++version == 0) {
+                // after an overflow entries written 2^32 queries ago would become valid again
+                Arrays.fill(versions, 0);
+                version = 1;
+            }
+        }
+
+        boolean isReached(int node) {
+            return versions[node] == version;
+        }
+
+        /**
+         * @return the weight of the given node or infinity if it was not reached by the current query
+         */
+        double getWeight(int node) {
+            return isReached(node) ? weights[node] : Double.POSITIVE_INFINITY;
+        }
+
+        void set(int node, double weight, int parent, int edge) {
+            versions[node] = version;
+            weights[node] = weight;
+            parents[node] = parent;
+            edges[node] = edge;
+        }
+    }
+}
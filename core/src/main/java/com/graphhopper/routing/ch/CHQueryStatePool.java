@@ -0,0 +1,67 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import java.util.ArrayDeque;
+
+/**
+ * A bounded pool of {@link CHQueryState}s that is shared by all node-based CH queries, see
+ * {@link ArrayDijkstraBidirectionCH}. Every state takes about 64 bytes per node of the graph, so the pool creates at
+ * most maxStates of them (lazily) and queries that find the pool exhausted fall back to {@link
+ * com.graphhopper.routing.DijkstraBidirectionCH}. The states do not depend on the weighting, so one pool can be used
+ * for all CH profiles of a graph.
+ */
+public class CHQueryStatePool {
+    // leave some room for the virtual nodes of the query graph, so a state can be used for many different queries
+    private static final int VIRTUAL_NODES_SLACK = 1024;
+    private final int maxStates;
+    private final ArrayDeque<CHQueryState> states = new ArrayDeque<>();
+    private int createdStates;
+
+    public CHQueryStatePool(int maxStates) {
+        if (maxStates < 1)
+            throw new IllegalArgumentException("maxStates must be positive, was: " + maxStates);
+        this.maxStates = maxStates;
+    }
+
+    /**
+     * @return a state that can hold the given number of nodes and was reset for a new query, or null if all states
+     * are in use
+     */
+    synchronized CHQueryState acquire(int nodes) {
+        CHQueryState state = states.poll();
+        if (state == null) {
+            if (createdStates == maxStates)
+                return null;
+            createdStates++;
+            state = new CHQueryState(nodes + VIRTUAL_NODES_SLACK);
+        } else if (state.capacity < nodes) {
+            state = new CHQueryState(nodes + VIRTUAL_NODES_SLACK);
+        }
+        state.reset();
+        return state;
+    }
+
+    synchronized void release(CHQueryState state) {
+        states.push(state);
+    }
+
+    public int getMaxStates() {
+        return maxStates;
+    }
+}
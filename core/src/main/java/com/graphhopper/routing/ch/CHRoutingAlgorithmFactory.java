@@ -35,6 +35,7 @@ import static com.graphhopper.util.Parameters.Routing.*;
  */
 public class CHRoutingAlgorithmFactory {
     private final RoutingCHGraph routingCHGraph;
+    private CHQueryStatePool queryStatePool;
 
     public CHRoutingAlgorithmFactory(RoutingCHGraph routingCHGraph, QueryGraph queryGraph) {
         this(new QueryRoutingCHGraph(routingCHGraph, queryGraph));
@@ -44,6 +45,15 @@ public class CHRoutingAlgorithmFactory {
         this.routingCHGraph = routingCHGraph;
     }
 
+    /**
+     * Lets the node-based bidirectional Dijkstra take its state from the given pool instead of allocating it for
+     * every query. Use null (the default) to disable this.
+     */
+    public CHRoutingAlgorithmFactory setQueryStatePool(CHQueryStatePool queryStatePool) {
+        this.queryStatePool = queryStatePool;
+        return this;
+    }
+
     public EdgeToEdgeRoutingAlgorithm createAlgo(PMap opts) {
         EdgeToEdgeRoutingAlgorithm algo = routingCHGraph.isEdgeBased()
                 ? createAlgoEdgeBased(routingCHGraph, opts)
@@ -83,7 +93,7 @@ public class CHRoutingAlgorithmFactory {
                     .setApproximation(RoutingAlgorithmFactorySimple.getApproximation(ASTAR_BI, opts, getWeighting(), g.getBaseGraph().getNodeAccess()));
         } else if (DIJKSTRA_BI.equals(algo) || Helper.isEmpty(algo)) {
             if (opts.getBool("stall_on_demand", true)) {
-                return new DijkstraBidirectionCH(g);
+                return queryStatePool == null ? new DijkstraBidirectionCH(g) : new ArrayDijkstraBidirectionCH(g, queryStatePool);
             } else {
                 return new DijkstraBidirectionCHNoSOD(g);
             }
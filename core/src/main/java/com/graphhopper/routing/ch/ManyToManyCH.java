@@ -0,0 +1,229 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntObjectMap;
+import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.SPTEntry;
+import com.graphhopper.storage.RoutingCHEdgeExplorer;
+import com.graphhopper.storage.RoutingCHEdgeIterator;
+import com.graphhopper.storage.RoutingCHGraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Calculates a many-to-many matrix of shortest path weights (and optionally times and distances) on a node-based
+ * {@link RoutingCHGraph} using the bucket approach: for every target we run one backward upward search and store the
+ * settled nodes in buckets. Afterwards one forward upward search per source is enough to find the best meeting node for
+ * all targets by scanning the buckets of the nodes it settles. So instead of sources*targets bidirectional searches we
+ * only need sources+targets unidirectional ones.
+ * <p>
+ * Use a {@link com.graphhopper.routing.querygraph.QueryRoutingCHGraph} if the sources and targets are virtual nodes.
+ */
+public class ManyToManyCH {
+    private final RoutingCHGraph graph;
+    private final RoutingCHEdgeExplorer inExplorer;
+    private final RoutingCHEdgeExplorer outExplorer;
+    private final int maxNodes;
+    private int maxVisitedNodes = Integer.MAX_VALUE;
+    private int visitedNodes;
+    private boolean maxVisitedNodesExceeded;
+
+    public ManyToManyCH(RoutingCHGraph graph) {
+        if (graph.isEdgeBased())
+            throw new IllegalArgumentException("Many-to-many calculation is currently only supported for node-based CH, but "
+                    + "the CH graph is edge-based: " + graph.getWeighting());
+        this.graph = graph;
+        this.inExplorer = graph.createInEdgeExplorer();
+        this.outExplorer = graph.createOutEdgeExplorer();
+        this.maxNodes = graph.getBaseGraph().getBaseGraph().getNodes();
+    }
+
+    /**
+     * Limits the number of nodes each individual forward or backward search may settle. A search that hits the limit
+     * stops early, so its entries of the result may be too high or missing, see {@link #isMaxVisitedNodesExceeded()}.
+     */
+    public ManyToManyCH setMaxVisitedNodes(int maxVisitedNodes) {
+        this.maxVisitedNodes = maxVisitedNodes;
+        return this;
+    }
+
+    public int getVisitedNodes() {
+        return visitedNodes;
+    }
+
+    /**
+     * @return true if at least one search of the last {@link #calc} call was stopped by the maximum number of visited
+     * nodes, in which case the result must not be used
+     */
+    public boolean isMaxVisitedNodesExceeded() {
+        return maxVisitedNodesExceeded;
+    }
+
+    /**
+     * @param sources       the source nodes, a negative value marks a source that shall be skipped
+     * @param targets       the target nodes, a negative value marks a target that shall be skipped
+     * @param calcTimesDist if true the shortest paths are unpacked to also determine the time and distance of every
+     *                      entry, otherwise only the weights are calculated
+     */
+    public Result calc(int[] sources, int[] targets, boolean calcTimesDist) {
+        visitedNodes = 0;
+        maxVisitedNodesExceeded = false;
+        Result result = new Result(sources.length, targets.length, calcTimesDist);
+
+        // backward searches: for every settled node we remember which targets reached it
+        List<IntObjectMap<SPTEntry>> bwdTrees = new ArrayList<>(targets.length);
+        GHIntObjectHashMap<IntArrayList> buckets = new GHIntObjectHashMap<>();
+        for (int t = 0; t < targets.length; t++) {
+            if (targets[t] < 0) {
+                bwdTrees.add(null);
+                continue;
+            }
+            IntObjectMap<SPTEntry> tree = upwardSearch(targets[t], inExplorer, true);
+            bwdTrees.add(tree);
+            for (int node : tree.keys().toArray()) {
+                IntArrayList bucket = buckets.get(node);
+                if (bucket == null) {
+                    bucket = new IntArrayList(4);
+                    buckets.put(node, bucket);
+                }
+                bucket.add(t);
+            }
+        }
+
+        // forward searches: scan the buckets of all settled nodes to find the best meeting point for every target
+        SPTEntry[] bestFwd = new SPTEntry[targets.length];
+        SPTEntry[] bestBwd = new SPTEntry[targets.length];
+        for (int s = 0; s < sources.length; s++) {
+            if (sources[s] < 0)
+                continue;
+            double[] weightRow = result.weights[s];
+            Arrays.fill(bestFwd, null);
+            Arrays.fill(bestBwd, null);
+            IntObjectMap<SPTEntry> fwdTree = upwardSearch(sources[s], outExplorer, false);
+            for (int node : fwdTree.keys().toArray()) {
+                IntArrayList bucket = buckets.get(node);
+                if (bucket == null)
+                    continue;
+                SPTEntry fwdEntry = fwdTree.get(node);
+                for (int i = 0; i < bucket.size(); i++) {
+                    int t = bucket.get(i);
+                    SPTEntry bwdEntry = bwdTrees.get(t).get(node);
+                    double weight = fwdEntry.weight + bwdEntry.weight;
+                    if (weight < weightRow[t]) {
+                        weightRow[t] = weight;
+                        bestFwd[t] = fwdEntry;
+                        bestBwd[t] = bwdEntry;
+                    }
+                }
+            }
+            if (calcTimesDist) {
+                for (int t = 0; t < targets.length; t++) {
+                    if (bestFwd[t] == null)
+                        continue;
+                    Path path = new NodeBasedCHBidirPathExtractor(graph).extract(bestFwd[t], bestBwd[t], weightRow[t]);
+                    result.times[s][t] = path.getTime();
+                    result.distances[s][t] = path.getDistance();
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Runs a full dijkstra search from the given node that only follows edges leading to higher level nodes and
+     * returns all settled entries.
+     */
+    private IntObjectMap<SPTEntry> upwardSearch(int node, RoutingCHEdgeExplorer explorer, boolean reverse) {
+        GHIntObjectHashMap<SPTEntry> bestWeights = new GHIntObjectHashMap<>();
+        GHIntObjectHashMap<SPTEntry> settled = new GHIntObjectHashMap<>();
+        PriorityQueue<SPTEntry> heap = new PriorityQueue<>();
+        SPTEntry root = new SPTEntry(node, 0);
+        bestWeights.put(node, root);
+        heap.add(root);
+        int visited = 0;
+        while (!heap.isEmpty()) {
+            SPTEntry curr = heap.poll();
+            if (curr.isDeleted())
+                continue;
+            settled.put(curr.adjNode, curr);
+            if (++visited > maxVisitedNodes) {
+                maxVisitedNodesExceeded = true;
+                break;
+            }
+            RoutingCHEdgeIterator iter = explorer.setBaseNode(curr.adjNode);
+            while (iter.next()) {
+                if (iter.getEdge() == curr.edge || !isUpward(iter.getBaseNode(), iter.getAdjNode()))
+                    continue;
+                double weight = iter.getWeight(reverse);
+                if (Double.isInfinite(weight))
+                    continue;
+                weight += curr.weight;
+                SPTEntry entry = bestWeights.get(iter.getAdjNode());
+                if (entry == null || weight < entry.weight) {
+                    if (entry != null)
+                        entry.setDeleted();
+                    entry = new SPTEntry(iter.getEdge(), iter.getAdjNode(), weight, curr);
+                    bestWeights.put(iter.getAdjNode(), entry);
+                    heap.add(entry);
+                }
+            }
+        }
+        visitedNodes += visited;
+        return settled;
+    }
+
+    private boolean isUpward(int base, int adj) {
+        // always accept virtual edges, see #288
+        if (base >= maxNodes || adj >= maxNodes)
+            return true;
+        return graph.getLevel(base) <= graph.getLevel(adj);
+    }
+
+    public static class Result {
+        /**
+         * weights[source][target], infinity if the target is not reachable from the source
+         */
+        public final double[][] weights;
+        /**
+         * times in milliseconds, only filled if times and distances were requested
+         */
+        public final long[][] times;
+        /**
+         * distances in meters, only filled if times and distances were requested
+         */
+        public final double[][] distances;
+
+        Result(int sources, int targets, boolean calcTimesDist) {
+            weights = new double[sources][targets];
+            for (double[] row : weights)
+                Arrays.fill(row, Double.POSITIVE_INFINITY);
+            times = calcTimesDist ? new long[sources][targets] : null;
+            distances = calcTimesDist ? new double[sources][targets] : null;
+        }
+
+        public boolean isConnected(int source, int target) {
+            return Double.isFinite(weights[source][target]);
+        }
+    }
+}
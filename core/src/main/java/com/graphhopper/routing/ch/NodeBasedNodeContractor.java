@@ -17,12 +17,15 @@
  */
 package com.graphhopper.routing.ch;
 
+import com.carrotsearch.hppc.DoubleArrayList;
+import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntContainer;
 import com.graphhopper.storage.CHStorageBuilder;
 import com.graphhopper.util.PMap;
 import com.graphhopper.util.StopWatch;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Locale;
 
@@ -38,16 +41,13 @@ class NodeBasedNodeContractor implements NodeContractor {
     private PrepareGraphEdgeExplorer inEdgeExplorer;
     private PrepareGraphEdgeExplorer outEdgeExplorer;
     private PrepareGraphEdgeExplorer existingShortcutExplorer;
-    private NodeBasedWitnessPathSearcher witnessPathSearcher;
+    // the search used for serial contraction, parallel contraction creates one search per thread
+    private ShortcutSearch shortcutSearch;
+    private List<ShortcutSearch> shortcutSearches = new ArrayList<>();
     private int addedShortcutsCount;
-    private long dijkstraCount;
-    private final StopWatch dijkstraSW = new StopWatch();
     // meanDegree is the number of edges / number of nodes ratio of the graph, not really the average degree, because
     // each edge can exist in both directions
     private double meanDegree;
-    // temporary counters used for priority calculation
-    private int originalEdgesCount;
-    private int shortcutsCount;
 
     NodeBasedNodeContractor(CHPreparationGraph prepareGraph, CHStorageBuilder chBuilder, PMap pMap) {
         this.prepareGraph = prepareGraph;
@@ -67,7 +67,7 @@ class NodeBasedNodeContractor implements NodeContractor {
         inEdgeExplorer = prepareGraph.createInEdgeExplorer();
         outEdgeExplorer = prepareGraph.createOutEdgeExplorer();
         existingShortcutExplorer = prepareGraph.createOutEdgeExplorer();
-        witnessPathSearcher = new NodeBasedWitnessPathSearcher(prepareGraph);
+        shortcutSearch = createShortcutSearch();
         meanDegree = prepareGraph.getOriginalEdges() * 1.0 / prepareGraph.getNodes();
     }
 
@@ -79,44 +79,45 @@ class NodeBasedNodeContractor implements NodeContractor {
         inEdgeExplorer = null;
         outEdgeExplorer = null;
         existingShortcutExplorer = null;
-        witnessPathSearcher = null;
+        shortcutSearch = null;
+        shortcutSearches = null;
     }
 
     /**
-     * Warning: the calculated priority must NOT depend on priority(v) and therefore findAndHandleShortcuts should also not
-     * depend on the priority(v). Otherwise updating the priority before contracting in contractNodes() could lead to
-     * a slowish or even endless loop.
+     * Creates a search that determines the shortcuts required to contract a node without changing the graph.
+     * Different searches can be used concurrently as long as the graph is not modified at the same time, but a
+     * single search must only be used by one thread.
      */
+    ShortcutSearch createShortcutSearch() {
+        ShortcutSearch search = new ShortcutSearch();
+        shortcutSearches.add(search);
+        return search;
+    }
+
     @Override
     public float calculatePriority(int node) {
-        // # huge influence: the bigger the less shortcuts gets created and the faster is the preparation
-        //
-        // every adjNode has an 'original edge' number associated. initially it is r=1
-        // when a new shortcut is introduced then r of the associated edges is summed up:
-        // r(u,w)=r(u,v)+r(v,w) now we can define
-        // originalEdgesCount = σ(v) := sum_{ (u,w) ∈ shortcuts(v) } of r(u, w)
-        shortcutsCount = 0;
-        originalEdgesCount = 0;
-        findAndHandleShortcuts(node, this::countShortcuts, (int) (meanDegree * params.maxPollFactorHeuristic));
-
-        // from shortcuts we can compute the edgeDifference
-        // # low influence: with it the shortcut creation is slightly faster
-        //
-        // |shortcuts(v)| − |{(u, v) | v uncontracted}| − |{(v, w) | v uncontracted}|
-        // meanDegree is used instead of outDegree+inDegree as if one adjNode is in both directions
-        // only one bucket memory is used. Additionally one shortcut could also stand for two directions.
-        int edgeDifference = shortcutsCount - prepareGraph.getDegree(node);
-
-        // according to the paper do a simple linear combination of the properties to get the priority.
-        return params.edgeDifferenceWeight * edgeDifference +
-                params.originalEdgesCountWeight * originalEdgesCount;
-        // todo: maybe use contracted-neighbors heuristic (contract nodes with lots of contracted neighbors later) as in GH 1.0 again?
-        //       maybe use hierarchy-depths heuristic as in edge-based?
+        return shortcutSearch.calculatePriority(node);
     }
 
     @Override
     public IntContainer contractNode(int node) {
-        long degree = findAndHandleShortcuts(node, this::addOrUpdateShortcut, (int) (meanDegree * params.maxPollFactorContraction));
+        long degree = shortcutSearch.findAndHandleShortcuts(node, this::addOrUpdateShortcut, (int) (meanDegree * params.maxPollFactorContraction));
+        return finishNode(node, degree);
+    }
+
+    /**
+     * Contracts the given node using the shortcuts that were found by {@link ShortcutSearch#findShortcuts} before.
+     * The graph must not have been changed in the neighborhood of the node since the shortcuts were searched.
+     */
+    IntContainer contractNode(int node, FoundShortcuts foundShortcuts) {
+        for (int i = 0; i < foundShortcuts.size(); i++)
+            addOrUpdateShortcut(foundShortcuts.fromNodes.get(i), foundShortcuts.toNodes.get(i), foundShortcuts.weights.get(i),
+                    foundShortcuts.outgoingEdges.get(i), foundShortcuts.outOrigEdgeCounts.get(i),
+                    foundShortcuts.incomingEdges.get(i), foundShortcuts.inOrigEdgeCounts.get(i));
+        return finishNode(node, foundShortcuts.degree);
+    }
+
+    private IntContainer finishNode(int node, long degree) {
         insertShortcuts(node);
         // put weight factor on meanDegree instead of taking the average => meanDegree is more stable
         meanDegree = (meanDegree * 2 + degree) / 3;
@@ -196,69 +197,11 @@ class NodeBasedNodeContractor implements NodeContractor {
 
     @Override
     public String getStatisticsString() {
+        long dijkstraCount = 0;
+        for (ShortcutSearch search : shortcutSearches)
+            dijkstraCount += search.dijkstraCount;
         return String.format(Locale.ROOT, "meanDegree: %.2f, dijkstras: %10s, mem: %10s",
-                meanDegree, nf(dijkstraCount), witnessPathSearcher.getMemoryUsageAsString());
-    }
-
-    /**
-     * Searches for shortcuts and calls the given handler on each shortcut that is found. The graph is not directly
-     * changed by this method.
-     * Returns the 'degree' of the given node (disregarding edges from/to already contracted nodes).
-     * Note that here the degree is not the total number of adjacent edges, but only the number of incoming edges
-     */
-    private long findAndHandleShortcuts(int node, PrepareShortcutHandler handler, int maxVisitedNodes) {
-        long degree = 0;
-        PrepareGraphEdgeIterator incomingEdges = inEdgeExplorer.setBaseNode(node);
-        // collect outgoing nodes (goal-nodes) only once
-        while (incomingEdges.next()) {
-            int fromNode = incomingEdges.getAdjNode();
-            if (fromNode == node)
-                throw new IllegalStateException("Unexpected loop-edge at node: " + node);
-
-            final double incomingEdgeWeight = incomingEdges.getWeight();
-            // this check is important to prevent calling calcMillis on inaccessible edges and also allows early exit
-            if (Double.isInfinite(incomingEdgeWeight)) {
-                continue;
-            }
-            // collect outgoing nodes (goal-nodes) only once
-            PrepareGraphEdgeIterator outgoingEdges = outEdgeExplorer.setBaseNode(node);
-            witnessPathSearcher.init(fromNode, node);
-            degree++;
-            while (outgoingEdges.next()) {
-                int toNode = outgoingEdges.getAdjNode();
-                // no need to search for witnesses going from a node back to itself
-                if (fromNode == toNode)
-                    continue;
-
-                // Limit weight as ferries or forbidden edges can increase local search too much.
-                // If we decrease the correct weight we only explore less and introduce more shortcuts.
-                // I.e. no change to accuracy is made.
-                double existingDirectWeight = incomingEdgeWeight + outgoingEdges.getWeight();
-                if (Double.isInfinite(existingDirectWeight))
-                    continue;
-
-                dijkstraSW.start();
-                dijkstraCount++;
-                double maxWeight = witnessPathSearcher.findUpperBound(toNode, existingDirectWeight, maxVisitedNodes);
-                dijkstraSW.stop();
-
-                if (maxWeight <= existingDirectWeight)
-                    // FOUND witness path, so do not add shortcut
-                    continue;
-
-                handler.handleShortcut(fromNode, toNode, existingDirectWeight,
-                        outgoingEdges.getPrepareEdge(), outgoingEdges.getOrigEdgeCount(),
-                        incomingEdges.getPrepareEdge(), incomingEdges.getOrigEdgeCount());
-            }
-        }
-        return degree;
-    }
-
-    private void countShortcuts(int fromNode, int toNode, double existingDirectWeight,
-                                int outgoingEdge, int outOrigEdgeCount,
-                                int incomingEdge, int inOrigEdgeCount) {
-        shortcutsCount++;
-        originalEdgesCount += inOrigEdgeCount + outOrigEdgeCount;
+                meanDegree, nf(dijkstraCount), shortcutSearch.witnessPathSearcher.getMemoryUsageAsString());
     }
 
     private void addOrUpdateShortcut(int fromNode, int toNode, double weight,
@@ -289,7 +232,134 @@ class NodeBasedNodeContractor implements NodeContractor {
 
     @Override
     public float getDijkstraSeconds() {
-        return dijkstraSW.getCurrentSeconds();
+        float seconds = 0;
+        for (ShortcutSearch search : shortcutSearches)
+            seconds += search.dijkstraSW.getCurrentSeconds();
+        return seconds;
+    }
+
+    /**
+     * Performs the witness searches for a node and thereby determines its priority or the shortcuts required to
+     * contract it. The graph is never changed by this class.
+     */
+    class ShortcutSearch {
+        private final PrepareGraphEdgeExplorer inEdgeExplorer = prepareGraph.createInEdgeExplorer();
+        private final PrepareGraphEdgeExplorer outEdgeExplorer = prepareGraph.createOutEdgeExplorer();
+        private final NodeBasedWitnessPathSearcher witnessPathSearcher = new NodeBasedWitnessPathSearcher(prepareGraph);
+        private final StopWatch dijkstraSW = new StopWatch();
+        private long dijkstraCount;
+        // temporary counters used for priority calculation
+        private int originalEdgesCount;
+        private int shortcutsCount;
+
+        /**
+         * Witness paths must not lead through any of the given nodes. This is needed when several nodes are contracted
+         * at once using shortcuts that were searched before any of them was removed from the graph.
+         */
+        void setIgnoredNodes(BitSet ignoredNodes) {
+            witnessPathSearcher.setIgnoredNodes(ignoredNodes);
+        }
+
+        /**
+         * Warning: the calculated priority must NOT depend on priority(v) and therefore findAndHandleShortcuts should also not
+         * depend on the priority(v). Otherwise updating the priority before contracting in contractNodes() could lead to
+         * a slowish or even endless loop.
+         */
+        float calculatePriority(int node) {
+            // # huge influence: the bigger the less shortcuts gets created and the faster is the preparation
+            //
+            // every adjNode has an 'original edge' number associated. initially it is r=1
+            // when a new shortcut is introduced then r of the associated edges is summed up:
+            // r(u,w)=r(u,v)+r(v,w) now we can define
+            // originalEdgesCount = σ(v) := sum_{ (u,w) ∈ shortcuts(v) } of r(u, w)
+            shortcutsCount = 0;
+            originalEdgesCount = 0;
+            findAndHandleShortcuts(node, this::countShortcuts, (int) (meanDegree * params.maxPollFactorHeuristic));
+
+            // from shortcuts we can compute the edgeDifference
+            // # low influence: with it the shortcut creation is slightly faster
+            //
+            // |shortcuts(v)| − |{(u, v) | v uncontracted}| − |{(v, w) | v uncontracted}|
+            // meanDegree is used instead of outDegree+inDegree as if one adjNode is in both directions
+            // only one bucket memory is used. Additionally one shortcut could also stand for two directions.
+            int edgeDifference = shortcutsCount - prepareGraph.getDegree(node);
+
+            // according to the paper do a simple linear combination of the properties to get the priority.
+            return params.edgeDifferenceWeight * edgeDifference +
+                    params.originalEdgesCountWeight * originalEdgesCount;
+            // todo: maybe use contracted-neighbors heuristic (contract nodes with lots of contracted neighbors later) as in GH 1.0 again?
+            //       maybe use hierarchy-depths heuristic as in edge-based?
+        }
+
+        /**
+         * Collects the shortcuts required to contract the given node, but does not add them to the graph.
+         */
+        FoundShortcuts findShortcuts(int node) {
+            FoundShortcuts result = new FoundShortcuts();
+            result.degree = findAndHandleShortcuts(node, result::add, (int) (meanDegree * params.maxPollFactorContraction));
+            return result;
+        }
+
+        /**
+         * Searches for shortcuts and calls the given handler on each shortcut that is found. The graph is not directly
+         * changed by this method.
+         * Returns the 'degree' of the given node (disregarding edges from/to already contracted nodes).
+         * Note that here the degree is not the total number of adjacent edges, but only the number of incoming edges
+         */
+        private long findAndHandleShortcuts(int node, PrepareShortcutHandler handler, int maxVisitedNodes) {
+            long degree = 0;
+            PrepareGraphEdgeIterator incomingEdges = inEdgeExplorer.setBaseNode(node);
+            // collect outgoing nodes (goal-nodes) only once
+            while (incomingEdges.next()) {
+                int fromNode = incomingEdges.getAdjNode();
+                if (fromNode == node)
+                    throw new IllegalStateException("Unexpected loop-edge at node: " + node);
+
+                final double incomingEdgeWeight = incomingEdges.getWeight();
+                // this check is important to prevent calling calcMillis on inaccessible edges and also allows early exit
+                if (Double.isInfinite(incomingEdgeWeight)) {
+                    continue;
+                }
+                // collect outgoing nodes (goal-nodes) only once
+                PrepareGraphEdgeIterator outgoingEdges = outEdgeExplorer.setBaseNode(node);
+                witnessPathSearcher.init(fromNode, node);
+                degree++;
+                while (outgoingEdges.next()) {
+                    int toNode = outgoingEdges.getAdjNode();
+                    // no need to search for witnesses going from a node back to itself
+                    if (fromNode == toNode)
+                        continue;
+
+                    // Limit weight as ferries or forbidden edges can increase local search too much.
+                    // If we decrease the correct weight we only explore less and introduce more shortcuts.
+                    // I.e. no change to accuracy is made.
+                    double existingDirectWeight = incomingEdgeWeight + outgoingEdges.getWeight();
+                    if (Double.isInfinite(existingDirectWeight))
+                        continue;
+
+                    dijkstraSW.start();
+                    dijkstraCount++;
+                    double maxWeight = witnessPathSearcher.findUpperBound(toNode, existingDirectWeight, maxVisitedNodes);
+                    dijkstraSW.stop();
+
+                    if (maxWeight <= existingDirectWeight)
+                        // FOUND witness path, so do not add shortcut
+                        continue;
+
+                    handler.handleShortcut(fromNode, toNode, existingDirectWeight,
+                            outgoingEdges.getPrepareEdge(), outgoingEdges.getOrigEdgeCount(),
+                            incomingEdges.getPrepareEdge(), incomingEdges.getOrigEdgeCount());
+                }
+            }
+            return degree;
+        }
+
+        private void countShortcuts(int fromNode, int toNode, double existingDirectWeight,
+                                    int outgoingEdge, int outOrigEdgeCount,
+                                    int incomingEdge, int inOrigEdgeCount) {
+            shortcutsCount++;
+            originalEdgesCount += inOrigEdgeCount + outOrigEdgeCount;
+        }
     }
 
     @FunctionalInterface
@@ -310,6 +380,36 @@ class NodeBasedNodeContractor implements NodeContractor {
         private double maxPollFactorContraction = 200;
     }
 
+    /**
+     * The shortcuts that are required to contract a single node, see {@link ShortcutSearch#findShortcuts}.
+     */
+    static class FoundShortcuts {
+        private final IntArrayList fromNodes = new IntArrayList();
+        private final IntArrayList toNodes = new IntArrayList();
+        private final DoubleArrayList weights = new DoubleArrayList();
+        private final IntArrayList outgoingEdges = new IntArrayList();
+        private final IntArrayList outOrigEdgeCounts = new IntArrayList();
+        private final IntArrayList incomingEdges = new IntArrayList();
+        private final IntArrayList inOrigEdgeCounts = new IntArrayList();
+        private long degree;
+
+        private void add(int fromNode, int toNode, double existingDirectWeight,
+                         int outgoingEdge, int outOrigEdgeCount,
+                         int incomingEdge, int inOrigEdgeCount) {
+            fromNodes.add(fromNode);
+            toNodes.add(toNode);
+            weights.add(existingDirectWeight);
+            outgoingEdges.add(outgoingEdge);
+            outOrigEdgeCounts.add(outOrigEdgeCount);
+            incomingEdges.add(incomingEdge);
+            inOrigEdgeCounts.add(inOrigEdgeCount);
+        }
+
+        int size() {
+            return fromNodes.size();
+        }
+    }
+
     private static class Shortcut {
         int prepareEdgeFwd;
         int prepareEdgeBwd;
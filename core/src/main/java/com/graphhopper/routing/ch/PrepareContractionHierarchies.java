@@ -17,6 +17,7 @@
  */
 package com.graphhopper.routing.ch;
 
+import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntContainer;
 import com.carrotsearch.hppc.cursors.IntCursor;
 import com.graphhopper.coll.MinHeapWithUpdate;
@@ -28,8 +29,15 @@ import com.graphhopper.util.StopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static com.graphhopper.routing.ch.CHParameters.*;
 import static com.graphhopper.util.Helper.getMemInfo;
@@ -62,12 +70,14 @@ public class PrepareContractionHierarchies {
     private final Params params;
     private final BaseGraph graph;
     private NodeContractor nodeContractor;
+    private CHPreparationGraph prepareGraph;
     private final int nodes;
     private NodeOrderingProvider nodeOrderingProvider;
     private int maxLevel;
     // nodes with highest priority come last
     private MinHeapWithUpdate sortedNodes;
     private PMap pMap = new PMap();
+    private int contractionThreads = 1;
     private int checkCounter;
     private boolean prepared = false;
 
@@ -100,6 +110,9 @@ public class PrepareContractionHierarchies {
         params.setMaxNeighborUpdates(pMap.getInt(NEIGHBOR_UPDATES_MAX, params.getMaxNeighborUpdates()));
         params.setNodesContractedPercentage(pMap.getInt(CONTRACTED_NODES, params.getNodesContractedPercentage()));
         params.setLogMessagesPercentage(pMap.getInt(LOG_MESSAGES, params.getLogMessagesPercentage()));
+        contractionThreads = pMap.getInt(CONTRACTION_THREADS_NODE, contractionThreads);
+        if (contractionThreads < 1)
+            throw new IllegalArgumentException(CONTRACTION_THREADS_NODE + " must be at least 1, but was: " + contractionThreads);
         return this;
     }
 
@@ -159,7 +172,11 @@ public class PrepareContractionHierarchies {
         setMaxLevelOnAllNodes();
         if (nodeOrderingProvider != null) {
             contractNodesUsingFixedNodeOrdering();
+        } else if (contractionThreads > 1 && !isEdgeBased()) {
+            contractNodesInParallel();
         } else {
+            if (contractionThreads > 1)
+                logger.info("Parallel node contraction is only supported for node-based CH, contracting nodes of {} with a single thread", chConfig.getName());
             contractNodesUsingHeuristicNodeOrdering();
         }
     }
@@ -170,7 +187,6 @@ public class PrepareContractionHierarchies {
 
     private void initFromGraph() {
         logger.info("Creating CH prepare graph, {}", getMemInfo());
-        CHPreparationGraph prepareGraph;
         if (chConfig.getTraversalMode().isEdgeBased()) {
             TurnCostStorage turnCostStorage = graph.getTurnCostStorage();
             if (turnCostStorage == null)
@@ -257,7 +273,7 @@ public class PrepareContractionHierarchies {
             }
 
             if (checkCounter % logSize == 0) {
-                logHeuristicStats(updateCounter);
+                logHeuristicStats(sortedNodes.size(), updateCounter);
             }
 
             checkCounter++;
@@ -298,7 +314,7 @@ public class PrepareContractionHierarchies {
 
         nodeContractor.finishContraction();
 
-        logHeuristicStats(updateCounter);
+        logHeuristicStats(sortedNodes.size(), updateCounter);
 
         logger.info(
                 "new shortcuts: " + nf(nodeContractor.getAddedShortcutsCount())
@@ -316,6 +332,181 @@ public class PrepareContractionHierarchies {
         _close();
     }
 
+    /**
+     * Contracts the graph in rounds using multiple threads. In every round we select an independent set of nodes: all
+     * remaining nodes whose priority is lower than the one of any other remaining node within two hops. The witness
+     * searches for these nodes are run in parallel on the unchanged graph, where witness paths may not lead through any
+     * other node of the set. Afterwards the shortcuts are inserted and the nodes are removed from the graph in order of
+     * their ids, and finally the priorities of their neighbors are updated. Since the nodes of a round do not share any
+     * neighbors this yields the same hierarchy regardless of the number of threads, but it is different from (and
+     * usually has slightly more shortcuts than) the one created by the serial contraction. Lazy, periodic and random
+     * neighbor updates are not used here.
+     */
+    private void contractNodesInParallel() {
+        NodeBasedNodeContractor contractor = (NodeBasedNodeContractor) nodeContractor;
+        final int threads = contractionThreads;
+        logger.info("Contracting nodes in parallel using {} threads, {}", threads, getMemInfo());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            BitSet currentNodes = new BitSet(nodes);
+            NodeBasedNodeContractor.ShortcutSearch[] searches = new NodeBasedNodeContractor.ShortcutSearch[threads];
+            PrepareGraphEdgeExplorer[] outExplorers = new PrepareGraphEdgeExplorer[threads];
+            PrepareGraphEdgeExplorer[] inExplorers = new PrepareGraphEdgeExplorer[threads];
+            for (int t = 0; t < threads; t++) {
+                searches[t] = contractor.createShortcutSearch();
+                searches[t].setIgnoredNodes(currentNodes);
+                outExplorers[t] = prepareGraph.createOutEdgeExplorer();
+                inExplorers[t] = prepareGraph.createInEdgeExplorer();
+            }
+
+            // remaining nodes are kept in ascending order, so all rounds are deterministic
+            IntArrayList remaining = new IntArrayList(nodes);
+            for (int node = 0; node < nodes; node++)
+                remaining.add(node);
+            float[] priorities = new float[nodes];
+            periodicUpdateSW.start();
+            runInParallel(executor, threads, remaining.size(), (t, i) -> {
+                int node = remaining.get(i);
+                priorities[node] = searches[t].calculatePriority(node);
+            });
+            periodicUpdateSW.stop();
+
+            final int initSize = nodes;
+            final long logSize = params.getLogMessagesPercentage() == 0
+                    ? Long.MAX_VALUE
+                    : Math.round(Math.max(10, initSize * (params.getLogMessagesPercentage() / 100d)));
+            final long nodesToAvoidContract = Math.round(initSize * ((100 - params.getNodesContractedPercentage()) / 100d));
+            BitSet neighborsToUpdate = new BitSet(nodes);
+            int level = 0;
+            int rounds = 0;
+            long nextLog = 0;
+            while (remaining.size() > nodesToAvoidContract) {
+                stopIfInterrupted();
+                if (level >= nextLog) {
+                    logHeuristicStats(remaining.size(), rounds);
+                    nextLog += logSize;
+                }
+                rounds++;
+
+                // select the nodes of this round, at least the one with the lowest priority is always selected
+                boolean[] selected = new boolean[remaining.size()];
+                runInParallel(executor, threads, remaining.size(), (t, i) ->
+                        selected[i] = isLocalMinimum(remaining.get(i), priorities, outExplorers[t], inExplorers[t]));
+                IntArrayList batch = new IntArrayList();
+                for (int i = 0; i < selected.length && remaining.size() - batch.size() > nodesToAvoidContract; i++)
+                    if (selected[i])
+                        batch.add(remaining.get(i));
+                for (int i = 0; i < batch.size(); i++)
+                    currentNodes.set(batch.get(i));
+
+                contractionSW.start();
+                NodeBasedNodeContractor.FoundShortcuts[] foundShortcuts = new NodeBasedNodeContractor.FoundShortcuts[batch.size()];
+                runInParallel(executor, threads, batch.size(), (t, i) -> foundShortcuts[i] = searches[t].findShortcuts(batch.get(i)));
+                for (int i = 0; i < batch.size(); i++) {
+                    int node = batch.get(i);
+                    chBuilder.setLevel(node, level++);
+                    for (IntCursor neighbor : contractor.contractNode(node, foundShortcuts[i]))
+                        neighborsToUpdate.set(neighbor.value);
+                }
+                contractionSW.stop();
+                currentNodes.clear();
+
+                int count = 0;
+                for (int i = 0; i < remaining.size(); i++) {
+                    int node = remaining.get(i);
+                    if (!isContracted(node))
+                        remaining.set(count++, node);
+                }
+                remaining.elementsCount = count;
+                checkCounter += batch.size();
+
+                neighborUpdateSW.start();
+                IntArrayList neighbors = new IntArrayList(neighborsToUpdate.cardinality());
+                for (int n = neighborsToUpdate.nextSetBit(0); n >= 0; n = neighborsToUpdate.nextSetBit(n + 1))
+                    neighbors.add(n);
+                neighborsToUpdate.clear();
+                runInParallel(executor, threads, neighbors.size(), (t, i) -> {
+                    int node = neighbors.get(i);
+                    priorities[node] = searches[t].calculatePriority(node);
+                });
+                neighborUpdateSW.stop();
+            }
+            nodeContractor.finishContraction();
+            logHeuristicStats(remaining.size(), rounds);
+            logger.info("new shortcuts: " + nf(nodeContractor.getAddedShortcutsCount())
+                    + ", initSize:" + nf(initSize)
+                    + ", " + chConfig.getWeighting()
+                    + ", threads:" + threads
+                    + ", rounds:" + nf(rounds)
+                    + ", " + getTimesAsString()
+                    + ", " + Helper.getMemInfo());
+        } finally {
+            executor.shutdown();
+        }
+        _close();
+    }
+
+    /**
+     * @return true if the given node comes first among all uncontracted nodes within a distance of two hops, i.e. it
+     * has the lowest priority and the lowest id in case of ties.
+     */
+    private static boolean isLocalMinimum(int node, float[] priorities, PrepareGraphEdgeExplorer outExplorer, PrepareGraphEdgeExplorer inExplorer) {
+        PrepareGraphEdgeExplorer[] explorers = {outExplorer, inExplorer};
+        for (PrepareGraphEdgeExplorer explorer : explorers) {
+            IntArrayList neighbors = new IntArrayList();
+            PrepareGraphEdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next())
+                neighbors.add(iter.getAdjNode());
+            for (IntCursor neighbor : neighbors) {
+                if (comesFirst(neighbor.value, node, priorities))
+                    return false;
+                for (PrepareGraphEdgeExplorer explorer2 : explorers) {
+                    PrepareGraphEdgeIterator iter2 = explorer2.setBaseNode(neighbor.value);
+                    while (iter2.next())
+                        if (iter2.getAdjNode() != node && comesFirst(iter2.getAdjNode(), node, priorities))
+                            return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean comesFirst(int a, int b, float[] priorities) {
+        int cmp = Float.compare(priorities[a], priorities[b]);
+        return cmp < 0 || (cmp == 0 && a < b);
+    }
+
+    /**
+     * Runs the given task for all indices in [0, size) using the given number of threads and waits until all of them
+     * are done. Thread t handles the indices t, t + threads, t + 2 * threads, ...
+     */
+    private static void runInParallel(ExecutorService executor, int threads, int size, IndexTask task) {
+        if (size == 0)
+            return;
+        List<Future<?>> futures = new ArrayList<>(threads);
+        for (int t = 0; t < Math.min(threads, size); t++) {
+            final int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int i = thread; i < size; i += threads)
+                    task.run(thread, i);
+            }));
+        }
+        try {
+            for (Future<?> future : futures)
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Thread was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    @FunctionalInterface
+    private interface IndexTask {
+        void run(int thread, int index);
+    }
+
     private void contractNodesUsingFixedNodeOrdering() {
         final int nodesToContract = nodeOrderingProvider.getNumNodes();
         final int logSize = Math.max(10, (int) (params.getLogMessagesPercentage() / 100.0 * nodesToContract));
@@ -354,11 +545,11 @@ public class PrepareContractionHierarchies {
         return chStore.getLevel(chStore.toNodePointer(node)) != maxLevel;
     }
 
-    private void logHeuristicStats(int updateCounter) {
+    private void logHeuristicStats(int remainingNodes, int updateCounter) {
         logger.info(String.format(Locale.ROOT,
                 "%s, nodes: %10s, shortcuts: %10s, updates: %2d, checked-nodes: %10s, %s, %s, %s",
                 (isEdgeBased() ? "edge" : "node"),
-                nf(sortedNodes.size()),
+                nf(remainingNodes),
                 nf(nodeContractor.getAddedShortcutsCount()),
                 updateCounter,
                 nf(checkCounter),
@@ -415,6 +606,7 @@ public class PrepareContractionHierarchies {
 
     private void _close() {
         nodeContractor.close();
+        prepareGraph = null;
         sortedNodes = null;
     }
 
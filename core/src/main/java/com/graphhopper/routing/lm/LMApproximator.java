@@ -41,6 +41,8 @@ public class LMApproximator implements WeightApproximator {
     private final int[] activeLandmarkIndices;
     private final int[] weightsFromActiveLandmarksToT;
     private final int[] weightsFromTToActiveLandmarks;
+    // offsets of the 'from' weights of the active landmarks within a node's row of the heap weights (if available)
+    private final int[] activeLandmarkOffsets;
     private double epsilon = 1;
     private int towerNodeNextToT = -1;
     private double weightFromTToTowerNode;
@@ -74,6 +76,7 @@ public class LMApproximator implements WeightApproximator {
         Arrays.fill(activeLandmarkIndices, -1);
         weightsFromActiveLandmarksToT = new int[activeCount];
         weightsFromTToActiveLandmarks = new int[activeCount];
+        activeLandmarkOffsets = new int[activeCount];
 
         this.graph = graph;
         this.lmWeighting = lmWeighting;
@@ -112,6 +115,7 @@ public class LMApproximator implements WeightApproximator {
                 for (int i = 0; i < activeLandmarkIndices.length; i++) {
                     weightsFromActiveLandmarksToT[i] = lms.getFromWeight(activeLandmarkIndices[i], towerNodeNextToT);
                     weightsFromTToActiveLandmarks[i] = lms.getToWeight(activeLandmarkIndices[i], towerNodeNextToT);
+                    activeLandmarkOffsets[i] = 2 * activeLandmarkIndices[i];
                 }
             } else {
                 // note: fallback==true means forever true!
@@ -127,6 +131,9 @@ public class LMApproximator implements WeightApproximator {
     }
 
     private double getRemainingWeightUnderestimationUpToTowerNode(int v) {
+        char[][] heapWeights = lms.getHeapWeights();
+        if (heapWeights != null)
+            return (approximateFromHeapWeights(heapWeights, v) - 1) * factor;
         int maxWeightInt = 0;
         for (int i = 0; i < activeLandmarkIndices.length; i++) {
             int resultInt = approximateForLandmark(i, v);
@@ -136,6 +143,28 @@ public class LMApproximator implements WeightApproximator {
         return (maxWeightInt - 1) * factor;
     }
 
+    /**
+     * Does the same as {@link #approximateForLandmark} for all active landmarks at once, but reads the weights of v
+     * directly from the row of v in the heap copy of the landmark weights.
+     */
+    private int approximateFromHeapWeights(char[][] heapWeights, int v) {
+        final char[] page = heapWeights[v >>> LandmarkStorage.HEAP_PAGE_BITS];
+        final int row = (v & LandmarkStorage.HEAP_PAGE_MASK) * 2 * lms.getLandmarkCount();
+        final int[] offsets = activeLandmarkOffsets;
+        final int[] fromLMToT = weightsFromActiveLandmarksToT;
+        final int[] fromTToLM = weightsFromTToActiveLandmarks;
+        final int sign = reverse ? -1 : 1;
+        int maxWeightInt = 0;
+        for (int i = 0; i < offsets.length; i++) {
+            int fromLMToV = page[row + offsets[i]];
+            int fromVToLM = page[row + offsets[i] + 1];
+            int rhs1Int = sign * (fromVToLM - fromTToLM[i]);
+            int rhs2Int = sign * (fromLMToT[i] - fromLMToV);
+            maxWeightInt = Math.max(maxWeightInt, Math.max(rhs1Int, rhs2Int));
+        }
+        return maxWeightInt;
+    }
+
     private int approximateForLandmark(int i, int v) {
         // ---> means shortest path, d means length of shortest path
         // but remember that d(v,t) != d(t,v)
@@ -59,6 +59,7 @@ public class LMPreparationHandler {
     private final List<String> lmSuggestionsLocations = new ArrayList<>(5);
     private int preparationThreads;
     private boolean logDetails = false;
+    private boolean heapWeights = false;
     private AreaIndex<SplitArea> areaIndex;
 
     public LMPreparationHandler() {
@@ -77,6 +78,7 @@ public class LMPreparationHandler {
         landmarkCount = ghConfig.getInt(Parameters.Landmark.COUNT, landmarkCount);
         logDetails = ghConfig.getBool(Landmark.PREPARE + "log_details", false);
         minNodes = ghConfig.getInt(Landmark.PREPARE + "min_network_size", -1);
+        heapWeights = ghConfig.getBool(Landmark.HEAP_WEIGHTS, heapWeights);
 
         for (String loc : ghConfig.getString(Landmark.PREPARE + "suggestions_location", "").split(",")) {
             if (!loc.trim().isEmpty())
@@ -100,6 +102,15 @@ public class LMPreparationHandler {
         return landmarkCount;
     }
 
+    /**
+     * Enables copying the landmark weights to the heap after they were loaded or prepared, which speeds up the weight
+     * approximation at the cost of additional heap memory, see {@link LandmarkStorage#copyWeightsToHeap()}.
+     */
+    public LMPreparationHandler setHeapWeights(boolean heapWeights) {
+        this.heapWeights = heapWeights;
+        return this;
+    }
+
     public final boolean isEnabled() {
         return !lmProfiles.isEmpty();
     }
@@ -109,7 +120,8 @@ public class LMPreparationHandler {
     }
 
     /**
-     * This method changes the number of threads used for preparation on import. Default is 1. Make
+     * This method changes the number of threads used for preparation on import. Default is 1. If there are more threads
+     * than LM configs the remaining threads calculate the landmark weights of a single config concurrently. Make
      * sure that you have enough memory when increasing this number!
      */
     public void setPreparationThreads(int preparationThreads) {
@@ -153,9 +165,11 @@ public class LMPreparationHandler {
                     //       we should also work towards a separation of the storage and preparation related code in
                     //       landmark storage
                     LandmarkStorage lms = new LandmarkStorage(baseGraph, encodedValueLookup, baseGraph.getDirectory(), lmConfig, landmarkCount);
-                    if (lms.loadExisting())
+                    if (lms.loadExisting()) {
+                        if (heapWeights)
+                            lms.copyWeightsToHeap();
                         loaded.add(lms);
-                    else {
+                    } else {
                         // todo: this is very ugly. all we wanted to do was see if the landmarks exist already, but now
                         //       we need to remove the DAs from the directory. This is because otherwise we cannot
                         //       create these DataAccess again when we actually prepare the landmarks that don't exist
@@ -177,6 +191,10 @@ public class LMPreparationHandler {
             return Collections.emptyList();
         }
         List<PrepareLandmarks> preparations = createPreparations(lmConfigs, baseGraph, encodingManager, locationIndex);
+        // the threads that are not needed to prepare the LM configs concurrently calculate the landmark weights of the
+        // individual configs
+        int threadsPerPreparation = Math.max(1, preparationThreads / preparations.size());
+        preparations.forEach(p -> p.setPreparationThreads(threadsPerPreparation));
         List<Runnable> prepareRunnables = new ArrayList<>();
         for (int i = 0; i < preparations.size(); i++) {
             PrepareLandmarks prepare = preparations.get(i);
@@ -188,6 +206,8 @@ public class LMPreparationHandler {
                 prepare.doWork();
                 if (closeEarly)
                     prepare.close();
+                else if (heapWeights)
+                    prepare.getLandmarkStorage().copyWeightsToHeap();
                 LOGGER.info("LM {} finished {}", name, getMemInfo());
                 properties.put(Landmark.PREPARE + "date." + name, createFormatter().format(new Date()));
             });
@@ -77,6 +77,10 @@ public class LandmarkStorage {
     private final int FROM_OFFSET;
     private final int TO_OFFSET;
     private final DataAccess landmarkWeightDA;
+    // optional read-only copy of the landmark weights, see copyWeightsToHeap
+    static final int HEAP_PAGE_BITS = 16;
+    static final int HEAP_PAGE_MASK = (1 << HEAP_PAGE_BITS) - 1;
+    private char[][] heapWeights;
     // every subnetwork has its own landmark mapping but the count of landmarks is always the same
     private final List<int[]> landmarkIDs;
     private double factor = -1;
@@ -94,6 +98,7 @@ public class LandmarkStorage {
     private List<LandmarkSuggestion> landmarkSuggestions = Collections.emptyList();
     private AreaIndex<SplitArea> areaIndex;
     private boolean logDetails = false;
+    private int preparationThreads = 1;
     /**
      * 'to' and 'from' fit into 32 bit => 16 bit for each of them => 65536
      */
@@ -169,6 +174,16 @@ public class LandmarkStorage {
         this.logDetails = logDetails;
     }
 
+    /**
+     * Sets the number of threads that calculate the weights of the landmarks of a subnetwork. Every thread explores the
+     * entire subnetwork, so make sure there is enough memory when increasing this number. Default is 1.
+     */
+    public void setPreparationThreads(int preparationThreads) {
+        if (preparationThreads < 1)
+            throw new IllegalArgumentException("preparation threads must be at least 1, but was " + preparationThreads);
+        this.preparationThreads = preparationThreads;
+    }
+
     /**
      * This method forces the landmark preparation to skip the landmark search and uses the specified landmark list instead.
      * Useful for manual tuning of larger areas to safe import time or improve quality.
@@ -445,42 +460,55 @@ public class LandmarkStorage {
         }
 
         // 2) calculate weights for all landmarks -> 'from' and 'to' weight
-        for (int lmIdx = 0; lmIdx < tmpLandmarkNodeIds.length; lmIdx++) {
-            if (Thread.currentThread().isInterrupted()) {
-                throw new RuntimeException("Thread was interrupted for landmark " + lmIdx);
-            }
-            int lmNodeId = tmpLandmarkNodeIds[lmIdx];
-            LandmarkExplorer explorer = new LandmarkExplorer(graph, this, weighting, traversalMode, accessFilter, false);
-            explorer.setStartNode(lmNodeId);
-            explorer.runAlgo();
-            explorer.initLandmarkWeights(lmIdx, lmNodeId, LM_ROW_LENGTH, FROM_OFFSET);
-
-            // set subnetwork id to all explored nodes, but do this only for the first landmark
-            if (lmIdx == 0) {
-                if (explorer.setSubnetworks(subnetworks, subnetworkId))
-                    return false;
-            }
-
-            explorer = new LandmarkExplorer(graph, this, weighting, traversalMode, accessFilter, true);
-            explorer.setStartNode(lmNodeId);
-            explorer.runAlgo();
-            explorer.initLandmarkWeights(lmIdx, lmNodeId, LM_ROW_LENGTH, TO_OFFSET);
-
-            if (lmIdx == 0) {
-                if (explorer.setSubnetworks(subnetworks, subnetworkId))
-                    return false;
-            }
-
-            if (logDetails && lmIdx % logOffset == 0)
-                LOGGER.info("Set landmarks weights [" + weighting + "]. "
-                        + "Progress " + (int) (100.0 * lmIdx / tmpLandmarkNodeIds.length) + "%");
+        // the searches of the first landmark also determine the subnetwork of the explored nodes, so we do them first
+        if (!initLandmarkWeights(0, tmpLandmarkNodeIds[0], accessFilter, subnetworks, subnetworkId))
+            return false;
+        // the other landmarks only write their own columns of the landmark weights, so we can search them concurrently.
+        // the landmarks were selected before already, so the result does not depend on the number of threads
+        List<Runnable> runnables = new ArrayList<>(tmpLandmarkNodeIds.length - 1);
+        for (int i = 1; i < tmpLandmarkNodeIds.length; i++) {
+            final int lmIdx = i;
+            runnables.add(() -> {
+                initLandmarkWeights(lmIdx, tmpLandmarkNodeIds[lmIdx], accessFilter, null, subnetworkId);
+                if (logDetails && lmIdx % logOffset == 0)
+                    LOGGER.info("Set landmarks weights [" + weighting + "]. "
+                            + "Progress " + (int) (100.0 * lmIdx / tmpLandmarkNodeIds.length) + "%");
+            });
         }
+        if (preparationThreads == 1)
+            runnables.forEach(Runnable::run);
+        else
+            GHUtility.runConcurrently(runnables.stream(), preparationThreads);
 
         // TODO set weight to SHORT_MAX if entry has either no 'from' or no 'to' entry
         landmarkIDs.add(tmpLandmarkNodeIds);
         return true;
     }
 
+    /**
+     * Calculates the 'from' and 'to' weights of the given landmark. If subnetworks is not null the subnetwork of all
+     * explored nodes is set as well.
+     *
+     * @return false if a node explored from the landmark belongs to another subnetwork already
+     */
+    private boolean initLandmarkWeights(int lmIdx, int lmNodeId, EdgeFilter accessFilter, byte[] subnetworks, int subnetworkId) {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new RuntimeException("Thread was interrupted for landmark " + lmIdx);
+        }
+        LandmarkExplorer explorer = new LandmarkExplorer(graph, this, weighting, traversalMode, accessFilter, false);
+        explorer.setStartNode(lmNodeId);
+        explorer.runAlgo();
+        explorer.initLandmarkWeights(lmIdx, lmNodeId, LM_ROW_LENGTH, FROM_OFFSET);
+        if (subnetworks != null && explorer.setSubnetworks(subnetworks, subnetworkId))
+            return false;
+
+        explorer = new LandmarkExplorer(graph, this, weighting, traversalMode, accessFilter, true);
+        explorer.setStartNode(lmNodeId);
+        explorer.runAlgo();
+        explorer.initLandmarkWeights(lmIdx, lmNodeId, LM_ROW_LENGTH, TO_OFFSET);
+        return subnetworks == null || !explorer.setSubnetworks(subnetworks, subnetworkId);
+    }
+
     /**
      * This method specifies the polygons which should be used to split the world wide area to improve performance and
      * quality in this scenario.
@@ -523,6 +551,8 @@ public class LandmarkStorage {
      * a node ID but the internal index of the landmark array.
      */
     int getFromWeight(int landmarkIndex, int node) {
+        if (heapWeights != null)
+            return heapWeights[node >>> HEAP_PAGE_BITS][(node & HEAP_PAGE_MASK) * 2 * landmarks + 2 * landmarkIndex];
         int res = (int) landmarkWeightDA.getShort((long) node * LM_ROW_LENGTH + landmarkIndex * 4L + FROM_OFFSET)
                 & 0x0000FFFF;
         if (res == SHORT_INFINITY)
@@ -540,6 +570,8 @@ public class LandmarkStorage {
      * @return the weight from the specified node to the landmark (specified *as index*)
      */
     int getToWeight(int landmarkIndex, int node) {
+        if (heapWeights != null)
+            return heapWeights[node >>> HEAP_PAGE_BITS][(node & HEAP_PAGE_MASK) * 2 * landmarks + 2 * landmarkIndex + 1];
         int res = (int) landmarkWeightDA.getShort((long) node * LM_ROW_LENGTH + landmarkIndex * 4 + TO_OFFSET)
                 & 0x0000FFFF;
         if (res == SHORT_INFINITY)
@@ -548,6 +580,48 @@ public class LandmarkStorage {
         return res;
     }
 
+    /**
+     * Copies the weights of all nodes into primitive arrays on the heap. The weights of a node are stored next to each
+     * other in the order from_0, to_0, from_1, to_1, ... and infinite weights are already replaced by SHORT_MAX,
+     * so reading them needs neither a DataAccess lookup nor any further checks. The nodes are split into pages of
+     * 2^16 nodes so that the copy also works when the weights of all nodes do not fit into a single array.
+     * <p>
+     * This costs additional heap memory (4 bytes per node and landmark) and must only be called once the landmark
+     * weights are final, i.e. after the preparation or after loading them.
+     */
+    public void copyWeightsToHeap() {
+        if (!isInitialized())
+            throw new IllegalStateException("Landmark weights must be created or loaded before they can be copied to the heap");
+        int nodes = graph.getNodes();
+        int rowLength = 2 * landmarks;
+        char[][] pages = new char[(nodes + HEAP_PAGE_MASK) >>> HEAP_PAGE_BITS][];
+        for (int p = 0; p < pages.length; p++) {
+            int pageNodes = Math.min(HEAP_PAGE_MASK + 1, nodes - (p << HEAP_PAGE_BITS));
+            char[] page = new char[pageNodes * rowLength];
+            for (int i = 0; i < pageNodes; i++) {
+                long pointer = (long) ((p << HEAP_PAGE_BITS) + i) * LM_ROW_LENGTH;
+                for (int lm = 0; lm < landmarks; lm++) {
+                    page[i * rowLength + 2 * lm] = toHeapWeight(landmarkWeightDA.getShort(pointer + lm * 4L + FROM_OFFSET));
+                    page[i * rowLength + 2 * lm + 1] = toHeapWeight(landmarkWeightDA.getShort(pointer + lm * 4L + TO_OFFSET));
+                }
+            }
+            pages[p] = page;
+        }
+        heapWeights = pages;
+    }
+
+    private static char toHeapWeight(short value) {
+        int res = value & 0x0000FFFF;
+        return (char) (res == SHORT_INFINITY ? SHORT_MAX : res);
+    }
+
+    /**
+     * @return the weights copied by {@link #copyWeightsToHeap()} or null if they were not copied
+     */
+    char[][] getHeapWeights() {
+        return heapWeights;
+    }
+
     /**
      * @return false if the value capacity was reached and instead of the real value the SHORT_MAX was stored.
      */
@@ -715,6 +789,7 @@ public class LandmarkStorage {
     }
 
     public void close() {
+        heapWeights = null;
         landmarkWeightDA.close();
         subnetworkStorage.close();
     }
@@ -44,34 +44,40 @@ public class DefaultMaxSpeedParser implements TagParser {
                 // Workaround for GBR. Default is used for "urban" but ignored for "rural".
                 if (country == Country.GBR) tags.put("lit", "yes");
 
-                // with computeIfAbsent we calculate the expensive hashCode of the key only once
-                Result result = cache.computeIfAbsent(tags, (key) -> {
-                    Result internRes = new Result();
-                    LegalDefaultSpeeds.Result tmpResult = speeds.getSpeedLimits(code,
-                            tags, Collections.emptyList(), (name, eval) -> eval.invoke() || "rural".equals(name));
-                    if (tmpResult != null) {
-                        internRes.rural = parseInt(tmpResult.getTags().get("maxspeed"));
-                        if (internRes.rural == null && "130".equals(tmpResult.getTags().get("maxspeed:advisory")))
-                            internRes.rural = (int) MAXSPEED_150;
-                    }
+                // with computeIfAbsent we calculate the expensive hashCode of the key only once. the cache is
+                // synchronized, because the tag parsers can be called from multiple threads during import
+                Result result;
+                synchronized (cache) {
+                    result = cache.computeIfAbsent(tags, (key) -> {
+                        Result internRes = new Result();
+                        LegalDefaultSpeeds.Result tmpResult = speeds.getSpeedLimits(code,
+                                tags, Collections.emptyList(), (name, eval) -> eval.invoke() || "rural".equals(name));
+                        if (tmpResult != null) {
+                            internRes.rural = parseInt(tmpResult.getTags().get("maxspeed"));
+                            if (internRes.rural == null && "130".equals(tmpResult.getTags().get("maxspeed:advisory")))
+                                internRes.rural = (int) MAXSPEED_150;
+                        }
 
-                    tmpResult = speeds.getSpeedLimits(code,
-                            tags, Collections.emptyList(), (name, eval) -> eval.invoke() || "urban".equals(name));
-                    if (tmpResult != null) {
-                        internRes.urban = parseInt(tmpResult.getTags().get("maxspeed"));
-                        if (internRes.urban == null && "130".equals(tmpResult.getTags().get("maxspeed:advisory")))
-                            internRes.urban = (int) MAXSPEED_150;
-                    }
-                    return internRes;
-                });
+                        tmpResult = speeds.getSpeedLimits(code,
+                                tags, Collections.emptyList(), (name, eval) -> eval.invoke() || "urban".equals(name));
+                        if (tmpResult != null) {
+                            internRes.urban = parseInt(tmpResult.getTags().get("maxspeed"));
+                            if (internRes.urban == null && "130".equals(tmpResult.getTags().get("maxspeed:advisory")))
+                                internRes.urban = (int) MAXSPEED_150;
+                        }
+                        return internRes;
+                    });
+                }
 
                 ruralSpeedInt = result.rural;
                 urbanSpeedInt = result.urban;
             }
         }
 
-        urbanMaxSpeedEnc.setDecimal(false, edgeId, externalAccess, urbanSpeedInt == null ? MAXSPEED_MISSING : urbanSpeedInt);
-        ruralMaxSpeedEnc.setDecimal(false, edgeId, externalAccess, ruralSpeedInt == null ? MAXSPEED_MISSING : ruralSpeedInt);
+        synchronized (this) {
+            urbanMaxSpeedEnc.setDecimal(false, edgeId, externalAccess, urbanSpeedInt == null ? MAXSPEED_MISSING : urbanSpeedInt);
+            ruralMaxSpeedEnc.setDecimal(false, edgeId, externalAccess, ruralSpeedInt == null ? MAXSPEED_MISSING : ruralSpeedInt);
+        }
     }
 
     private Map<String, String> filter(Map<String, Object> tags) {
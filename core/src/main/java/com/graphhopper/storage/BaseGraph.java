@@ -485,6 +485,13 @@ public class BaseGraph implements Graph, Closeable {
         return store;
     }
 
+    /**
+     * @return the number of ints that are necessary to store the flags of a single edge
+     */
+    public int getIntsForFlags() {
+        return (int) Math.ceil((double) store.getBytesForFlags() / 4);
+    }
+
     private void setWayGeometryAtGeoRef(PointList pillarNodes, long edgePointer, boolean reverse, long geoRef) {
         byte[] wayGeometryBytes = createWayGeometryBytes(pillarNodes, reverse);
         wayGeometry.ensureCapacity(geoRef + wayGeometryBytes.length);
@@ -17,6 +17,10 @@
  */
 package com.graphhopper.storage;
 
+import com.graphhopper.util.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.io.File;
 import java.util.*;
 
@@ -30,12 +34,15 @@ import static com.graphhopper.util.Helper.*;
  * @author Peter Karich
  */
 public class GHDirectory implements Directory {
+    private static final Logger LOGGER = LoggerFactory.getLogger(GHDirectory.class);
     protected final String location;
     private final DAType typeFallback;
     // first rule matches => LinkedHashMap
     private final Map<String, DAType> defaultTypes = new LinkedHashMap<>();
     private final Map<String, Integer> mmapPreloads = new LinkedHashMap<>();
+    private final Map<String, Integer> mmapPrefetches = new LinkedHashMap<>();
     private final Map<String, DataAccess> map = Collections.synchronizedMap(new HashMap<>());
+    private Thread prefetchThread;
 
     public GHDirectory(String _location, DAType defaultType) {
         this.typeFallback = defaultType;
@@ -54,7 +61,8 @@ public class GHDirectory implements Directory {
     /**
      * Configure the DAType (specified by the value) of a single DataAccess object (specified by the key). For "MMAP" you
      * can prepend "preload." to the name and specify a percentage which preloads the DataAccess into physical memory of
-     * the specified percentage (only applied for load, not for import).
+     * the specified percentage (only applied for load, not for import). With "prefetch." instead of "preload." this is
+     * done in a background thread after loading, i.e. the data can already be used while it is paged in.
      * As keys can be patterns the order is important and the LinkedHashMap is forced as type.
      */
     public Directory configure(LinkedHashMap<String, String> config) {
@@ -67,6 +75,13 @@ public class GHDirectory implements Directory {
                 } catch (NumberFormatException ex) {
                     throw new IllegalArgumentException("DataAccess " + kv.getKey() + " has an incorrect preload value: " + value);
                 }
+            else if (kv.getKey().startsWith("prefetch."))
+                try {
+                    String pattern = kv.getKey().substring("prefetch.".length());
+                    mmapPrefetches.put(pattern, Integer.parseInt(value));
+                } catch (NumberFormatException ex) {
+                    throw new IllegalArgumentException("DataAccess " + kv.getKey() + " has an incorrect prefetch value: " + value);
+                }
             else {
                 String pattern = kv.getKey();
                 defaultTypes.put(pattern, DAType.fromString(value));
@@ -93,6 +108,47 @@ public class GHDirectory implements Directory {
             if (preload > 0)
                 ((MMapDataAccess) da).load(preload);
         }
+        startPrefetch();
+    }
+
+    /**
+     * Pages in the memory mapped DataAccess objects configured via "prefetch." in a background thread. The objects
+     * matching the first pattern are prefetched first.
+     */
+    private void startPrefetch() {
+        if (mmapPrefetches.isEmpty() || prefetchThread != null)
+            return;
+        List<MMapDataAccess> das = new ArrayList<>();
+        List<Integer> percentages = new ArrayList<>();
+        for (String pattern : mmapPrefetches.keySet()) {
+            for (DataAccess da : map.values()) {
+                if (da instanceof MMapDataAccess && da.getName().matches(pattern) && !das.contains(da)) {
+                    das.add((MMapDataAccess) da);
+                    percentages.add(mmapPrefetches.get(pattern));
+                }
+            }
+        }
+        if (das.isEmpty())
+            return;
+        prefetchThread = new Thread(() -> {
+            StopWatch sw = new StopWatch().start();
+            for (int i = 0; i < das.size(); i++) {
+                if (Thread.currentThread().isInterrupted())
+                    return;
+                das.get(i).prefetch(percentages.get(i));
+            }
+            LOGGER.info("prefetched " + das.size() + " memory mapped files in " + sw.stop().getSeconds() + "s");
+        }, "mmap-prefetch");
+        prefetchThread.setDaemon(true);
+        prefetchThread.start();
+    }
+
+    /**
+     * Blocks until the background prefetching started by {@link #loadMMap()} has finished.
+     */
+    public void awaitPrefetch() throws InterruptedException {
+        if (prefetchThread != null)
+            prefetchThread.join();
     }
 
     @Override
@@ -139,6 +195,8 @@ public class GHDirectory implements Directory {
                 da = new RAMDataAccess(name, location, false, segmentSize);
         } else if (type.isMMap()) {
             da = new MMapDataAccess(name, location, type.isAllowWrites(), segmentSize);
+        } else if (type.isOffHeap()) {
+            da = new OffHeapDataAccess(name, location, type.isStoring(), segmentSize);
         } else {
             throw new IllegalArgumentException("DAType not supported " + type);
         }
@@ -149,6 +207,8 @@ public class GHDirectory implements Directory {
 
     @Override
     public void close() {
+        if (prefetchThread != null)
+            prefetchThread.interrupt();
         for (DataAccess da : map.values()) {
             da.close();
         }
@@ -242,8 +242,27 @@ public final class MMapDataAccess extends AbstractDataAccess {
         }
     }
 
+    /**
+     * Loads memory mapped files into physical memory like {@link #load(int)}, but segment by segment, which allows
+     * calling it from a background thread while the data is already in use. This is a hint only: it stops when
+     * this DataAccess is closed or the thread is interrupted.
+     */
+    public void prefetch(int percentage) {
+        if (percentage < 0 || percentage > 100)
+            throw new IllegalArgumentException("Percentage for MMapDataAccess.prefetch for " + getName() + " must be in [0,100] but was " + percentage);
+        int max = Math.round(segments.size() * percentage / 100f);
+        for (int i = 0; i < max; i++) {
+            // the segment must not be unmapped while we touch its pages
+            synchronized (this) {
+                if (isClosed() || Thread.currentThread().isInterrupted())
+                    return;
+                segments.get(i).load();
+            }
+        }
+    }
+
     @Override
-    public void close() {
+    public synchronized void close() {
         super.close();
         clean(0, segments.size());
         segments.clear();
@@ -28,7 +28,10 @@ import com.graphhopper.util.shapes.BBox;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 
 import static com.graphhopper.util.DistancePlaneProjection.DIST_PLANE;
 
@@ -308,6 +311,89 @@ public class LocationIndexTree implements LocationIndex {
         return closestMatch;
     }
 
+    /**
+     * Finds the closest snap of every edge accepted by the edge filter that is within the given radius of the query
+     * point. Unlike calling {@link #findClosest} or {@link #query} repeatedly for a growing area every edge is only
+     * inspected once.
+     *
+     * @param radius the maximum distance in meters
+     * @return the snaps sorted by their distance to the query point
+     */
+    public List<Snap> findClosestEdges(final double queryLat, final double queryLon, final double radius, final EdgeFilter edgeFilter) {
+        final List<Snap> snaps = new ArrayList<>();
+        traverseClosestEdges(queryLat, queryLon, edgeFilter, new SnapVisitor() {
+            @Override
+            public void onSnap(Snap snap) {
+                if (snap.getQueryDistance() <= radius)
+                    snaps.add(snap);
+            }
+
+            @Override
+            public boolean isFinished(double minDistance) {
+                return minDistance > radius;
+            }
+        });
+        for (Snap snap : snaps) {
+            snap.calcSnappedPoint(DIST_PLANE);
+        }
+        snaps.sort(Comparator.comparingDouble(Snap::getQueryDistance));
+        return snaps;
+    }
+
+    public interface SnapVisitor {
+        /**
+         * Called once for every accepted edge with the snap that is closest to the query point. The query distance is
+         * in meters and the snapped point is not yet calculated.
+         */
+        void onSnap(Snap snap);
+
+        /**
+         * Called after every ring of tiles around the query point.
+         *
+         * @param minDistance the distance in meters that all edges which were not yet visited have at least
+         * @return true if no further edges are needed
+         */
+        boolean isFinished(double minDistance);
+    }
+
+    /**
+     * Visits the tiles around the query point ring by ring, i.e. in increasing distance, and reports the closest snap
+     * of every edge accepted by the edge filter exactly once until the visitor is finished or all tiles were visited.
+     */
+    public void traverseClosestEdges(final double queryLat, final double queryLon, final EdgeFilter edgeFilter, final SnapVisitor visitor) {
+        if (isClosed())
+            throw new IllegalStateException("You need to create a new LocationIndex instance as it is already closed");
+
+        int x = indexStructureInfo.getKeyAlgo().x(queryLon);
+        int y = indexStructureInfo.getKeyAlgo().y(queryLat);
+        int lastTile = indexStructureInfo.getParts() - 1;
+        int maxIteration = Math.max(Math.max(x, lastTile - x), Math.max(y, lastTile - y));
+        IntHashSet seenEdges = new IntHashSet();
+        for (int iteration = 0; ; iteration++) {
+            lineIntIndex.findEdgeIdsInNeighborhood(queryLat, queryLon, iteration, edgeId -> {
+                EdgeIteratorState edge = graph.getEdgeIteratorStateForKey(edgeId * 2);
+                if (seenEdges.add(edgeId) && edgeFilter.accept(edge)) {
+                    Snap snap = new Snap(queryLat, queryLon);
+                    traverseEdge(queryLat, queryLon, edge, (node, normedDist, wayIndex, pos) -> {
+                        if (normedDist < snap.getQueryDistance()) {
+                            snap.setQueryDistance(normedDist);
+                            snap.setClosestNode(node);
+                            snap.setWayIndex(wayIndex);
+                            snap.setSnappedPosition(pos);
+                        }
+                    });
+                    if (snap.isValid()) {
+                        snap.setClosestEdge(edge);
+                        snap.setQueryDistance(DIST_PLANE.calcDenormalizedDist(snap.getQueryDistance()));
+                        visitor.onSnap(snap);
+                    }
+                }
+            });
+            if (iteration >= maxIteration || visitor.isFinished(calculateRMin(queryLat, queryLon, iteration)))
+                return;
+        }
+    }
+
     @Override
     public void query(TileFilter tileFilter, Visitor function) {
         lineIntIndex.query(tileFilter, function);
@@ -56,6 +56,8 @@ public class PathMerger {
     private PathDetailsBuilderFactory pathBuilderFactory;
     private List<String> requestedPathDetails = Collections.emptyList();
     private double favoredHeading = Double.NaN;
+    private long instructionsNanos;
+    private long pathDetailsNanos;
 
     public PathMerger(Graph graph, Weighting weighting) {
         this.graph = graph;
@@ -111,7 +113,9 @@ public class PathMerger {
             fullDistance += path.getDistance();
             fullWeight += path.getWeight();
             if (enableInstructions) {
+                StopWatch sw = new StopWatch().start();
                 InstructionList il = InstructionsFromEdges.calcInstructions(path, graph, weighting, evLookup, tr);
+                instructionsNanos += sw.stop().getNanos();
 
                 if (!il.isEmpty()) {
                     fullInstructions.addAll(il);
@@ -136,7 +140,9 @@ public class PathMerger {
                 }
 
                 fullPoints.add(tmpPoints);
+                StopWatch sw = new StopWatch().start();
                 responsePath.addPathDetails(PathDetailsFromEdges.calcDetails(path, evLookup, weighting, requestedPathDetails, pathBuilderFactory, origPoints, graph));
+                pathDetailsNanos += sw.stop().getNanos();
                 wayPointIndices.add(origPoints);
                 if (pathIndex == paths.size() - 1)
                     wayPointIndices.add(fullPoints.size() - 1);
@@ -226,6 +232,20 @@ public class PathMerger {
         return instructions;
     }
 
+    /**
+     * @return the nanoseconds spent calculating the instructions in {@link #doWork}
+     */
+    public long getInstructionsNanos() {
+        return instructionsNanos;
+    }
+
+    /**
+     * @return the nanoseconds spent calculating the path details in {@link #doWork}
+     */
+    public long getPathDetailsNanos() {
+        return pathDetailsNanos;
+    }
+
     private void calcAscendDescend(final ResponsePath responsePath, final PointList pointList) {
         double ascendMeters = 0;
         double descendMeters = 0;
@@ -31,6 +31,7 @@ import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.routing.util.countryrules.CountryRuleFactory;
 import com.graphhopper.routing.util.parsers.OSMRoadEnvironmentParser;
 import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.GHDirectory;
 import com.graphhopper.storage.IntsRef;
 import com.graphhopper.storage.index.LocationIndexTree;
 import com.graphhopper.storage.index.Snap;
@@ -141,6 +142,81 @@ public class GraphHopperTest {
         assertTrue(rsp.getErrors().toString().contains("ConnectionNotFoundException"), rsp.getErrors().toString());
     }
 
+    @ParameterizedTest
+    @CsvSource({"true,1", "false,1", "true,3", "false,3"})
+    public void testRouteBatch(boolean withCH, int threads) {
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(TestProfiles.accessAndSpeed("profile", "car")).
+                setStoreOnFlush(true);
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("profile"));
+        hopper.getRouterConfig().setBatchThreads(threads);
+        hopper.importOrLoad();
+
+        List<GHPoint> depots = asList(new GHPoint(43.727687, 7.418737), new GHPoint(43.74958, 7.436566));
+        Random rnd = new Random(123);
+        BBox bounds = hopper.getBaseGraph().getBounds();
+        List<GHRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            GHPoint point = new GHPoint(bounds.minLat + rnd.nextDouble() * (bounds.maxLat - bounds.minLat),
+                    bounds.minLon + rnd.nextDouble() * (bounds.maxLon - bounds.minLon));
+            GHPoint depot = depots.get(i % depots.size());
+            GHRequest req = i % 2 == 0 ? new GHRequest(depot, point) : new GHRequest(point, depot);
+            req.setProfile("profile").putHint(CH.DISABLE, !withCH);
+            requests.add(req);
+        }
+        // this one is routed separately
+        requests.add(new GHRequest(depots.get(0), depots.get(1)).setProfile("profile").setAlgorithm(ALT_ROUTE).putHint(CH.DISABLE, true));
+        // and these fail
+        requests.add(new GHRequest(depots.get(0), new GHPoint(50, 10)).setProfile("profile").putHint(CH.DISABLE, !withCH));
+        requests.add(new GHRequest(depots.get(0), depots.get(1)).setProfile("unknown"));
+
+        List<GHResponse> responses = hopper.routeBatch(requests);
+        assertEquals(requests.size(), responses.size());
+        for (int i = 0; i < requests.size() - 2; i++) {
+            GHResponse expected = hopper.route(requests.get(i));
+            GHResponse actual = responses.get(i);
+            assertEquals(expected.hasErrors(), actual.hasErrors(), "request " + i + ": " + actual.getErrors());
+            if (expected.hasErrors())
+                continue;
+            assertEquals(expected.getAll().size(), actual.getAll().size());
+            assertEquals(expected.getBest().getDistance(), actual.getBest().getDistance(), 1.e-3, "request " + i);
+            // the shared query graph may split an edge at the snap of another request, so time can deviate by rounding
+            assertEquals(expected.getBest().getTime(), actual.getBest().getTime(), 10, "request " + i);
+            assertEquals(expected.getBest().getRouteWeight(), actual.getBest().getRouteWeight(), 1.e-2, "request " + i);
+        }
+        assertTrue(responses.get(requests.size() - 2).getErrors().toString().contains("PointOutOfBoundsException"), responses.get(requests.size() - 2).getErrors().toString());
+        assertTrue(responses.get(requests.size() - 1).getErrors().toString().contains("does not exist"), responses.get(requests.size() - 1).getErrors().toString());
+
+        hopper.getRouterConfig().setMaxBatchSize(10);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> hopper.routeBatch(requests));
+        assertTrue(e.getMessage().contains("must not exceed 10"), e.getMessage());
+    }
+
+    @Test
+    public void testRouteBatchNonChMaxWaypointDistance() {
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setProfiles(TestProfiles.constantSpeed("profile")).
+                setStoreOnFlush(true);
+        hopper.getRouterConfig().setBatchThreads(2);
+        hopper.importOrLoad();
+        hopper.getRouterConfig().setNonChMaxWaypointDistance(1000);
+
+        // both requests are routed in the same group, but only the second one is too long
+        GHPoint from = new GHPoint(43.741069, 7.426854);
+        List<GHRequest> requests = asList(
+                new GHRequest(from, new GHPoint(43.738, 7.424)).setProfile("profile"),
+                new GHRequest(from, new GHPoint(43.727697, 7.419199)).setProfile("profile"));
+        List<GHResponse> responses = hopper.routeBatch(requests);
+        assertFalse(responses.get(0).hasErrors(), responses.get(0).getErrors().toString());
+        assertTrue(responses.get(1).getErrors().toString().contains("Point 1 is too far from Point 0"), responses.get(1).getErrors().toString());
+        hopper.close();
+    }
+
     @Test
     public void testMonacoWithInstructions() {
         final String profile = "profile";
@@ -288,6 +364,112 @@ public class GraphHopperTest {
         }
     }
 
+    @Test
+    public void testLoadReadOnlyMMap() throws InterruptedException {
+        Profile profile = TestProfiles.accessAndSpeed("profile", "car");
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(profile);
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("profile"));
+        hopper.getLMPreparationHandler().setLMProfiles(new LMProfile("profile"));
+        hopper.importOrLoad();
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile");
+        GHResponse expectedCH = hopper.route(req);
+        GHResponse expectedLM = hopper.route(new GHRequest(req.getPoints()).setProfile("profile").putHint(CH.DISABLE, true));
+        hopper.close();
+
+        GraphHopperConfig config = new GraphHopperConfig().
+                putObject("graph.location", GH_LOCATION).
+                putObject("graph.encoded_values", "car_access, car_average_speed").
+                putObject("import.osm.ignored_highways", "").
+                putObject("graph.dataaccess.default_type", "MMAP_RO").
+                putObject("graph.dataaccess.mmap.prefetch.shortcuts_.*", 100).
+                putObject("graph.dataaccess.mmap.prefetch.location_index", 100).
+                setProfiles(List.of(profile)).
+                setCHProfiles(List.of(new CHProfile("profile"))).
+                setLMProfiles(List.of(new LMProfile("profile")));
+        hopper = new GraphHopper().init(config);
+        assertFalse(hopper.isAllowWrites());
+        assertTrue(hopper.load());
+        assertTrue(hopper.getBaseGraph().getDirectory().getDAs().values().stream().allMatch(da -> da.getType().isMMap()));
+        assertFalse(new File(GH_LOCATION, "gh.lock").exists());
+
+        GHResponse rspCH = hopper.route(req);
+        GHResponse rspLM = hopper.route(new GHRequest(req.getPoints()).setProfile("profile").putHint(CH.DISABLE, true));
+        assertEquals(expectedCH.getBest().getDistance(), rspCH.getBest().getDistance(), 1.e-6);
+        assertEquals(expectedCH.getBest().getPoints(), rspCH.getBest().getPoints());
+        assertEquals(expectedLM.getBest().getDistance(), rspLM.getBest().getDistance(), 1.e-6);
+        ((GHDirectory) hopper.getBaseGraph().getDirectory()).awaitPrefetch();
+        hopper.close();
+    }
+
+    @Test
+    public void testCHQueryStatePool() {
+        Profile profile = TestProfiles.accessAndSpeed("profile", "car");
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(profile);
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("profile"));
+        hopper.importOrLoad();
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile");
+        GHResponse expected = hopper.route(req);
+        hopper.close();
+
+        GraphHopperConfig config = new GraphHopperConfig().
+                putObject("graph.location", GH_LOCATION).
+                putObject("graph.encoded_values", "car_access, car_average_speed").
+                putObject("import.osm.ignored_highways", "").
+                putObject("routing.ch.query_state_pool_size", 1).
+                setProfiles(List.of(profile)).
+                setCHProfiles(List.of(new CHProfile("profile")));
+        hopper = new GraphHopper().init(config);
+        assertTrue(hopper.load());
+        // the second request reuses the state of the first one
+        for (int i = 0; i < 2; i++) {
+            GHResponse rsp = hopper.route(req);
+            assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+            assertTrue(rsp.getDebugInfo().contains("dijkstrabi|ch|array"), rsp.getDebugInfo());
+            assertEquals(expected.getBest().getDistance(), rsp.getBest().getDistance(), 1.e-6);
+            assertEquals(expected.getBest().getPoints(), rsp.getBest().getPoints());
+        }
+        hopper.close();
+    }
+
+    @Test
+    public void testSnap() {
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(TestProfiles.accessAndSpeed("profile", "car")).
+                importOrLoad();
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile");
+        List<Snap> snaps = hopper.snap(req);
+        GHResponse rsp = hopper.route(req);
+        PointList waypoints = rsp.getBest().getWaypoints();
+        assertEquals(2, snaps.size());
+        for (int i = 0; i < snaps.size(); i++) {
+            assertEquals(waypoints.getLat(i), snaps.get(i).getSnappedPoint().lat, 1.e-6);
+            assertEquals(waypoints.getLon(i), snaps.get(i).getSnappedPoint().lon, 1.e-6);
+        }
+
+        // routing with the snaps gives the same route without snapping again
+        GHResponse rspWithSnaps = hopper.route(req, snaps);
+        assertFalse(rspWithSnaps.hasErrors(), rspWithSnaps.getErrors().toString());
+        assertEquals(rsp.getBest().getDistance(), rspWithSnaps.getBest().getDistance(), 1.e-6);
+        assertEquals(rsp.getBest().getPoints(), rspWithSnaps.getBest().getPoints());
+        assertFalse(rspWithSnaps.getTimings().containsKey("snap"));
+        GHResponse wrongSnaps = hopper.route(req, hopper.snap(req).subList(0, 1));
+        assertTrue(wrongSnaps.getErrors().get(0).getMessage().contains("Expected one snap per point"), wrongSnaps.getErrors().toString());
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> hopper.snap(new GHRequest(req.getPoints()).setProfile("unknown")));
+        assertTrue(e.getMessage().contains("The requested profile 'unknown' does not exist"), e.getMessage());
+        hopper.close();
+    }
+
     private void testImportCloseAndLoad(boolean ch, boolean lm) {
         final String profileName = "profile";
         GraphHopper hopper = new GraphHopper().
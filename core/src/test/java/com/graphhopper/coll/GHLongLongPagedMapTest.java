@@ -0,0 +1,89 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import com.graphhopper.storage.RAMDirectory;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GHLongLongPagedMapTest {
+
+    @Test
+    public void testEmptyValueIfMissing() {
+        GHLongLongPagedMap instance = new GHLongLongPagedMap(new RAMDirectory(), "test", 4, -1, 4);
+        long key = 9485854858458484L;
+        assertEquals(-1, instance.put(key, 21));
+        assertEquals(21, instance.get(key));
+        assertEquals(-1, instance.get(key + 1));
+        assertEquals(-1, instance.get(404));
+        assertEquals(1, instance.getSize());
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> instance.put(1, -1));
+        assertTrue(ex.getMessage().contains("Value cannot be the 'empty value' -1"));
+    }
+
+    @Test
+    public void testValueRange() {
+        GHLongLongPagedMap instance = new GHLongLongPagedMap(new RAMDirectory(), "test", 5, -1, 4);
+        long max = (1L << 39) - 1;
+        assertEquals(max, instance.getMaxValue());
+        instance.put(1, max);
+        instance.put(2, -max - 1);
+        instance.put(3, 0);
+        instance.put(-Long.MAX_VALUE, -3);
+        assertEquals(max, instance.get(1));
+        assertEquals(-max - 1, instance.get(2));
+        assertEquals(0, instance.get(3));
+        assertEquals(-3, instance.get(-Long.MAX_VALUE));
+        assertEquals(-1, instance.get(-Long.MAX_VALUE + 1));
+        assertThrows(IllegalArgumentException.class, () -> instance.put(4, max + 1));
+        assertEquals(4, instance.getSize());
+    }
+
+    @Test
+    public void testRandom() {
+        Random rand = new Random(0);
+        for (int bytes = 4; bytes <= 8; bytes++) {
+            long maxValue = (1L << (bytes * 8 - 1)) - 1;
+            GHLongLongPagedMap instance = new GHLongLongPagedMap(new RAMDirectory(), "test", bytes, -1, 6);
+            Map<Long, Long> expected = new HashMap<>();
+            for (int i = 0; i < 10_000; i++) {
+                long key = rand.nextInt(50_000) - 10_000;
+                long value = rand.nextLong() % maxValue;
+                if (value == -1)
+                    continue;
+                Long old = expected.put(key, value);
+                assertEquals(old == null ? -1 : old, instance.put(key, value));
+            }
+            assertEquals(expected.size(), instance.getSize());
+            for (long key = -10_000; key < 40_000; key++)
+                assertEquals(expected.getOrDefault(key, -1L), instance.get(key), "key " + key);
+
+            instance.clear();
+            assertEquals(0, instance.getSize());
+            assertEquals(-1, instance.get(5));
+            instance.put(5, 7);
+            assertEquals(7, instance.get(5));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.graphhopper.isochrone.algorithm;
+
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.ev.TurnCost;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.util.GHUtility;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArrayShortestPathTreeTest {
+
+    @ParameterizedTest
+    @CsvSource({"false,false", "false,true", "true,false", "true,true"})
+    void compareWithShortestPathTree(boolean edgeBased, boolean reverseFlow) {
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        DecimalEncodedValue turnCostEnc = TurnCost.create("car", 10);
+        BaseGraph graph = new BaseGraph.Builder(EncodingManager.start().add(speedEnc).addTurnCostEncodedValue(turnCostEnc).build()).withTurnCosts(true).create();
+        GHUtility.buildRandomGraph(graph, rnd, 100, 2.5, true, speedEnc, null, 0.9, 0);
+        Weighting weighting = new SpeedWeighting(speedEnc);
+        if (edgeBased) {
+            GHUtility.addRandomTurnCosts(graph, seed, null, turnCostEnc, 10, graph.getTurnCostStorage());
+            weighting = new SpeedWeighting(speedEnc, turnCostEnc, graph.getTurnCostStorage(), 40);
+        }
+        TraversalMode traversalMode = edgeBased ? TraversalMode.EDGE_BASED : TraversalMode.NODE_BASED;
+
+        for (int i = 0; i < 20; i++) {
+            int from = rnd.nextInt(graph.getNodes());
+            String msg = "seed: " + seed + ", from: " + from;
+            double limit = 50 + rnd.nextInt(200);
+            ShortestPathTree reference = new ShortestPathTree(graph, weighting, reverseFlow, traversalMode);
+            ArrayShortestPathTree spt = new ArrayShortestPathTree(graph, weighting, reverseFlow, traversalMode);
+            // each search on this thread reuses the arrays of the previous one
+            switch (i % 3) {
+                case 0:
+                    reference.setTimeLimit(limit * 1000);
+                    spt.setTimeLimit(limit * 1000);
+                    break;
+                case 1:
+                    reference.setDistanceLimit(limit * 10);
+                    spt.setDistanceLimit(limit * 10);
+                    break;
+                default:
+                    reference.setWeightLimit(limit);
+                    spt.setWeightLimit(limit);
+            }
+            assertEquals(search(reference, from), search(spt, from), msg);
+        }
+    }
+
+    @Test
+    void nestedSearch() {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        BaseGraph graph = new BaseGraph.Builder(EncodingManager.start().add(speedEnc).build()).create();
+        // 0-1-2
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(1, 2).setDistance(200).set(speedEnc, 10, 10);
+        Weighting weighting = new SpeedWeighting(speedEnc);
+        ArrayShortestPathTree outer = new ArrayShortestPathTree(graph, weighting, false, TraversalMode.NODE_BASED);
+        outer.setDistanceLimit(1000);
+        List<String> outerLabels = new ArrayList<>();
+        List<String> innerLabels = new ArrayList<>();
+        outer.search(0, label -> {
+            outerLabels.add(toString(label));
+            if (label.node == 1) {
+                // a search started from within the consumer must not use the arrays of the running one
+                ArrayShortestPathTree inner = new ArrayShortestPathTree(graph, weighting, false, TraversalMode.NODE_BASED);
+                inner.setDistanceLimit(1000);
+                inner.search(2, l -> innerLabels.add(toString(l)));
+            }
+        });
+        assertEquals(Arrays.asList("0,-1,0,null", "1,0,100,0", "2,1,300,1"), outerLabels);
+        assertEquals(Arrays.asList("2,-1,0,null", "1,1,200,2", "0,0,300,1"), innerLabels);
+    }
+
+    private static List<String> search(ShortestPathTreeSearch spt, int from) {
+        List<String> result = new ArrayList<>();
+        // the labels of ArrayShortestPathTree are flyweights, so we need to copy them
+        spt.search(from, label -> result.add(label.node + "," + label.edge + "," + Math.round(label.weight * 1.e6) + "," +
+                label.time + "," + Math.round(label.distance * 1.e3) + "," + (label.parent == null ? "null" : label.parent.node)));
+        Collections.sort(result);
+        return result;
+    }
+
+    private static String toString(ShortestPathTree.IsoLabel label) {
+        return label.node + "," + label.edge + "," + Math.round(label.distance) + "," + (label.parent == null ? "null" : label.parent.node);
+    }
+}
@@ -0,0 +1,153 @@
+package com.graphhopper.isochrone.algorithm;
+
+import com.carrotsearch.hppc.IntObjectHashMap;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.ev.TurnCost;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.CHConfig;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.storage.RoutingCHGraphImpl;
+import com.graphhopper.util.GHUtility;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShortestPathTreeCHTest {
+
+    @Test
+    void simpleGraph() {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        BaseGraph graph = new BaseGraph.Builder(EncodingManager.start().add(speedEnc).build()).create();
+        // 0-1-2-3
+        //     |
+        //     4   5-6
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(1, 2).setDistance(200).set(speedEnc, 10, 10);
+        graph.edge(2, 3).setDistance(300).set(speedEnc, 10, 0);
+        graph.edge(2, 4).setDistance(400).set(speedEnc, 10, 10);
+        graph.edge(5, 6).setDistance(10).set(speedEnc, 10, 10);
+        graph.freeze();
+        RoutingCHGraph chGraph = prepareCH(graph, CHConfig.nodeBased("p", new SpeedWeighting(speedEnc)));
+
+        ShortestPathTreeCH spt = new ShortestPathTreeCH(chGraph, false);
+        spt.setTimeLimit(65_000);
+        List<ShortestPathTree.IsoLabel> labels = new ArrayList<>();
+        spt.search(0, labels::add);
+        // node 4 is too far away, and 5 and 6 are not connected
+        assertEquals(4, labels.size());
+        assertEquals(0, labels.get(0).node);
+        assertNull(labels.get(0).parent);
+        ShortestPathTree.IsoLabel label = labels.get(3);
+        assertEquals(3, label.node);
+        assertEquals(60_000, label.time);
+        assertEquals(600, label.distance, 1.e-6);
+        assertEquals(60, label.weight, 1.e-6);
+        assertEquals(2, label.parent.node);
+        assertEquals(30_000, label.parent.time);
+        assertEquals(300, label.parent.distance, 1.e-6);
+
+        // the edge 2->3 is one-way, so we cannot get from 3 to 0
+        spt = new ShortestPathTreeCH(chGraph, true);
+        spt.setDistanceLimit(1_000);
+        labels.clear();
+        spt.search(0, labels::add);
+        assertEquals(4, labels.size());
+        assertTrue(labels.stream().noneMatch(l -> l.node == 3));
+        label = labels.get(3);
+        assertEquals(4, label.node);
+        assertEquals(700, label.distance, 1.e-6);
+        assertEquals(2, label.parent.node);
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "false,false,TIME", "false,true,TIME", "true,false,TIME", "true,true,TIME",
+            "false,false,DISTANCE", "false,true,DISTANCE", "true,false,DISTANCE", "true,true,DISTANCE",
+            "false,false,WEIGHT", "false,true,WEIGHT", "true,false,WEIGHT", "true,true,WEIGHT"})
+    void compareWithShortestPathTree(boolean edgeBased, boolean reverseFlow, ShortestPathTree.ExploreType exploreType) {
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 1, true);
+        DecimalEncodedValue turnCostEnc = TurnCost.create("car", 10);
+        BaseGraph graph = new BaseGraph.Builder(EncodingManager.start().add(speedEnc).addTurnCostEncodedValue(turnCostEnc).build()).withTurnCosts(true).create();
+        GHUtility.buildRandomGraph(graph, rnd, 100, 2.5, false, speedEnc, 8.0, 0.9, 0);
+        // With integer distances and speed 8 all weights, times and shortcut weights are exact multiples of 1/8, so
+        // there are no rounding errors and paths of equal weight are rare. Therefore the trees have to match exactly.
+        // The distances no longer match the geometry, so we start at real nodes, because the virtual edges of a
+        // QueryGraph would be inconsistent with the edges they split.
+        AllEdgesIterator edge = graph.getAllEdges();
+        while (edge.next())
+            edge.setDistance(1 + rnd.nextInt(10_000));
+        if (edgeBased)
+            GHUtility.addRandomTurnCosts(graph, seed, null, turnCostEnc, 10, graph.getTurnCostStorage());
+        graph.freeze();
+        CHConfig chConfig = edgeBased
+                ? CHConfig.edgeBased("p", new SpeedWeighting(speedEnc, turnCostEnc, graph.getTurnCostStorage(), 40))
+                : CHConfig.nodeBased("p", new SpeedWeighting(speedEnc));
+        RoutingCHGraph chGraph = prepareCH(graph, chConfig);
+        // all searches use the same state
+        PhastStatePool pool = new PhastStatePool(1);
+
+        for (int i = 0; i < 10; i++) {
+            int from = rnd.nextInt(graph.getNodes());
+            String msg = "seed: " + seed + ", from: " + from;
+            // the fractions make labels that lie exactly on the limit unlikely
+            double weightLimit = 1_000 + rnd.nextInt(2_000);
+            ShortestPathTree reference = new ShortestPathTree(graph, chConfig.getWeighting(), reverseFlow,
+                    edgeBased ? TraversalMode.EDGE_BASED : TraversalMode.NODE_BASED);
+            ShortestPathTreeCH spt = new ShortestPathTreeCH(chGraph, reverseFlow, pool);
+            if (exploreType == ShortestPathTree.ExploreType.TIME) {
+                reference.setTimeLimit(weightLimit * 1000 + 0.5);
+                spt.setTimeLimit(weightLimit * 1000 + 0.5);
+            } else if (exploreType == ShortestPathTree.ExploreType.DISTANCE) {
+                reference.setDistanceLimit(weightLimit * 8 + 0.5);
+                spt.setDistanceLimit(weightLimit * 8 + 0.5);
+            } else {
+                reference.setWeightLimit(weightLimit + 0.01);
+                spt.setWeightLimit(weightLimit + 0.01);
+            }
+            IntObjectHashMap<ShortestPathTree.IsoLabel> expected = bestLabelPerNode(reference, from);
+            IntObjectHashMap<ShortestPathTree.IsoLabel> given = bestLabelPerNode(spt, from);
+
+            // the start node itself is trivial
+            expected.remove(from);
+            given.remove(from);
+            assertEquals(expected.size(), given.size(), msg);
+            for (int node : expected.keys().toArray()) {
+                ShortestPathTree.IsoLabel e = expected.get(node), g = given.get(node);
+                assertNotNull(g, msg + ", node: " + node);
+                assertEquals(e.weight, g.weight, 1.e-6, msg + ", node: " + node);
+                assertEquals(e.time, g.time, msg + ", node: " + node);
+                assertEquals(e.distance, g.distance, 1.e-6, msg + ", node: " + node);
+                assertNotNull(g.parent, msg);
+            }
+        }
+    }
+
+    private static IntObjectHashMap<ShortestPathTree.IsoLabel> bestLabelPerNode(ShortestPathTreeSearch spt, int from) {
+        IntObjectHashMap<ShortestPathTree.IsoLabel> result = new IntObjectHashMap<>();
+        spt.search(from, label -> {
+            ShortestPathTree.IsoLabel best = result.get(label.node);
+            if (best == null || label.weight < best.weight)
+                result.put(label.node, label);
+        });
+        return result;
+    }
+
+    private static RoutingCHGraph prepareCH(BaseGraph graph, CHConfig chConfig) {
+        PrepareContractionHierarchies.Result res = PrepareContractionHierarchies.fromGraph(graph, chConfig).doWork();
+        return RoutingCHGraphImpl.fromGraph(graph, res.getCHStorage(), res.getCHConfig());
+    }
+}
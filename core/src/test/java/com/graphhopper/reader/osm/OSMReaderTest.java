@@ -20,6 +20,7 @@ package com.graphhopper.reader.osm;
 import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
 import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
 import com.graphhopper.GraphHopperTest;
 import com.graphhopper.reader.ReaderElement;
 import com.graphhopper.reader.ReaderRelation;
@@ -994,6 +995,62 @@ public class OSMReaderTest {
         return new AreaIndex<>(readCountries());
     }
 
+    @Test
+    public void testTagParserThreadsCreateIdenticalGraph() {
+        GraphHopper serial = importAndorra(new GraphHopperConfig(), dir + "/serial");
+        GraphHopper parallel = importAndorra(new GraphHopperConfig().putObject("datareader.tag_parser_threads", 4), dir + "/parallel");
+        assertIdenticalGraph(serial.getBaseGraph(), parallel.getBaseGraph());
+        serial.close();
+        parallel.close();
+    }
+
+    @Test
+    public void testPagedNodeIdMapCreatesIdenticalGraph() {
+        GraphHopper btree = importAndorra(new GraphHopperConfig(), dir + "/btree");
+        GraphHopper paged = importAndorra(new GraphHopperConfig().putObject("datareader.paged_node_id_map", true)
+                .putObject("graph.dataaccess.type.tmp_osm_node_ids", "OFF_HEAP"), dir + "/paged");
+        assertIdenticalGraph(btree.getBaseGraph(), paged.getBaseGraph());
+        btree.close();
+        paged.close();
+    }
+
+    private static void assertIdenticalGraph(BaseGraph expected, BaseGraph actual) {
+        assertEquals(expected.getNodes(), actual.getNodes());
+        assertEquals(expected.getEdges(), actual.getEdges());
+        for (int node = 0; node < expected.getNodes(); node++) {
+            assertEquals(expected.getNodeAccess().getLat(node), actual.getNodeAccess().getLat(node));
+            assertEquals(expected.getNodeAccess().getLon(node), actual.getNodeAccess().getLon(node));
+        }
+        AllEdgesIterator iter = expected.getAllEdges();
+        while (iter.next()) {
+            EdgeIteratorState edge = actual.getEdgeIteratorState(iter.getEdge(), Integer.MIN_VALUE);
+            assertEquals(iter.getBaseNode(), edge.getBaseNode());
+            assertEquals(iter.getAdjNode(), edge.getAdjNode());
+            assertEquals(iter.getDistance(), edge.getDistance());
+            assertArrayEquals(iter.getFlags().ints, edge.getFlags().ints, "flags of edge " + iter.getEdge());
+            assertEquals(iter.getKeyValues(), edge.getKeyValues());
+            assertEquals(iter.fetchWayGeometry(FetchMode.ALL), edge.fetchWayGeometry(FetchMode.ALL));
+        }
+    }
+
+    private GraphHopper importAndorra(GraphHopperConfig config, String location) {
+        config.putObject("datareader.file", "../core/files/andorra.osm.pbf")
+                .putObject("graph.location", location)
+                .putObject("import.osm.ignored_highways", "")
+                .putObject("graph.encoded_values", "car_access, car_average_speed, bike_access, bike_priority, bike_average_speed, "
+                        + "foot_access, foot_priority, foot_average_speed, road_class, road_environment, surface, toll, "
+                        + "max_speed, country, urban_density, car_temporal_access, osm_way_id")
+                .putObject("max_speed_calculator.enabled", true)
+                .putObject("graph.urban_density.threads", 1)
+                .setProfiles(List.of(TestProfiles.accessAndSpeed("car")));
+        GraphHopper hopper = new GraphHopper().init(config);
+        // use small batches so that several batches are in flight at the same time
+        hopper.getReaderConfig().setTagParserBatchSize(100);
+        hopper.setStoreOnFlush(false);
+        hopper.importOrLoad();
+        return hopper;
+    }
+
     class GraphHopperFacade extends GraphHopper {
         public GraphHopperFacade(String osmFile) {
             this(osmFile, "");
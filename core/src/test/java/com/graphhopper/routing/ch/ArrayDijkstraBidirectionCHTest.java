@@ -0,0 +1,92 @@
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.routing.DijkstraBidirectionCH;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.QueryRoutingCHGraph;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.CHConfig;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.storage.RoutingCHGraphImpl;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.GHUtility;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static com.graphhopper.util.GHUtility.createRandomSnaps;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArrayDijkstraBidirectionCHTest {
+
+    @Test
+    void compareWithDijkstraBidirectionCH() {
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        BaseGraph graph = new BaseGraph.Builder(EncodingManager.start().add(speedEnc).build()).create();
+        GHUtility.buildRandomGraph(graph, rnd, 200, 2.5, true, speedEnc, null, 0.9, 0.1);
+        LocationIndexTree locationIndex = new LocationIndexTree(graph, graph.getDirectory());
+        locationIndex.prepareIndex();
+        graph.freeze();
+        RoutingCHGraph chGraph = prepareCH(graph, CHConfig.nodeBased("p", new SpeedWeighting(speedEnc)));
+        // a single state that is reused by all queries
+        CHQueryStatePool pool = new CHQueryStatePool(1);
+        for (int i = 0; i < 50; i++) {
+            List<Snap> snaps = createRandomSnaps(graph.getBounds(), locationIndex, rnd, 2, false, EdgeFilter.ALL_EDGES);
+            QueryGraph queryGraph = QueryGraph.create(graph, snaps);
+            RoutingCHGraph queryCHGraph = new QueryRoutingCHGraph(chGraph, queryGraph);
+            int from = snaps.get(0).getClosestNode();
+            int to = snaps.get(1).getClosestNode();
+            String msg = "seed: " + seed + ", " + from + "->" + to;
+            Path refPath = new DijkstraBidirectionCH(queryCHGraph).calcPath(from, to);
+            Path path = new ArrayDijkstraBidirectionCH(queryCHGraph, pool).calcPath(from, to);
+            assertEquals(refPath.isFound(), path.isFound(), msg);
+            if (!refPath.isFound())
+                continue;
+            assertEquals(refPath.getWeight(), path.getWeight(), 1.e-2, msg);
+            assertEquals(refPath.getDistance(), path.getDistance(), 1.e-1, msg);
+            assertEquals(refPath.getTime(), path.getTime(), 10, msg);
+        }
+    }
+
+    @Test
+    void poolExhausted() {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        BaseGraph graph = new BaseGraph.Builder(EncodingManager.start().add(speedEnc).build()).create();
+        // 0-1-2-3
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(1, 2).setDistance(200).set(speedEnc, 10, 10);
+        graph.edge(2, 3).setDistance(300).set(speedEnc, 10, 10);
+        graph.freeze();
+        RoutingCHGraph chGraph = prepareCH(graph, CHConfig.nodeBased("p", new SpeedWeighting(speedEnc)));
+        CHQueryStatePool pool = new CHQueryStatePool(1);
+        CHQueryState state = pool.acquire(chGraph.getNodes());
+        assertNotNull(state);
+        assertNull(pool.acquire(chGraph.getNodes()));
+        // the only state is in use, so this query has to fall back to a state of its own
+        Path path = new ArrayDijkstraBidirectionCH(chGraph, pool).calcPath(0, 3);
+        assertEquals(600, path.getDistance(), 1.e-6);
+        assertEquals(IntArrayList.from(0, 1, 2, 3), path.calcNodes());
+        pool.release(state);
+
+        path = new ArrayDijkstraBidirectionCH(chGraph, pool).calcPath(3, 0);
+        assertEquals(600, path.getDistance(), 1.e-6);
+        path = new ArrayDijkstraBidirectionCH(chGraph, pool).calcPath(2, 2);
+        assertTrue(path.isFound());
+        assertEquals(0, path.getDistance(), 1.e-6);
+    }
+
+    private static RoutingCHGraph prepareCH(BaseGraph graph, CHConfig chConfig) {
+        PrepareContractionHierarchies.Result res = PrepareContractionHierarchies.fromGraph(graph, chConfig).doWork();
+        return RoutingCHGraphImpl.fromGraph(graph, res.getCHStorage(), res.getCHConfig());
+    }
+}
@@ -0,0 +1,126 @@
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.QueryRoutingCHGraph;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.CHConfig;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.storage.RoutingCHGraphImpl;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.GHUtility;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static com.graphhopper.util.GHUtility.createRandomSnaps;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ManyToManyCHTest {
+
+    @Test
+    void simpleGraph() {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        BaseGraph graph = new BaseGraph.Builder(EncodingManager.start().add(speedEnc).build()).create();
+        // 0-1-2-3
+        //     |
+        //     4   5-6
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(1, 2).setDistance(200).set(speedEnc, 10, 10);
+        graph.edge(2, 3).setDistance(300).set(speedEnc, 10, 0);
+        graph.edge(2, 4).setDistance(400).set(speedEnc, 10, 10);
+        graph.edge(5, 6).setDistance(10).set(speedEnc, 10, 10);
+        graph.freeze();
+        RoutingCHGraph chGraph = prepareCH(graph, CHConfig.nodeBased("p", new SpeedWeighting(speedEnc)));
+
+        ManyToManyCH.Result result = new ManyToManyCH(chGraph).calc(new int[]{0, 3, 4}, new int[]{3, 0, 5, -1}, true);
+        assertEquals(60, result.weights[0][0], 1.e-6);
+        assertEquals(600, result.distances[0][0], 1.e-6);
+        assertEquals(60_000, result.times[0][0]);
+        assertEquals(0, result.weights[1][0], 1.e-6);
+        // one-way edge 2->3
+        assertFalse(result.isConnected(1, 1));
+        assertEquals(70, result.weights[2][1], 1.e-6);
+        assertEquals(700, result.distances[2][1], 1.e-6);
+        // node 5 is disconnected and negative nodes are skipped
+        assertFalse(result.isConnected(0, 2));
+        assertFalse(result.isConnected(0, 3));
+    }
+
+    @Test
+    void maxVisitedNodes() {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        BaseGraph graph = new BaseGraph.Builder(EncodingManager.start().add(speedEnc).build()).create();
+        // 0-1-2-3-4-5
+        for (int i = 0; i < 5; i++)
+            graph.edge(i, i + 1).setDistance(100).set(speedEnc, 10, 10);
+        graph.freeze();
+        RoutingCHGraph chGraph = prepareCH(graph, CHConfig.nodeBased("p", new SpeedWeighting(speedEnc)));
+        int[] nodes = {0, 1, 2, 3, 4, 5};
+
+        ManyToManyCH manyToMany = new ManyToManyCH(chGraph);
+        ManyToManyCH.Result result = manyToMany.calc(nodes, nodes, false);
+        assertFalse(manyToMany.isMaxVisitedNodesExceeded());
+        assertEquals(50, result.weights[0][5], 1.e-6);
+
+        // the lowest node has at least one upward neighbor, so its search cannot finish after settling one node
+        manyToMany.setMaxVisitedNodes(1);
+        manyToMany.calc(nodes, nodes, false);
+        assertTrue(manyToMany.isMaxVisitedNodesExceeded());
+
+        // the flag is reset for every calculation
+        manyToMany.setMaxVisitedNodes(Integer.MAX_VALUE);
+        manyToMany.calc(nodes, nodes, false);
+        assertFalse(manyToMany.isMaxVisitedNodesExceeded());
+    }
+
+    @Test
+    void compareWithDijkstra() {
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        BaseGraph graph = new BaseGraph.Builder(EncodingManager.start().add(speedEnc).build()).create();
+        GHUtility.buildRandomGraph(graph, rnd, 100, 2.5, true, speedEnc, null, 0.9, 0);
+        LocationIndexTree locationIndex = new LocationIndexTree(graph, graph.getDirectory());
+        locationIndex.prepareIndex();
+        graph.freeze();
+        Weighting weighting = new SpeedWeighting(speedEnc);
+        RoutingCHGraph chGraph = prepareCH(graph, CHConfig.nodeBased("p", weighting));
+
+        List<Snap> snaps = createRandomSnaps(graph.getBounds(), locationIndex, rnd, 20, false, EdgeFilter.ALL_EDGES);
+        QueryGraph queryGraph = QueryGraph.create(graph, snaps);
+        int[] sources = new int[15];
+        int[] targets = new int[10];
+        for (int i = 0; i < sources.length; i++)
+            sources[i] = rnd.nextInt(queryGraph.getNodes());
+        for (int i = 0; i < targets.length; i++)
+            targets[i] = rnd.nextInt(queryGraph.getNodes());
+        ManyToManyCH.Result result = new ManyToManyCH(new QueryRoutingCHGraph(chGraph, queryGraph)).calc(sources, targets, true);
+        for (int s = 0; s < sources.length; s++) {
+            for (int t = 0; t < targets.length; t++) {
+                Path refPath = new Dijkstra(queryGraph, queryGraph.wrapWeighting(weighting), TraversalMode.NODE_BASED).calcPath(sources[s], targets[t]);
+                String msg = "seed: " + seed + ", " + sources[s] + "->" + targets[t];
+                assertEquals(refPath.isFound(), result.isConnected(s, t), msg);
+                if (!refPath.isFound())
+                    continue;
+                assertEquals(refPath.getWeight(), result.weights[s][t], 1.e-2, msg);
+                assertEquals(refPath.getDistance(), result.distances[s][t], 1.e-1, msg);
+            }
+        }
+    }
+
+    private static RoutingCHGraph prepareCH(BaseGraph graph, CHConfig chConfig) {
+        PrepareContractionHierarchies.Result res = PrepareContractionHierarchies.fromGraph(graph, chConfig).doWork();
+        return RoutingCHGraphImpl.fromGraph(graph, res.getCHStorage(), res.getCHConfig());
+    }
+}
@@ -576,6 +576,48 @@ public class PrepareContractionHierarchiesTest {
         }
     }
 
+    @Test
+    public void testParallelContraction() {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        EncodingManager em = EncodingManager.start().add(speedEnc).build();
+        CHConfig config2 = CHConfig.nodeBased("c2", new SpeedWeighting(speedEnc));
+        CHConfig config4 = CHConfig.nodeBased("c4", new SpeedWeighting(speedEnc));
+        BaseGraph graph = new BaseGraph.Builder(em).create();
+        int numNodes = 2_000;
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        GHUtility.buildRandomGraph(graph, rnd, numNodes, 1.3, true, null, null, 0.9, 0.8);
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            double fwd = rnd.nextDouble() * 100;
+            if (rnd.nextDouble() < 0.05) fwd = 0;
+            double bwd = rnd.nextDouble() * 100;
+            if (rnd.nextDouble() < 0.05) bwd = 0;
+            iter.set(speedEnc, fwd, bwd);
+        }
+        graph.freeze();
+
+        PrepareContractionHierarchies.Result res2 = PrepareContractionHierarchies.fromGraph(graph, config2)
+                .setParams(new PMap().putObject(CHParameters.CONTRACTION_THREADS_NODE, 2)).doWork();
+        PrepareContractionHierarchies.Result res4 = PrepareContractionHierarchies.fromGraph(graph, config4)
+                .setParams(new PMap().putObject(CHParameters.CONTRACTION_THREADS_NODE, 4)).doWork();
+        // the hierarchy does not depend on the number of threads
+        CHStorage chStore2 = res2.getCHStorage();
+        CHStorage chStore4 = res4.getCHStorage();
+        assertEquals(chStore2.getShortcuts(), chStore4.getShortcuts(), "seed: " + seed);
+        for (int node = 0; node < numNodes; node++)
+            assertEquals(chStore2.getLevel(chStore2.toNodePointer(node)), chStore4.getLevel(chStore4.toNodePointer(node)), "seed: " + seed);
+
+        RoutingCHGraph chGraph = RoutingCHGraphImpl.fromGraph(graph, chStore4, res4.getCHConfig());
+        for (int i = 0; i < 100; ++i) {
+            Dijkstra dijkstra = new Dijkstra(graph, config4.getWeighting(), TraversalMode.NODE_BASED);
+            RoutingAlgorithm chAlgo = new CHRoutingAlgorithmFactory(chGraph).createAlgo(new PMap());
+            int from = rnd.nextInt(numNodes);
+            int to = rnd.nextInt(numNodes);
+            assertEquals(dijkstra.calcPath(from, to).getWeight(), chAlgo.calcPath(from, to).getWeight(), 1.e-1, "seed: " + seed);
+        }
+    }
+
     private void checkPath(BaseGraph g, CHConfig c, int expShortcuts, double expDistance, IntIndexedContainer expNodes, int[] nodeOrdering) {
         PrepareContractionHierarchies prepare = createPrepareContractionHierarchies(g, c);
         useNodeOrdering(prepare, nodeOrdering);
@@ -46,6 +46,44 @@ public class LMApproximatorTest {
         run(seed);
     }
 
+    @RepeatedTest(value = 3)
+    public void heapWeights() {
+        final long seed = System.nanoTime();
+        Directory dir = new RAMDirectory();
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        EncodingManager encodingManager = new EncodingManager.Builder().add(speedEnc).add(Subnetwork.create("car")).build();
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).setDir(dir).create();
+        GHUtility.buildRandomGraph(graph, new Random(seed), 500, 2.2, true, speedEnc, null, 0.8, 0.8);
+        Weighting weighting = new SpeedWeighting(speedEnc);
+        PrepareLandmarks lm = new PrepareLandmarks(dir, graph, encodingManager, new LMConfig("car", weighting), 16);
+        lm.setMaximumWeight(10000);
+        lm.doWork();
+        LandmarkStorage lms = lm.getLandmarkStorage();
+
+        double[][] expected = approximateAll(graph, weighting, lms);
+        lms.copyWeightsToHeap();
+        double[][] actual = approximateAll(graph, weighting, lms);
+        for (int i = 0; i < expected.length; i++)
+            for (int v = 0; v < expected[i].length; v++)
+                assertEquals(expected[i][v], actual[i][v], "seed: " + seed + ", i: " + i + ", v: " + v);
+    }
+
+    private double[][] approximateAll(BaseGraph graph, Weighting weighting, LandmarkStorage lms) {
+        int targets = 20;
+        double[][] result = new double[2 * targets][graph.getNodes()];
+        for (int t = 0; t < targets; t++) {
+            WeightApproximator fwd = new LMApproximator(graph, weighting, weighting, graph.getNodes(), lms, 8, lms.getFactor(), false);
+            WeightApproximator bwd = fwd.reverse();
+            fwd.setTo(t);
+            bwd.setTo(t);
+            for (int v = 0; v < graph.getNodes(); v++) {
+                result[2 * t][v] = fwd.approximate(v);
+                result[2 * t + 1][v] = bwd.approximate(v);
+            }
+        }
+        return result;
+    }
+
     private void run(long seed) {
         Directory dir = new RAMDirectory();
         DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
@@ -30,6 +30,7 @@ import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.BaseGraph;
 import com.graphhopper.storage.Directory;
 import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.GHUtility;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -37,6 +38,7 @@ import org.junit.jupiter.api.Test;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import static java.util.Collections.emptyList;
 import static org.junit.jupiter.api.Assertions.*;
@@ -240,4 +242,32 @@ public class LandmarkStorageTest {
         storage.createLandmarks();
         assertEquals(3, storage.getSubnetworksWithLandmarks());
     }
+
+    @Test
+    public void testPreparationThreads() {
+        GHUtility.buildRandomGraph(graph, new Random(42), 500, 2.2, true, speedEnc, null, 0.8, 0.2);
+        Weighting weighting = new SpeedWeighting(speedEnc);
+        subnetworkRemoval(weighting, 10);
+        LandmarkStorage sequential = createLandmarks(weighting, 1);
+        LandmarkStorage concurrent = createLandmarks(weighting, 4);
+
+        // the result must not depend on the number of threads
+        assertEquals(sequential.getSubnetworksWithLandmarks(), concurrent.getSubnetworksWithLandmarks());
+        for (int subnetwork = 1; subnetwork < sequential.getSubnetworksWithLandmarks(); subnetwork++)
+            assertArrayEquals(sequential.getLandmarks(subnetwork), concurrent.getLandmarks(subnetwork));
+        for (int node = 0; node < graph.getNodes(); node++) {
+            for (int lm = 0; lm < sequential.getLandmarkCount(); lm++) {
+                assertEquals(sequential.getFromWeight(lm, node), concurrent.getFromWeight(lm, node));
+                assertEquals(sequential.getToWeight(lm, node), concurrent.getToWeight(lm, node));
+            }
+        }
+    }
+
+    private LandmarkStorage createLandmarks(Weighting weighting, int threads) {
+        LandmarkStorage storage = new LandmarkStorage(graph, encodingManager, new RAMDirectory(), new LMConfig("car", weighting), 8);
+        storage.setMinimumNodes(2);
+        storage.setPreparationThreads(threads);
+        storage.createLandmarks();
+        return storage;
+    }
 }
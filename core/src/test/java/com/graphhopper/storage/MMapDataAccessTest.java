@@ -59,4 +59,24 @@ public class MMapDataAccessTest extends DataAccessTest {
         assertEquals(123, da.getInt(7 * 4));
         da.close();
     }
+
+    @Test
+    public void testReadOnlyAndPrefetch() {
+        DataAccess da = new RAMDataAccess(name, directory, true, 128);
+        da.create(1000);
+        for (int i = 0; i < 250; i++)
+            da.setInt(i * 4, i);
+        da.flush();
+        da.close();
+
+        MMapDataAccess mmap = new MMapDataAccess(name, directory, false, 128);
+        assertTrue(mmap.loadExisting());
+        assertThrows(IllegalArgumentException.class, () -> mmap.prefetch(101));
+        mmap.prefetch(100);
+        for (int i = 0; i < 250; i++)
+            assertEquals(i, mmap.getInt(i * 4));
+        mmap.close();
+        // prefetching a closed DataAccess is a no-op
+        mmap.prefetch(100);
+    }
 }
@@ -621,6 +621,38 @@ public class LocationIndexTreeTest {
         g.close();
     }
 
+    @Test
+    public void testFindClosestEdges() {
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
+        Random rnd = new Random(42);
+        GHUtility.buildRandomGraph(graph, rnd, 100, 2.2, true, speedEnc, null, 0.8, 0.8);
+        LocationIndexTree index = createIndexNoPrepare(graph, 50);
+        index.prepareIndex();
+        for (int i = 0; i < 100; i++) {
+            double queryLat = 49.398 + rnd.nextDouble() * 0.014;
+            double queryLon = 9.698 + rnd.nextDouble() * 0.014;
+            double radius = rnd.nextDouble() * 300;
+            List<Snap> snaps = index.findClosestEdges(queryLat, queryLon, radius, EdgeFilter.ALL_EDGES);
+            for (int j = 1; j < snaps.size(); j++)
+                assertTrue(snaps.get(j - 1).getQueryDistance() <= snaps.get(j).getQueryDistance());
+
+            // compare with the closest distance to every edge
+            Set<Integer> expected = new HashSet<>();
+            AllEdgesIterator edge = graph.getAllEdges();
+            while (edge.next()) {
+                double[] closest = {Double.MAX_VALUE};
+                index.traverseEdge(queryLat, queryLon, edge, (node, normedDist, wayIndex, pos) -> closest[0] = Math.min(closest[0], normedDist));
+                if (DistancePlaneProjection.DIST_PLANE.calcDenormalizedDist(closest[0]) <= radius)
+                    expected.add(edge.getEdge());
+            }
+            Set<Integer> edges = new HashSet<>();
+            for (Snap snap : snaps)
+                assertTrue(edges.add(snap.getClosestEdge().getEdge()), "edges must only be found once");
+            assertEquals(expected, edges);
+        }
+        graph.close();
+    }
+
     @ParameterizedTest
     @ValueSource(booleans = {true, false})
     public void closeToTowerNode(boolean snapAtBase) {
@@ -0,0 +1,193 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.matching;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntHashSet;
+import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.routing.AStar.AStarEntry;
+import com.graphhopper.routing.AbstractRoutingAlgorithm;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.PathExtractor;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.WeightApproximator;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.IntFunction;
+
+import static com.graphhopper.util.EdgeIterator.ANY_EDGE;
+import static com.graphhopper.util.EdgeIterator.NO_EDGE;
+
+/**
+ * Calculates the edge-based shortest paths from one start to many targets with a single search, which is what map
+ * matching needs for the transitions from one candidate to all candidates of the next observation. The start and
+ * target edges can be restricted like for {@link com.graphhopper.routing.AStar#calcPath(int, int, int, int)}.
+ * <p>
+ * The search is goal-directed by the minimum of the weight approximations to all target nodes, which is still a
+ * consistent approximation, and stops as soon as all targets are found. Without approximation it is a Dijkstra search.
+ */
+public class AStarOneToMany extends AbstractRoutingAlgorithm {
+    private final GHIntObjectHashMap<AStarEntry> fromMap;
+    private final PriorityQueue<AStarEntry> fromHeap;
+    private IntFunction<WeightApproximator> approximatorFactory;
+    private WeightApproximator[] approximators = new WeightApproximator[0];
+    private int visitedNodes;
+    private boolean aborted;
+
+    public AStarOneToMany(Graph graph, Weighting weighting) {
+        super(graph, weighting, TraversalMode.EDGE_BASED);
+        // map matching searches are usually small
+        fromMap = new GHIntObjectHashMap<>(50);
+        fromHeap = new PriorityQueue<>(50);
+    }
+
+    /**
+     * @param approximatorFactory creates an approximation for the weight to the given target node, or null to use
+     *                            no approximation
+     */
+    public AStarOneToMany setApproximation(IntFunction<WeightApproximator> approximatorFactory) {
+        this.approximatorFactory = approximatorFactory;
+        return this;
+    }
+
+    /**
+     * @return the shortest path to every target, in the order of the targets. A path that is not found is empty.
+     */
+    public List<Path> calcPaths(int from, int fromOutEdge, int[] toNodes, int[] toInEdges) {
+        if (toNodes.length != toInEdges.length)
+            throw new IllegalArgumentException("There must be an incoming edge (or ANY_EDGE) for every target node");
+        checkAlreadyRun();
+        setupFinishTime();
+        AStarEntry[] found = new AStarEntry[toNodes.length];
+        IntHashSet targetNodes = new IntHashSet(toNodes.length);
+        IntArrayList distinctTargetNodes = new IntArrayList(toNodes.length);
+        int remaining = 0;
+        for (int i = 0; i < toNodes.length; i++) {
+            // like in AStar there is no path from or to NO_EDGE. we also skip targets whose incoming edge cannot be
+            // traversed towards them, like the wrong direction of a one-way road, because otherwise we would explore
+            // everything reachable from the start before giving up on them
+            if (fromOutEdge == NO_EDGE || toInEdges[i] == NO_EDGE || !canEnter(toNodes[i], toInEdges[i]))
+                continue;
+            remaining++;
+            if (targetNodes.add(toNodes[i]))
+                distinctTargetNodes.add(toNodes[i]);
+        }
+        if (approximatorFactory != null) {
+            approximators = new WeightApproximator[distinctTargetNodes.size()];
+            for (int i = 0; i < approximators.length; i++)
+                approximators[i] = approximatorFactory.apply(distinctTargetNodes.get(i));
+        }
+
+        double weightToGoal = approximate(from);
+        if (remaining > 0 && !Double.isInfinite(weightToGoal))
+            fromHeap.add(new AStarEntry(NO_EDGE, from, weightToGoal, 0));
+        while (remaining > 0 && !fromHeap.isEmpty()) {
+            AStarEntry currEdge = fromHeap.poll();
+            if (currEdge.isDeleted())
+                continue;
+            visitedNodes++;
+            if (isMaxVisitedNodesExceeded() || isTimeoutExceeded()) {
+                aborted = true;
+                break;
+            }
+
+            if (targetNodes.contains(currEdge.adjNode) && (fromOutEdge == ANY_EDGE || currEdge.edge != NO_EDGE)) {
+                for (int i = 0; i < toNodes.length; i++) {
+                    if (found[i] == null && toNodes[i] == currEdge.adjNode && toInEdges[i] != NO_EDGE
+                            && (toInEdges[i] == ANY_EDGE || toInEdges[i] == currEdge.edge)) {
+                        found[i] = currEdge;
+                        remaining--;
+                    }
+                }
+            }
+
+            EdgeIterator iter = edgeExplorer.setBaseNode(currEdge.adjNode);
+            while (iter.next()) {
+                if (!accept(iter, currEdge.edge) || (currEdge.edge == NO_EDGE && fromOutEdge != ANY_EDGE && iter.getEdge() != fromOutEdge))
+                    continue;
+
+                double tmpWeight = GHUtility.calcWeightWithTurnWeight(weighting, iter, false, currEdge.edge) + currEdge.getWeightOfVisitedPath();
+                if (Double.isInfinite(tmpWeight))
+                    continue;
+                int traversalId = traversalMode.createTraversalId(iter, false);
+                AStarEntry ase = fromMap.get(traversalId);
+                if (ase == null || ase.getWeightOfVisitedPath() > tmpWeight) {
+                    double currWeightToGoal = approximate(iter.getAdjNode());
+                    if (Double.isInfinite(currWeightToGoal))
+                        continue;
+                    if (ase != null)
+                        ase.setDeleted();
+                    ase = new AStarEntry(iter.getEdge(), iter.getAdjNode(), tmpWeight + currWeightToGoal, tmpWeight, currEdge);
+                    fromMap.put(traversalId, ase);
+                    fromHeap.add(ase);
+                }
+            }
+        }
+
+        List<Path> paths = new ArrayList<>(toNodes.length);
+        for (AStarEntry entry : found) {
+            // the weight of the entry includes the approximation, which is not necessarily zero at a target
+            paths.add(entry == null ? createEmptyPath() : PathExtractor.extractPath(graph, weighting, entry).setWeight(entry.getWeightOfVisitedPath()));
+        }
+        return paths;
+    }
+
+    private boolean canEnter(int toNode, int toInEdge) {
+        if (toInEdge == ANY_EDGE)
+            return true;
+        EdgeIteratorState edge = graph.getEdgeIteratorState(toInEdge, toNode);
+        return edge != null && !Double.isInfinite(weighting.calcEdgeWeight(edge, false));
+    }
+
+    /**
+     * @return true if the last search stopped because the maximum number of visited nodes or the timeout was
+     * exceeded, i.e. targets that were not found might still be reachable
+     */
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    private double approximate(int node) {
+        double min = approximators.length == 0 ? 0 : Double.POSITIVE_INFINITY;
+        for (WeightApproximator approximator : approximators)
+            min = Math.min(min, approximator.approximate(node));
+        return min;
+    }
+
+    @Override
+    public Path calcPath(int from, int to) {
+        return calcPaths(from, ANY_EDGE, new int[]{to}, new int[]{ANY_EDGE}).get(0);
+    }
+
+    @Override
+    public int getVisitedNodes() {
+        return visitedNodes;
+    }
+
+    @Override
+    public String getName() {
+        return "astar_one_to_many";
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.matching;
+
+import com.graphhopper.util.EdgeIteratorState;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Groups the directed real edges of a matched path and the states on them into {@link EdgeMatch}es, in the order
+ * they are traversed. An EdgeMatch is complete as soon as the path continues on another edge, so the complete ones
+ * can be taken out with {@link #poll()} while more of the path is added.
+ */
+class EdgeMatchCollector {
+    private List<EdgeMatch> edgeMatches = new ArrayList<>();
+    private List<State> states = new ArrayList<>();
+    private EdgeIteratorState currentDirectedRealEdge;
+
+    void addEdge(EdgeIteratorState newDirectedRealEdge) {
+        if (currentDirectedRealEdge != null && !equalEdges(currentDirectedRealEdge, newDirectedRealEdge)) {
+            edgeMatches.add(new EdgeMatch(currentDirectedRealEdge, states));
+            states = new ArrayList<>();
+        }
+        currentDirectedRealEdge = newDirectedRealEdge;
+    }
+
+    void addState(State state) {
+        states.add(state);
+    }
+
+    /**
+     * @return the EdgeMatches that were completed since the last call
+     */
+    List<EdgeMatch> poll() {
+        List<EdgeMatch> result = edgeMatches;
+        edgeMatches = new ArrayList<>();
+        return result;
+    }
+
+    /**
+     * @return the remaining EdgeMatches including the one of the last edge
+     */
+    List<EdgeMatch> finish() {
+        if (currentDirectedRealEdge != null) {
+            edgeMatches.add(new EdgeMatch(currentDirectedRealEdge, states));
+            currentDirectedRealEdge = null;
+            states = new ArrayList<>();
+        }
+        return poll();
+    }
+
+    private static boolean equalEdges(EdgeIteratorState edge1, EdgeIteratorState edge2) {
+        return edge1.getEdge() == edge2.getEdge()
+                && edge1.getBaseNode() == edge2.getBaseNode()
+                && edge1.getAdjNode() == edge2.getAdjNode();
+    }
+}
@@ -17,11 +17,13 @@
  */
 package com.graphhopper.matching;
 
+import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntHashSet;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.config.Profile;
 import com.graphhopper.routing.AStarBidirection;
 import com.graphhopper.routing.DijkstraBidirectionRef;
+import com.graphhopper.routing.EdgeToEdgeRoutingAlgorithm;
 import com.graphhopper.routing.Path;
 import com.graphhopper.routing.ev.BooleanEncodedValue;
 import com.graphhopper.routing.ev.Subnetwork;
@@ -38,15 +40,11 @@ import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.index.LocationIndexTree;
 import com.graphhopper.storage.index.Snap;
 import com.graphhopper.util.*;
-import com.graphhopper.util.shapes.BBox;
-import org.locationtech.jts.geom.Envelope;
 
 import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
-import static com.graphhopper.util.DistancePlaneProjection.DIST_PLANE;
-
 /**
  * This class matches real world GPX entries to the digital road network stored
  * in GraphHopper. The Viterbi algorithm is used to compute the most likely
@@ -66,6 +64,8 @@ import static com.graphhopper.util.DistancePlaneProjection.DIST_PLANE;
  * @author kodonnell
  */
 public class MapMatching {
+    // the number of nodes after which the one-to-many search of a transition falls back to a search per target
+    private static final int ONE_TO_MANY_MAX_VISITED_NODES = 10_000;
     private final BaseGraph graph;
     private final Router router;
     private final LocationIndexTree locationIndex;
@@ -75,6 +75,7 @@ public class MapMatching {
     private QueryGraph queryGraph;
 
     private Map<String, Object> statistics = new HashMap<>();
+    private final Map<String, Long> timings = new LinkedHashMap<>();
 
     public static MapMatching fromGraphHopper(GraphHopper graphHopper, PMap hints) {
         Router router = routerFromGraphHopper(graphHopper, hints);
@@ -124,23 +125,47 @@ public class MapMatching {
         int maxVisitedNodes = hints.getInt(Parameters.Routing.MAX_VISITED_NODES, Integer.MAX_VALUE);
 
         Router router = new Router() {
+            private long visitedNodes;
+
             @Override
             public EdgeFilter getSnapFilter() {
                 return snapFilter;
             }
 
+            /**
+             * Calculates the paths to all targets with one search instead of a bidirectional search per target. With
+             * landmarks the search is directed by the smallest landmark approximation to any of the targets. If this
+             * search gets too large, e.g. because a target is only reachable via a long detour or not at all, the
+             * remaining targets are calculated with a bidirectional search each, which gives up much earlier for
+             * unreachable targets.
+             */
             @Override
             public List<Path> calcPaths(QueryGraph queryGraph, int fromNode, int fromOutEdge, int[] toNodes, int[] toInEdges) {
                 assert (toNodes.length == toInEdges.length);
-                List<Path> result = new ArrayList<>();
-                for (int i = 0; i < toNodes.length; i++) {
-                    result.add(calcOnePath(queryGraph, fromNode, toNodes[i], fromOutEdge, toInEdges[i]));
+                Weighting queryGraphWeighting = queryGraph.wrapWeighting(weighting);
+                AStarOneToMany algo = new AStarOneToMany(queryGraph, queryGraphWeighting);
+                if (landmarks != null) {
+                    int activeLM = Math.min(8, landmarks.getLandmarkCount());
+                    algo.setApproximation(toNode -> {
+                        LMApproximator lmApproximator = LMApproximator.forLandmarks(queryGraph, queryGraphWeighting, landmarks, activeLM);
+                        lmApproximator.setTo(toNode);
+                        return lmApproximator;
+                    });
+                }
+                algo.setMaxVisitedNodes(Math.min(maxVisitedNodes, ONE_TO_MANY_MAX_VISITED_NODES));
+                List<Path> result = algo.calcPaths(fromNode, fromOutEdge, toNodes, toInEdges);
+                visitedNodes += algo.getVisitedNodes();
+                if (algo.isAborted() && maxVisitedNodes > ONE_TO_MANY_MAX_VISITED_NODES) {
+                    for (int i = 0; i < toNodes.length; i++) {
+                        if (!result.get(i).isFound())
+                            result.set(i, calcOnePath(queryGraph, queryGraphWeighting, fromNode, toNodes[i], fromOutEdge, toInEdges[i]));
+                    }
                 }
                 return result;
             }
 
-            private Path calcOnePath(QueryGraph queryGraph, int fromNode, int toNode, int fromOutEdge, int toInEdge) {
-                Weighting queryGraphWeighting = queryGraph.wrapWeighting(weighting);
+            private Path calcOnePath(QueryGraph queryGraph, Weighting queryGraphWeighting, int fromNode, int toNode, int fromOutEdge, int toInEdge) {
+                EdgeToEdgeRoutingAlgorithm algo;
                 if (landmarks != null) {
                     AStarBidirection aStarBidirection = new AStarBidirection(queryGraph, queryGraphWeighting, TraversalMode.EDGE_BASED) {
                         @Override
@@ -149,26 +174,31 @@ public class MapMatching {
                         }
                     };
                     int activeLM = Math.min(8, landmarks.getLandmarkCount());
-                    LMApproximator lmApproximator = LMApproximator.forLandmarks(queryGraph, queryGraphWeighting, landmarks, activeLM);
-                    aStarBidirection.setApproximation(lmApproximator);
-                    aStarBidirection.setMaxVisitedNodes(maxVisitedNodes);
-                    return aStarBidirection.calcPath(fromNode, toNode, fromOutEdge, toInEdge);
+                    aStarBidirection.setApproximation(LMApproximator.forLandmarks(queryGraph, queryGraphWeighting, landmarks, activeLM));
+                    algo = aStarBidirection;
                 } else {
-                    DijkstraBidirectionRef dijkstraBidirectionRef = new DijkstraBidirectionRef(queryGraph, queryGraphWeighting, TraversalMode.EDGE_BASED) {
+                    algo = new DijkstraBidirectionRef(queryGraph, queryGraphWeighting, TraversalMode.EDGE_BASED) {
                         @Override
                         protected void initCollections(int size) {
                             super.initCollections(50);
                         }
                     };
-                    dijkstraBidirectionRef.setMaxVisitedNodes(maxVisitedNodes);
-                    return dijkstraBidirectionRef.calcPath(fromNode, toNode, fromOutEdge, toInEdge);
                 }
+                algo.setMaxVisitedNodes(maxVisitedNodes);
+                Path path = algo.calcPath(fromNode, toNode, fromOutEdge, toInEdge);
+                visitedNodes += algo.getVisitedNodes();
+                return path;
             }
 
             @Override
             public Weighting getWeighting() {
                 return weighting;
             }
+
+            @Override
+            public long getVisitedNodes() {
+                return visitedNodes;
+            }
         };
         return router;
     }
@@ -195,32 +225,51 @@ public class MapMatching {
         this.measurementErrorSigma = measurementErrorSigma;
     }
 
+    /**
+     * Starts matching a trace whose observations are not all known yet, see {@link MapMatchingSession}. The session
+     * uses the current measurement error and transition parameters.
+     */
+    public MapMatchingSession createSession() {
+        return new MapMatchingSession(this, measurementErrorSigma, transitionProbabilityBeta);
+    }
+
     public MatchResult match(List<Observation> observations) {
         List<Observation> filteredObservations = filterObservations(observations);
         statistics.put("filteredObservations", filteredObservations.size());
+        timings.clear();
 
         // Snap observations to links. Generates multiple candidate snaps per observation.
+        StopWatch sw = new StopWatch().start();
         List<List<Snap>> snapsPerObservation = filteredObservations.stream()
                 .map(o -> findCandidateSnaps(o.getPoint().lat, o.getPoint().lon))
                 .collect(Collectors.toList());
         statistics.put("snapsPerObservation", snapsPerObservation.stream().mapToInt(Collection::size).toArray());
+        timings.put("snap", sw.stop().getNanos());
 
         // Create the query graph, containing split edges so that all the places where an observation might have happened
         // are a node. This modifies the Snap objects and puts the new node numbers into them.
+        sw = new StopWatch().start();
         queryGraph = QueryGraph.create(graph, snapsPerObservation.stream().flatMap(Collection::stream).collect(Collectors.toList()));
 
+        timings.put("query_graph", sw.stop().getNanos());
+
         // Creates candidates from the Snaps of all observations (a candidate is basically a
         // Snap + direction).
+        sw = new StopWatch().start();
         List<ObservationWithCandidateStates> timeSteps = createTimeSteps(filteredObservations, snapsPerObservation);
+        timings.put("candidates", sw.stop().getNanos());
 
         // Compute the most likely sequence of map matching candidates:
+        sw = new StopWatch().start();
         List<SequenceState<State, Observation, Path>> seq = computeViterbiSequence(timeSteps);
+        timings.put("viterbi", sw.stop().getNanos());
         statistics.put("transitionDistances", seq.stream().filter(s -> s.transitionDescriptor != null).mapToLong(s -> Math.round(s.transitionDescriptor.getDistance())).toArray());
         statistics.put("visitedNodes", router.getVisitedNodes());
         statistics.put("snapDistanceRanks", IntStream.range(0, seq.size()).map(i -> snapsPerObservation.get(i).indexOf(seq.get(i).state.getSnap())).toArray());
         statistics.put("snapDistances", seq.stream().mapToDouble(s -> s.state.getSnap().getQueryDistance()).toArray());
         statistics.put("maxSnapDistances", IntStream.range(0, seq.size()).mapToDouble(i -> snapsPerObservation.get(i).stream().mapToDouble(Snap::getQueryDistance).max().orElse(-1.0)).toArray());
 
+        sw = new StopWatch().start();
         List<EdgeIteratorState> path = seq.stream().filter(s1 -> s1.transitionDescriptor != null).flatMap(s1 -> s1.transitionDescriptor.calcEdges().stream()).collect(Collectors.toList());
 
         MatchResult result = new MatchResult(prepareEdgeMatches(seq));
@@ -231,6 +280,7 @@ public class MapMatching {
         result.setGPXEntriesLength(gpxLength(observations));
         result.setGraph(queryGraph);
         result.setWeighting(queryGraphWeighting);
+        timings.put("edge_matches", sw.stop().getNanos());
         return result;
     }
 
@@ -278,47 +328,47 @@ public class MapMatching {
     public List<Snap> findCandidateSnaps(final double queryLat, final double queryLon) {
         double rLon = (measurementErrorSigma * 360.0 / DistanceCalcEarth.DIST_EARTH.calcCircumference(queryLat));
         double rLat = measurementErrorSigma / DistanceCalcEarth.METERS_PER_DEGREE;
-        Envelope envelope = new Envelope(queryLon, queryLon, queryLat, queryLat);
-        for (int i = 0; i < 50; i++) {
-            envelope.expandBy(rLon, rLat);
-            List<Snap> snaps = findCandidateSnapsInBBox(queryLat, queryLon, BBox.fromEnvelope(envelope));
-            if (!snaps.isEmpty()) {
-                return snaps;
-            }
-        }
-        return Collections.emptyList();
-    }
-
-    private List<Snap> findCandidateSnapsInBBox(double queryLat, double queryLon, BBox queryShape) {
-        EdgeFilter edgeFilter = router.getSnapFilter();
+        // The candidates are the snaps in the smallest box around the query point, growing by sigma in every direction,
+        // that contains any snap at all. The tiles are visited in increasing distance so we can stop as soon as this
+        // box is covered, and every edge is only inspected once.
         List<Snap> snaps = new ArrayList<>();
-        IntHashSet seenEdges = new IntHashSet();
+        IntArrayList boxes = new IntArrayList();
         IntHashSet seenNodes = new IntHashSet();
-        locationIndex.query(queryShape, edgeId -> {
-            EdgeIteratorState edge = graph.getEdgeIteratorStateForKey(edgeId * 2);
-            if (seenEdges.add(edgeId) && edgeFilter.accept(edge)) {
-                Snap snap = new Snap(queryLat, queryLon);
-                locationIndex.traverseEdge(queryLat, queryLon, edge, (node, normedDist, wayIndex, pos) -> {
-                    if (normedDist < snap.getQueryDistance()) {
-                        snap.setQueryDistance(normedDist);
-                        snap.setClosestNode(node);
-                        snap.setWayIndex(wayIndex);
-                        snap.setSnappedPosition(pos);
-                    }
-                });
-                double dist = DIST_PLANE.calcDenormalizedDist(snap.getQueryDistance());
-                snap.setClosestEdge(edge);
-                snap.setQueryDistance(dist);
-                if (snap.isValid() && (snap.getSnappedPosition() != Snap.Position.TOWER || seenNodes.add(snap.getClosestNode()))) {
-                    snap.calcSnappedPoint(DistanceCalcEarth.DIST_EARTH);
-                    if (queryShape.contains(snap.getSnappedPoint().lat, snap.getSnappedPoint().lon)) {
-                        snaps.add(snap);
-                    }
+        locationIndex.traverseClosestEdges(queryLat, queryLon, router.getSnapFilter(), new LocationIndexTree.SnapVisitor() {
+            int smallestBox = 50;
+
+            @Override
+            public void onSnap(Snap snap) {
+                if (snap.getSnappedPosition() == Snap.Position.TOWER && !seenNodes.add(snap.getClosestNode()))
+                    return;
+                snap.calcSnappedPoint(DistanceCalcEarth.DIST_EARTH);
+                int box = Math.max(1, (int) Math.ceil(Math.max(
+                        Math.abs(snap.getSnappedPoint().lat - queryLat) / rLat,
+                        Math.abs(snap.getSnappedPoint().lon - queryLon) / rLon)));
+                if (box <= smallestBox) {
+                    smallestBox = box;
+                    snaps.add(snap);
+                    boxes.add(box);
                 }
             }
+
+            @Override
+            public boolean isFinished(double minDistance) {
+                // the corners of the box are further away than its half side
+                return minDistance > smallestBox * measurementErrorSigma * Math.sqrt(2);
+            }
         });
-        snaps.sort(Comparator.comparingDouble(Snap::getQueryDistance));
-        return snaps;
+        if (snaps.isEmpty())
+            return Collections.emptyList();
+        // the box only ever shrinks, so the last snap is in the smallest one
+        int smallestBox = boxes.get(boxes.size() - 1);
+        List<Snap> candidates = new ArrayList<>();
+        for (int i = 0; i < snaps.size(); i++) {
+            if (boxes.get(i) == smallestBox)
+                candidates.add(snaps.get(i));
+        }
+        candidates.sort(Comparator.comparingDouble(Snap::getQueryDistance));
+        return candidates;
     }
 
     /**
@@ -338,32 +388,7 @@ public class MapMatching {
             Collection<Snap> splits = splitsPerObservation.get(i);
             List<State> candidates = new ArrayList<>();
             for (Snap split : splits) {
-                if (queryGraph.isVirtualNode(split.getClosestNode())) {
-                    List<VirtualEdgeIteratorState> virtualEdges = new ArrayList<>();
-                    EdgeIterator iter = queryGraph.createEdgeExplorer().setBaseNode(split.getClosestNode());
-                    while (iter.next()) {
-                        if (!queryGraph.isVirtualEdge(iter.getEdge())) {
-                            throw new RuntimeException("Virtual nodes must only have virtual edges "
-                                    + "to adjacent nodes.");
-                        }
-                        virtualEdges.add((VirtualEdgeIteratorState) queryGraph.getEdgeIteratorState(iter.getEdge(), iter.getAdjNode()));
-                    }
-                    if (virtualEdges.size() != 2) {
-                        throw new RuntimeException("Each virtual node must have exactly 2 "
-                                + "virtual edges (reverse virtual edges are not returned by the "
-                                + "EdgeIterator");
-                    }
-
-                    // Create a directed candidate for each of the two possible directions through
-                    // the virtual node. We need to add candidates for both directions because
-                    // we don't know yet which is the correct one. This will be figured
-                    // out by the Viterbi algorithm.
-                    candidates.add(new State(observation, split, virtualEdges.get(0), virtualEdges.get(1)));
-                    candidates.add(new State(observation, split, virtualEdges.get(1), virtualEdges.get(0)));
-                } else {
-                    // Create an undirected candidate for the real node.
-                    candidates.add(new State(observation, split));
-                }
+                addStates(queryGraph, observation, split, candidates);
             }
 
             timeSteps.add(new ObservationWithCandidateStates(observation, candidates));
@@ -371,6 +396,39 @@ public class MapMatching {
         return timeSteps;
     }
 
+    /**
+     * Adds the candidates for one snap of an observation, i.e. a directed candidate for each direction if the snap
+     * is a virtual node of the query graph and an undirected one if it is a real node.
+     */
+    static void addStates(QueryGraph queryGraph, Observation observation, Snap split, List<State> candidates) {
+        if (queryGraph.isVirtualNode(split.getClosestNode())) {
+            List<VirtualEdgeIteratorState> virtualEdges = new ArrayList<>();
+            EdgeIterator iter = queryGraph.createEdgeExplorer().setBaseNode(split.getClosestNode());
+            while (iter.next()) {
+                if (!queryGraph.isVirtualEdge(iter.getEdge())) {
+                    throw new RuntimeException("Virtual nodes must only have virtual edges "
+                            + "to adjacent nodes.");
+                }
+                virtualEdges.add((VirtualEdgeIteratorState) queryGraph.getEdgeIteratorState(iter.getEdge(), iter.getAdjNode()));
+            }
+            if (virtualEdges.size() != 2) {
+                throw new RuntimeException("Each virtual node must have exactly 2 "
+                        + "virtual edges (reverse virtual edges are not returned by the "
+                        + "EdgeIterator");
+            }
+
+            // Create a directed candidate for each of the two possible directions through
+            // the virtual node. We need to add candidates for both directions because
+            // we don't know yet which is the correct one. This will be figured
+            // out by the Viterbi algorithm.
+            candidates.add(new State(observation, split, virtualEdges.get(0), virtualEdges.get(1)));
+            candidates.add(new State(observation, split, virtualEdges.get(1), virtualEdges.get(0)));
+        } else {
+            // Create an undirected candidate for the real node.
+            candidates.add(new State(observation, split));
+        }
+    }
+
     static class Label {
         int timeStep;
         State state;
@@ -473,43 +531,21 @@ public class MapMatching {
 
         // (Consider totally forbidding candidate states to be snapped to a point, and make them all be on directed
         // edges, then that corner case goes away.)
-        List<EdgeMatch> edgeMatches = new ArrayList<>();
-        List<State> states = new ArrayList<>();
-        EdgeIteratorState currentDirectedRealEdge = null;
+        EdgeMatchCollector edgeMatches = new EdgeMatchCollector();
         for (SequenceState<State, Observation, Path> transitionAndState : seq) {
             // transition (except before the first state)
             if (transitionAndState.transitionDescriptor != null) {
                 for (EdgeIteratorState edge : transitionAndState.transitionDescriptor.calcEdges()) {
-                    EdgeIteratorState newDirectedRealEdge = resolveToRealEdge(edge);
-                    if (currentDirectedRealEdge != null) {
-                        if (!equalEdges(currentDirectedRealEdge, newDirectedRealEdge)) {
-                            EdgeMatch edgeMatch = new EdgeMatch(currentDirectedRealEdge, states);
-                            edgeMatches.add(edgeMatch);
-                            states = new ArrayList<>();
-                        }
-                    }
-                    currentDirectedRealEdge = newDirectedRealEdge;
+                    edgeMatches.addEdge(resolveToRealEdge(queryGraph, edge));
                 }
             }
             // state
             if (transitionAndState.state.isOnDirectedEdge()) { // as opposed to on a node
-                EdgeIteratorState newDirectedRealEdge = resolveToRealEdge(transitionAndState.state.getOutgoingVirtualEdge());
-                if (currentDirectedRealEdge != null) {
-                    if (!equalEdges(currentDirectedRealEdge, newDirectedRealEdge)) {
-                        EdgeMatch edgeMatch = new EdgeMatch(currentDirectedRealEdge, states);
-                        edgeMatches.add(edgeMatch);
-                        states = new ArrayList<>();
-                    }
-                }
-                currentDirectedRealEdge = newDirectedRealEdge;
+                edgeMatches.addEdge(resolveToRealEdge(queryGraph, transitionAndState.state.getOutgoingVirtualEdge()));
             }
-            states.add(transitionAndState.state);
-        }
-        if (currentDirectedRealEdge != null) {
-            EdgeMatch edgeMatch = new EdgeMatch(currentDirectedRealEdge, states);
-            edgeMatches.add(edgeMatch);
+            edgeMatches.addState(transitionAndState.state);
         }
-        return edgeMatches;
+        return edgeMatches.finish();
     }
 
     private double gpxLength(List<Observation> gpxList) {
@@ -527,13 +563,7 @@ public class MapMatching {
         }
     }
 
-    private boolean equalEdges(EdgeIteratorState edge1, EdgeIteratorState edge2) {
-        return edge1.getEdge() == edge2.getEdge()
-                && edge1.getBaseNode() == edge2.getBaseNode()
-                && edge1.getAdjNode() == edge2.getAdjNode();
-    }
-
-    private EdgeIteratorState resolveToRealEdge(EdgeIteratorState edgeIteratorState) {
+    EdgeIteratorState resolveToRealEdge(QueryGraph queryGraph, EdgeIteratorState edgeIteratorState) {
         if (queryGraph.isVirtualNode(edgeIteratorState.getBaseNode()) || queryGraph.isVirtualNode(edgeIteratorState.getAdjNode())) {
             return graph.getEdgeIteratorStateForKey(((VirtualEdgeIteratorState) edgeIteratorState).getOriginalEdgeKey());
         } else {
@@ -541,10 +571,25 @@ public class MapMatching {
         }
     }
 
+    BaseGraph getGraph() {
+        return graph;
+    }
+
+    Router getRouter() {
+        return router;
+    }
+
     public Map<String, Object> getStatistics() {
         return statistics;
     }
 
+    /**
+     * @return the nanoseconds the stages of the last {@link #match} call took, in the order they ran
+     */
+    public Map<String, Long> getTimings() {
+        return timings;
+    }
+
     private static class MapMatchedPath extends Path {
         MapMatchedPath(Graph graph, Weighting weighting, List<EdgeIteratorState> edges) {
             super(graph);
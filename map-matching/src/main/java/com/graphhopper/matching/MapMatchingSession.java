@@ -0,0 +1,417 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.matching;
+
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.DistancePlaneProjection;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Matches a trace that is still growing, e.g. the positions of a vehicle that are sent while it drives. Observations
+ * are added one at a time or in small batches and the Viterbi algorithm is run forward for each new observation only,
+ * so the total work grows linearly with the length of the trace instead of quadratically when matching the whole
+ * trace again and again.
+ * <p>
+ * The session keeps the candidates of the observations whose best predecessors are not yet known for sure. As soon as
+ * the best paths to all candidates of the latest observation go through a single candidate of an earlier observation
+ * the part of the path up to this candidate cannot change anymore and its {@link EdgeMatch}es are returned. If the
+ * paths do not converge within {@link #setMaxWindowSize} observations the candidate on the currently best path is
+ * chosen, so the lattice stays bounded. Each transition is calculated on a QueryGraph that only contains the snaps of
+ * the two observations involved.
+ * <p>
+ * The observations are filtered like in {@link MapMatching#filterObservations} and the result of the whole trace is
+ * the same as for {@link MapMatching#match} unless the window size forces a decision. A session is not thread-safe.
+ */
+public class MapMatchingSession {
+    private static final Comparator<Candidate> BY_PROBABILITY = Comparator.comparingDouble(c -> c.minusLogProbability);
+    private final MapMatching mapMatching;
+    private final HmmProbabilities probabilities;
+    private final double measurementErrorSigma;
+    private final DistanceCalc distanceCalc = new DistancePlaneProjection();
+    private final EdgeMatchCollector edgeMatches = new EdgeMatchCollector();
+    private int maxWindowSize = 50;
+
+    // the observations whose candidates are not final yet
+    private final List<Step> window = new ArrayList<>();
+    // the last observation whose candidate is final, it only contains this candidate
+    private Step anchor;
+    private Observation lastAccepted;
+    private Observation lastObservation;
+    private Observation skipped;
+    private double skippedDistance;
+    private int timeSteps;
+    private double matchLength;
+    private long matchMillis;
+    private boolean finished;
+
+    MapMatchingSession(MapMatching mapMatching, double measurementErrorSigma, double transitionProbabilityBeta) {
+        this.mapMatching = mapMatching;
+        this.measurementErrorSigma = measurementErrorSigma;
+        this.probabilities = new HmmProbabilities(measurementErrorSigma, transitionProbabilityBeta);
+    }
+
+    /**
+     * The maximum number of observations whose candidates are kept before the candidate of the oldest one is chosen
+     * even if the paths did not converge yet.
+     */
+    public MapMatchingSession setMaxWindowSize(int maxWindowSize) {
+        if (maxWindowSize < 1)
+            throw new IllegalArgumentException("max window size must be positive but was " + maxWindowSize);
+        this.maxWindowSize = maxWindowSize;
+        return this;
+    }
+
+    /**
+     * Adds the observations one after another, see {@link #addObservation(Observation)}.
+     *
+     * @throws IllegalArgumentException for the first observation that cannot be reached. The observations before it
+     *                                  were added, but the EdgeMatches that became final for them are not returned, so
+     *                                  use {@link #addObservation(Observation)} to handle such errors per observation.
+     */
+    public List<EdgeMatch> addObservations(List<Observation> observations) {
+        List<EdgeMatch> result = new ArrayList<>();
+        for (Observation observation : observations)
+            result.addAll(addObservation(observation));
+        return result;
+    }
+
+    /**
+     * Adds the next observation of the trace. Observations that are closer than two times the measurement error to
+     * the previous one are skipped, unless they turn out to be the last one.
+     *
+     * @return the EdgeMatches that became final, in the order of the trace
+     * @throws IllegalArgumentException if the observation cannot be reached from any candidate of the previous one.
+     *                                  The session is unchanged in this case and can be continued.
+     */
+    public List<EdgeMatch> addObservation(Observation observation) {
+        if (finished)
+            throw new IllegalStateException("The session is already finished");
+        if (lastAccepted == null) {
+            observation.setAccumulatedLinearDistanceToPrevious(0);
+            addStep(observation);
+            lastAccepted = lastObservation = observation;
+            return edgeMatches.poll();
+        }
+
+        double acc = skippedDistance + dist(lastObservation, observation);
+        double distance = dist(lastAccepted, observation);
+        if (distance <= 2 * measurementErrorSigma) {
+            skippedDistance = acc;
+            skipped = lastObservation = observation;
+            return Collections.emptyList();
+        }
+        // see MapMatching.filterObservations, this keeps the sum of the linear distances of all observations
+        observation.setAccumulatedLinearDistanceToPrevious(acc - distance);
+        addStep(observation);
+        lastAccepted = lastObservation = observation;
+        skipped = null;
+        skippedDistance = 0;
+        return edgeMatches.poll();
+    }
+
+    /**
+     * Chooses the most likely candidates for the observations that are left and ends the session.
+     *
+     * @return the remaining EdgeMatches of the trace
+     */
+    public List<EdgeMatch> finish() {
+        if (finished)
+            throw new IllegalStateException("The session is already finished");
+        Observation last = skipped;
+        skipped = null;
+        if (last != null) {
+            // like in the batch matching the last observation is always used
+            last.setAccumulatedLinearDistanceToPrevious(skippedDistance - dist(lastAccepted, last));
+            addStep(last);
+        }
+        finished = true;
+        if (!window.isEmpty())
+            finalizeUntil(window.size() - 1, Collections.min(window.get(window.size() - 1).candidates, BY_PROBABILITY));
+        return edgeMatches.finish();
+    }
+
+    /**
+     * Length of the path that was matched so far in meters
+     */
+    public double getMatchLength() {
+        return matchLength;
+    }
+
+    /**
+     * Duration of the path that was matched so far in milliseconds
+     */
+    public long getMatchMillis() {
+        return matchMillis;
+    }
+
+    private double dist(Observation from, Observation to) {
+        return distanceCalc.calcDist(from.getPoint().lat, from.getPoint().lon, to.getPoint().lat, to.getPoint().lon);
+    }
+
+    private void addStep(Observation observation) {
+        List<Snap> snaps = mapMatching.findCandidateSnaps(observation.getPoint().lat, observation.getPoint().lon);
+        if (snaps.isEmpty())
+            throw new IllegalArgumentException("Sequence is broken for submitted track at time step " + timeSteps
+                    + ", no candidates found. observation:" + observation);
+        Step previous = window.isEmpty() ? anchor : window.get(window.size() - 1);
+        Step step = previous == null ? firstStep(observation, snaps) : nextStep(previous, observation, snaps);
+        timeSteps++;
+        window.add(step);
+        if (window.size() > maxWindowSize)
+            forceDecision();
+        finalizeConverged();
+    }
+
+    private Step firstStep(Observation observation, List<Snap> snaps) {
+        Step step = new Step(observation);
+        List<Snap> copies = copy(snaps);
+        QueryGraph queryGraph = QueryGraph.create(mapMatching.getGraph(), copies);
+        for (int i = 0; i < snaps.size(); i++) {
+            for (State state : createStates(queryGraph, observation, copies.get(i))) {
+                Candidate candidate = new Candidate(snaps.get(i), state, realEdge(queryGraph, state));
+                candidate.minusLogProbability = -probabilities.emissionLogProbability(state.getSnap().getQueryDistance());
+                step.candidates.add(candidate);
+            }
+        }
+        return step;
+    }
+
+    /**
+     * Calculates the transitions from the candidates of the previous observation to the ones of the new observation
+     * and keeps the new candidates that can be reached.
+     */
+    private Step nextStep(Step previous, Observation observation, List<Snap> snaps) {
+        // the previous candidates share the snaps of their observation, the two directions of a virtual node too
+        Set<Snap> previousSnaps = new LinkedHashSet<>();
+        for (Candidate candidate : previous.candidates)
+            previousSnaps.add(candidate.snap);
+        List<Snap> previousCopies = copy(new ArrayList<>(previousSnaps));
+        List<Snap> copies = copy(snaps);
+        List<Snap> allCopies = new ArrayList<>(previousCopies);
+        allCopies.addAll(copies);
+        QueryGraph queryGraph = QueryGraph.create(mapMatching.getGraph(), allCopies);
+
+        List<Candidate> candidates = new ArrayList<>();
+        for (int i = 0; i < snaps.size(); i++) {
+            for (State state : createStates(queryGraph, observation, copies.get(i))) {
+                Candidate candidate = new Candidate(snaps.get(i), state, realEdge(queryGraph, state));
+                candidate.minusLogProbability = Double.POSITIVE_INFINITY;
+                candidates.add(candidate);
+            }
+        }
+        int[] toNodes = candidates.stream().mapToInt(c -> c.state.getSnap().getClosestNode()).toArray();
+        int[] toInEdges = candidates.stream().mapToInt(c -> c.state.isOnDirectedEdge() ? c.state.getIncomingVirtualEdge().getEdge() : EdgeIterator.ANY_EDGE).toArray();
+        final double linearDistance = distanceCalc.calcDist(previous.observation.getPoint().lat, previous.observation.getPoint().lon,
+                observation.getPoint().lat, observation.getPoint().lon)
+                + observation.getAccumulatedLinearDistanceToPrevious();
+
+        int snapIndex = 0;
+        for (Snap previousSnap : previousSnaps) {
+            for (State from : createStates(queryGraph, previous.observation, previousCopies.get(snapIndex))) {
+                Candidate fromCandidate = previous.find(previousSnap, realEdge(queryGraph, from));
+                if (fromCandidate == null)
+                    continue;
+                int fromOutEdge = from.isOnDirectedEdge() ? from.getOutgoingVirtualEdge().getEdge() : EdgeIterator.ANY_EDGE;
+                List<Path> paths = mapMatching.getRouter().calcPaths(queryGraph, from.getSnap().getClosestNode(), fromOutEdge, toNodes, toInEdges);
+                for (int i = 0; i < candidates.size(); i++) {
+                    Candidate to = candidates.get(i);
+                    Path path = paths.get(i);
+                    if (!path.isFound())
+                        continue;
+                    double minusLogProbability = fromCandidate.minusLogProbability
+                            - probabilities.emissionLogProbability(to.state.getSnap().getQueryDistance())
+                            - probabilities.transitionLogProbability(path.getDistance(), linearDistance);
+                    if (minusLogProbability < to.minusLogProbability) {
+                        to.minusLogProbability = minusLogProbability;
+                        to.back = fromCandidate;
+                        // the query graph is only valid for this step, so we keep the real edges of the path
+                        to.transitionEdges = new ArrayList<>();
+                        for (EdgeIteratorState edge : path.calcEdges())
+                            to.transitionEdges.add(mapMatching.resolveToRealEdge(queryGraph, edge));
+                        to.transitionDistance = path.getDistance();
+                        to.transitionMillis = path.getTime();
+                    }
+                }
+            }
+            snapIndex++;
+        }
+
+        Step step = new Step(observation);
+        double min = Double.POSITIVE_INFINITY;
+        for (Candidate candidate : candidates) {
+            if (candidate.back != null) {
+                step.candidates.add(candidate);
+                min = Math.min(min, candidate.minusLogProbability);
+            }
+        }
+        if (step.candidates.isEmpty())
+            throw new IllegalArgumentException("Sequence is broken for submitted track at time step " + timeSteps
+                    + ". observation:" + observation);
+        // only the differences matter, so we keep the numbers small for long traces
+        for (Candidate candidate : step.candidates)
+            candidate.minusLogProbability -= min;
+        return step;
+    }
+
+    /**
+     * Finds the latest observation in the window where the best paths to all candidates of the newest observation
+     * meet, and makes everything up to it final.
+     */
+    private void finalizeConverged() {
+        Set<Candidate> ancestors = new LinkedHashSet<>(window.get(window.size() - 1).candidates);
+        for (int i = window.size() - 1; i >= 0; i--) {
+            if (ancestors.size() == 1) {
+                finalizeUntil(i, ancestors.iterator().next());
+                return;
+            }
+            Set<Candidate> previous = new LinkedHashSet<>();
+            for (Candidate candidate : ancestors)
+                if (candidate.back != null)
+                    previous.add(candidate.back);
+            ancestors = previous;
+        }
+    }
+
+    /**
+     * Chooses the candidate of the oldest observation in the window that is on the currently best path and drops the
+     * candidates that do not descend from it.
+     */
+    private void forceDecision() {
+        Candidate best = Collections.min(window.get(window.size() - 1).candidates, BY_PROBABILITY);
+        for (int i = window.size() - 1; i > 0; i--)
+            best = best.back;
+        window.get(0).candidates.retainAll(Collections.singleton(best));
+        for (int i = 1; i < window.size(); i++) {
+            Set<Candidate> kept = new HashSet<>(window.get(i - 1).candidates);
+            window.get(i).candidates.removeIf(c -> !kept.contains(c.back));
+        }
+    }
+
+    /**
+     * Makes the path to the given candidate of the observation at the given index of the window final.
+     */
+    private void finalizeUntil(int windowIndex, Candidate last) {
+        List<Candidate> path = new ArrayList<>(windowIndex + 1);
+        Candidate candidate = last;
+        for (int i = windowIndex; i >= 0; i--) {
+            path.add(candidate);
+            candidate = candidate.back;
+        }
+        Collections.reverse(path);
+        for (Candidate c : path) {
+            if (c.back != null) {
+                for (EdgeIteratorState edge : c.transitionEdges)
+                    edgeMatches.addEdge(edge);
+                matchLength += c.transitionDistance;
+                matchMillis += c.transitionMillis;
+            }
+            if (c.realEdge != null)
+                edgeMatches.addEdge(c.realEdge);
+            edgeMatches.addState(c.state);
+        }
+
+        anchor = window.get(windowIndex);
+        anchor.candidates.clear();
+        anchor.candidates.add(last);
+        window.subList(0, windowIndex + 1).clear();
+        // free the finalized part of the lattice
+        last.back = null;
+        last.transitionEdges = null;
+    }
+
+    private List<State> createStates(QueryGraph queryGraph, Observation observation, Snap snap) {
+        List<State> states = new ArrayList<>(2);
+        MapMatching.addStates(queryGraph, observation, snap, states);
+        return states;
+    }
+
+    /**
+     * @return the directed real edge of a state on a virtual node, or null if the state is on a real node
+     */
+    private EdgeIteratorState realEdge(QueryGraph queryGraph, State state) {
+        return state.isOnDirectedEdge() ? mapMatching.resolveToRealEdge(queryGraph, state.getOutgoingVirtualEdge()) : null;
+    }
+
+    /**
+     * QueryGraph.create changes the snaps, so every QueryGraph gets its own copies.
+     */
+    private static List<Snap> copy(List<Snap> snaps) {
+        List<Snap> copies = new ArrayList<>(snaps.size());
+        for (Snap snap : snaps) {
+            Snap copy = new Snap(snap.getQueryPoint().lat, snap.getQueryPoint().lon);
+            copy.setClosestEdge(snap.getClosestEdge());
+            copy.setClosestNode(snap.getClosestNode());
+            copy.setQueryDistance(snap.getQueryDistance());
+            copy.setWayIndex(snap.getWayIndex());
+            copy.setSnappedPosition(snap.getSnappedPosition());
+            copy.setSnappedPoint(snap.getSnappedPoint());
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+    private static class Step {
+        final Observation observation;
+        final List<Candidate> candidates = new ArrayList<>();
+
+        Step(Observation observation) {
+            this.observation = observation;
+        }
+
+        Candidate find(Snap snap, EdgeIteratorState realEdge) {
+            for (Candidate candidate : candidates)
+                if (candidate.snap == snap && (candidate.realEdge == null ? realEdge == null : realEdge != null && candidate.realEdge.getEdgeKey() == realEdge.getEdgeKey()))
+                    return candidate;
+            return null;
+        }
+    }
+
+    /**
+     * A candidate of an observation that is independent of the QueryGraph it was created in, so it can be matched
+     * with the states of the same snap and direction in the QueryGraph of the next transition.
+     */
+    private static class Candidate {
+        // the snap as found in the location index, before any QueryGraph changed it
+        final Snap snap;
+        final State state;
+        final EdgeIteratorState realEdge;
+        double minusLogProbability;
+        Candidate back;
+        List<EdgeIteratorState> transitionEdges;
+        double transitionDistance;
+        long transitionMillis;
+
+        Candidate(Snap snap, State state, EdgeIteratorState realEdge) {
+            this.snap = snap;
+            this.state = state;
+            this.realEdge = realEdge;
+        }
+    }
+}
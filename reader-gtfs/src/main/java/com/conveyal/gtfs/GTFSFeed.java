@@ -31,6 +31,7 @@ import com.conveyal.gtfs.error.GeneralError;
 import com.conveyal.gtfs.model.Calendar;
 import com.conveyal.gtfs.model.*;
 import com.google.common.collect.Iterables;
+import com.graphhopper.gtfs.StopTimeStore;
 import com.graphhopper.gtfs.Trips;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.CoordinateList;
@@ -59,7 +60,7 @@ import java.util.stream.StreamSupport;
  * All entities must be from a single feed namespace.
  * Composed of several GTFSTables.
  */
-public class GTFSFeed implements Cloneable, Closeable {
+public class GTFSFeed implements Cloneable, Closeable, StopTimeStore {
 
     private static final Logger LOG = LoggerFactory.getLogger(GTFSFeed.class);
 
@@ -209,6 +210,7 @@ public class GTFSFeed implements Cloneable, Closeable {
      * For the given trip ID, fetch all the stop times in order of increasing stop_sequence.
      * This is an efficient iteration over a tree map.
      */
+    @Override
     public Iterable<StopTime> getOrderedStopTimesForTrip (String trip_id) {
         Map<Fun.Tuple2, StopTime> tripStopTimes =
                 stop_times.subMap(
@@ -218,6 +220,11 @@ public class GTFSFeed implements Cloneable, Closeable {
         return tripStopTimes.values();
     }
 
+    @Override
+    public StopTime getStopTime (String trip_id, int stop_sequence) {
+        return stop_times.get(Fun.t2(trip_id, stop_sequence));
+    }
+
     /** Get the shape for the given shape ID */
     public Shape getShape (String shape_id) {
         Shape shape = new Shape(this, shape_id);
@@ -227,9 +234,18 @@ public class GTFSFeed implements Cloneable, Closeable {
     /**
      * For the given trip ID, fetch all the stop times in order, and interpolate stop-to-stop travel times.
      */
+    @Override
     public List<StopTime> getInterpolatedStopTimesForTrip (String trip_id) throws FirstAndLastStopsDoNotHaveTimes {
+        return interpolateStopTimes(getOrderedStopTimesForTrip(trip_id), stops);
+    }
+
+    /**
+     * Interpolates stop-to-stop travel times for the given stop times of one trip, in order. The stop times are
+     * cloned, not modified.
+     */
+    public static List<StopTime> interpolateStopTimes (Iterable<StopTime> orderedStopTimes, Map<String, Stop> stops) throws FirstAndLastStopsDoNotHaveTimes {
         // clone stop times so as not to modify base GTFS structures
-        StopTime[] stopTimes = StreamSupport.stream(Spliterators.spliteratorUnknownSize(getOrderedStopTimesForTrip(trip_id).iterator(), 0), false)
+        StopTime[] stopTimes = StreamSupport.stream(Spliterators.spliteratorUnknownSize(orderedStopTimes.iterator(), 0), false)
                 .map(st -> st.clone())
                 .toArray(i -> new StopTime[i]);
 
@@ -395,7 +411,7 @@ public class GTFSFeed implements Cloneable, Closeable {
     }
 
     /** Thrown when we cannot interpolate stop times because the first or last stops do not have times */
-    public class FirstAndLastStopsDoNotHaveTimes extends RuntimeException {
+    public static class FirstAndLastStopsDoNotHaveTimes extends RuntimeException {
         /** do nothing */
     }
 
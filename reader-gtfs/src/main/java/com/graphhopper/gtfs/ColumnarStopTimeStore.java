@@ -0,0 +1,323 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.ObjectIntHashMap;
+import com.conveyal.gtfs.GTFSFeed;
+import com.conveyal.gtfs.model.StopTime;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The stop_times of one GTFS feed in primitive columns, memory-mapped like the graph. Trip, stop and headsign ids
+ * are interned to ints. The stop times of a trip are contiguous and ordered by stop_sequence, and the interpolated
+ * arrival and departure times are computed once at import, so reading a trip neither deserializes nor
+ * interpolates.
+ * <p>
+ * The columns are stored one after the other, so a column is a contiguous int array of length
+ * {@link #getStopTimeCount()}.
+ */
+public class ColumnarStopTimeStore implements StopTimeStore {
+
+    private static final int C_STOP_SEQUENCE = 0, C_STOP = 1, C_ARRIVAL = 2, C_DEPARTURE = 3, C_INTERPOLATED_ARRIVAL = 4,
+            C_INTERPOLATED_DEPARTURE = 5, C_PICKUP_TYPE = 6, C_DROP_OFF_TYPE = 7, C_TIMEPOINT = 8, C_HEADSIGN = 9,
+            C_SHAPE_DIST_TRAVELED_HIGH = 10, C_SHAPE_DIST_TRAVELED_LOW = 11, COLUMNS = 12;
+
+    private final Directory dir;
+    private final String name;
+    // the columns
+    private final DataAccess stopTimes;
+    // the first stop time of every trip plus a sentinel, then one int per trip that is 0 if its times can't be interpolated
+    private final DataAccess trips;
+    private int stopTimeCount;
+    private String[] tripIds;
+    private String[] stopIds;
+    private String[] headsigns;
+    private ObjectIntHashMap<String> tripIndex;
+    // only while creating
+    private IntArrayList tripOffsets;
+    private IntArrayList interpolatable;
+
+    public ColumnarStopTimeStore(Directory dir, String feedId) {
+        this.dir = dir;
+        this.name = feedId + "_stop_times";
+        stopTimes = dir.create(name, dir.getDefaultType(name, true), -1);
+        trips = dir.create(name + "_trips", dir.getDefaultType(name + "_trips", true), -1);
+    }
+
+    /**
+     * Copies the stop times out of the MapDB tables of the feed, which iterate by (trip_id, stop_sequence).
+     */
+    public void create(GTFSFeed feed) {
+        stopTimeCount = feed.stop_times.size();
+        stopTimes.create(4L * COLUMNS * stopTimeCount);
+        trips.create(1000);
+        List<String> tripIdList = new ArrayList<>();
+        ObjectIntHashMap<String> stopIndex = new ObjectIntHashMap<>();
+        List<String> stopIdList = new ArrayList<>();
+        ObjectIntHashMap<String> headsignIndex = new ObjectIntHashMap<>();
+        List<String> headsignList = new ArrayList<>();
+        List<StopTime> tripStopTimes = new ArrayList<>();
+        tripOffsets = new IntArrayList();
+        interpolatable = new IntArrayList();
+        int stopTime = 0;
+        for (StopTime st : feed.stop_times.values()) {
+            if (!tripStopTimes.isEmpty() && !tripStopTimes.get(0).trip_id.equals(st.trip_id)) {
+                stopTime = addTrip(feed, tripIdList, tripStopTimes, stopTime);
+                tripStopTimes.clear();
+            }
+            tripStopTimes.add(st);
+            setColumn(C_STOP_SEQUENCE, stopTime + tripStopTimes.size() - 1, st.stop_sequence);
+            setColumn(C_STOP, stopTime + tripStopTimes.size() - 1, intern(st.stop_id, stopIndex, stopIdList));
+            setColumn(C_HEADSIGN, stopTime + tripStopTimes.size() - 1, st.stop_headsign == null ? -1 : intern(st.stop_headsign, headsignIndex, headsignList));
+        }
+        if (!tripStopTimes.isEmpty())
+            stopTime = addTrip(feed, tripIdList, tripStopTimes, stopTime);
+        if (stopTime != stopTimeCount)
+            throw new IllegalStateException("Expected " + stopTimeCount + " stop times but found " + stopTime);
+        tripOffsets.add(stopTime);
+        trips.ensureCapacity(4L * (tripOffsets.size() + interpolatable.size()));
+        for (int i = 0; i < tripOffsets.size(); i++)
+            trips.setInt(4L * i, tripOffsets.get(i));
+        for (int i = 0; i < interpolatable.size(); i++)
+            trips.setInt(4L * (tripOffsets.size() + i), interpolatable.get(i));
+        tripIds = tripIdList.toArray(new String[0]);
+        stopIds = stopIdList.toArray(new String[0]);
+        headsigns = headsignList.toArray(new String[0]);
+        tripOffsets = null;
+        interpolatable = null;
+        buildTripIndex();
+    }
+
+    private int addTrip(GTFSFeed feed, List<String> tripIdList, List<StopTime> tripStopTimes, int firstStopTime) {
+        tripIdList.add(tripStopTimes.get(0).trip_id);
+        List<StopTime> interpolated;
+        try {
+            interpolated = GTFSFeed.interpolateStopTimes(tripStopTimes, feed.stops);
+        } catch (GTFSFeed.FirstAndLastStopsDoNotHaveTimes e) {
+            interpolated = null;
+        }
+        for (int i = 0; i < tripStopTimes.size(); i++) {
+            StopTime st = tripStopTimes.get(i);
+            int stopTime = firstStopTime + i;
+            setColumn(C_ARRIVAL, stopTime, st.arrival_time);
+            setColumn(C_DEPARTURE, stopTime, st.departure_time);
+            setColumn(C_INTERPOLATED_ARRIVAL, stopTime, interpolated != null ? interpolated.get(i).arrival_time : st.arrival_time);
+            setColumn(C_INTERPOLATED_DEPARTURE, stopTime, interpolated != null ? interpolated.get(i).departure_time : st.departure_time);
+            setColumn(C_PICKUP_TYPE, stopTime, st.pickup_type);
+            setColumn(C_DROP_OFF_TYPE, stopTime, st.drop_off_type);
+            setColumn(C_TIMEPOINT, stopTime, st.timepoint);
+            long shapeDistTraveled = Double.doubleToLongBits(st.shape_dist_traveled);
+            setColumn(C_SHAPE_DIST_TRAVELED_HIGH, stopTime, (int) (shapeDistTraveled >>> 32));
+            setColumn(C_SHAPE_DIST_TRAVELED_LOW, stopTime, (int) shapeDistTraveled);
+        }
+        tripOffsets.add(firstStopTime);
+        interpolatable.add(interpolated != null ? 1 : 0);
+        return firstStopTime + tripStopTimes.size();
+    }
+
+    private static int intern(String id, ObjectIntHashMap<String> index, List<String> ids) {
+        int idx = index.getOrDefault(id, -1);
+        if (idx < 0) {
+            idx = ids.size();
+            index.put(id, idx);
+            ids.add(id);
+        }
+        return idx;
+    }
+
+    public boolean loadExisting() {
+        if (!stopTimes.loadExisting() || !trips.loadExisting())
+            return false;
+        stopTimeCount = stopTimes.getHeader(0);
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(dir.getLocation() + name + "_ids"))))) {
+            tripIds = readStrings(ois);
+            stopIds = readStrings(ois);
+            headsigns = readStrings(ois);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        buildTripIndex();
+        return true;
+    }
+
+    public void flush() {
+        stopTimes.setHeader(0, stopTimeCount);
+        trips.setHeader(0, tripIds.length);
+        stopTimes.flush();
+        trips.flush();
+        try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(dir.getLocation() + name + "_ids"))))) {
+            writeStrings(oos, tripIds);
+            writeStrings(oos, stopIds);
+            writeStrings(oos, headsigns);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String[] readStrings(ObjectInputStream ois) throws IOException {
+        String[] strings = new String[ois.readInt()];
+        for (int i = 0; i < strings.length; i++)
+            strings[i] = ois.readUTF();
+        return strings;
+    }
+
+    private static void writeStrings(ObjectOutputStream oos, String[] strings) throws IOException {
+        oos.writeInt(strings.length);
+        for (String string : strings)
+            oos.writeUTF(string);
+    }
+
+    private void buildTripIndex() {
+        tripIndex = new ObjectIntHashMap<>(tripIds.length);
+        for (int i = 0; i < tripIds.length; i++)
+            tripIndex.put(tripIds[i], i);
+    }
+
+    private void setColumn(int column, int stopTime, int value) {
+        stopTimes.setInt(4L * ((long) column * stopTimeCount + stopTime), value);
+    }
+
+    private int getColumn(int column, int stopTime) {
+        return stopTimes.getInt(4L * ((long) column * stopTimeCount + stopTime));
+    }
+
+    public int getStopTimeCount() {
+        return stopTimeCount;
+    }
+
+    /**
+     * @return the index of the trip, or -1 if the feed has no stop times for it
+     */
+    public int getTripIndex(String tripId) {
+        return tripIndex.getOrDefault(tripId, -1);
+    }
+
+    public int getFirstStopTime(int trip) {
+        return trips.getInt(4L * trip);
+    }
+
+    /**
+     * @return the index of the first stop time after the trip, exclusive
+     */
+    public int getEndStopTime(int trip) {
+        return trips.getInt(4L * (trip + 1));
+    }
+
+    /**
+     * @return the index of the stop time of the trip with the given stop_sequence, or -1 if there is none
+     */
+    public int findStopTime(int trip, int stopSequence) {
+        int low = getFirstStopTime(trip);
+        int high = getEndStopTime(trip) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midStopSequence = getColumn(C_STOP_SEQUENCE, mid);
+            if (midStopSequence < stopSequence)
+                low = mid + 1;
+            else if (midStopSequence > stopSequence)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    public int getStopSequence(int stopTime) {
+        return getColumn(C_STOP_SEQUENCE, stopTime);
+    }
+
+    public String getStopId(int stopTime) {
+        return stopIds[getColumn(C_STOP, stopTime)];
+    }
+
+    public int getArrivalTime(int stopTime) {
+        return getColumn(C_ARRIVAL, stopTime);
+    }
+
+    public int getDepartureTime(int stopTime) {
+        return getColumn(C_DEPARTURE, stopTime);
+    }
+
+    public int getInterpolatedArrivalTime(int stopTime) {
+        return getColumn(C_INTERPOLATED_ARRIVAL, stopTime);
+    }
+
+    public int getInterpolatedDepartureTime(int stopTime) {
+        return getColumn(C_INTERPOLATED_DEPARTURE, stopTime);
+    }
+
+    @Override
+    public Iterable<StopTime> getOrderedStopTimesForTrip(String tripId) {
+        int trip = getTripIndex(tripId);
+        if (trip < 0)
+            return Collections.emptyList();
+        List<StopTime> result = new ArrayList<>(getEndStopTime(trip) - getFirstStopTime(trip));
+        for (int stopTime = getFirstStopTime(trip); stopTime < getEndStopTime(trip); stopTime++)
+            result.add(toStopTime(trip, stopTime, false));
+        return result;
+    }
+
+    @Override
+    public List<StopTime> getInterpolatedStopTimesForTrip(String tripId) throws GTFSFeed.FirstAndLastStopsDoNotHaveTimes {
+        int trip = getTripIndex(tripId);
+        if (trip < 0)
+            return Collections.emptyList();
+        if (trips.getInt(4L * (tripIds.length + 1 + trip)) == 0)
+            throw new GTFSFeed.FirstAndLastStopsDoNotHaveTimes();
+        List<StopTime> result = new ArrayList<>(getEndStopTime(trip) - getFirstStopTime(trip));
+        for (int stopTime = getFirstStopTime(trip); stopTime < getEndStopTime(trip); stopTime++)
+            result.add(toStopTime(trip, stopTime, true));
+        return result;
+    }
+
+    @Override
+    public StopTime getStopTime(String tripId, int stopSequence) {
+        int trip = getTripIndex(tripId);
+        if (trip < 0)
+            return null;
+        int stopTime = findStopTime(trip, stopSequence);
+        return stopTime < 0 ? null : toStopTime(trip, stopTime, false);
+    }
+
+    private StopTime toStopTime(int trip, int stopTime, boolean interpolated) {
+        StopTime st = new StopTime();
+        st.trip_id = tripIds[trip];
+        st.stop_id = getStopId(stopTime);
+        st.stop_sequence = getStopSequence(stopTime);
+        st.arrival_time = interpolated ? getInterpolatedArrivalTime(stopTime) : getArrivalTime(stopTime);
+        st.departure_time = interpolated ? getInterpolatedDepartureTime(stopTime) : getDepartureTime(stopTime);
+        int headsign = getColumn(C_HEADSIGN, stopTime);
+        st.stop_headsign = headsign < 0 ? null : headsigns[headsign];
+        st.pickup_type = getColumn(C_PICKUP_TYPE, stopTime);
+        st.drop_off_type = getColumn(C_DROP_OFF_TYPE, stopTime);
+        st.timepoint = getColumn(C_TIMEPOINT, stopTime);
+        st.shape_dist_traveled = Double.longBitsToDouble(((long) getColumn(C_SHAPE_DIST_TRAVELED_HIGH, stopTime) << 32)
+                | (getColumn(C_SHAPE_DIST_TRAVELED_LOW, stopTime) & 0xFFFFFFFFL));
+        return st;
+    }
+}
@@ -76,11 +76,11 @@ public class GraphHopperGtfs extends GraphHopper {
             ptGraph.loadExisting();
             stopIndex.loadExisting();
             if (ghConfig.getBool("gtfs.trip_based", false)) {
-                for (String trafficDayString : ghConfig.getString("gtfs.schedule_day", null).split(",")) {
-                    LocalDate trafficDay = LocalDate.parse(trafficDayString);
-                    LOGGER.info("Loading trip-based transfers for pt router. Schedule day: {}", trafficDay);
-                    gtfsStorage.tripTransfers.getTripTransfers().put(trafficDay, gtfsStorage.deserializeTripTransfersMap("trip_transfers_" + trafficDayString));
-                }
+                LOGGER.info("Loading trip-based transfers for pt router");
+                TripTransferIndex tripTransferIndex = new TripTransferIndex(getBaseGraph().getDirectory());
+                if (!tripTransferIndex.loadExisting())
+                    throw new IllegalStateException("gtfs.trip_based is set, but the graph was imported without trip-based transfers");
+                gtfsStorage.setTripTransferIndex(tripTransferIndex);
                 for (Map.Entry<String, GTFSFeed> entry : this.gtfsStorage.getGtfsFeeds().entrySet()) {
                     for (Stop stop : entry.getValue().stops.values()) {
                         gtfsStorage.tripTransfers.getPatternBoardings(new GtfsStorage.FeedIdWithStopId(entry.getKey(), stop.stop_id));
@@ -123,14 +123,13 @@ public class GraphHopperGtfs extends GraphHopper {
                 interpolateTransfers(allReaders, allTransfers);
                 if (ghConfig.getBool("gtfs.trip_based", false)) {
                     ArrayListMultimap<Integer, GtfsStorage.FeedIdWithStopId> stopsForStationNode = Multimaps.invertFrom(Multimaps.forMap(gtfsStorage.getStationNodes()), ArrayListMultimap.create());
-                    for (String trafficDayString : ghConfig.getString("gtfs.schedule_day", null).split(",")) {
-                        LocalDate trafficDay = LocalDate.parse(trafficDayString);
-                        LOGGER.info("Computing trip-based transfers for pt router. Schedule day: {}", trafficDay);
-                        Map<Trips.TripAtStopTime, Collection<Trips.TripAtStopTime>> tripTransfersMap = gtfsStorage.tripTransfers.getTripTransfers(trafficDay);
-                        gtfsStorage.tripTransfers.findAllTripTransfersInto(tripTransfersMap, trafficDay, allTransfers, stopsForStationNode);
-                        LOGGER.info("Writing. Schedule day: {}", trafficDay);
-                        gtfsStorage.serializeTripTransfersMap("trip_transfers_" + trafficDayString, tripTransfersMap);
-                    }
+                    List<LocalDate> trafficDays = Arrays.stream(ghConfig.getString("gtfs.schedule_day", null).split(",")).map(LocalDate::parse).collect(Collectors.toList());
+                    LOGGER.info("Computing trip-based transfers for pt router. Schedule days: {}", trafficDays);
+                    TripTransferIndex tripTransferIndex = new TripTransferIndex(getBaseGraph().getDirectory());
+                    tripTransferIndex.create(gtfsStorage.tripTransfers, trafficDays, allTransfers, stopsForStationNode);
+                    LOGGER.info("Writing {} trip-based transfers", tripTransferIndex.getTransferCount());
+                    tripTransferIndex.flush();
+                    gtfsStorage.setTripTransferIndex(tripTransferIndex);
                 }
             } catch (Exception e) {
                 throw new RuntimeException("Error while constructing transit network. Is your GTFS file valid? Please check log for possible causes.", e);
@@ -141,6 +140,10 @@ public class GraphHopperGtfs extends GraphHopper {
             stopIndex.flush();
         }
         gtfsStorage.setStopIndex(stopIndex);
+        if (ghConfig.getBool("gtfs.raptor", false)) {
+            LOGGER.info("Building timetable for RAPTOR pt router");
+            gtfsStorage.getRaptorTimetable();
+        }
     }
 
     private void interpolateTransfers(HashMap<String, GtfsReader> readers, Map<String, Transfers> allTransfers) {
@@ -26,7 +26,6 @@ import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.storage.index.InMemConstructionIndex;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.storage.index.Snap;
-import org.mapdb.Fun;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -77,6 +76,7 @@ class GtfsReader {
     private final Transfers transfers;
     private final String id;
     private GTFSFeed feed;
+    private StopTimeStore stopTimeStore;
     private final Map<String, Map<GtfsStorage.PlatformDescriptor, NavigableMap<Integer, Integer>>> departureTimelinesByStop = new HashMap<>();
     private final Map<String, Map<GtfsStorage.PlatformDescriptor, NavigableMap<Integer, Integer>>> arrivalTimelinesByStop = new HashMap<>();
 
@@ -85,6 +85,7 @@ class GtfsReader {
         this.gtfsStorage = gtfsStorage;
         this.streetNetworkIndex = streetNetworkIndex;
         this.feed = this.gtfsStorage.getGtfsFeeds().get(id);
+        this.stopTimeStore = this.gtfsStorage.getStopTimeStore(id);
         this.transfers = transfers;
         this.startDate = feed.getStartDate();
         this.endDate = feed.getEndDate();
@@ -141,7 +142,7 @@ class GtfsReader {
                             }
                         }
                         ArrayList<StopTime> stopTimes = new ArrayList<>();
-                        feed.getInterpolatedStopTimesForTrip(trip.trip_id).forEach(stopTimes::add);
+                        stopTimeStore.getInterpolatedStopTimesForTrip(trip.trip_id).forEach(stopTimes::add);
                         return new TripWithStopTimes(trip, stopTimes, validOnDay, Collections.emptySet(), Collections.emptySet());
                     })
                     .sorted(Comparator.comparingInt(trip -> trip.stopTimes.iterator().next().departure_time))
@@ -404,7 +405,7 @@ class GtfsReader {
 
     int addDelayedBoardEdge(ZoneId zoneId, GtfsRealtime.TripDescriptor tripDescriptor, int stopSequence, int departureTime, int departureNode, BitSet validOnDay) {
         Trip trip = feed.trips.get(tripDescriptor.getTripId());
-        StopTime stopTime = feed.stop_times.get(new Fun.Tuple2(tripDescriptor.getTripId(), stopSequence));
+        StopTime stopTime = stopTimeStore.getStopTime(tripDescriptor.getTripId(), stopSequence);
         Map<GtfsStorage.PlatformDescriptor, NavigableMap<Integer, Integer>> departureTimelineNodesByRoute = departureTimelinesByStop.computeIfAbsent(stopTime.stop_id, s -> new HashMap<>());
         NavigableMap<Integer, Integer> departureTimelineNodes = departureTimelineNodesByRoute.computeIfAbsent(GtfsStorage.PlatformDescriptor.route(id, stopTime.stop_id, trip.route_id), s -> new TreeMap<>());
         int departureTimelineNode = departureTimelineNodes.computeIfAbsent(departureTime % (24 * 60 * 60), t -> out.createNode());
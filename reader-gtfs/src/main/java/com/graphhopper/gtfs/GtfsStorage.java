@@ -54,6 +54,8 @@ public class GtfsStorage {
 	private LineIntIndex stopIndex;
 	private PtGraph ptGraph;
 	public Trips tripTransfers;
+	private RaptorTimetable raptorTimetable;
+	private TripTransferIndex tripTransferIndex;
 
 	public void setStopIndex(LineIntIndex stopIndex) {
 		this.stopIndex = stopIndex;
@@ -63,6 +65,26 @@ public class GtfsStorage {
 		return stopIndex;
 	}
 
+	public void setTripTransferIndex(TripTransferIndex tripTransferIndex) {
+		this.tripTransferIndex = tripTransferIndex;
+	}
+
+	/**
+	 * The precomputed transfers for the trip-based router, or null if they were not computed.
+	 */
+	public TripTransferIndex getTripTransferIndex() {
+		return tripTransferIndex;
+	}
+
+	/**
+	 * The timetable for the RAPTOR router. It is derived from {@link #tripTransfers} when it is first needed.
+	 */
+	public synchronized RaptorTimetable getRaptorTimetable() {
+		if (raptorTimetable == null)
+			raptorTimetable = new RaptorTimetable(this);
+		return raptorTimetable;
+	}
+
     public PtGraph getPtGraph() {
         return ptGraph;
     }
@@ -163,6 +185,7 @@ public class GtfsStorage {
 	private Directory dir;
 	private Set<String> gtfsFeedIds;
 	private Map<String, GTFSFeed> gtfsFeeds = new HashMap<>();
+	private Map<String, StopTimeStore> stopTimeStores = new HashMap<>();
 	private Map<String, Map<String, Fare>> faresByFeed;
 	private Map<FeedIdWithStopId, Integer> stationNodes;
 	private IntObjectHashMap<int[]> skippedEdgesForTransfer;
@@ -199,6 +222,13 @@ public class GtfsStorage {
 
             GTFSFeed feed = new GTFSFeed(dbFile);
             this.gtfsFeeds.put(gtfsFeedId, feed);
+            ColumnarStopTimeStore stopTimeStore = new ColumnarStopTimeStore(dir, gtfsFeedId);
+            if (stopTimeStore.loadExisting()) {
+                this.stopTimeStores.put(gtfsFeedId, stopTimeStore);
+            } else {
+                LOGGER.warn("No columnar stop times for {}, reading them from the feed database. Reimport to speed this up.", gtfsFeedId);
+                this.stopTimeStores.put(gtfsFeedId, feed);
+            }
         }
 		ptToStreet = deserializeIntoIntIntHashMap("pt_to_street");
 		streetToPt = deserializeIntoIntIntHashMap("street_to_pt");
@@ -284,6 +314,10 @@ public class GtfsStorage {
 			GTFSFeed feed = new GTFSFeed(dbFile);
 			feed.loadFromFileAndLogErrors(zipFileOrDirectory);
 			this.gtfsFeeds.put(id, feed);
+			ColumnarStopTimeStore stopTimeStore = new ColumnarStopTimeStore(dir, id);
+			stopTimeStore.create(feed);
+			stopTimeStore.flush();
+			this.stopTimeStores.put(id, stopTimeStore);
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
@@ -326,6 +360,14 @@ public class GtfsStorage {
 		return Collections.unmodifiableMap(gtfsFeeds);
 	}
 
+	/**
+	 * The stop times of a feed. These are a {@link ColumnarStopTimeStore} unless the graph was imported before it
+	 * existed.
+	 */
+	public StopTimeStore getStopTimeStore(String feedId) {
+		return stopTimeStores.get(feedId);
+	}
+
 	public Map<FeedIdWithStopId, Integer> getStationNodes() {
 		return stationNodes;
 	}
@@ -345,45 +387,6 @@ public class GtfsStorage {
 		}
 	}
 
-	public void serializeTripTransfersMap(String filename, Map<Trips.TripAtStopTime, Collection<Trips.TripAtStopTime>> data) {
-		try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(dir.getLocation() + filename))))) {
-			oos.writeInt(data.size());
-			for (Map.Entry<Trips.TripAtStopTime, Collection<Trips.TripAtStopTime>> entry : data.entrySet()) {
-				oos.writeInt(entry.getKey().tripIdx);
-				oos.writeInt(entry.getKey().stop_sequence);
-				oos.writeInt(entry.getValue().size());
-				for (Trips.TripAtStopTime tripAtStopTime : entry.getValue()) {
-					oos.writeInt(tripAtStopTime.tripIdx);
-					oos.writeInt(tripAtStopTime.stop_sequence);
-				}
-			}
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
-	}
-
-	public Map<Trips.TripAtStopTime, Collection<Trips.TripAtStopTime>> deserializeTripTransfersMap(String filename) {
-		try (FileInputStream in = new FileInputStream(dir.getLocation() + filename)) {
-			ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(in));
-			int size = ois.readInt();
-			Map<Trips.TripAtStopTime, Collection<Trips.TripAtStopTime>> result = new TreeMap<>();
-			for (int i = 0; i < size; i++) {
-				Trips.TripAtStopTime origin = new Trips.TripAtStopTime(ois.readInt(), ois.readInt());
-				int nDestinations = ois.readInt();
-				List<Trips.TripAtStopTime> destinations = new ArrayList<>(nDestinations);
-				for (int j = 0; j < nDestinations; j++) {
-					int tripIdxTo = ois.readInt();
-					int stop_sequenceTo = ois.readInt();
-					destinations.add(new Trips.TripAtStopTime(tripIdxTo, stop_sequenceTo));
-				}
-				result.put(origin, destinations);
-			}
-			return result;
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
-	}
-
 	public void serialize(String filename, IntObjectHashMap<int[]> data) {
 		try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(dir.getLocation() + filename))))) {
 			oos.writeInt(data.size());
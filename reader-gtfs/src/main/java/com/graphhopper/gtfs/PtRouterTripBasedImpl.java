@@ -70,8 +70,19 @@ public final class PtRouterTripBasedImpl implements PtRouter {
     private final Map<String, ZoneId> feedZoneIds = new ConcurrentHashMap<>(); // ad-hoc cache for timezone field of gtfs feed
     private final GraphHopper graphHopper;
 
+    private final boolean raptor;
+
     @Inject
     public PtRouterTripBasedImpl(GraphHopper graphHopper, GraphHopperConfig config, TranslationMap translationMap, BaseGraph baseGraph, EncodingManager encodingManager, LocationIndex locationIndex, GtfsStorage gtfsStorage, PathDetailsBuilderFactory pathDetailsBuilderFactory) {
+        this(graphHopper, config, translationMap, baseGraph, encodingManager, locationIndex, gtfsStorage, pathDetailsBuilderFactory, false);
+    }
+
+    /**
+     * @param raptor if true, the transit part of the journey is found by the {@link RaptorRouter} instead of
+     *               the {@link TripBasedRouter}. Access, egress and the response are the same for both.
+     */
+    PtRouterTripBasedImpl(GraphHopper graphHopper, GraphHopperConfig config, TranslationMap translationMap, BaseGraph baseGraph, EncodingManager encodingManager, LocationIndex locationIndex, GtfsStorage gtfsStorage, PathDetailsBuilderFactory pathDetailsBuilderFactory, boolean raptor) {
+        this.raptor = raptor;
         this.graphHopper = graphHopper;
         this.config = config;
         this.weightingFactory = new DefaultWeightingFactory(baseGraph, encodingManager);
@@ -86,6 +97,8 @@ public final class PtRouterTripBasedImpl implements PtRouter {
 
     @Override
     public GHResponse route(Request request) {
+        if (!raptor && gtfsStorage.getTripTransferIndex() == null)
+            throw new IllegalArgumentException("The trip-based router needs the trip transfers, but they were not loaded. Set gtfs.trip_based to true.");
         return new RequestHandler(request).route();
     }
 
@@ -181,9 +194,17 @@ public final class PtRouterTripBasedImpl implements PtRouter {
                     .collect(Collectors.toList());
             response.addDebugInfo("access/egress routing:" + stopWatch1.stop().getSeconds() + "s");
 
-            TripBasedRouter tripBasedRouter = new TripBasedRouter(gtfsStorage, gtfsStorage.tripTransfers);
-            List<TripBasedRouter.ResultLabel> routes;
-            routes = tripBasedRouter.routeNaiveProfileWithNaiveBetas(new TripBasedRouter.Parameters(accessStations, egressStations, initialTime, maxProfileDuration, trip -> (blockedRouteTypes & (1 << trip.routeType)) == 0, betaAccessTime, betaEgressTime, betaTransfers, transferPenaltiesByRouteType));
+            TripBasedRouter.Parameters parameters = new TripBasedRouter.Parameters(accessStations, egressStations, initialTime, maxProfileDuration, blockedRouteTypes, betaAccessTime, betaEgressTime, betaTransfers, transferPenaltiesByRouteType);
+            List<RaptorRouter.Journey> raptorJourneys = Collections.emptyList();
+            List<TripBasedRouter.ResultLabel> routes = Collections.emptyList();
+            StopWatch stopWatch2 = new StopWatch().start();
+            if (raptor) {
+                raptorJourneys = new RaptorRouter(gtfsStorage.getRaptorTimetable()).route(parameters);
+            } else {
+                TripBasedRouter tripBasedRouter = new TripBasedRouter(gtfsStorage, gtfsStorage.tripTransfers);
+                routes = tripBasedRouter.routeNaiveProfileWithNaiveBetas(parameters);
+            }
+            response.addDebugInfo("transit routing:" + stopWatch2.stop().getSeconds() + "s");
 
             tripFromLabel = new TripFromLabel(queryGraph, encodingManager, gtfsStorage, RealtimeFeed.empty(), pathDetailsBuilderFactory, walkSpeedKmH);
             if (walkDestLabel != null) {
@@ -194,8 +215,16 @@ public final class PtRouterTripBasedImpl implements PtRouter {
                 walkResponsePath.setRouteWeight(walkResponsePath.getTime() * betaAccessTime);
                 response.add(walkResponsePath);
             }
+            List<ResponsePath> responsePaths = new ArrayList<>();
             for (TripBasedRouter.ResultLabel route : routes) {
-                ResponsePath responsePath = extractResponse(route, result);
+                logger.debug("{}", route);
+                responsePaths.add(extractResponse(route.enqueuedTripSegment, route.stopTime, route.destination, result));
+            }
+            for (RaptorRouter.Journey journey : raptorJourneys) {
+                logger.debug("{}", journey);
+                responsePaths.add(extractResponse(journey.lastSegment, journey.alightStopSequence, journey.destination, result));
+            }
+            for (ResponsePath responsePath : responsePaths) {
                 if (walkResponsePath != null) {
                     Instant departureTime = responsePath.getLegs().get(0).getDepartureTime().toInstant();
                     Duration waitTimeBeforeDeparture = Duration.between(initialTime, departureTime);
@@ -270,12 +299,11 @@ public final class PtRouterTripBasedImpl implements PtRouter {
             return stationLabels;
         }
 
-        private ResponsePath extractResponse(TripBasedRouter.ResultLabel route, PtLocationSnapper.Result snapResult) {
-            logger.debug("{}", route);
+        private ResponsePath extractResponse(TripBasedRouter.EnqueuedTripSegment lastSegment, int alightStopSequence, TripBasedRouter.StopWithTimeDelta destination, PtLocationSnapper.Result snapResult) {
             GeometryFactory geometryFactory = new GeometryFactory();
 
             List<TripBasedRouter.EnqueuedTripSegment> segments = new ArrayList<>();
-            TripBasedRouter.EnqueuedTripSegment enqueuedTripSegment = route.enqueuedTripSegment;
+            TripBasedRouter.EnqueuedTripSegment enqueuedTripSegment = lastSegment;
             while (enqueuedTripSegment != null) {
                 segments.add(enqueuedTripSegment);
                 enqueuedTripSegment = enqueuedTripSegment.parent;
@@ -284,7 +312,7 @@ public final class PtRouterTripBasedImpl implements PtRouter {
 
             long routeWeight = 0;
             List<Trip.Leg> legs = new ArrayList<>();
-            Optional<Trip.Leg> maybeAccessLeg = extractAccessLeg(route, snapResult);
+            Optional<Trip.Leg> maybeAccessLeg = extractAccessLeg(segments.get(0).accessStation, snapResult);
             logger.debug(" {}", maybeAccessLeg);
             if (maybeAccessLeg.isPresent()) {
                 Trip.Leg accessLeg = maybeAccessLeg.get();
@@ -300,7 +328,7 @@ public final class PtRouterTripBasedImpl implements PtRouter {
                 com.conveyal.gtfs.model.Trip trip = segment.tripPointer.trip;
                 int untilStopSequence;
                 if (i == segments.size() - 1)
-                    untilStopSequence = route.stopTime;
+                    untilStopSequence = alightStopSequence;
                 else
                     untilStopSequence = segments.get(i+1).transferOrigin.stop_sequence;
                 List<Trip.Stop> stops = segment.tripPointer.stopTimes.stream().filter(st -> st != null && st.stop_sequence >= segment.tripAtStopTime.stop_sequence && st.stop_sequence <= untilStopSequence)
@@ -329,7 +357,7 @@ public final class PtRouterTripBasedImpl implements PtRouter {
                 routeWeight += transferPenaltiesByRouteType.getOrDefault(segment.tripPointer.routeType, 0L);
                 previousBlockId = trip.block_id;
             }
-            Optional<Trip.Leg> maybeEgressLeg = extractEgressLeg(route, snapResult);
+            Optional<Trip.Leg> maybeEgressLeg = extractEgressLeg(destination, snapResult);
             if (maybeEgressLeg.isPresent()) {
                 Trip.Leg egressLeg = maybeEgressLeg.get();
                 legs.add(egressLeg);
@@ -349,8 +377,8 @@ public final class PtRouterTripBasedImpl implements PtRouter {
             return responsePath;
         }
 
-        private Optional<Trip.Leg> extractAccessLeg(TripBasedRouter.ResultLabel route, PtLocationSnapper.Result snapResult) {
-            Label accessLabel = accessStationLabels.get(accessStations.indexOf(route.getAccessStop()));
+        private Optional<Trip.Leg> extractAccessLeg(TripBasedRouter.StopWithTimeDelta accessStation, PtLocationSnapper.Result snapResult) {
+            Label accessLabel = accessStationLabels.get(accessStations.indexOf(accessStation));
             List<Label.Transition> accessTransitions = Label.getTransitions(accessLabel, false);
             List<List<Label.Transition>> accessPartitions = tripFromLabel.parsePathToPartitions(accessTransitions);
             List<Trip.Leg> accessPath = tripFromLabel.parsePartitionToLegs(accessPartitions.get(0), snapResult.queryGraph, encodingManager, accessWeighting, translation, requestedPathDetails);
@@ -361,8 +389,8 @@ public final class PtRouterTripBasedImpl implements PtRouter {
             }
         }
 
-        private Optional<Trip.Leg> extractEgressLeg(TripBasedRouter.ResultLabel route, PtLocationSnapper.Result snapResult) {
-            Label egressLabel = egressStationLabels.get(egressStations.indexOf(route.destination));
+        private Optional<Trip.Leg> extractEgressLeg(TripBasedRouter.StopWithTimeDelta destination, PtLocationSnapper.Result snapResult) {
+            Label egressLabel = egressStationLabels.get(egressStations.indexOf(destination));
             List<Label.Transition> egressTransitions = Label.getTransitions(egressLabel, true);
             List<List<Label.Transition>> egressPartitions = tripFromLabel.parsePathToPartitions(egressTransitions);
             if (egressPartitions.size() < 2) {
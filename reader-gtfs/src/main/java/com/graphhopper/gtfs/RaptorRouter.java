@@ -0,0 +1,458 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.carrotsearch.hppc.IntArrayList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Round-based public transit router (RAPTOR, Delling et al. 2012) on a {@link RaptorTimetable}.
+ * Round k finds the earliest arrivals at all stops using exactly k trips, scanning each pattern
+ * that serves a stop improved in round k-1 once. Unlike the trip-based router, it needs no
+ * precomputed trip transfers, so it works for every day of the feed.
+ * <p>
+ * Profile queries are answered like rRAPTOR: one run per departure time in the profile window, latest
+ * first, without resetting the labels in between. A journey is reported when it is better than everything
+ * found with the same or fewer rounds, comparing the arrival time plus the disutilities of access and
+ * egress time, transfers and boarding penalties, as the trip-based router does.
+ * <p>
+ * The labels are taken from the {@link RaptorStatePool} of the timetable for the duration of a request, and the
+ * trips running on a service day are cached by the timetable. An instance must not be shared between threads.
+ */
+public class RaptorRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(RaptorRouter.class);
+    static final int INF = Integer.MAX_VALUE;
+    private static final byte ACCESS = 1, TRIP = 2, WALK = 3;
+    static final int N_ROUNDS = 8;
+    // we scan the trips of the service day before the departure day, which may run past midnight, and of the departure day
+    private static final int PREVIOUS_DAY = 0, CURRENT_DAY = 1;
+
+    private final RaptorTimetable timetable;
+    // the labels of the current request, see RaptorState
+    private int[][] arrivalTime;
+    private byte[][] labelType;
+    private int[][] labelRef;
+    private int[][] labelBoardPosition;
+    private int[][] labelAlightPosition;
+    private int[][] labelServiceDay;
+    private BitSet markedStops;
+    private BitSet stopsReachedByTrip;
+    private int[] patternScanFrom;
+    private long[] bestDestinationCost;
+    private BitSet blockedTrips;
+    private final IntArrayList patternsToScan = new IntArrayList();
+    private final LocalDate[][] serviceDays;
+    private final int[][] serviceDayStart;
+    private final BitSet[][] serviceDayActiveTrips;
+    private final List<Journey> result = new ArrayList<>();
+
+    private TripBasedRouter.Parameters parameters;
+    private long profileStartSecond;
+    private int[] accessStops;
+    private int[] accessSeconds;
+    private int[] egressStops;
+
+    public RaptorRouter(RaptorTimetable timetable) {
+        this.timetable = timetable;
+        serviceDays = new LocalDate[2][timetable.feedIds.length];
+        serviceDayStart = new int[2][timetable.feedIds.length];
+        serviceDayActiveTrips = new BitSet[2][timetable.feedIds.length];
+    }
+
+    /**
+     * A journey found by the router. The trips are given as a chain of {@link TripBasedRouter.EnqueuedTripSegment}s
+     * ending with {@link #lastSegment}, so the response can be built like the one of the trip-based router.
+     */
+    public static class Journey {
+        public final TripBasedRouter.EnqueuedTripSegment lastSegment;
+        public final int alightStopSequence;
+        public final TripBasedRouter.StopWithTimeDelta destination;
+        final long cost;
+        final int realTransfers;
+        final long departureTime;
+
+        Journey(TripBasedRouter.EnqueuedTripSegment lastSegment, int alightStopSequence, TripBasedRouter.StopWithTimeDelta destination, long cost, int realTransfers, long departureTime) {
+            this.lastSegment = lastSegment;
+            this.alightStopSequence = alightStopSequence;
+            this.destination = destination;
+            this.cost = cost;
+            this.realTransfers = realTransfers;
+            this.departureTime = departureTime;
+        }
+
+        @Override
+        public String toString() {
+            return "Journey{" +
+                    "departure=" + Instant.ofEpochMilli(departureTime) +
+                    ", cost=" + cost +
+                    ", realTransfers=" + realTransfers +
+                    ", destination=" + destination +
+                    '}';
+        }
+    }
+
+    public List<Journey> route(TripBasedRouter.Parameters parameters) {
+        RaptorStatePool statePool = timetable.getStatePool();
+        RaptorState state = statePool.acquire(timetable);
+        boolean pooled = state != null;
+        if (!pooled)
+            state = new RaptorState(timetable.getStopCount(), timetable.getPatternCount(), timetable.tripService.length);
+        try {
+            useState(state);
+            return findJourneys(parameters);
+        } finally {
+            if (pooled)
+                statePool.release(state);
+        }
+    }
+
+    private void useState(RaptorState state) {
+        state.reset();
+        arrivalTime = state.arrivalTime;
+        labelType = state.labelType;
+        labelRef = state.labelRef;
+        labelBoardPosition = state.labelBoardPosition;
+        labelAlightPosition = state.labelAlightPosition;
+        labelServiceDay = state.labelServiceDay;
+        markedStops = state.markedStops;
+        stopsReachedByTrip = state.stopsReachedByTrip;
+        patternScanFrom = state.patternScanFrom;
+        bestDestinationCost = state.bestDestinationCost;
+        blockedTrips = state.blockedTrips;
+    }
+
+    private List<Journey> findJourneys(TripBasedRouter.Parameters parameters) {
+        this.parameters = parameters;
+        timetable.tripsByRouteType.forEach((routeType, trips) -> {
+            if (parameters.isRouteTypeBlocked(routeType))
+                blockedTrips.or(trips);
+        });
+        profileStartSecond = parameters.getProfileStartTime().getEpochSecond();
+        List<TripBasedRouter.StopWithTimeDelta> accessStations = parameters.getAccessStations();
+        accessStops = new int[accessStations.size()];
+        accessSeconds = new int[accessStations.size()];
+        for (int i = 0; i < accessStations.size(); i++) {
+            accessStops[i] = timetable.getStopIndex(accessStations.get(i).stopId);
+            accessSeconds[i] = (int) ((accessStations.get(i).timeDelta + 999) / 1000);
+        }
+        List<TripBasedRouter.StopWithTimeDelta> egressStations = parameters.getEgressStations();
+        egressStops = new int[egressStations.size()];
+        for (int i = 0; i < egressStations.size(); i++) {
+            egressStops[i] = timetable.getStopIndex(egressStations.get(i).stopId);
+        }
+
+        int profileEnd = (int) parameters.getProfileLength().getSeconds();
+        run(profileEnd);
+        int[] departureTimes = findDepartureTimes(profileEnd);
+        for (int i = departureTimes.length - 1; i >= 0; i--) {
+            if (i == departureTimes.length - 1 || departureTimes[i] != departureTimes[i + 1])
+                run(departureTimes[i]);
+        }
+        return result;
+    }
+
+    /**
+     * @return the times in [0, profileEnd) at which we have to leave so that we arrive at an access stop
+     * exactly when a trip departs, sorted ascending. These are the only times at which the result can change.
+     */
+    private int[] findDepartureTimes(int profileEnd) {
+        IntArrayList departureTimes = new IntArrayList();
+        if (profileEnd <= 0)
+            return departureTimes.toArray();
+        for (int f = 0; f < timetable.feedIds.length; f++) {
+            LocalDate firstDay = toServiceDay(f, 0).minusDays(1);
+            LocalDate lastDay = toServiceDay(f, profileEnd);
+            for (LocalDate day = firstDay; !day.isAfter(lastDay); day = day.plusDays(1)) {
+                int dayStart = (int) (day.atStartOfDay(timetable.feedZoneIds[f]).toEpochSecond() - profileStartSecond);
+                BitSet activeTrips = timetable.getActiveTrips(f, day);
+                for (int a = 0; a < accessStops.length; a++) {
+                    int stop = accessStops[a];
+                    if (stop < 0)
+                        continue;
+                    for (int i = timetable.stopPatternsOffset[stop]; i < timetable.stopPatternsOffset[stop + 1]; i++) {
+                        int pattern = timetable.stopPatterns[i];
+                        int position = timetable.stopPatternPositions[i];
+                        if (timetable.patternFeed[pattern] != f || timetable.noPickup.get(timetable.patternStopsOffset[pattern] + position))
+                            continue;
+                        for (int trip = timetable.patternFirstTrip[pattern]; trip < timetable.patternFirstTrip[pattern + 1]; trip++) {
+                            int departureTime = dayStart + timetable.departures[timetable.getStopTimeIndex(trip, position)] - accessSeconds[a];
+                            if (activeTrips.get(trip) && !blockedTrips.get(trip) && departureTime >= 0 && departureTime < profileEnd)
+                                departureTimes.add(departureTime);
+                        }
+                    }
+                }
+            }
+        }
+        int[] result = departureTimes.toArray();
+        Arrays.sort(result);
+        return result;
+    }
+
+    private void run(int departureTime) {
+        logger.debug("=== {} ===", Instant.ofEpochSecond(profileStartSecond + departureTime));
+        for (int f = 0; f < timetable.feedIds.length; f++) {
+            serviceDays[CURRENT_DAY][f] = toServiceDay(f, departureTime);
+            serviceDays[PREVIOUS_DAY][f] = serviceDays[CURRENT_DAY][f].minusDays(1);
+            for (int day = PREVIOUS_DAY; day <= CURRENT_DAY; day++) {
+                serviceDayStart[day][f] = (int) (serviceDays[day][f].atStartOfDay(timetable.feedZoneIds[f]).toEpochSecond() - profileStartSecond);
+                serviceDayActiveTrips[day][f] = timetable.getActiveTrips(f, serviceDays[day][f]);
+            }
+        }
+        markedStops.clear();
+        for (int a = 0; a < accessStops.length; a++) {
+            int stop = accessStops[a];
+            if (stop >= 0 && departureTime + accessSeconds[a] < arrivalTime[0][stop]) {
+                arrivalTime[0][stop] = departureTime + accessSeconds[a];
+                labelType[0][stop] = ACCESS;
+                labelRef[0][stop] = a;
+                markedStops.set(stop);
+            }
+        }
+        for (int round = 1; round <= N_ROUNDS && !markedStops.isEmpty(); round++) {
+            for (int stop = markedStops.nextSetBit(0); stop >= 0; stop = markedStops.nextSetBit(stop + 1)) {
+                for (int i = timetable.stopPatternsOffset[stop]; i < timetable.stopPatternsOffset[stop + 1]; i++) {
+                    int pattern = timetable.stopPatterns[i];
+                    if (patternScanFrom[pattern] == INF)
+                        patternsToScan.add(pattern);
+                    patternScanFrom[pattern] = Math.min(patternScanFrom[pattern], timetable.stopPatternPositions[i]);
+                }
+            }
+            markedStops.clear();
+            stopsReachedByTrip.clear();
+            for (int i = 0; i < patternsToScan.size(); i++) {
+                int pattern = patternsToScan.get(i);
+                scanPattern(pattern, patternScanFrom[pattern], round, PREVIOUS_DAY);
+                scanPattern(pattern, patternScanFrom[pattern], round, CURRENT_DAY);
+                patternScanFrom[pattern] = INF;
+            }
+            patternsToScan.clear();
+            relaxFootpaths(round);
+            checkDestinations(round);
+        }
+    }
+
+    /**
+     * Scans the trips of the pattern which run on the given service day. Scanning the pattern once per service
+     * day is the same as scanning it once with the trips of both days, since labels are only ever improved.
+     */
+    private void scanPattern(int pattern, int fromPosition, int round, int day) {
+        int feed = timetable.patternFeed[pattern];
+        int dayStart = serviceDayStart[day][feed];
+        int stopsOffset = timetable.patternStopsOffset[pattern];
+        int nStops = timetable.getPatternStopCount(pattern);
+        int trip = -1;
+        int boardPosition = -1;
+        for (int position = fromPosition; position < nStops; position++) {
+            int stop = timetable.patternStops[stopsOffset + position];
+            if (trip >= 0 && !timetable.noDropOff.get(stopsOffset + position)) {
+                int arrival = dayStart + timetable.arrivals[timetable.getStopTimeIndex(trip, position)];
+                if (arrival < earliestArrival(round, stop)) {
+                    arrivalTime[round][stop] = arrival;
+                    labelType[round][stop] = TRIP;
+                    labelRef[round][stop] = trip;
+                    labelBoardPosition[round][stop] = boardPosition;
+                    labelAlightPosition[round][stop] = position;
+                    labelServiceDay[round][stop] = (int) serviceDays[day][feed].toEpochDay();
+                    markedStops.set(stop);
+                    stopsReachedByTrip.set(stop);
+                }
+            }
+            int readyToBoard = arrivalTime[round - 1][stop];
+            if (readyToBoard == INF || timetable.noPickup.get(stopsOffset + position))
+                continue;
+            if (trip >= 0 && readyToBoard > dayStart + timetable.departures[timetable.getStopTimeIndex(trip, position)])
+                continue;
+            int earlierTrip = findEarliestTrip(pattern, position, readyToBoard - dayStart, round - 1, stop, serviceDayActiveTrips[day][feed]);
+            if (earlierTrip >= 0 && (trip < 0 || timetable.departures[timetable.getStopTimeIndex(earlierTrip, position)] < timetable.departures[timetable.getStopTimeIndex(trip, position)])) {
+                trip = earlierTrip;
+                boardPosition = position;
+            }
+        }
+    }
+
+    private int findEarliestTrip(int pattern, int position, int earliestDeparture, int previousRound, int stop, BitSet activeTrips) {
+        int fromStop = -1;
+        int fromRoute = -1;
+        if (labelType[previousRound][stop] == TRIP || labelType[previousRound][stop] == WALK) {
+            int fromTrip = labelRef[previousRound][stop];
+            fromStop = alightStop(fromTrip, labelAlightPosition[previousRound][stop]);
+            fromRoute = timetable.tripRoute[fromTrip];
+        }
+        boolean fifo = timetable.fifoPatterns.get(pattern);
+        int firstTrip = timetable.patternFirstTrip[pattern];
+        int endTrip = timetable.patternFirstTrip[pattern + 1];
+        if (fifo) {
+            int low = firstTrip, high = endTrip;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (timetable.departures[timetable.getStopTimeIndex(mid, position)] < earliestDeparture)
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+            firstTrip = low;
+        }
+        int best = -1;
+        for (int trip = firstTrip; trip < endTrip; trip++) {
+            int departure = timetable.departures[timetable.getStopTimeIndex(trip, position)];
+            if (departure < earliestDeparture || !activeTrips.get(trip) || blockedTrips.get(trip))
+                continue;
+            if (fromStop >= 0 && departure < earliestDeparture + timetable.getMinTransferTime(fromStop, fromRoute, stop, timetable.tripRoute[trip]))
+                continue;
+            if (fifo)
+                return trip;
+            if (best < 0 || departure < timetable.departures[timetable.getStopTimeIndex(best, position)])
+                best = trip;
+        }
+        return best;
+    }
+
+    private void relaxFootpaths(int round) {
+        for (int stop = stopsReachedByTrip.nextSetBit(0); stop >= 0; stop = stopsReachedByTrip.nextSetBit(stop + 1)) {
+            if (labelType[round][stop] != TRIP)
+                continue;
+            for (int i = timetable.footpathsOffset[stop]; i < timetable.footpathsOffset[stop + 1]; i++) {
+                int to = timetable.footpathTo[i];
+                int arrival = arrivalTime[round][stop] + timetable.footpathTime[i];
+                if (arrival < earliestArrival(round, to)) {
+                    arrivalTime[round][to] = arrival;
+                    labelType[round][to] = WALK;
+                    labelRef[round][to] = labelRef[round][stop];
+                    labelBoardPosition[round][to] = labelBoardPosition[round][stop];
+                    labelAlightPosition[round][to] = labelAlightPosition[round][stop];
+                    labelServiceDay[round][to] = labelServiceDay[round][stop];
+                    markedStops.set(to);
+                }
+            }
+        }
+    }
+
+    /**
+     * Arriving on foot from the origin does not count here, otherwise we could never find a journey
+     * from an access stop to an egress stop which is also an access stop. Walking all the way is
+     * considered separately.
+     */
+    private int earliestArrival(int round, int stop) {
+        int result = INF;
+        for (int r = 1; r <= round; r++)
+            result = Math.min(result, arrivalTime[r][stop]);
+        return result;
+    }
+
+    private void checkDestinations(int round) {
+        List<TripBasedRouter.StopWithTimeDelta> egressStations = parameters.getEgressStations();
+        for (int e = 0; e < egressStops.length; e++) {
+            int stop = egressStops[e];
+            if (stop < 0 || !stopsReachedByTrip.get(stop) || labelType[round][stop] != TRIP)
+                continue;
+            Journey journey = extractJourney(round, stop, egressStations.get(e));
+            if (journey.cost >= bestDestinationCost[round])
+                continue;
+            for (int r = round; r <= N_ROUNDS; r++)
+                bestDestinationCost[r] = Math.min(bestDestinationCost[r], journey.cost);
+            logger.debug(" {}", journey);
+            Iterator<Journey> it = result.iterator();
+            while (it.hasNext()) {
+                Journey oldJourney = it.next();
+                if (oldJourney.cost < journey.cost) continue;
+                if (oldJourney.realTransfers < journey.realTransfers) continue;
+                if (oldJourney.departureTime > journey.departureTime) continue;
+                it.remove();
+            }
+            result.add(journey);
+        }
+    }
+
+    private Journey extractJourney(int round, int stop, TripBasedRouter.StopWithTimeDelta destination) {
+        // collect the trips from the destination backwards, WALK labels carry the trip that we walked from
+        IntArrayList legRounds = new IntArrayList();
+        IntArrayList legStops = new IntArrayList();
+        int accessStation;
+        int r = round;
+        int s = stop;
+        while (true) {
+            legRounds.add(r);
+            legStops.add(s);
+            int trip = labelRef[r][s];
+            int boardStop = timetable.patternStops[timetable.patternStopsOffset[timetable.tripPattern[trip]] + labelBoardPosition[r][s]];
+            r--;
+            if (labelType[r][boardStop] == ACCESS) {
+                accessStation = labelRef[r][boardStop];
+                break;
+            } else if (labelType[r][boardStop] == TRIP || labelType[r][boardStop] == WALK) {
+                s = boardStop;
+            } else {
+                throw new IllegalStateException("Broken label chain at stop " + timetable.stops[boardStop]);
+            }
+        }
+
+        TripBasedRouter.StopWithTimeDelta accessStop = parameters.getAccessStations().get(accessStation);
+        Map<Integer, Long> penalties = parameters.getTransferPenaltiesByRouteType();
+        TripBasedRouter.EnqueuedTripSegment segment = null;
+        int previousTrip = -1;
+        int realTransfers = 0;
+        long routeTypePenalty = 0;
+        long departureTime = 0;
+        int alightStopSequence = -1;
+        for (int i = legRounds.size() - 1; i >= 0; i--) {
+            int legRound = legRounds.get(i);
+            int legStop = legStops.get(i);
+            int trip = labelRef[legRound][legStop];
+            LocalDate serviceDay = LocalDate.ofEpochDay(labelServiceDay[legRound][legStop]);
+            int boardStopSequence = timetable.stopSequences[timetable.getStopTimeIndex(trip, labelBoardPosition[legRound][legStop])];
+            Trips.TripAtStopTime transferOrigin = null;
+            if (previousTrip < 0) {
+                int feed = timetable.patternFeed[timetable.tripPattern[trip]];
+                long dayStart = serviceDay.atStartOfDay(timetable.feedZoneIds[feed]).toEpochSecond();
+                departureTime = (dayStart + timetable.departures[timetable.getStopTimeIndex(trip, labelBoardPosition[legRound][legStop])]) * 1000L - accessStop.timeDelta;
+            } else {
+                transferOrigin = new Trips.TripAtStopTime(previousTrip, alightStopSequence);
+                if (timetable.tripBlock[trip] < 0 || timetable.tripBlock[trip] != timetable.tripBlock[previousTrip])
+                    realTransfers++;
+            }
+            alightStopSequence = timetable.stopSequences[timetable.getStopTimeIndex(trip, labelAlightPosition[legRound][legStop])];
+            routeTypePenalty += penalties.getOrDefault(timetable.tripRouteType[trip], 0L);
+            segment = new TripBasedRouter.EnqueuedTripSegment(timetable.trips.getTrip(trip), new Trips.TripAtStopTime(trip, boardStopSequence), alightStopSequence, serviceDay, transferOrigin, segment, accessStop);
+            segment.nRealTransfers = realTransfers;
+            segment.routeTypePenalty = routeTypePenalty;
+            previousTrip = trip;
+        }
+        long arrivalTimeMillis = (profileStartSecond + arrivalTime[round][stop]) * 1000L;
+        long cost = arrivalTimeMillis
+                + (long) (destination.timeDelta * parameters.getBetaEgressTime())
+                + (long) (accessStop.timeDelta * (parameters.getBetaAccessTime() - 1.0))
+                + (long) (realTransfers * parameters.getBetaTransfers())
+                + routeTypePenalty;
+        return new Journey(segment, alightStopSequence, destination, cost, realTransfers, departureTime);
+    }
+
+    private int alightStop(int trip, int alightPosition) {
+        return timetable.patternStops[timetable.patternStopsOffset[timetable.tripPattern[trip]] + alightPosition];
+    }
+
+    private LocalDate toServiceDay(int feed, int time) {
+        return Instant.ofEpochSecond(profileStartSecond + time).atZone(timetable.feedZoneIds[feed]).toLocalDate();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.graphhopper.gtfs;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The labels of one {@link RaptorRouter} request. They span all stops and rounds of the timetable, so they are
+ * taken from the {@link RaptorStatePool} of the timetable instead of being allocated for every request.
+ */
+class RaptorState {
+    // all times are seconds since the start of the profile
+    final int[][] arrivalTime;
+    final byte[][] labelType;
+    // the trip for TRIP labels and the access station for ACCESS labels. WALK labels are copies of the TRIP label
+    // of the stop we walked from, so they do not depend on labels which may be improved later.
+    final int[][] labelRef;
+    final int[][] labelBoardPosition;
+    final int[][] labelAlightPosition;
+    final int[][] labelServiceDay;
+    final BitSet markedStops;
+    final BitSet stopsReachedByTrip;
+    final int[] patternScanFrom;
+    final long[] bestDestinationCost;
+    // the trips of the blocked route types of the request
+    final BitSet blockedTrips;
+
+    RaptorState(int nStops, int nPatterns, int nTrips) {
+        int nLabels = RaptorRouter.N_ROUNDS + 1;
+        arrivalTime = new int[nLabels][nStops];
+        labelType = new byte[nLabels][nStops];
+        labelRef = new int[nLabels][nStops];
+        labelBoardPosition = new int[nLabels][nStops];
+        labelAlightPosition = new int[nLabels][nStops];
+        labelServiceDay = new int[nLabels][nStops];
+        markedStops = new BitSet(nStops);
+        stopsReachedByTrip = new BitSet(nStops);
+        patternScanFrom = new int[nPatterns];
+        bestDestinationCost = new long[nLabels];
+        blockedTrips = new BitSet(nTrips);
+    }
+
+    /**
+     * Prepares the state for a request, clearing the labels of the previous one. The other label arrays are only read where the arrival time
+     * or the label type is set, so they do not need to be cleared.
+     */
+    void reset() {
+        for (int[] a : arrivalTime)
+            Arrays.fill(a, RaptorRouter.INF);
+        for (byte[] a : labelType)
+            Arrays.fill(a, (byte) 0);
+        markedStops.clear();
+        stopsReachedByTrip.clear();
+        Arrays.fill(patternScanFrom, RaptorRouter.INF);
+        Arrays.fill(bestDestinationCost, Long.MAX_VALUE);
+        blockedTrips.clear();
+    }
+}
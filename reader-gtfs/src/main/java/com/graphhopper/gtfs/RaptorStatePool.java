@@ -0,0 +1,62 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.graphhopper.gtfs;
+
+import java.util.ArrayDeque;
+
+/**
+ * A bounded pool of the labels of {@link RaptorRouter} requests, so the arrays that span all stops of the timetable
+ * are not allocated for every request. The pool creates at most maxStates of them (lazily) and requests that find
+ * the pool exhausted allocate a state of their own.
+ */
+public class RaptorStatePool {
+    private final int maxStates;
+    private final ArrayDeque<RaptorState> states = new ArrayDeque<>();
+    private int createdStates;
+
+    public RaptorStatePool(int maxStates) {
+        if (maxStates < 1)
+            throw new IllegalArgumentException("maxStates must be positive, was: " + maxStates);
+        this.maxStates = maxStates;
+    }
+
+    /**
+     * @return a state for the given timetable, or null if all states are in use. The state still holds the labels
+     * of its previous request.
+     */
+    synchronized RaptorState acquire(RaptorTimetable timetable) {
+        RaptorState state = states.poll();
+        if (state == null) {
+            if (createdStates == maxStates)
+                return null;
+            createdStates++;
+            return new RaptorState(timetable.getStopCount(), timetable.getPatternCount(), timetable.tripService.length);
+        }
+        return state;
+    }
+
+    synchronized void release(RaptorState state) {
+        states.push(state);
+    }
+
+    public int getMaxStates() {
+        return maxStates;
+    }
+}
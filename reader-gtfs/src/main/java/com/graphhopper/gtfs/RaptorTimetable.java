@@ -0,0 +1,361 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.LongObjectHashMap;
+import com.carrotsearch.hppc.ObjectIntHashMap;
+import com.conveyal.gtfs.GTFSFeed;
+import com.conveyal.gtfs.model.Service;
+import com.conveyal.gtfs.model.Stop;
+import com.conveyal.gtfs.model.StopTime;
+import com.conveyal.gtfs.model.Transfer;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * The timetable in the array layout used by {@link RaptorRouter}. Every {@link Trips.Pattern} becomes a
+ * pattern with its stops in one int array and the stop times of its trips in trip-major int arrays, so a
+ * pattern scan only touches consecutive memory. Trip indices are the ones of {@link Trips}, which keeps
+ * the trips of a pattern in one consecutive block, sorted by departure.
+ * <p>
+ * Footpaths are the interpolated transfers, transfers between the platforms of one station, and
+ * transfers.txt entries between different stops. The minimum transfer times of transfers.txt are kept
+ * per (from stop, from route, to stop, to route) and applied when boarding.
+ * <p>
+ * Besides the timetable, an instance keeps what {@link RaptorRouter} requests share: the trips that run on the
+ * most recently queried service days and a pool of the per-request labels.
+ */
+public class RaptorTimetable {
+    // per feed, so a profile query across midnight and a few concurrent dates do not evict each other
+    private static final int CACHED_SERVICE_DAYS_PER_FEED = 16;
+
+    final Trips trips;
+    final GtfsStorage.FeedIdWithStopId[] stops;
+    private final ObjectIntHashMap<GtfsStorage.FeedIdWithStopId> stopIndex;
+    final String[] feedIds;
+    final ZoneId[] feedZoneIds;
+
+    // pattern p has the positions patternStopsOffset[p] to patternStopsOffset[p + 1] - 1
+    final int[] patternStopsOffset;
+    final int[] patternStops;
+    final BitSet noPickup;
+    final BitSet noDropOff;
+    // the trips of pattern p are patternFirstTrip[p] to patternFirstTrip[p + 1] - 1
+    final int[] patternFirstTrip;
+    // stop time of trip t at position i of its pattern p: patternTimesOffset[p] + (t - patternFirstTrip[p]) * nStops(p) + i
+    final int[] patternTimesOffset;
+    final int[] patternFeed;
+    final BitSet fifoPatterns;
+    final int[] arrivals;
+    final int[] departures;
+    final int[] stopSequences;
+
+    final int[] tripPattern;
+    final int[] tripRoute;
+    final int[] tripRouteType;
+    final int[] tripBlock;
+    final Service[] tripService;
+    // the trips of each route type, so the trips of blocked route types can be excluded with a few bitset operations
+    final Map<Integer, BitSet> tripsByRouteType = new HashMap<>();
+    // (feed << 32 | epoch day) -> the trips of the feed which run on that service day, least recently used first
+    private final LinkedHashMap<Long, BitSet> activeTrips;
+    private final RaptorStatePool statePool;
+
+    // (pattern, position) pairs at which stop s is served: stopPatternsOffset[s] to stopPatternsOffset[s + 1] - 1
+    final int[] stopPatternsOffset;
+    final int[] stopPatterns;
+    final int[] stopPatternPositions;
+
+    final int[] footpathsOffset;
+    final int[] footpathTo;
+    final int[] footpathTime;
+
+    // (from stop << 32 | to stop) -> flattened (from route, to route, min transfer time) triples
+    private final LongObjectHashMap<int[]> minTransferTimes = new LongObjectHashMap<>();
+
+    public RaptorTimetable(GtfsStorage gtfsStorage) {
+        this.trips = gtfsStorage.tripTransfers;
+        Map<String, GTFSFeed> feeds = gtfsStorage.getGtfsFeeds();
+        feedIds = feeds.keySet().toArray(new String[0]);
+        feedZoneIds = new ZoneId[feedIds.length];
+        ObjectIntHashMap<String> feedIndex = new ObjectIntHashMap<>();
+        stopIndex = new ObjectIntHashMap<>();
+        List<GtfsStorage.FeedIdWithStopId> stopList = new ArrayList<>();
+        for (int f = 0; f < feedIds.length; f++) {
+            GTFSFeed feed = feeds.get(feedIds[f]);
+            feedIndex.put(feedIds[f], f);
+            feedZoneIds[f] = ZoneId.of(feed.agency.values().stream().findFirst().get().agency_timezone);
+            for (Stop stop : feed.stops.values()) {
+                GtfsStorage.FeedIdWithStopId stopId = new GtfsStorage.FeedIdWithStopId(feedIds[f], stop.stop_id);
+                stopIndex.put(stopId, stopList.size());
+                stopList.add(stopId);
+            }
+        }
+        stops = stopList.toArray(new GtfsStorage.FeedIdWithStopId[0]);
+
+        int nTrips = trips.trips.size();
+        tripPattern = new int[nTrips];
+        tripRoute = new int[nTrips];
+        tripRouteType = new int[nTrips];
+        tripBlock = new int[nTrips];
+        tripService = new Service[nTrips];
+        ObjectIntHashMap<String> routeIndex = new ObjectIntHashMap<>();
+        ObjectIntHashMap<String> blockIndex = new ObjectIntHashMap<>();
+        IntArrayList patternStopsOffsetList = new IntArrayList();
+        IntArrayList patternStopsList = new IntArrayList();
+        IntArrayList patternFirstTripList = new IntArrayList();
+        IntArrayList patternTimesOffsetList = new IntArrayList();
+        IntArrayList patternFeedList = new IntArrayList();
+        IntArrayList arrivalsList = new IntArrayList();
+        IntArrayList departuresList = new IntArrayList();
+        IntArrayList stopSequencesList = new IntArrayList();
+        noPickup = new BitSet();
+        noDropOff = new BitSet();
+        fifoPatterns = new BitSet();
+        int pattern = -1;
+        int patternEnd = 0;
+        int expectedTripIdx = 0;
+        for (GTFSFeed.StopTimesForTripWithTripPatternKey trip : trips.trips) {
+            if (trip.idx != expectedTripIdx++)
+                throw new IllegalStateException("Trip indices must be consecutive");
+            if (trip.idx >= patternEnd) {
+                pattern++;
+                patternEnd = trip.endIdxOfPattern;
+                patternStopsOffsetList.add(patternStopsList.size());
+                patternFirstTripList.add(trip.idx);
+                patternTimesOffsetList.add(arrivalsList.size());
+                patternFeedList.add(feedIndex.get(trip.feedId));
+                for (StopTime stopTime : trip.stopTimes) {
+                    if (stopTime == null)
+                        continue;
+                    if (stopTime.pickup_type == 1)
+                        noPickup.set(patternStopsList.size());
+                    if (stopTime.drop_off_type == 1)
+                        noDropOff.set(patternStopsList.size());
+                    patternStopsList.add(stopIndex.get(new GtfsStorage.FeedIdWithStopId(trip.feedId, stopTime.stop_id)));
+                }
+                fifoPatterns.set(pattern);
+            }
+            int nPatternStops = patternStopsList.size() - patternStopsOffsetList.get(pattern);
+            int firstTimeOfTrip = arrivalsList.size();
+            for (StopTime stopTime : trip.stopTimes) {
+                if (stopTime == null)
+                    continue;
+                int previousTripTime = arrivalsList.size() - nPatternStops;
+                if (trip.idx > patternFirstTripList.get(pattern) && (stopTime.departure_time < departuresList.get(previousTripTime) || stopTime.arrival_time < arrivalsList.get(previousTripTime)))
+                    fifoPatterns.clear(pattern);
+                arrivalsList.add(stopTime.arrival_time);
+                departuresList.add(stopTime.departure_time);
+                stopSequencesList.add(stopTime.stop_sequence);
+            }
+            if (arrivalsList.size() - firstTimeOfTrip != nPatternStops)
+                throw new IllegalStateException("Trip " + trip.trip.trip_id + " does not match the stops of its pattern");
+            tripPattern[trip.idx] = pattern;
+            tripRoute[trip.idx] = indexOf(routeIndex, trip.feedId + ":" + trip.trip.route_id);
+            tripRouteType[trip.idx] = trip.routeType;
+            tripBlock[trip.idx] = trip.trip.block_id == null ? -1 : indexOf(blockIndex, trip.feedId + ":" + trip.trip.block_id);
+            tripService[trip.idx] = trip.service;
+            tripsByRouteType.computeIfAbsent(trip.routeType, k -> new BitSet(nTrips)).set(trip.idx);
+        }
+        patternStopsOffsetList.add(patternStopsList.size());
+        patternFirstTripList.add(nTrips);
+        patternStopsOffset = patternStopsOffsetList.toArray();
+        patternStops = patternStopsList.toArray();
+        patternFirstTrip = patternFirstTripList.toArray();
+        patternTimesOffset = patternTimesOffsetList.toArray();
+        patternFeed = patternFeedList.toArray();
+        arrivals = arrivalsList.toArray();
+        departures = departuresList.toArray();
+        stopSequences = stopSequencesList.toArray();
+
+        List<IntArrayList> patternsAtStop = new ArrayList<>();
+        for (int s = 0; s < stops.length; s++)
+            patternsAtStop.add(new IntArrayList());
+        for (int p = 0; p < getPatternCount(); p++) {
+            for (int i = patternStopsOffset[p]; i < patternStopsOffset[p + 1]; i++) {
+                patternsAtStop.get(patternStops[i]).add(p);
+                patternsAtStop.get(patternStops[i]).add(i - patternStopsOffset[p]);
+            }
+        }
+        stopPatternsOffset = new int[stops.length + 1];
+        IntArrayList stopPatternsList = new IntArrayList();
+        IntArrayList stopPatternPositionsList = new IntArrayList();
+        for (int s = 0; s < stops.length; s++) {
+            stopPatternsOffset[s] = stopPatternsList.size();
+            IntArrayList patternsAndPositions = patternsAtStop.get(s);
+            for (int i = 0; i < patternsAndPositions.size(); i += 2) {
+                stopPatternsList.add(patternsAndPositions.get(i));
+                stopPatternPositionsList.add(patternsAndPositions.get(i + 1));
+            }
+        }
+        stopPatternsOffset[stops.length] = stopPatternsList.size();
+        stopPatterns = stopPatternsList.toArray();
+        stopPatternPositions = stopPatternPositionsList.toArray();
+
+        List<Map<Integer, Integer>> footpaths = new ArrayList<>();
+        for (int s = 0; s < stops.length; s++)
+            footpaths.add(new TreeMap<>());
+        for (int s = 0; s < stops.length; s++) {
+            for (GtfsStorage.InterpolatedTransfer it : gtfsStorage.interpolatedTransfers.get(stops[s])) {
+                if (stopIndex.containsKey(it.toPlatformDescriptor))
+                    footpaths.get(s).merge(stopIndex.get(it.toPlatformDescriptor), it.streetTime, Math::min);
+            }
+        }
+        Map<Integer, List<Integer>> stopsByStationNode = new HashMap<>();
+        gtfsStorage.getStationNodes().forEach((stopId, stationNode) -> {
+            if (stopIndex.containsKey(stopId))
+                stopsByStationNode.computeIfAbsent(stationNode, k -> new ArrayList<>()).add(stopIndex.get(stopId));
+        });
+        for (List<Integer> stopsOfStation : stopsByStationNode.values()) {
+            for (int from : stopsOfStation) {
+                for (int to : stopsOfStation) {
+                    if (from != to)
+                        footpaths.get(from).put(to, 0);
+                }
+            }
+        }
+        for (int f = 0; f < feedIds.length; f++) {
+            Transfers transfers = new Transfers(feeds.get(feedIds[f]));
+            for (Stop stop : feeds.get(feedIds[f]).stops.values()) {
+                int from = stopIndex.get(new GtfsStorage.FeedIdWithStopId(feedIds[f], stop.stop_id));
+                Set<String> routesAtStop = new TreeSet<>();
+                for (int i = stopPatternsOffset[from]; i < stopPatternsOffset[from + 1]; i++) {
+                    int p = stopPatterns[i];
+                    for (int t = patternFirstTrip[p]; t < patternFirstTrip[p + 1]; t++)
+                        routesAtStop.add(trips.getTrip(t).trip.route_id);
+                }
+                for (String fromRouteId : routesAtStop) {
+                    for (Transfer transfer : transfers.getTransfersFromStop(stop.stop_id, fromRouteId)) {
+                        int to = stopIndex.get(new GtfsStorage.FeedIdWithStopId(feedIds[f], transfer.to_stop_id));
+                        if (to != from)
+                            footpaths.get(from).putIfAbsent(to, 0);
+                        if (transfer.min_transfer_time > 0 && routeIndex.containsKey(feedIds[f] + ":" + transfer.to_route_id))
+                            addMinTransferTime(from, routeIndex.get(feedIds[f] + ":" + fromRouteId), to, routeIndex.get(feedIds[f] + ":" + transfer.to_route_id), transfer.min_transfer_time);
+                    }
+                }
+            }
+        }
+        footpathsOffset = new int[stops.length + 1];
+        IntArrayList footpathToList = new IntArrayList();
+        IntArrayList footpathTimeList = new IntArrayList();
+        for (int s = 0; s < stops.length; s++) {
+            footpathsOffset[s] = footpathToList.size();
+            for (Map.Entry<Integer, Integer> footpath : footpaths.get(s).entrySet()) {
+                footpathToList.add(footpath.getKey());
+                footpathTimeList.add(footpath.getValue());
+            }
+        }
+        footpathsOffset[stops.length] = footpathToList.size();
+        footpathTo = footpathToList.toArray();
+        footpathTime = footpathTimeList.toArray();
+
+        int maxCachedServiceDays = CACHED_SERVICE_DAYS_PER_FEED * Math.max(1, feedIds.length);
+        activeTrips = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, BitSet> eldest) {
+                return size() > maxCachedServiceDays;
+            }
+        };
+        statePool = new RaptorStatePool(Runtime.getRuntime().availableProcessors());
+    }
+
+    private static int indexOf(ObjectIntHashMap<String> index, String key) {
+        int i = index.getOrDefault(key, -1);
+        if (i < 0) {
+            i = index.size();
+            index.put(key, i);
+        }
+        return i;
+    }
+
+    private void addMinTransferTime(int fromStop, int fromRoute, int toStop, int toRoute, int minTransferTime) {
+        long key = ((long) fromStop << 32) | toStop;
+        int[] rules = minTransferTimes.get(key);
+        rules = rules == null ? new int[3] : Arrays.copyOf(rules, rules.length + 3);
+        rules[rules.length - 3] = fromRoute;
+        rules[rules.length - 2] = toRoute;
+        rules[rules.length - 1] = minTransferTime;
+        minTransferTimes.put(key, rules);
+    }
+
+    /**
+     * @return the minimum time in seconds between arriving at fromStop with fromRoute and departing
+     * from toStop with toRoute, as configured in transfers.txt, or 0 if there is no such rule.
+     */
+    int getMinTransferTime(int fromStop, int fromRoute, int toStop, int toRoute) {
+        int[] rules = minTransferTimes.get(((long) fromStop << 32) | toStop);
+        if (rules == null)
+            return 0;
+        for (int i = 0; i < rules.length; i += 3) {
+            if (rules[i] == fromRoute && rules[i + 1] == toRoute)
+                return rules[i + 2];
+        }
+        return 0;
+    }
+
+    /**
+     * @return the trips of the given feed which run on the given service day. The bitset is shared between
+     * requests and must not be modified.
+     */
+    synchronized BitSet getActiveTrips(int feed, LocalDate serviceDay) {
+        return activeTrips.computeIfAbsent(((long) feed << 32) | (serviceDay.toEpochDay() & 0xFFFFFFFFL), key -> {
+            BitSet result = new BitSet(tripService.length);
+            for (int p = 0; p < getPatternCount(); p++) {
+                if (patternFeed[p] != feed)
+                    continue;
+                for (int trip = patternFirstTrip[p]; trip < patternFirstTrip[p + 1]; trip++) {
+                    if (tripService[trip].activeOn(serviceDay))
+                        result.set(trip);
+                }
+            }
+            return result;
+        });
+    }
+
+    RaptorStatePool getStatePool() {
+        return statePool;
+    }
+
+    public int getStopCount() {
+        return stops.length;
+    }
+
+    public int getPatternCount() {
+        return patternFeed.length;
+    }
+
+    /**
+     * @return the index of the given stop, or -1 if it is not part of any feed
+     */
+    int getStopIndex(GtfsStorage.FeedIdWithStopId stopId) {
+        return stopIndex.getOrDefault(stopId, -1);
+    }
+
+    int getPatternStopCount(int pattern) {
+        return patternStopsOffset[pattern + 1] - patternStopsOffset[pattern];
+    }
+
+    int getStopTimeIndex(int trip, int position) {
+        int pattern = tripPattern[trip];
+        return patternTimesOffset[pattern] + (trip - patternFirstTrip[pattern]) * getPatternStopCount(pattern) + position;
+    }
+}
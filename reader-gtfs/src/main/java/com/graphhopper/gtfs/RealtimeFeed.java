@@ -26,7 +26,6 @@ import com.conveyal.gtfs.model.Frequency;
 import com.conveyal.gtfs.model.StopTime;
 import com.conveyal.gtfs.model.Trip;
 import com.google.transit.realtime.GtfsRealtime;
-import org.mapdb.Fun;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,30 +49,130 @@ public class RealtimeFeed {
     private final IntHashSet blockedEdges;
     private final IntLongHashMap delaysForBoardEdges;
     private final IntLongHashMap delaysForAlightEdges;
+    private final List<PtGraph.PtEdge> additionalEdges;
     private final TreeSet<PtGraph.PtEdge> additionalEdgesByBaseNode;
     private final TreeSet<PtGraph.PtEdge> additionalEdgesByAdjNode;
+    // what each trip update contributed, so the next update can reuse it when the trip update didn't change
+    private final Map<String, FeedState> feedStates;
     public final Map<String, GtfsRealtime.FeedMessage> feedMessages;
 
     private RealtimeFeed(Map<String, GtfsRealtime.FeedMessage> feedMessages, IntHashSet blockedEdges,
-                         IntLongHashMap delaysForBoardEdges, IntLongHashMap delaysForAlightEdges, List<PtGraph.PtEdge> additionalEdges) {
+                         IntLongHashMap delaysForBoardEdges, IntLongHashMap delaysForAlightEdges, List<PtGraph.PtEdge> additionalEdges,
+                         Map<String, FeedState> feedStates) {
         this.feedMessages = feedMessages;
         this.blockedEdges = blockedEdges;
         this.delaysForBoardEdges = delaysForBoardEdges;
         this.delaysForAlightEdges = delaysForAlightEdges;
+        this.additionalEdges = additionalEdges;
         this.additionalEdgesByBaseNode = new TreeSet<>(Comparator.comparingInt(PtGraph.PtEdge::getBaseNode).thenComparingInt(PtGraph.PtEdge::getId));
         this.additionalEdgesByBaseNode.addAll(additionalEdges);
         this.additionalEdgesByAdjNode = new TreeSet<>(Comparator.comparingInt(PtGraph.PtEdge::getAdjNode).thenComparingInt(PtGraph.PtEdge::getId));
         this.additionalEdgesByAdjNode.addAll(additionalEdges);
+        this.feedStates = feedStates;
+    }
+
+    private RealtimeFeed(Map<String, GtfsRealtime.FeedMessage> feedMessages, IntHashSet blockedEdges, IntLongHashMap delaysForAlightEdges,
+                         RealtimeFeed overlay, Map<String, FeedState> feedStates) {
+        this.feedMessages = feedMessages;
+        this.blockedEdges = blockedEdges;
+        this.delaysForBoardEdges = overlay.delaysForBoardEdges;
+        this.delaysForAlightEdges = delaysForAlightEdges;
+        this.additionalEdges = overlay.additionalEdges;
+        this.additionalEdgesByBaseNode = overlay.additionalEdgesByBaseNode;
+        this.additionalEdgesByAdjNode = overlay.additionalEdgesByAdjNode;
+        this.feedStates = feedStates;
     }
 
     public static RealtimeFeed empty() {
-        return new RealtimeFeed(Collections.emptyMap(), new IntHashSet(), new IntLongHashMap(), new IntLongHashMap(), Collections.emptyList());
+        return new RealtimeFeed(Collections.emptyMap(), new IntHashSet(), new IntLongHashMap(), new IntLongHashMap(), Collections.emptyList(), Collections.emptyMap());
     }
 
     public static RealtimeFeed fromProtobuf(GtfsStorage staticGtfs, Map<String, Transfers> transfers, Map<String, GtfsRealtime.FeedMessage> feedMessages) {
+        return empty().update(staticGtfs, transfers, feedMessages);
+    }
+
+    /**
+     * Applies newer feed messages to this realtime feed. Trip updates are matched to the ones of this feed by their
+     * trip descriptor, and only the trips whose update changed are looked up in the graph again. The result is a new
+     * instance, this one is not modified, so routers that still use it keep a consistent view.
+     */
+    public RealtimeFeed update(GtfsStorage staticGtfs, Map<String, Transfers> transfers, Map<String, GtfsRealtime.FeedMessage> feedMessages) {
+        final Map<String, FeedState> feedStates = new LinkedHashMap<>();
+        final List<TripEffects> stale = new ArrayList<>();
+        final List<TripEffects> fresh = new ArrayList<>();
+        this.feedStates.forEach((feedKey, oldState) -> {
+            if (!feedMessages.containsKey(feedKey))
+                stale.addAll(oldState.trips.values());
+        });
+        feedMessages.forEach((feedKey, feedMessage) -> {
+            GTFSFeed feed = staticGtfs.getGtfsFeeds().get(feedKey);
+            ZoneId timezone = ZoneId.of(feed.agency.values().stream().findFirst().get().agency_timezone);
+            Instant timestamp = Instant.ofEpochSecond(feedMessage.getHeader().getTimestamp());
+            LocalDate dateToChange = timestamp.atZone(timezone).toLocalDate(); //FIXME
+            FeedState oldState = this.feedStates.get(feedKey);
+            if (oldState != null && !oldState.dateToChange.equals(dateToChange))
+                oldState = null; // everything refers to the other day, so nothing can be reused
+            BitSet validOnDay = new BitSet();
+            LocalDate startDate = feed.getStartDate();
+            validOnDay.set((int) DAYS.between(startDate, dateToChange));
+            FeedState state = new FeedState(timezone, dateToChange, validOnDay);
+            Map<String, Integer> occurrences = new HashMap<>();
+            for (GtfsRealtime.FeedEntity entity : feedMessage.getEntityList()) {
+                if (!entity.hasTripUpdate())
+                    continue;
+                GtfsRealtime.TripUpdate tripUpdate = entity.getTripUpdate();
+                GtfsRealtime.TripDescriptor.ScheduleRelationship scheduleRelationship = tripUpdate.getTrip().getScheduleRelationship();
+                if (scheduleRelationship != GtfsRealtime.TripDescriptor.ScheduleRelationship.SCHEDULED && scheduleRelationship != GtfsRealtime.TripDescriptor.ScheduleRelationship.ADDED)
+                    continue;
+                String key = tripKey(tripUpdate.getTrip());
+                key = key + "#" + occurrences.merge(key, 1, Integer::sum);
+                TripEffects effects = oldState != null ? oldState.trips.get(key) : null;
+                if (effects == null || !effects.tripUpdate.equals(tripUpdate)) {
+                    effects = scheduleRelationship == GtfsRealtime.TripDescriptor.ScheduleRelationship.SCHEDULED
+                            ? maybeUpdateScheduledTrip(staticGtfs, feedKey, tripUpdate, feed, staticGtfs.getPtGraph())
+                            : maybeAddExtraTrip(staticGtfs, feedKey, tripUpdate, timezone, validOnDay);
+                    fresh.add(effects);
+                }
+                state.trips.put(key, effects);
+            }
+            if (this.feedStates.containsKey(feedKey)) {
+                Set<TripEffects> reused = Collections.newSetFromMap(new IdentityHashMap<>());
+                reused.addAll(state.trips.values());
+                for (TripEffects oldEffects : this.feedStates.get(feedKey).trips.values()) {
+                    if (!reused.contains(oldEffects))
+                        stale.add(oldEffects);
+                }
+            }
+            feedStates.put(feedKey, state);
+        });
+        boolean overlayChanged = false;
+        for (TripEffects effects : stale)
+            overlayChanged |= effects.changesOverlay();
+        for (TripEffects effects : fresh)
+            overlayChanged |= effects.changesOverlay();
+        // Several trip updates can block or delay the same edge, e.g. the runs of a frequency-based trip, so we
+        // cannot remove the edges of a stale update. We collect them again from the effects of all current updates.
         final IntHashSet blockedEdges = new IntHashSet();
-        final IntLongHashMap delaysForBoardEdges = new IntLongHashMap();
         final IntLongHashMap delaysForAlightEdges = new IntLongHashMap();
+        for (FeedState state : feedStates.values()) {
+            for (TripEffects effects : state.trips.values()) {
+                blockedEdges.addAll(effects.blockedEdges);
+                delaysForAlightEdges.putAll(effects.delaysForAlightEdges);
+            }
+        }
+        // The delayed departures and added trips share timeline nodes at their stops, so the overlay is laid out
+        // again as a whole when one of them changes. That only replays the cached trip updates.
+        logger.debug("Realtime update: {} changed and {} removed trip updates, overlay {}", fresh.size(), stale.size(), overlayChanged ? "rebuilt" : "reused");
+        if (overlayChanged || this.feedStates.isEmpty()) {
+            return buildOverlay(staticGtfs, transfers, feedMessages, blockedEdges, delaysForAlightEdges, feedStates);
+        } else {
+            return new RealtimeFeed(feedMessages, blockedEdges, delaysForAlightEdges, this, feedStates);
+        }
+    }
+
+    private static RealtimeFeed buildOverlay(GtfsStorage staticGtfs, Map<String, Transfers> transfers, Map<String, GtfsRealtime.FeedMessage> feedMessages,
+                                             IntHashSet blockedEdges, IntLongHashMap delaysForAlightEdges, Map<String, FeedState> feedStates) {
+        final IntLongHashMap delaysForBoardEdges = new IntLongHashMap();
         final LinkedList<PtGraph.PtEdge> additionalEdges = new LinkedList<>();
         final GtfsReader.PtGraphOut overlayGraph = new GtfsReader.PtGraphOut() {
             int nextEdge = staticGtfs.getPtGraph().getEdgeCount();
@@ -104,68 +203,115 @@ public class RealtimeFeed {
 
         };
 
-        feedMessages.forEach((feedKey, feedMessage) -> {
-            GTFSFeed feed = staticGtfs.getGtfsFeeds().get(feedKey);
-            ZoneId timezone = ZoneId.of(feed.agency.values().stream().findFirst().get().agency_timezone);
-            PtGraph ptGraphNodesAndEdges = staticGtfs.getPtGraph();
-            final GtfsReader gtfsReader = new GtfsReader(feedKey, ptGraphNodesAndEdges, overlayGraph, staticGtfs, null, transfers.get(feedKey), null);
-            Instant timestamp = Instant.ofEpochSecond(feedMessage.getHeader().getTimestamp());
-            LocalDate dateToChange = timestamp.atZone(timezone).toLocalDate(); //FIXME
-            BitSet validOnDay = new BitSet();
-            LocalDate startDate = feed.getStartDate();
-            validOnDay.set((int) DAYS.between(startDate, dateToChange));
-            feedMessage.getEntityList().stream()
-                    .filter(GtfsRealtime.FeedEntity::hasTripUpdate)
-                    .map(GtfsRealtime.FeedEntity::getTripUpdate)
-                    .filter(tripUpdate -> tripUpdate.getTrip().getScheduleRelationship() == GtfsRealtime.TripDescriptor.ScheduleRelationship.SCHEDULED)
-                    .forEach(tripUpdate -> maybeUpdateScheduledTrip(staticGtfs, feedKey, tripUpdate, feed, blockedEdges, delaysForAlightEdges, ptGraphNodesAndEdges, gtfsReader, timezone, validOnDay, delaysForBoardEdges));
-            feedMessage.getEntityList().stream()
-                    .filter(GtfsRealtime.FeedEntity::hasTripUpdate)
-                    .map(GtfsRealtime.FeedEntity::getTripUpdate)
-                    .filter(tripUpdate -> tripUpdate.getTrip().getScheduleRelationship() == GtfsRealtime.TripDescriptor.ScheduleRelationship.ADDED)
-                    .forEach(tripUpdate -> maybeAddExtraTrip(staticGtfs, feedKey, tripUpdate, timezone, validOnDay, gtfsReader));
-            gtfsReader.wireUpAdditionalDeparturesAndArrivals(timezone);
+        feedStates.forEach((feedKey, state) -> {
+            final GtfsReader gtfsReader = new GtfsReader(feedKey, staticGtfs.getPtGraph(), overlayGraph, staticGtfs, null, transfers.get(feedKey), null);
+            for (TripEffects effects : state.trips.values()) {
+                for (DelayedDeparture delayedDeparture : effects.delayedDepartures) {
+                    int delayedBoardEdge = gtfsReader.addDelayedBoardEdge(state.timezone, effects.tripUpdate.getTrip(), delayedDeparture.stopSequence, delayedDeparture.departureTime, delayedDeparture.departureNode, state.validOnDay);
+                    delaysForBoardEdges.put(delayedBoardEdge, delayedDeparture.delay);
+                }
+            }
+            for (TripEffects effects : state.trips.values()) {
+                if (effects.addedTrip != null) {
+                    gtfsReader.addTrip(state.timezone, 0, new ArrayList<>(), effects.addedTrip, effects.tripUpdate.getTrip());
+                }
+            }
+            gtfsReader.wireUpAdditionalDeparturesAndArrivals(state.timezone);
         });
 
-        return new RealtimeFeed(feedMessages, blockedEdges, delaysForBoardEdges, delaysForAlightEdges, additionalEdges);
+        return new RealtimeFeed(feedMessages, blockedEdges, delaysForBoardEdges, delaysForAlightEdges, additionalEdges, feedStates);
+    }
+
+    private static String tripKey(GtfsRealtime.TripDescriptor tripDescriptor) {
+        return tripDescriptor.getTripId() + "/" + tripDescriptor.getRouteId() + "/" + tripDescriptor.getStartDate() + "/" + tripDescriptor.getStartTime();
+    }
+
+    private static class FeedState {
+        final ZoneId timezone;
+        final LocalDate dateToChange;
+        final BitSet validOnDay;
+        final Map<String, TripEffects> trips = new LinkedHashMap<>();
+
+        FeedState(ZoneId timezone, LocalDate dateToChange, BitSet validOnDay) {
+            this.timezone = timezone;
+            this.dateToChange = dateToChange;
+            this.validOnDay = validOnDay;
+        }
+    }
+
+    /**
+     * What one trip update does to the static timetable. Blocked edges and arrival delays refer to edges of the static
+     * graph, delayed departures and added trips become edges of the overlay.
+     */
+    private static class TripEffects {
+        final GtfsRealtime.TripUpdate tripUpdate;
+        final IntArrayList blockedEdges = new IntArrayList();
+        final IntLongHashMap delaysForAlightEdges = new IntLongHashMap();
+        final List<DelayedDeparture> delayedDepartures = new ArrayList<>();
+        GtfsReader.TripWithStopTimes addedTrip;
+
+        TripEffects(GtfsRealtime.TripUpdate tripUpdate) {
+            this.tripUpdate = tripUpdate;
+        }
+
+        boolean changesOverlay() {
+            return !delayedDepartures.isEmpty() || addedTrip != null;
+        }
+    }
+
+    private static class DelayedDeparture {
+        final int stopSequence;
+        final int departureTime;
+        final int departureNode;
+        final long delay;
+
+        DelayedDeparture(int stopSequence, int departureTime, int departureNode, long delay) {
+            this.stopSequence = stopSequence;
+            this.departureTime = departureTime;
+            this.departureNode = departureNode;
+            this.delay = delay;
+        }
     }
 
-    private static void maybeUpdateScheduledTrip(GtfsStorage staticGtfs, String feedKey, GtfsRealtime.TripUpdate tripUpdate, GTFSFeed feed, IntHashSet blockedEdges, IntLongHashMap delaysForAlightEdges, PtGraph ptGraphNodesAndEdges, GtfsReader gtfsReader, ZoneId timezone, BitSet validOnDay, IntLongHashMap delaysForBoardEdges) {
+    private static TripEffects maybeUpdateScheduledTrip(GtfsStorage staticGtfs, String feedKey, GtfsRealtime.TripUpdate tripUpdate, GTFSFeed feed, PtGraph ptGraphNodesAndEdges) {
+        TripEffects effects = new TripEffects(tripUpdate);
         Collection<Frequency> frequencies = feed.getFrequencies(tripUpdate.getTrip().getTripId());
         int timeOffset = (tripUpdate.getTrip().hasStartTime() && !frequencies.isEmpty()) ? LocalTime.parse(tripUpdate.getTrip().getStartTime()).toSecondOfDay() : 0;
         final int[] boardEdges = findBoardEdgesForTrip(staticGtfs, feedKey, feed, tripUpdate.getTrip());
         final int[] leaveEdges = findAlightEdgesForTrip(staticGtfs, feedKey, feed, tripUpdate.getTrip());
         if (boardEdges == null || leaveEdges == null) {
             logger.warn("Trip not found: {}", tripUpdate.getTrip());
-            return;
+            return effects;
         }
         tripUpdate.getStopTimeUpdateList().stream()
                 .filter(stopTimeUpdate -> stopTimeUpdate.getScheduleRelationship() == SKIPPED)
                 .mapToInt(GtfsRealtime.TripUpdate.StopTimeUpdate::getStopSequence)
                 .forEach(skippedStopSequenceNumber -> {
-                    blockedEdges.add(boardEdges[skippedStopSequenceNumber]);
-                    blockedEdges.add(leaveEdges[skippedStopSequenceNumber]);
+                    effects.blockedEdges.add(boardEdges[skippedStopSequenceNumber]);
+                    effects.blockedEdges.add(leaveEdges[skippedStopSequenceNumber]);
                 });
-        GtfsReader.TripWithStopTimes tripWithStopTimes = toTripWithStopTimes(feed, tripUpdate);
+        StopTimeStore stopTimeStore = staticGtfs.getStopTimeStore(feedKey);
+        GtfsReader.TripWithStopTimes tripWithStopTimes = toTripWithStopTimes(feed, stopTimeStore, tripUpdate);
         tripWithStopTimes.stopTimes.forEach(stopTime -> {
             if (stopTime.stop_sequence > leaveEdges.length - 1) {
                 logger.warn("Stop sequence number too high {} vs {}", stopTime.stop_sequence, leaveEdges.length);
                 return;
             }
-            final StopTime originalStopTime = feed.stop_times.get(new Fun.Tuple2(tripUpdate.getTrip().getTripId(), stopTime.stop_sequence));
+            final StopTime originalStopTime = stopTimeStore.getStopTime(tripUpdate.getTrip().getTripId(), stopTime.stop_sequence);
             int arrivalDelay = stopTime.arrival_time - originalStopTime.arrival_time;
-            delaysForAlightEdges.put(leaveEdges[stopTime.stop_sequence], arrivalDelay * 1000);
+            effects.delaysForAlightEdges.put(leaveEdges[stopTime.stop_sequence], arrivalDelay * 1000);
             int departureDelay = stopTime.departure_time - originalStopTime.departure_time;
             if (departureDelay > 0) {
                 int boardEdge = boardEdges[stopTime.stop_sequence];
                 int departureNode = ptGraphNodesAndEdges.edge(boardEdge).getAdjNode();
-                int delayedBoardEdge = gtfsReader.addDelayedBoardEdge(timezone, tripUpdate.getTrip(), stopTime.stop_sequence, stopTime.departure_time + timeOffset, departureNode, validOnDay);
-                delaysForBoardEdges.put(delayedBoardEdge, departureDelay * 1000);
+                effects.delayedDepartures.add(new DelayedDeparture(stopTime.stop_sequence, stopTime.departure_time + timeOffset, departureNode, departureDelay * 1000));
             }
         });
+        return effects;
     }
 
-    private static void maybeAddExtraTrip(GtfsStorage staticGtfs, String feedKey, GtfsRealtime.TripUpdate tripUpdate, ZoneId timezone, BitSet validOnDay, GtfsReader gtfsReader) {
+    private static TripEffects maybeAddExtraTrip(GtfsStorage staticGtfs, String feedKey, GtfsRealtime.TripUpdate tripUpdate, ZoneId timezone, BitSet validOnDay) {
+        TripEffects effects = new TripEffects(tripUpdate);
         GTFSFeed feed = staticGtfs.getGtfsFeeds().get(feedKey);
         Trip trip = new Trip();
         trip.trip_id = tripUpdate.getTrip().getTripId();
@@ -176,7 +322,7 @@ public class RealtimeFeed {
             trip.route_id = tripUpdate.getTrip().getRouteId();
         } else {
             logger.error("We need to know at least a valid route id for ADDED trip {}", trip.trip_id);
-            return;
+            return effects;
         }
         final List<StopTime> stopTimes = tripUpdate.getStopTimeUpdateList().stream()
                 .map(stopTimeUpdate -> {
@@ -193,15 +339,15 @@ public class RealtimeFeed {
                 .collect(Collectors.toList());
         if (stopTimes.stream().anyMatch(stopTime -> !feed.stops.containsKey(stopTime.stop_id))) {
             logger.error("ADDED trip {} contains unknown stop id", trip.trip_id);
-            return;
+            return effects;
         }
-        GtfsReader.TripWithStopTimes tripWithStopTimes = new GtfsReader.TripWithStopTimes(trip, stopTimes, validOnDay, Collections.emptySet(), Collections.emptySet());
-        gtfsReader.addTrip(timezone, 0, new ArrayList<>(), tripWithStopTimes, tripUpdate.getTrip());
+        effects.addedTrip = new GtfsReader.TripWithStopTimes(trip, stopTimes, validOnDay, Collections.emptySet(), Collections.emptySet());
+        return effects;
     }
 
     public static int[] findAlightEdgesForTrip(GtfsStorage staticGtfs, String feedKey, GTFSFeed feed, GtfsRealtime.TripDescriptor tripDescriptor) {
         Trip trip = feed.trips.get(tripDescriptor.getTripId());
-        StopTime next = feed.getOrderedStopTimesForTrip(trip.trip_id).iterator().next();
+        StopTime next = staticGtfs.getStopTimeStore(feedKey).getOrderedStopTimesForTrip(trip.trip_id).iterator().next();
         int station = staticGtfs.getStationNodes().get(new GtfsStorage.FeedIdWithStopId(feedKey, next.stop_id));
         Optional<PtGraph.PtEdge> firstAlighting = StreamSupport.stream(staticGtfs.getPtGraph().backEdgesAround(station).spliterator(), false)
                 .flatMap(e -> StreamSupport.stream(staticGtfs.getPtGraph().backEdgesAround(e.getAdjNode()).spliterator(), false))
@@ -220,7 +366,7 @@ public class RealtimeFeed {
 
     public static int[] findBoardEdgesForTrip(GtfsStorage staticGtfs, String feedKey, GTFSFeed feed, GtfsRealtime.TripDescriptor tripDescriptor) {
         Trip trip = feed.trips.get(tripDescriptor.getTripId());
-        StopTime next = feed.getOrderedStopTimesForTrip(trip.trip_id).iterator().next();
+        StopTime next = staticGtfs.getStopTimeStore(feedKey).getOrderedStopTimesForTrip(trip.trip_id).iterator().next();
         int station = staticGtfs.getStationNodes().get(new GtfsStorage.FeedIdWithStopId(feedKey, next.stop_id));
         Optional<PtGraph.PtEdge> firstBoarding = StreamSupport.stream(staticGtfs.getPtGraph().edgesAround(station).spliterator(), false)
                 .flatMap(e -> StreamSupport.stream(staticGtfs.getPtGraph().edgesAround(e.getAdjNode()).spliterator(), false))
@@ -332,7 +478,7 @@ public class RealtimeFeed {
         return additionalEdgesByAdjNode.subSet(new PtGraph.PtEdge(0, 0, node, null), new PtGraph.PtEdge(0, 0, node+1, null));
     }
 
-    public Optional<GtfsReader.TripWithStopTimes> getTripUpdate(GTFSFeed staticFeed, GtfsRealtime.TripDescriptor trip, Instant boardTime) {
+    public Optional<GtfsReader.TripWithStopTimes> getTripUpdate(GTFSFeed staticFeed, StopTimeStore staticStopTimes, GtfsRealtime.TripDescriptor trip, Instant boardTime) {
         try {
             logger.trace("getTripUpdate {}", trip);
             if (!isThisRealtimeUpdateAboutThisLineRun(boardTime)) {
@@ -342,7 +488,7 @@ public class RealtimeFeed {
                         .filter(e -> e.hasTripUpdate())
                         .map(e -> e.getTripUpdate())
                         .filter(tu -> isDescribedBy(trip, tu.getTrip()))
-                        .map(tu -> toTripWithStopTimes(staticFeed, tu)))
+                        .map(tu -> toTripWithStopTimes(staticFeed, staticStopTimes, tu)))
                         .findFirst();
             }
         } catch (RuntimeException e) {
@@ -357,7 +503,7 @@ public class RealtimeFeed {
         }
     }
 
-    public static GtfsReader.TripWithStopTimes toTripWithStopTimes(GTFSFeed feed, GtfsRealtime.TripUpdate tripUpdate) {
+    public static GtfsReader.TripWithStopTimes toTripWithStopTimes(GTFSFeed feed, StopTimeStore stopTimeStore, GtfsRealtime.TripUpdate tripUpdate) {
         ZoneId timezone = ZoneId.of(feed.agency.values().stream().findFirst().get().agency_timezone);
         logger.trace("{}", tripUpdate.getTrip());
         final List<StopTime> stopTimes = new ArrayList<>();
@@ -377,7 +523,7 @@ public class RealtimeFeed {
         List<GtfsRealtime.TripUpdate.StopTimeUpdate> stopTimeUpdateListWithSentinel = new ArrayList<>(tripUpdate.getStopTimeUpdateList());
         Iterable<StopTime> interpolatedStopTimesForTrip;
         try {
-            interpolatedStopTimesForTrip = feed.getInterpolatedStopTimesForTrip(tripUpdate.getTrip().getTripId());
+            interpolatedStopTimesForTrip = stopTimeStore.getInterpolatedStopTimesForTrip(tripUpdate.getTrip().getTripId());
         } catch (GTFSFeed.FirstAndLastStopsDoNotHaveTimes firstAndLastStopsDoNotHaveTimes) {
             throw new RuntimeException(firstAndLastStopsDoNotHaveTimes);
         }
@@ -388,7 +534,7 @@ public class RealtimeFeed {
         for (GtfsRealtime.TripUpdate.StopTimeUpdate stopTimeUpdate : stopTimeUpdateListWithSentinel) {
             int nextStopSequence = stopTimes.isEmpty() ? 1 : stopTimes.get(stopTimes.size() - 1).stop_sequence + 1;
             for (int i = nextStopSequence; i < stopTimeUpdate.getStopSequence(); i++) {
-                StopTime previousOriginalStopTime = feed.stop_times.get(new Fun.Tuple2(tripUpdate.getTrip().getTripId(), i));
+                StopTime previousOriginalStopTime = stopTimeStore.getStopTime(tripUpdate.getTrip().getTripId(), i);
                 if (previousOriginalStopTime == null) {
                     continue; // This can and does happen. Stop sequence numbers can be left out.
                 }
@@ -403,7 +549,7 @@ public class RealtimeFeed {
                 logger.trace("Number of stop times: {}", stopTimes.size());
             }
 
-            final StopTime originalStopTime = feed.stop_times.get(new Fun.Tuple2(tripUpdate.getTrip().getTripId(), stopTimeUpdate.getStopSequence()));
+            final StopTime originalStopTime = stopTimeStore.getStopTime(tripUpdate.getTrip().getTripId(), stopTimeUpdate.getStopSequence());
             if (originalStopTime != null) {
                 StopTime updatedStopTime = originalStopTime.clone();
                 if (stopTimeUpdate.getScheduleRelationship() == NO_DATA) {
@@ -486,10 +632,10 @@ public class RealtimeFeed {
         }).findFirst().orElse(Instant.now());
     }
 
-    public StopTime getStopTime(GTFSFeed staticFeed, GtfsRealtime.TripDescriptor tripDescriptor, Instant boardTime, int stopSequence) {
-        StopTime stopTime = staticFeed.stop_times.get(new Fun.Tuple2<>(tripDescriptor.getTripId(), stopSequence));
+    public StopTime getStopTime(GTFSFeed staticFeed, StopTimeStore staticStopTimes, GtfsRealtime.TripDescriptor tripDescriptor, Instant boardTime, int stopSequence) {
+        StopTime stopTime = staticStopTimes.getStopTime(tripDescriptor.getTripId(), stopSequence);
         if (stopTime == null) {
-            return getTripUpdate(staticFeed, tripDescriptor, boardTime).get().stopTimes.get(stopSequence - 1);
+            return getTripUpdate(staticFeed, staticStopTimes, tripDescriptor, boardTime).get().stopTimes.get(stopSequence - 1);
         } else {
             return stopTime;
         }
@@ -0,0 +1,50 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.conveyal.gtfs.GTFSFeed;
+import com.conveyal.gtfs.model.StopTime;
+
+import java.util.List;
+
+/**
+ * Read access to the stop_times of one GTFS feed.
+ *
+ * @see GTFSFeed
+ * @see ColumnarStopTimeStore
+ */
+public interface StopTimeStore {
+
+    /**
+     * @return the stop times of the trip, in order of increasing stop_sequence. Empty if the trip is unknown.
+     */
+    Iterable<StopTime> getOrderedStopTimesForTrip(String tripId);
+
+    /**
+     * @return the stop times of the trip, in order of increasing stop_sequence, with stop-to-stop travel times
+     * interpolated where the feed leaves them out. Empty if the trip is unknown.
+     */
+    List<StopTime> getInterpolatedStopTimesForTrip(String tripId) throws GTFSFeed.FirstAndLastStopsDoNotHaveTimes;
+
+    /**
+     * @return the stop time with the given stop_sequence, or null if there is none
+     */
+    StopTime getStopTime(String tripId, int stopSequence);
+
+}
@@ -28,6 +28,7 @@ public class TripBasedRouter {
     private List<ResultLabel> result = new ArrayList<>();
     private Parameters parameters;
     private final int N_ROUNDS = 8;
+    private final Map<String, ZoneId> zoneIds = new HashMap<>();
     int round;
 
     public TripBasedRouter(GtfsStorage gtfsStorage, Trips tripTransfers) {
@@ -92,7 +93,7 @@ public class TripBasedRouter {
                     GTFSFeed.StopTimesForTripWithTripPatternKey tripPointer = tripTransfers.getTrip(boarding.tripIdx);
                     if (tripPointer.service.activeOn(serviceDay) && tripFilter.test(tripPointer)) {
                         logger.debug("{}", boarding);
-                        enqueue(queue, tripPointer, boarding, null, null, serviceDay, accessStation, 0);
+                        enqueue(queue, tripPointer, boarding.stop_sequence, null, null, serviceDay, accessStation, 0);
                         break;
                     }
                 }
@@ -172,31 +173,39 @@ public class TripBasedRouter {
     }
 
     private List<EnqueuedTripSegment> enqueueTransfers(List<EnqueuedTripSegment> queue0) {
+        TripTransferIndex tripTransferIndex = gtfsStorage.getTripTransferIndex();
         List<EnqueuedTripSegment> queue1 = new ArrayList<>();
         for (EnqueuedTripSegment enqueuedTripSegment : queue0) {
             logger.debug("{}", enqueuedTripSegment);
-            GTFSFeed sourceFeed = gtfsStorage.getGtfsFeeds().get(enqueuedTripSegment.tripPointer.feedId);
-            ZoneId sourceZoneId = ZoneId.of(sourceFeed.agency.values().stream().findFirst().get().agency_timezone);
+            int dayIndex = tripTransferIndex.getDayIndex(enqueuedTripSegment.serviceDay);
+            if (dayIndex < 0) continue; // currently if we didn't build the service day.
+            ZoneId sourceZoneId = getZoneId(enqueuedTripSegment.tripPointer.feedId);
             int toStopSequence = Math.min(enqueuedTripSegment.toStopSequence, enqueuedTripSegment.tripPointer.stopTimes.size());
             for (int i = enqueuedTripSegment.tripAtStopTime.stop_sequence + 1; i < toStopSequence; i++) {
                 StopTime stopTime = enqueuedTripSegment.tripPointer.stopTimes.get(i);
                 if (stopTime == null) continue;
                 if (! (getArrivalTime(enqueuedTripSegment, stopTime, 0) < earliestArrivalTime[round]))
                     break;
-                Trips.TripAtStopTime transferOrigin = new Trips.TripAtStopTime(enqueuedTripSegment.tripPointer.idx, stopTime.stop_sequence);
-                logger.debug("  {}", print(transferOrigin, tripTransfers, ARRIVAL));
-                Collection<Trips.TripAtStopTime> transferDestinations = gtfsStorage.tripTransfers.getTripTransfers(enqueuedTripSegment.serviceDay).get(transferOrigin);
-                if (transferDestinations == null) continue; // currently if we didn't build the service day.
-                for (Trips.TripAtStopTime transferDestination : transferDestinations) {
-                    GTFSFeed.StopTimesForTripWithTripPatternKey destinationTripPointer = tripTransfers.getTrip(transferDestination.tripIdx);
-                    GTFSFeed destinationFeed = gtfsStorage.getGtfsFeeds().get(destinationTripPointer.feedId);
-                    ZoneId destinationZoneId = ZoneId.of(destinationFeed.agency.values().stream().findFirst().get().agency_timezone);
-                    StopTime transferStopTime = destinationTripPointer.stopTimes.get(transferDestination.stop_sequence);
-                    LocalDateTime scheduleArrivalTime = enqueuedTripSegment.serviceDay.atStartOfDay().plusSeconds(stopTime.arrival_time);
-                    int timeZoneOffset = (int) (scheduleArrivalTime.atZone(sourceZoneId).toEpochSecond() - scheduleArrivalTime.atZone(destinationZoneId).toEpochSecond());
+                Trips.TripAtStopTime transferOrigin = null;
+                if (logger.isDebugEnabled())
+                    logger.debug("  {}", print(new Trips.TripAtStopTime(enqueuedTripSegment.tripPointer.idx, stopTime.stop_sequence), tripTransfers, ARRIVAL));
+                int transfersEnd = tripTransferIndex.getTransfersEnd(enqueuedTripSegment.tripPointer.idx, stopTime.stop_sequence);
+                for (int transfer = tripTransferIndex.getTransfersStart(enqueuedTripSegment.tripPointer.idx, stopTime.stop_sequence); transfer < transfersEnd; transfer++) {
+                    if (!tripTransferIndex.isValidOn(transfer, dayIndex)) continue;
+                    GTFSFeed.StopTimesForTripWithTripPatternKey destinationTripPointer = tripTransfers.getTrip(tripTransferIndex.getToTripIdx(transfer));
+                    int destinationStopSequence = tripTransferIndex.getToStopSequence(transfer);
+                    ZoneId destinationZoneId = getZoneId(destinationTripPointer.feedId);
+                    StopTime transferStopTime = destinationTripPointer.stopTimes.get(destinationStopSequence);
+                    int timeZoneOffset = 0;
+                    if (!sourceZoneId.equals(destinationZoneId)) {
+                        LocalDateTime scheduleArrivalTime = enqueuedTripSegment.serviceDay.atStartOfDay().plusSeconds(stopTime.arrival_time);
+                        timeZoneOffset = (int) (scheduleArrivalTime.atZone(sourceZoneId).toEpochSecond() - scheduleArrivalTime.atZone(destinationZoneId).toEpochSecond());
+                    }
                     if (transferStopTime.departure_time >= stopTime.arrival_time + timeZoneOffset && destinationTripPointer.service.activeOn(enqueuedTripSegment.serviceDay) && parameters.getTripFilter().test(destinationTripPointer)) {
-                        logger.debug("    {}", transferDestination);
-                        enqueue(queue1, destinationTripPointer, transferDestination, transferOrigin, enqueuedTripSegment, enqueuedTripSegment.serviceDay, enqueuedTripSegment.accessStation, round + 1);
+                        logger.debug("    {} @ {}", destinationTripPointer.idx, destinationStopSequence);
+                        if (transferOrigin == null)
+                            transferOrigin = new Trips.TripAtStopTime(enqueuedTripSegment.tripPointer.idx, stopTime.stop_sequence);
+                        enqueue(queue1, destinationTripPointer, destinationStopSequence, transferOrigin, enqueuedTripSegment, enqueuedTripSegment.serviceDay, enqueuedTripSegment.accessStation, round + 1);
                     }
                 }
             }
@@ -204,6 +213,10 @@ public class TripBasedRouter {
         return queue1;
     }
 
+    private ZoneId getZoneId(String feedId) {
+        return zoneIds.computeIfAbsent(feedId, id -> ZoneId.of(gtfsStorage.getGtfsFeeds().get(id).agency.values().stream().findFirst().get().agency_timezone));
+    }
+
     private void checkArrivals(List<EnqueuedTripSegment> queue0, int round) {
         for (EnqueuedTripSegment enqueuedTripSegment : queue0) {
             int toStopSequence = Math.min(enqueuedTripSegment.toStopSequence, enqueuedTripSegment.tripPointer.stopTimes.size() - 1);
@@ -247,18 +260,18 @@ public class TripBasedRouter {
         return stopTime.arrival_time + extraDisutilityOfAccessSeconds + extraDisutilityOfTransfersSeconds + extraDisutilityOfRouteTypeSeconds + extraSeconds;
     }
 
-    private void enqueue(List<EnqueuedTripSegment> queue1, GTFSFeed.StopTimesForTripWithTripPatternKey tripPointer, Trips.TripAtStopTime tripAtBoarding, Trips.TripAtStopTime transferOrigin, EnqueuedTripSegment parent, LocalDate serviceDay, StopWithTimeDelta accessStation, int round) {
+    private void enqueue(List<EnqueuedTripSegment> queue1, GTFSFeed.StopTimesForTripWithTripPatternKey tripPointer, int boardingStopSequence, Trips.TripAtStopTime transferOrigin, EnqueuedTripSegment parent, LocalDate serviceDay, StopWithTimeDelta accessStation, int round) {
         int thisTripDoneFromIndex = tripDoneFromIndex[round][tripPointer.idx];
-        if (tripAtBoarding.stop_sequence < thisTripDoneFromIndex) {
+        if (boardingStopSequence < thisTripDoneFromIndex) {
             long routeTypePenalty = parameters.transferPenaltiesByRouteType.getOrDefault(tripPointer.routeType, 0L);
-            EnqueuedTripSegment enqueuedTripSegment = new EnqueuedTripSegment(tripPointer, tripAtBoarding, thisTripDoneFromIndex, serviceDay, transferOrigin, parent, accessStation);
+            EnqueuedTripSegment enqueuedTripSegment = new EnqueuedTripSegment(tripPointer, new Trips.TripAtStopTime(tripPointer.idx, boardingStopSequence), thisTripDoneFromIndex, serviceDay, transferOrigin, parent, accessStation);
             if (parent != null) {
                 enqueuedTripSegment.nRealTransfers = parent.nRealTransfers + 1;
                 enqueuedTripSegment.routeTypePenalty = parent.routeTypePenalty;
             }
             enqueuedTripSegment.routeTypePenalty += routeTypePenalty;
             queue1.add(enqueuedTripSegment);
-            markAsDone(tripPointer, tripAtBoarding.stop_sequence, round);
+            markAsDone(tripPointer, boardingStopSequence, round);
         }
     }
 
@@ -367,18 +380,20 @@ public class TripBasedRouter {
         private final List<StopWithTimeDelta> egressStations;
         private final Instant profileStartTime;
         private Duration profileLength;
+        private final int blockedRouteTypes;
         private final Predicate<GTFSFeed.StopTimesForTripWithTripPatternKey> tripFilter;
         private final double betaAccessTime;
         private final double betaEgressTime;
         private final double betaTransfers;
         private final Map<Integer, Long> transferPenaltiesByRouteType;
 
-        Parameters(List<StopWithTimeDelta> accessStations, List<StopWithTimeDelta> egressStations, Instant profileStartTime, Duration profileLength, Predicate<GTFSFeed.StopTimesForTripWithTripPatternKey> tripFilter, double betaAccessTime, double betaEgressTime, double betaTransfers, Map<Integer, Long> transferPenaltiesByRouteType) {
+        Parameters(List<StopWithTimeDelta> accessStations, List<StopWithTimeDelta> egressStations, Instant profileStartTime, Duration profileLength, int blockedRouteTypes, double betaAccessTime, double betaEgressTime, double betaTransfers, Map<Integer, Long> transferPenaltiesByRouteType) {
             this.accessStations = accessStations;
             this.egressStations = egressStations;
             this.profileStartTime = profileStartTime;
             this.profileLength = profileLength;
-            this.tripFilter = tripFilter;
+            this.blockedRouteTypes = blockedRouteTypes;
+            this.tripFilter = trip -> !isRouteTypeBlocked(trip.routeType);
             this.betaAccessTime = betaAccessTime;
             this.betaEgressTime = betaEgressTime;
             this.betaTransfers = betaTransfers;
@@ -405,6 +420,14 @@ public class TripBasedRouter {
             return tripFilter;
         }
 
+        public int getBlockedRouteTypes() {
+            return blockedRouteTypes;
+        }
+
+        public boolean isRouteTypeBlocked(int routeType) {
+            return (blockedRouteTypes & (1 << routeType)) != 0;
+        }
+
         public void setProfileLength(Duration profileLength) {
             this.profileLength = profileLength;
         }
@@ -420,5 +443,9 @@ public class TripBasedRouter {
         public double getBetaTransfers() {
             return betaTransfers;
         }
+
+        public Map<Integer, Long> getTransferPenaltiesByRouteType() {
+            return transferPenaltiesByRouteType;
+        }
     }
 }
@@ -0,0 +1,258 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.carrotsearch.hppc.ObjectIntHashMap;
+import com.conveyal.gtfs.GTFSFeed;
+import com.google.common.collect.ArrayListMultimap;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * The precomputed trip transfers for the trip-based router, in compressed sparse row form.
+ * <p>
+ * Every (trip, stop_sequence) of the timetable is a slot. A slot points to a contiguous range of transfers, and
+ * each transfer is a (tripIdx, stop_sequence) pair of ints plus the id of a bitset over the precomputed service
+ * days on which the transfer exists. The transfers of all days are stored once, and the (usually few distinct)
+ * validity bitsets are shared between transfers.
+ * <p>
+ * Lookups read directly from the {@link DataAccess} instances and don't allocate.
+ */
+public class TripTransferIndex {
+
+    private static final int TRIPS_PER_BATCH = 1024;
+    private static final int TRANSFER_BYTES = 12;
+
+    // header of the index, in bytes
+    private static final int H_DAYS = 0, H_TRIPS = 4, H_SLOTS = 8, H_TRANSFERS = 12, H_VALIDITIES = 16;
+
+    // days, then the first slot of every trip, then the first transfer of every slot
+    private final DataAccess index;
+    private final DataAccess transfers;
+    private final DataAccess validities;
+    private int[] days;
+    private int wordsPerValidity;
+    private int tripCount;
+    private int slotCount;
+    private int transferCount;
+    private int validityCount;
+    private long tripSlotsPointer;
+    private long slotTransfersPointer;
+
+    public TripTransferIndex(Directory dir) {
+        index = dir.create("trip_transfer_index", dir.getDefaultType("trip_transfer_index", true), -1);
+        transfers = dir.create("trip_transfers", dir.getDefaultType("trip_transfers", true), -1);
+        validities = dir.create("trip_transfer_validities", dir.getDefaultType("trip_transfer_validities", true), -1);
+    }
+
+    /**
+     * Computes the transfers between all trips that are active on any of the traffic days and stores them.
+     */
+    public void create(Trips trips, Collection<LocalDate> trafficDays, Map<String, Transfers> transfersPerFeed, ArrayListMultimap<Integer, GtfsStorage.FeedIdWithStopId> stopsForStationNode) {
+        days = trafficDays.stream().mapToInt(day -> Math.toIntExact(day.toEpochDay())).sorted().distinct().toArray();
+        wordsPerValidity = (days.length + 31) / 32;
+        tripCount = trips.trips.size();
+        long slots = 0;
+        for (GTFSFeed.StopTimesForTripWithTripPatternKey trip : trips.trips)
+            slots += trip.stopTimes.size();
+        slotCount = Math.toIntExact(slots);
+        tripSlotsPointer = 4L * days.length;
+        slotTransfersPointer = tripSlotsPointer + 4L * (tripCount + 1);
+
+        index.create(slotTransfersPointer + 4L * (slotCount + 1));
+        transfers.create(1000);
+        validities.create(1000);
+        for (int i = 0; i < days.length; i++)
+            index.setInt(4L * i, days[i]);
+
+        ObjectIntHashMap<BitSet> validityIds = new ObjectIntHashMap<>();
+        int slot = 0;
+        transferCount = 0;
+        validityCount = 0;
+        for (int batchStart = 0; batchStart < tripCount; batchStart += TRIPS_PER_BATCH) {
+            int batchEnd = Math.min(tripCount, batchStart + TRIPS_PER_BATCH);
+            // computed in parallel, written sequentially, so the result doesn't depend on the thread schedule
+            List<Map<Long, BitSet>[]> batch = IntStream.range(batchStart, batchEnd).parallel()
+                    .mapToObj(tripIdx -> findTripTransfers(trips, trips.getTrip(tripIdx), transfersPerFeed, stopsForStationNode))
+                    .toList();
+            for (int i = 0; i < batch.size(); i++) {
+                index.setInt(tripSlotsPointer + 4L * (batchStart + i), slot);
+                for (Map<Long, BitSet> destinations : batch.get(i)) {
+                    index.setInt(slotTransfersPointer + 4L * slot++, transferCount);
+                    if (destinations == null)
+                        continue;
+                    for (Map.Entry<Long, BitSet> destination : destinations.entrySet()) {
+                        int validityId = validityIds.getOrDefault(destination.getValue(), -1);
+                        if (validityId < 0) {
+                            validityId = addValidity(destination.getValue());
+                            validityIds.put(destination.getValue(), validityId);
+                        }
+                        addTransfer((int) (destination.getKey() >>> 32), (int) (long) destination.getKey(), validityId);
+                    }
+                }
+            }
+        }
+        index.setInt(tripSlotsPointer + 4L * tripCount, slot);
+        index.setInt(slotTransfersPointer + 4L * slot, transferCount);
+    }
+
+    /**
+     * The transfers from one trip, indexed by stop_sequence, each mapping (tripIdx, stop_sequence) of the
+     * destination to the days on which the transfer exists. Destinations keep the order in which they were found.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<Long, BitSet>[] findTripTransfers(Trips trips, GTFSFeed.StopTimesForTripWithTripPatternKey tripPointer, Map<String, Transfers> transfersPerFeed, ArrayListMultimap<Integer, GtfsStorage.FeedIdWithStopId> stopsForStationNode) {
+        Map<Long, BitSet>[] result = new Map[tripPointer.stopTimes.size()];
+        for (int dayIndex = 0; dayIndex < days.length; dayIndex++) {
+            LocalDate trafficDay = LocalDate.ofEpochDay(days[dayIndex]);
+            if (!tripPointer.service.activeOn(trafficDay))
+                continue;
+            Map<Trips.TripAtStopTime, Collection<Trips.TripAtStopTime>> tripTransfers = trips.findTripTransfers(tripPointer, tripPointer.feedId, trafficDay, transfersPerFeed, stopsForStationNode);
+            for (Map.Entry<Trips.TripAtStopTime, Collection<Trips.TripAtStopTime>> e : tripTransfers.entrySet()) {
+                if (e.getValue().isEmpty())
+                    continue;
+                if (result[e.getKey().stop_sequence] == null)
+                    result[e.getKey().stop_sequence] = new LinkedHashMap<>();
+                for (Trips.TripAtStopTime destination : e.getValue()) {
+                    long key = ((long) destination.tripIdx << 32) | destination.stop_sequence;
+                    result[e.getKey().stop_sequence].computeIfAbsent(key, k -> new BitSet(days.length)).set(dayIndex);
+                }
+            }
+        }
+        return result;
+    }
+
+    private int addValidity(BitSet bits) {
+        long pointer = 4L * validityCount * wordsPerValidity;
+        validities.ensureCapacity(pointer + 4L * wordsPerValidity);
+        for (int word = 0; word < wordsPerValidity; word++) {
+            int value = 0;
+            for (int bit = 0; bit < 32; bit++)
+                if (bits.get(word * 32 + bit))
+                    value |= 1 << bit;
+            validities.setInt(pointer + 4L * word, value);
+        }
+        return validityCount++;
+    }
+
+    private void addTransfer(int toTripIdx, int toStopSequence, int validityId) {
+        if (transferCount == Integer.MAX_VALUE)
+            throw new IllegalStateException("Maximum trip transfer count exceeded: " + transferCount);
+        long pointer = (long) transferCount * TRANSFER_BYTES;
+        transfers.ensureCapacity(pointer + TRANSFER_BYTES);
+        transfers.setInt(pointer, toTripIdx);
+        transfers.setInt(pointer + 4, toStopSequence);
+        transfers.setInt(pointer + 8, validityId);
+        transferCount++;
+    }
+
+    public boolean loadExisting() {
+        if (!index.loadExisting() || !transfers.loadExisting() || !validities.loadExisting())
+            return false;
+        days = new int[index.getHeader(H_DAYS)];
+        tripCount = index.getHeader(H_TRIPS);
+        slotCount = index.getHeader(H_SLOTS);
+        transferCount = index.getHeader(H_TRANSFERS);
+        validityCount = index.getHeader(H_VALIDITIES);
+        for (int i = 0; i < days.length; i++)
+            days[i] = index.getInt(4L * i);
+        wordsPerValidity = (days.length + 31) / 32;
+        tripSlotsPointer = 4L * days.length;
+        slotTransfersPointer = tripSlotsPointer + 4L * (tripCount + 1);
+        return true;
+    }
+
+    public void flush() {
+        index.setHeader(H_DAYS, days.length);
+        index.setHeader(H_TRIPS, tripCount);
+        index.setHeader(H_SLOTS, slotCount);
+        index.setHeader(H_TRANSFERS, transferCount);
+        index.setHeader(H_VALIDITIES, validityCount);
+        index.flush();
+        transfers.flush();
+        validities.flush();
+    }
+
+    public void close() {
+        index.close();
+        transfers.close();
+        validities.close();
+    }
+
+    /**
+     * @return the index of the day for {@link #isValidOn}, or -1 if transfers were not computed for this day
+     */
+    public int getDayIndex(LocalDate trafficDay) {
+        int dayIndex = Arrays.binarySearch(days, (int) trafficDay.toEpochDay());
+        return dayIndex >= 0 ? dayIndex : -1;
+    }
+
+    public int getTransfersStart(int tripIdx, int stopSequence) {
+        return index.getInt(slotTransfersPointer + 4L * getSlot(tripIdx, stopSequence));
+    }
+
+    public int getTransfersEnd(int tripIdx, int stopSequence) {
+        return index.getInt(slotTransfersPointer + 4L * (getSlot(tripIdx, stopSequence) + 1));
+    }
+
+    private long getSlot(int tripIdx, int stopSequence) {
+        return (long) index.getInt(tripSlotsPointer + 4L * tripIdx) + stopSequence;
+    }
+
+    public int getToTripIdx(int transfer) {
+        return transfers.getInt((long) transfer * TRANSFER_BYTES);
+    }
+
+    public int getToStopSequence(int transfer) {
+        return transfers.getInt((long) transfer * TRANSFER_BYTES + 4);
+    }
+
+    public boolean isValidOn(int transfer, int dayIndex) {
+        int validityId = transfers.getInt((long) transfer * TRANSFER_BYTES + 8);
+        int word = validities.getInt(4L * ((long) validityId * wordsPerValidity + (dayIndex >>> 5)));
+        return (word & (1 << (dayIndex & 31))) != 0;
+    }
+
+    public int getTransferCount() {
+        return transferCount;
+    }
+
+    /**
+     * Convenience method that collects the transfers from one trip at one stop on one day. Allocates, so it is
+     * meant for tests and debugging, not for the router.
+     *
+     * @return the destinations, or null if transfers were not computed for this day
+     */
+    public List<Trips.TripAtStopTime> getTransferDestinations(LocalDate trafficDay, Trips.TripAtStopTime origin) {
+        int dayIndex = getDayIndex(trafficDay);
+        if (dayIndex < 0)
+            return null;
+        List<Trips.TripAtStopTime> result = new ArrayList<>();
+        int end = getTransfersEnd(origin.tripIdx, origin.stop_sequence);
+        for (int transfer = getTransfersStart(origin.tripIdx, origin.stop_sequence); transfer < end; transfer++) {
+            if (isValidOn(transfer, dayIndex))
+                result.add(new Trips.TripAtStopTime(getToTripIdx(transfer), getToStopSequence(transfer)));
+        }
+        return result;
+    }
+}
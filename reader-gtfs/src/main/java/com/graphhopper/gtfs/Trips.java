@@ -19,7 +19,6 @@ public class Trips {
 
     public final List<GTFSFeed.StopTimesForTripWithTripPatternKey> trips;
     private Map<GtfsStorage.FeedIdWithStopId, Map<String, List<TripAtStopTime>>> boardingsForStopByPattern = new ConcurrentHashMap<>();
-    private Map<LocalDate, Map<Trips.TripAtStopTime, Collection<Trips.TripAtStopTime>>> tripTransfersPerDay = new ConcurrentHashMap<>();
     public int idx;
 
     public Trips(GtfsStorage gtfsStorage) {
@@ -28,6 +27,7 @@ public class Trips {
         idx = 0;
         for (Map.Entry<String, GTFSFeed> entry : this.gtfsStorage.getGtfsFeeds().entrySet()) {
             GTFSFeed feed = entry.getValue();
+            StopTimeStore stopTimeStore = this.gtfsStorage.getStopTimeStore(entry.getKey());
             Map<TripPatternKey, Pattern> patterns = new LinkedHashMap<>();
             int nextPatternId = 1;
             for (Trip trip : feed.trips.values()) {
@@ -35,7 +35,7 @@ public class Trips {
                 Route route = feed.routes.get(trip.route_id);
                 Service service = feed.services.get(trip.service_id);
                 List<StopTime> orderedStopTimesForTripWithPadding = new ArrayList<>();
-                List<StopTime> interpolatedStopTimesForTrip = feed.getInterpolatedStopTimesForTrip(trip.trip_id);
+                List<StopTime> interpolatedStopTimesForTrip = stopTimeStore.getInterpolatedStopTimesForTrip(trip.trip_id);
                 if (interpolatedStopTimesForTrip.isEmpty()) {
                     System.out.println("empty trip: "+trip.trip_id);
                     continue;
@@ -109,7 +109,7 @@ public class Trips {
 
     GtfsStorage gtfsStorage;
 
-    private Map<TripAtStopTime, Collection<TripAtStopTime>> findTripTransfers(GTFSFeed.StopTimesForTripWithTripPatternKey tripPointer, String feedKey, LocalDate trafficDay, Map<String, Transfers> transfers, ArrayListMultimap<Integer, GtfsStorage.FeedIdWithStopId> stopsForStationNode) {
+    Map<TripAtStopTime, Collection<TripAtStopTime>> findTripTransfers(GTFSFeed.StopTimesForTripWithTripPatternKey tripPointer, String feedKey, LocalDate trafficDay, Map<String, Transfers> transfers, ArrayListMultimap<Integer, GtfsStorage.FeedIdWithStopId> stopsForStationNode) {
         Transfers transfersForFeed = transfers.get(feedKey);
         Map<TripAtStopTime, Collection<TripAtStopTime>> result = new HashMap<>();
         List<StopTime> stopTimesExceptFirst = tripPointer.stopTimes.subList(1, tripPointer.stopTimes.size());
@@ -207,25 +207,6 @@ public class Trips {
         }
     }
 
-    public void findAllTripTransfersInto(Map<TripAtStopTime, Collection<TripAtStopTime>> result, LocalDate trafficDay, Map<String, Transfers> transfers, ArrayListMultimap<Integer, GtfsStorage.FeedIdWithStopId> stopsForStationNode) {
-        Map<TripAtStopTime, Collection<TripAtStopTime>> r = Collections.synchronizedMap(result);
-        trips.stream()
-            .filter(trip -> trip.service.activeOn(trafficDay))
-            .parallel()
-            .forEach(tripPointer -> {
-                Map<TripAtStopTime, Collection<TripAtStopTime>> reducedTripTransfers = findTripTransfers(tripPointer, tripPointer.feedId, trafficDay, transfers, stopsForStationNode);
-                r.putAll(reducedTripTransfers);
-            });
-    }
-
-    public Map<LocalDate, Map<TripAtStopTime, Collection<TripAtStopTime>>> getTripTransfers() {
-        return tripTransfersPerDay;
-    }
-
-    public Map<Trips.TripAtStopTime, Collection<Trips.TripAtStopTime>> getTripTransfers(LocalDate trafficDay) {
-        return tripTransfersPerDay.computeIfAbsent(trafficDay, k -> new TreeMap<>());
-    }
-
     public GTFSFeed.StopTimesForTripWithTripPatternKey getTrip(int tripIdx) {
         return trips.get(tripIdx);
     }
@@ -250,6 +231,11 @@ public class Trips {
             return tripIdx == that.tripIdx && stop_sequence == that.stop_sequence;
         }
 
+        @Override
+        public int hashCode() {
+            return 31 * tripIdx + stop_sequence;
+        }
+
         @Override
         public String toString() {
             return "TripAtStopTime{" +
@@ -104,7 +104,7 @@ public interface GraphHopperGtfsIT<T extends PtRouter> {
         public void testTransferForRoute5IsAvailable() {
             Trips tripTransfers = graphHopperGtfs().getGtfsStorage().tripTransfers;
             int tripIdx = findTrip("STBA", LocalTime.of(7, 50), 2, ARRIVAL);
-            Collection<Trips.TripAtStopTime> transferDestinations = tripTransfers.getTripTransfers(LocalDate.of(2007, 1, 1)).get(new Trips.TripAtStopTime(tripIdx, 2));
+            Collection<Trips.TripAtStopTime> transferDestinations = graphHopperGtfs().getGtfsStorage().getTripTransferIndex().getTransferDestinations(LocalDate.of(2007, 1, 1), new Trips.TripAtStopTime(tripIdx, 2));
             assertThat(transferDestinations).extracting(td -> print(td, tripTransfers, DEPARTURE)).contains("4 AB1 @ 1 BEATTY_AIRPORT 28800");
         }
 
@@ -126,6 +126,60 @@ public interface GraphHopperGtfsIT<T extends PtRouter> {
         }
     }
 
+    class RaptorPtRouterTest implements GraphHopperGtfsIT<PtRouterRaptorImpl> {
+
+        private static GraphHopperGtfs graphHopperGtfs;
+        static PtRouterRaptorImpl ptRouter;
+
+        @BeforeAll
+        static void init() {
+            Helper.removeDir(new File(GRAPH_LOC));
+            GraphHopperConfig ghConfig = new GraphHopperConfig();
+            ghConfig.putObject("graph.location", GRAPH_LOC);
+            ghConfig.putObject("import.osm.ignored_highways", "");
+            ghConfig.putObject("gtfs.file", "files/sample-feed");
+            ghConfig.putObject("graph.encoded_values", "foot_access, foot_priority, foot_average_speed, car_access, car_average_speed");
+            ghConfig.setProfiles(List.of(
+                    TestProfiles.accessSpeedAndPriority("foot"),
+                    TestProfiles.accessAndSpeed("car")));
+            graphHopperGtfs = new GraphHopperGtfs(ghConfig);
+            graphHopperGtfs.init(ghConfig);
+            graphHopperGtfs.importOrLoad();
+            ptRouter = new PtRouterRaptorImpl(graphHopperGtfs, ghConfig, new TranslationMap().doImport(), graphHopperGtfs.getBaseGraph(), graphHopperGtfs.getEncodingManager(), graphHopperGtfs.getLocationIndex(), graphHopperGtfs.getGtfsStorage(), graphHopperGtfs.getPathDetailsBuilderFactory());
+        }
+
+        public GraphHopperGtfs graphHopperGtfs() {
+            return graphHopperGtfs;
+        }
+
+        public PtRouterRaptorImpl ptRouter() {
+            return ptRouter;
+        }
+
+        @Override
+        public GHResponse route(Request request) {
+            assumeFalse(request.isArriveBy(), "We are excused from queries by arrival time so far");
+            return ptRouter().route(request);
+        }
+
+        @Test
+        public void testRouteOnDayWithoutPrecomputedTransfers() {
+            // No gtfs.schedule_day here: the RAPTOR router needs no trip transfers.
+            Request ghRequest = new Request(Arrays.asList(
+                    new GHStationLocation("STAGECOACH"),
+                    new GHStationLocation("BULLFROG")),
+                    LocalDateTime.of(2007, 3, 14, 0, 0).atZone(zoneId).toInstant());
+            GHResponse route = ptRouter().route(ghRequest);
+            assertFalse(route.getAll().isEmpty());
+            assertEquals(time(8, 10), route.getBest().getTime(), "Expected travel time == scheduled travel time");
+        }
+
+        @AfterAll
+        public static void close() {
+            graphHopperGtfs.close();
+        }
+    }
+
     class DefaultPtRouterTest implements GraphHopperGtfsIT<PtRouterImpl> {
 
         private static GraphHopperGtfs graphHopperGtfs;
@@ -154,6 +154,51 @@ public interface GraphHopperMultimodalIT<T extends PtRouter> {
         }
     }
 
+    class RaptorPtRouterMultimodalTest implements GraphHopperMultimodalIT<PtRouterRaptorImpl> {
+        private static GraphHopperGtfs graphHopperGtfs;
+        private static PtRouterRaptorImpl graphHopper;
+
+        @BeforeAll
+        public static void init() {
+            GraphHopperConfig ghConfig = new GraphHopperConfig();
+            ghConfig.putObject("datareader.file", "files/beatty.osm");
+            ghConfig.putObject("import.osm.ignored_highways", "");
+            ghConfig.putObject("gtfs.file", "files/sample-feed");
+            ghConfig.putObject("graph.location", GRAPH_LOC);
+            ghConfig.putObject("graph.encoded_values", "foot_access, foot_priority, foot_average_speed, car_access, car_average_speed");
+            ghConfig.setProfiles(Arrays.asList(
+                    TestProfiles.accessSpeedAndPriority("foot"),
+                    TestProfiles.accessAndSpeed("car_default", "car"),
+                    TestProfiles.accessAndSpeed("car_custom","car")));
+            Helper.removeDir(new File(GRAPH_LOC));
+            graphHopperGtfs = new GraphHopperGtfs(ghConfig);
+            graphHopperGtfs.init(ghConfig);
+            graphHopperGtfs.importOrLoad();
+
+            graphHopper = new PtRouterRaptorImpl(graphHopperGtfs, ghConfig, new TranslationMap().doImport(), graphHopperGtfs.getBaseGraph(), graphHopperGtfs.getEncodingManager(), graphHopperGtfs.getLocationIndex(), graphHopperGtfs.getGtfsStorage(), graphHopperGtfs.getPathDetailsBuilderFactory());
+        }
+
+        @Override
+        public void assertAllIfWeCanAssureMaxVisitedNodes(SoftAssertions softly) {
+
+        }
+
+        @Override
+        public PtRouterRaptorImpl ptRouter() {
+            return graphHopper;
+        }
+
+        @Override
+        public GraphHopperGtfs graphHopperGtfs() {
+            return graphHopperGtfs;
+        }
+
+        @AfterAll
+        public static void close() {
+            graphHopperGtfs.close();
+        }
+    }
+
     @Test
     default void testDepartureTimeOfAccessLegInProfileQuery() {
         Request ghRequest = new Request(
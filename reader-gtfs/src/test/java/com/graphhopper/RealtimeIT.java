@@ -22,18 +22,28 @@ import com.google.transit.realtime.GtfsRealtime;
 import com.graphhopper.gtfs.GraphHopperGtfs;
 import com.graphhopper.gtfs.PtRouter;
 import com.graphhopper.gtfs.PtRouterImpl;
+import com.graphhopper.gtfs.RealtimeFeed;
 import com.graphhopper.gtfs.Request;
+import com.graphhopper.gtfs.Transfers;
 import com.graphhopper.routing.TestProfiles;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.TranslationMap;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.*;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static com.google.transit.realtime.GtfsRealtime.TripDescriptor.ScheduleRelationship.ADDED;
 import static com.google.transit.realtime.GtfsRealtime.TripUpdate.StopTimeUpdate.ScheduleRelationship.SCHEDULED;
@@ -758,6 +768,117 @@ public class RealtimeIT {
         checkDelayAtEnd(feedMessage);
     }
 
+    @Test
+    public void testIncrementalUpdates(@TempDir Path tempDir) throws IOException {
+        final double FROM_LAT = 36.914893, FROM_LON = -116.76821; // NADAV stop
+        final double TO_LAT = 36.914944, TO_LON = -116.761472; // NANAA stop
+        Request ghRequest = new Request(
+                FROM_LAT, FROM_LON,
+                TO_LAT, TO_LON
+        );
+        ghRequest.setEarliestDepartureTime(LocalDateTime.of(2007, 1, 1, 6, 46).atZone(zoneId).toInstant());
+        Map<String, Transfers> transfers = new HashMap<>();
+        graphHopperGtfs.getGtfsStorage().getGtfsFeeds().forEach((feedId, feed) -> transfers.put(feedId, new Transfers(feed)));
+
+        // The feed is fetched from a file, the same way it would be fetched from the server
+        GtfsRealtime.FeedMessage slightDelay = writeAndRead(tempDir.resolve("1.pb"), delayedCity2(0, 120));
+        RealtimeFeed first = RealtimeFeed.empty().update(graphHopperGtfs.getGtfsStorage(), transfers, Map.of("gtfs_0", slightDelay));
+        assertEquals(time(0, 5), graphHopperFactory.createWith(first).route(ghRequest).getBest().getTime(), 0.1, "The bus is two minutes late, so I catch it");
+
+        // Nothing changed about the trip, only the feed is newer
+        GtfsRealtime.FeedMessage sameDelay = writeAndRead(tempDir.resolve("2.pb"), delayedCity2(60, 120));
+        RealtimeFeed second = first.update(graphHopperGtfs.getGtfsStorage(), transfers, Map.of("gtfs_0", sameDelay));
+        assertEquals(time(0, 5), graphHopperFactory.createWith(second).route(ghRequest).getBest().getTime(), 0.1);
+
+        GtfsRealtime.FeedMessage heavyDelay = writeAndRead(tempDir.resolve("3.pb"), delayedCity2(120, 3600));
+        RealtimeFeed third = second.update(graphHopperGtfs.getGtfsStorage(), transfers, Map.of("gtfs_0", heavyDelay));
+        assertEquals(graphHopperFactory.createWith(heavyDelay).route(ghRequest).getBest().getTime(), graphHopperFactory.createWith(third).route(ghRequest).getBest().getTime(), 0.1,
+                "Same as applying the newest feed from scratch");
+        assertNotEquals(time(0, 5), graphHopperFactory.createWith(third).route(ghRequest).getBest().getTime(), 0.1);
+
+        GtfsRealtime.FeedMessage noDelay = writeAndRead(tempDir.resolve("4.pb"), GtfsRealtime.FeedMessage.newBuilder().setHeader(header()).build());
+        RealtimeFeed fourth = third.update(graphHopperGtfs.getGtfsStorage(), transfers, Map.of("gtfs_0", noDelay));
+        assertEquals(graphHopperFactory.createWithoutRealtimeFeed().route(ghRequest).getBest().getTime(), graphHopperFactory.createWith(fourth).route(ghRequest).getBest().getTime(), 0.1,
+                "The trip update is gone, and so is the delay");
+
+        assertEquals(time(0, 5), graphHopperFactory.createWith(first).route(ghRequest).getBest().getTime(), 0.1, "Earlier snapshots are not modified by updates");
+    }
+
+    @Test
+    public void testIncrementalUpdatesOfFrequencyBasedTrip() {
+        final double FROM_LAT = 36.914893, FROM_LON = -116.76821; // NADAV stop
+        final double TO_LAT = 36.914944, TO_LON = -116.761472; // NANAA stop
+        Map<String, Transfers> transfers = new HashMap<>();
+        graphHopperGtfs.getGtfsStorage().getGtfsFeeds().forEach((feedId, feed) -> transfers.put(feedId, new Transfers(feed)));
+
+        // Two updates describe the 6:00 run of CITY2, one of them with its route. Both skip NADAV and are late at
+        // NANAA, so they block and delay the same edges. Then the one with the route is dropped.
+        GtfsRealtime.FeedMessage twoUpdates = skippedAndDelayedCity2(0, false, true);
+        GtfsRealtime.FeedMessage oneUpdate = skippedAndDelayedCity2(60, false);
+        RealtimeFeed first = RealtimeFeed.empty().update(graphHopperGtfs.getGtfsStorage(), transfers, Map.of("gtfs_0", twoUpdates));
+        RealtimeFeed second = first.update(graphHopperGtfs.getGtfsStorage(), transfers, Map.of("gtfs_0", oneUpdate));
+
+        for (LocalTime departureTime : List.of(LocalTime.of(6, 40), LocalTime.of(6, 44))) {
+            Request ghRequest = new Request(FROM_LAT, FROM_LON, TO_LAT, TO_LON);
+            ghRequest.setEarliestDepartureTime(LocalDateTime.of(LocalDate.of(2007, 1, 1), departureTime).atZone(zoneId).toInstant());
+            assertEquals(summary(graphHopperFactory.createWith(twoUpdates).route(ghRequest)), summary(graphHopperFactory.createWith(first).route(ghRequest)), departureTime.toString());
+            assertEquals(summary(graphHopperFactory.createWith(oneUpdate).route(ghRequest)), summary(graphHopperFactory.createWith(second).route(ghRequest)),
+                    departureTime + ": Same as applying the newest feed from scratch");
+        }
+        Request ghRequest = new Request(FROM_LAT, FROM_LON, TO_LAT, TO_LON);
+        ghRequest.setEarliestDepartureTime(LocalDateTime.of(2007, 1, 1, 6, 44).atZone(zoneId).toInstant());
+        assertEquals(time(0, 35), graphHopperFactory.createWith(second).route(ghRequest).getBest().getTime(), 0.1, "The 6:00 run still skips NADAV");
+    }
+
+    private GtfsRealtime.FeedMessage skippedAndDelayedCity2(int secondsAfterMidnight, boolean... withRoute) {
+        final GtfsRealtime.FeedMessage.Builder feedMessageBuilder = GtfsRealtime.FeedMessage.newBuilder();
+        feedMessageBuilder.setHeader(header().setTimestamp(LocalDateTime.of(2007, 1, 1, 0, 0).plusSeconds(secondsAfterMidnight).atZone(zoneId).toEpochSecond()));
+        for (int i = 0; i < withRoute.length; i++) {
+            GtfsRealtime.TripDescriptor.Builder tripDescriptor = GtfsRealtime.TripDescriptor.newBuilder().setTripId("CITY2").setStartTime("06:00:00");
+            if (withRoute[i])
+                tripDescriptor.setRouteId("CITY");
+            GtfsRealtime.TripUpdate.Builder tripUpdateBuilder = feedMessageBuilder.addEntityBuilder()
+                    .setId(Integer.toString(i + 1))
+                    .getTripUpdateBuilder()
+                    .setTrip(tripDescriptor);
+            tripUpdateBuilder.addStopTimeUpdateBuilder()
+                    .setStopSequence(3)
+                    .setScheduleRelationship(SKIPPED);
+            tripUpdateBuilder.addStopTimeUpdateBuilder()
+                    .setScheduleRelationship(SCHEDULED)
+                    .setStopSequence(4)
+                    .setArrival(GtfsRealtime.TripUpdate.StopTimeEvent.newBuilder().setDelay(300).build());
+        }
+        return feedMessageBuilder.build();
+    }
+
+    private static List<String> summary(GHResponse response) {
+        return response.getAll().stream().map(path -> path.getTime() + (path.isImpossible() ? " impossible" : "")).toList();
+    }
+
+    private GtfsRealtime.FeedMessage delayedCity2(int secondsAfterMidnight, int delay) {
+        final GtfsRealtime.FeedMessage.Builder feedMessageBuilder = GtfsRealtime.FeedMessage.newBuilder();
+        feedMessageBuilder.setHeader(header().setTimestamp(LocalDateTime.of(2007, 1, 1, 0, 0).plusSeconds(secondsAfterMidnight).atZone(zoneId).toEpochSecond()));
+        feedMessageBuilder.addEntityBuilder()
+                .setId("1")
+                .getTripUpdateBuilder()
+                .setTrip(GtfsRealtime.TripDescriptor.newBuilder().setTripId("CITY2").setStartTime("06:00:00"))
+                .addStopTimeUpdateBuilder()
+                .setScheduleRelationship(SCHEDULED)
+                .setStopSequence(3)
+                .setArrival(GtfsRealtime.TripUpdate.StopTimeEvent.newBuilder().setDelay(delay).build());
+        return feedMessageBuilder.build();
+    }
+
+    private static GtfsRealtime.FeedMessage writeAndRead(Path file, GtfsRealtime.FeedMessage feedMessage) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            feedMessage.writeTo(out);
+        }
+        try (InputStream in = file.toUri().toURL().openStream()) {
+            return GtfsRealtime.FeedMessage.parseFrom(in);
+        }
+    }
+
     public GtfsRealtime.FeedHeader.Builder header() {
         return GtfsRealtime.FeedHeader.newBuilder()
                 .setGtfsRealtimeVersion("1")
@@ -0,0 +1,97 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.conveyal.gtfs.GTFSFeed;
+import com.conveyal.gtfs.model.StopTime;
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.GHDirectory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ColumnarStopTimeStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testSameStopTimesAsFeed() throws IOException {
+        GTFSFeed feed = new GTFSFeed();
+        feed.loadFromZipfileOrDirectory(new File("files/sample-feed"), "");
+        Directory dir = new GHDirectory(tempDir.toString(), DAType.RAM_STORE).create();
+        ColumnarStopTimeStore store = new ColumnarStopTimeStore(dir, "gtfs_0");
+        store.create(feed);
+        assertSameStopTimes(feed, store);
+
+        store.flush();
+        ColumnarStopTimeStore loaded = new ColumnarStopTimeStore(new GHDirectory(tempDir.toString(), DAType.RAM_STORE), "gtfs_0");
+        assertTrue(loaded.loadExisting());
+        assertEquals(store.getStopTimeCount(), loaded.getStopTimeCount());
+        assertSameStopTimes(feed, loaded);
+    }
+
+    private static void assertSameStopTimes(GTFSFeed feed, ColumnarStopTimeStore store) {
+        for (String tripId : feed.trips.keySet()) {
+            assertSameStopTimes(toList(feed.getOrderedStopTimesForTrip(tripId)), toList(store.getOrderedStopTimesForTrip(tripId)));
+            assertSameStopTimes(feed.getInterpolatedStopTimesForTrip(tripId), store.getInterpolatedStopTimesForTrip(tripId));
+            for (StopTime stopTime : feed.getOrderedStopTimesForTrip(tripId)) {
+                assertSameStopTime(stopTime, store.getStopTime(tripId, stopTime.stop_sequence));
+            }
+            assertNull(store.getStopTime(tripId, 1000));
+        }
+        assertTrue(toList(store.getOrderedStopTimesForTrip("no such trip")).isEmpty());
+        assertNull(store.getStopTime("no such trip", 1));
+    }
+
+    private static void assertSameStopTimes(List<StopTime> expected, List<StopTime> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSameStopTime(expected.get(i), actual.get(i));
+        }
+    }
+
+    private static void assertSameStopTime(StopTime expected, StopTime actual) {
+        assertEquals(expected.trip_id, actual.trip_id);
+        assertEquals(expected.stop_id, actual.stop_id);
+        assertEquals(expected.stop_sequence, actual.stop_sequence);
+        assertEquals(expected.arrival_time, actual.arrival_time);
+        assertEquals(expected.departure_time, actual.departure_time);
+        assertEquals(expected.stop_headsign, actual.stop_headsign);
+        assertEquals(expected.pickup_type, actual.pickup_type);
+        assertEquals(expected.drop_off_type, actual.drop_off_type);
+        assertEquals(expected.timepoint, actual.timepoint);
+        assertEquals(expected.shape_dist_traveled, actual.shape_dist_traveled);
+    }
+
+    private static List<StopTime> toList(Iterable<StopTime> stopTimes) {
+        List<StopTime> result = new ArrayList<>();
+        stopTimes.forEach(result::add);
+        return result;
+    }
+
+}
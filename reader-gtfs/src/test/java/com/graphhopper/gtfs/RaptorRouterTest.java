@@ -0,0 +1,133 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.util.Helper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.io.File;
+import java.time.*;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class RaptorRouterTest {
+
+    private static final String GRAPH_LOC = "target/RaptorRouterTest";
+    private static final ZoneId zoneId = ZoneId.of("America/Los_Angeles");
+    private GraphHopperGtfs graphHopperGtfs;
+
+    @BeforeAll
+    public void init() {
+        Helper.removeDir(new File(GRAPH_LOC));
+        GraphHopperConfig ghConfig = new GraphHopperConfig();
+        ghConfig.putObject("graph.location", GRAPH_LOC);
+        ghConfig.putObject("import.osm.ignored_highways", "");
+        ghConfig.putObject("gtfs.file", "files/raptor-footpath-feed");
+        ghConfig.putObject("graph.encoded_values", "foot_access, foot_priority, foot_average_speed");
+        ghConfig.setProfiles(List.of(TestProfiles.accessSpeedAndPriority("foot")));
+        graphHopperGtfs = new GraphHopperGtfs(ghConfig);
+        graphHopperGtfs.init(ghConfig);
+        graphHopperGtfs.importOrLoad();
+    }
+
+    @AfterAll
+    public void close() {
+        graphHopperGtfs.close();
+        Helper.removeDir(new File(GRAPH_LOC));
+    }
+
+    @Test
+    public void testFootpathChainAcrossDepartureTimes() {
+        // Leaving at 08:30, we take M2S1 to BRIDGE and walk on to CHURCH. Leaving at 08:00, we reach BRIDGE
+        // earlier by walking from STATION, but CHURCH keeps its label of the 08:30 run, which must still
+        // describe the trip we walked from when B2D1 is boarded there.
+        List<RaptorRouter.Journey> journeys = route("MARKET", "DEPOT", LocalDateTime.of(2007, 1, 1, 7, 50), LocalDateTime.of(2007, 1, 1, 8, 50));
+        assertEquals(1, journeys.size());
+        RaptorRouter.Journey journey = journeys.get(0);
+        assertEquals(List.of("M2B1", "B2D1"), tripIds(journey));
+        assertEquals(LocalDateTime.of(2007, 1, 1, 8, 30).atZone(zoneId).toInstant().toEpochMilli(), journey.departureTime);
+        assertEquals(1, journey.realTransfers);
+    }
+
+    @Test
+    public void testTripOfPreviousServiceDay() {
+        // NIGHT1 runs at 24:30 on the service day before the one we depart on
+        List<RaptorRouter.Journey> journeys = route("MARKET", "DEPOT", LocalDateTime.of(2007, 1, 2, 0, 0), LocalDateTime.of(2007, 1, 2, 1, 0));
+        assertEquals(1, journeys.size());
+        RaptorRouter.Journey journey = journeys.get(0);
+        assertEquals(List.of("NIGHT1"), tripIds(journey));
+        assertEquals(LocalDate.of(2007, 1, 1), journey.lastSegment.serviceDay);
+        assertEquals(LocalDateTime.of(2007, 1, 2, 0, 30).atZone(zoneId).toInstant().toEpochMilli(), journey.departureTime);
+    }
+
+    @Test
+    public void testBlockedRouteTypes() {
+        // all routes of the feed are buses, and the labels of the blocked request must not leak into the next one
+        LocalDateTime profileStart = LocalDateTime.of(2007, 1, 2, 0, 0);
+        LocalDateTime profileEnd = LocalDateTime.of(2007, 1, 2, 1, 0);
+        assertTrue(route("MARKET", "DEPOT", profileStart, profileEnd, 1 << 3).isEmpty());
+        assertEquals(List.of("NIGHT1"), tripIds(route("MARKET", "DEPOT", profileStart, profileEnd, 1 << 1).get(0)));
+        assertEquals(List.of("NIGHT1"), tripIds(route("MARKET", "DEPOT", profileStart, profileEnd).get(0)));
+    }
+
+    @Test
+    public void testActiveTripsAreCachedPerServiceDay() {
+        RaptorTimetable timetable = graphHopperGtfs.getGtfsStorage().getRaptorTimetable();
+        BitSet activeTrips = timetable.getActiveTrips(0, LocalDate.of(2007, 1, 1));
+        assertEquals(4, activeTrips.cardinality());
+        assertSame(activeTrips, timetable.getActiveTrips(0, LocalDate.of(2007, 1, 1)));
+        // the service of the feed starts on 2007-01-01
+        assertTrue(timetable.getActiveTrips(0, LocalDate.of(2006, 12, 31)).isEmpty());
+    }
+
+    private List<RaptorRouter.Journey> route(String from, String to, LocalDateTime profileStart, LocalDateTime profileEnd) {
+        return route(from, to, profileStart, profileEnd, 0);
+    }
+
+    /**
+     * @return the journeys which depart in [profileStart, profileEnd), without the first ones after the profile
+     */
+    private List<RaptorRouter.Journey> route(String from, String to, LocalDateTime profileStart, LocalDateTime profileEnd, int blockedRouteTypes) {
+        TripBasedRouter.StopWithTimeDelta access = new TripBasedRouter.StopWithTimeDelta(new GtfsStorage.FeedIdWithStopId("gtfs_0", from), zoneId, 0);
+        TripBasedRouter.StopWithTimeDelta egress = new TripBasedRouter.StopWithTimeDelta(new GtfsStorage.FeedIdWithStopId("gtfs_0", to), zoneId, 0);
+        TripBasedRouter.Parameters parameters = new TripBasedRouter.Parameters(List.of(access), List.of(egress),
+                profileStart.atZone(zoneId).toInstant(), Duration.between(profileStart, profileEnd), blockedRouteTypes, 1.0, 1.0, 0.0, Collections.emptyMap());
+        long profileEndMillis = profileEnd.atZone(zoneId).toInstant().toEpochMilli();
+        return new RaptorRouter(graphHopperGtfs.getGtfsStorage().getRaptorTimetable()).route(parameters).stream()
+                .filter(journey -> journey.departureTime < profileEndMillis)
+                .toList();
+    }
+
+    private static List<String> tripIds(RaptorRouter.Journey journey) {
+        List<String> tripIds = new ArrayList<>();
+        for (TripBasedRouter.EnqueuedTripSegment segment = journey.lastSegment; segment != null; segment = segment.parent)
+            tripIds.add(0, segment.tripPointer.trip.trip_id);
+        return tripIds;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.conveyal.gtfs.GTFSFeed;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Multimaps;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.util.Helper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TripTransferIndexTest {
+
+    private static final String GRAPH_LOC = "target/TripTransferIndexTest";
+    // The service of the feed starts on 2007-01-01, so nothing runs on the first day. More than 32 days make
+    // the validity bitsets span two words.
+    private static final List<LocalDate> DAYS = Stream.concat(Stream.of(LocalDate.of(2006, 12, 31)),
+            LocalDate.of(2007, 1, 1).datesUntil(LocalDate.of(2007, 2, 10))).toList();
+    private GraphHopperGtfs graphHopperGtfs;
+
+    @BeforeEach
+    public void init() {
+        Helper.removeDir(new File(GRAPH_LOC));
+        graphHopperGtfs = createGraphHopperGtfs();
+    }
+
+    @AfterEach
+    public void close() {
+        graphHopperGtfs.close();
+        Helper.removeDir(new File(GRAPH_LOC));
+    }
+
+    private static GraphHopperGtfs createGraphHopperGtfs() {
+        GraphHopperConfig ghConfig = new GraphHopperConfig();
+        ghConfig.putObject("graph.location", GRAPH_LOC);
+        ghConfig.putObject("import.osm.ignored_highways", "");
+        ghConfig.putObject("gtfs.file", "files/raptor-footpath-feed");
+        ghConfig.putObject("gtfs.trip_based", true);
+        ghConfig.putObject("gtfs.schedule_day", DAYS.stream().map(LocalDate::toString).collect(Collectors.joining(",")));
+        ghConfig.putObject("graph.encoded_values", "foot_access, foot_priority, foot_average_speed");
+        ghConfig.setProfiles(List.of(TestProfiles.accessSpeedAndPriority("foot")));
+        GraphHopperGtfs graphHopperGtfs = new GraphHopperGtfs(ghConfig);
+        graphHopperGtfs.init(ghConfig);
+        graphHopperGtfs.importOrLoad();
+        return graphHopperGtfs;
+    }
+
+    @Test
+    public void testLookup() {
+        GtfsStorage gtfsStorage = graphHopperGtfs.getGtfsStorage();
+        Trips trips = gtfsStorage.tripTransfers;
+        TripTransferIndex index = gtfsStorage.getTripTransferIndex();
+        Map<String, Transfers> transfers = new HashMap<>();
+        gtfsStorage.getGtfsFeeds().forEach((feedId, feed) -> transfers.put(feedId, new Transfers(feed)));
+        ArrayListMultimap<Integer, GtfsStorage.FeedIdWithStopId> stopsForStationNode = Multimaps.invertFrom(Multimaps.forMap(gtfsStorage.getStationNodes()), ArrayListMultimap.create());
+
+        int found = 0;
+        for (LocalDate day : DAYS) {
+            for (GTFSFeed.StopTimesForTripWithTripPatternKey trip : trips.trips) {
+                Map<Trips.TripAtStopTime, Collection<Trips.TripAtStopTime>> expected = trip.service.activeOn(day)
+                        ? trips.findTripTransfers(trip, trip.feedId, day, transfers, stopsForStationNode)
+                        : Collections.emptyMap();
+                for (int stopSequence = 0; stopSequence < trip.stopTimes.size(); stopSequence++) {
+                    Trips.TripAtStopTime origin = new Trips.TripAtStopTime(trip.idx, stopSequence);
+                    List<Trips.TripAtStopTime> destinations = index.getTransferDestinations(day, origin);
+                    assertEquals(new HashSet<>(expected.getOrDefault(origin, Collections.emptyList())), new HashSet<>(destinations), day + " " + origin);
+                    found += destinations.size();
+                }
+            }
+        }
+        assertTrue(found > 0);
+
+        // we can change from M2B1 to B2D1 at BRIDGE on every day with service, but not before the service starts
+        Trips.TripAtStopTime origin = new Trips.TripAtStopTime(tripIdx(trips, "M2B1"), 2);
+        Trips.TripAtStopTime destination = new Trips.TripAtStopTime(tripIdx(trips, "B2D1"), 1);
+        assertFalse(index.getTransferDestinations(LocalDate.of(2006, 12, 31), origin).contains(destination));
+        assertTrue(index.getTransferDestinations(LocalDate.of(2007, 1, 1), origin).contains(destination));
+        assertTrue(index.getTransferDestinations(LocalDate.of(2007, 2, 9), origin).contains(destination));
+
+        assertEquals(-1, index.getDayIndex(LocalDate.of(2007, 2, 10)));
+        assertNull(index.getTransferDestinations(LocalDate.of(2007, 2, 10), origin));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        Map<String, List<Trips.TripAtStopTime>> created = collectTransfers(graphHopperGtfs);
+        int transferCount = graphHopperGtfs.getGtfsStorage().getTripTransferIndex().getTransferCount();
+        graphHopperGtfs.close();
+
+        graphHopperGtfs = createGraphHopperGtfs();
+        assertEquals(transferCount, graphHopperGtfs.getGtfsStorage().getTripTransferIndex().getTransferCount());
+        assertEquals(created, collectTransfers(graphHopperGtfs));
+    }
+
+    private static Map<String, List<Trips.TripAtStopTime>> collectTransfers(GraphHopperGtfs graphHopperGtfs) {
+        Trips trips = graphHopperGtfs.getGtfsStorage().tripTransfers;
+        TripTransferIndex index = graphHopperGtfs.getGtfsStorage().getTripTransferIndex();
+        Map<String, List<Trips.TripAtStopTime>> result = new HashMap<>();
+        for (LocalDate day : DAYS) {
+            for (GTFSFeed.StopTimesForTripWithTripPatternKey trip : trips.trips) {
+                for (int stopSequence = 0; stopSequence < trip.stopTimes.size(); stopSequence++) {
+                    Trips.TripAtStopTime origin = new Trips.TripAtStopTime(trip.idx, stopSequence);
+                    result.put(day + " " + trip.trip.trip_id + " " + stopSequence, index.getTransferDestinations(day, origin));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static int tripIdx(Trips trips, String tripId) {
+        return trips.trips.stream().filter(trip -> trip.trip.trip_id.equals(tripId)).findFirst().orElseThrow().idx;
+    }
+}
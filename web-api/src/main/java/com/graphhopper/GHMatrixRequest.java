@@ -0,0 +1,155 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper;
+
+import com.fasterxml.jackson.annotation.JsonAnySetter;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.graphhopper.util.PMap;
+import com.graphhopper.util.shapes.GHPoint;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Request object to calculate a matrix of weights, times and distances between many source and target points. The
+ * JSON format follows the one that is used by the GHMRequest of the client-hc module.
+ */
+public class GHMatrixRequest {
+    private String profile = "";
+    private List<GHPoint> points = new ArrayList<>();
+    private List<GHPoint> fromPoints = new ArrayList<>();
+    private List<GHPoint> toPoints = new ArrayList<>();
+    private List<String> snapPreventions;
+    private List<String> outArrays = Collections.singletonList("weights");
+    private boolean failFast = true;
+    private final PMap hints = new PMap();
+
+    public GHMatrixRequest setProfile(String profile) {
+        this.profile = profile;
+        return this;
+    }
+
+    public String getProfile() {
+        return profile;
+    }
+
+    /**
+     * Sets the points that are used as sources and targets at the same time. Cannot be combined with from_points and
+     * to_points.
+     */
+    public GHMatrixRequest setPoints(List<GHPoint> points) {
+        this.points = points;
+        return this;
+    }
+
+    public List<GHPoint> getPoints() {
+        return points;
+    }
+
+    @JsonProperty("from_points")
+    public GHMatrixRequest setFromPoints(List<GHPoint> fromPoints) {
+        this.fromPoints = fromPoints;
+        return this;
+    }
+
+    /**
+     * @return the source points, i.e. the explicit from_points or the points if no from_points were specified
+     */
+    public List<GHPoint> getFromPoints() {
+        return fromPoints.isEmpty() ? points : fromPoints;
+    }
+
+    @JsonProperty("to_points")
+    public GHMatrixRequest setToPoints(List<GHPoint> toPoints) {
+        this.toPoints = toPoints;
+        return this;
+    }
+
+    /**
+     * @return the target points, i.e. the explicit to_points or the points if no to_points were specified
+     */
+    public List<GHPoint> getToPoints() {
+        return toPoints.isEmpty() ? points : toPoints;
+    }
+
+    /**
+     * @return true if from_points or to_points were specified explicitly
+     */
+    public boolean hasFromOrToPoints() {
+        return !fromPoints.isEmpty() || !toPoints.isEmpty();
+    }
+
+    @JsonProperty("snap_preventions")
+    public GHMatrixRequest setSnapPreventions(List<String> snapPreventions) {
+        this.snapPreventions = snapPreventions;
+        return this;
+    }
+
+    public List<String> getSnapPreventions() {
+        return snapPreventions == null ? Collections.emptyList() : snapPreventions;
+    }
+
+    public boolean hasSnapPreventions() {
+        return snapPreventions != null;
+    }
+
+    /**
+     * Possible values are 'weights', 'times' and 'distances'
+     */
+    @JsonProperty("out_arrays")
+    public GHMatrixRequest setOutArrays(List<String> outArrays) {
+        this.outArrays = outArrays;
+        return this;
+    }
+
+    public List<String> getOutArrays() {
+        return outArrays;
+    }
+
+    /**
+     * @param failFast if false the matrix calculation will be continued even when some points cannot be found or are
+     *                 not connected
+     */
+    @JsonProperty("fail_fast")
+    public GHMatrixRequest setFailFast(boolean failFast) {
+        this.failFast = failFast;
+        return this;
+    }
+
+    public boolean getFailFast() {
+        return failFast;
+    }
+
+    // a good trick to serialize unknown properties into the HintsMap
+    @JsonAnySetter
+    public GHMatrixRequest putHint(String fieldName, Object value) {
+        hints.putObject(fieldName, value);
+        return this;
+    }
+
+    public PMap getHints() {
+        return hints;
+    }
+
+    @Override
+    public String toString() {
+        return "profile=" + profile + ", sources=" + getFromPoints().size() + ", targets=" + getToPoints().size()
+                + ", out_arrays=" + outArrays;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper;
+
+import com.graphhopper.util.PMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wrapper containing the matrix and error output of GraphHopper. Unreachable entries have an infinite weight and
+ * Long.MAX_VALUE and infinite distance for the time and distance respectively.
+ */
+public class GHMatrixResponse {
+    private final List<Throwable> errors = new ArrayList<>(4);
+    private final PMap hintsMap = new PMap();
+    private double[][] weights;
+    private long[][] times;
+    private double[][] distances;
+    private final List<int[]> disconnectedPoints = new ArrayList<>();
+    private final List<Integer> invalidFromPoints = new ArrayList<>();
+    private final List<Integer> invalidToPoints = new ArrayList<>();
+
+    public GHMatrixResponse setWeights(double[][] weights) {
+        this.weights = weights;
+        return this;
+    }
+
+    /**
+     * @return the weights as weights[from][to] or null if they were not requested
+     */
+    public double[][] getWeights() {
+        return weights;
+    }
+
+    public GHMatrixResponse setTimes(long[][] times) {
+        this.times = times;
+        return this;
+    }
+
+    /**
+     * @return the times in milliseconds as times[from][to] or null if they were not requested
+     */
+    public long[][] getTimes() {
+        return times;
+    }
+
+    public GHMatrixResponse setDistances(double[][] distances) {
+        this.distances = distances;
+        return this;
+    }
+
+    /**
+     * @return the distances in meters as distances[from][to] or null if they were not requested
+     */
+    public double[][] getDistances() {
+        return distances;
+    }
+
+    /**
+     * @return the pairs of [fromIndex, toIndex] for which no route was found
+     */
+    public List<int[]> getDisconnectedPoints() {
+        return disconnectedPoints;
+    }
+
+    public List<Integer> getInvalidFromPoints() {
+        return invalidFromPoints;
+    }
+
+    public List<Integer> getInvalidToPoints() {
+        return invalidToPoints;
+    }
+
+    public PMap getHints() {
+        return hintsMap;
+    }
+
+    public boolean hasErrors() {
+        return !errors.isEmpty();
+    }
+
+    public List<Throwable> getErrors() {
+        return errors;
+    }
+
+    public GHMatrixResponse addError(Throwable error) {
+        errors.add(error);
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "errors:" + errors + ", disconnected:" + disconnectedPoints.size()
+                + ", invalid from:" + invalidFromPoints + ", invalid to:" + invalidToPoints;
+    }
+}
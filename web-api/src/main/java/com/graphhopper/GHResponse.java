@@ -20,8 +20,10 @@ package com.graphhopper;
 import com.graphhopper.util.PMap;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 /**
  * Wrapper containing path and error output of GraphHopper.
@@ -34,6 +36,7 @@ public class GHResponse {
     private PMap hintsMap = new PMap();
     private final List<ResponsePath> responsePaths = new ArrayList<>(5);
     private String debugInfo = "";
+    private final Map<String, Long> timings = new LinkedHashMap<>();
 
     public GHResponse() {
     }
@@ -87,6 +90,22 @@ public class GHResponse {
         return str;
     }
 
+    /**
+     * Adds the nanoseconds spent in the given stage of the request, like "snap", "query_graph", "search",
+     * "path_extraction", "instructions" or "path_details". The time of a stage that is added several times is summed up.
+     */
+    public GHResponse addTiming(String stage, long nanos) {
+        timings.merge(stage, nanos, Long::sum);
+        return this;
+    }
+
+    /**
+     * @return the nanoseconds spent in the different stages of the request in the order they were added
+     */
+    public Map<String, Long> getTimings() {
+        return timings;
+    }
+
     /**
      * This method returns true if one of the paths has an error or if the response itself is
      * erroneous.
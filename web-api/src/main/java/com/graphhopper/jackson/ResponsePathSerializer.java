@@ -18,6 +18,7 @@
 
 package com.graphhopper.jackson;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -29,6 +30,7 @@ import com.graphhopper.util.PointList;
 import java.text.NumberFormat;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 /**
  * Code which constructs the JSON response of the routing API, including polyline encoding.
@@ -81,7 +83,14 @@ public class ResponsePathSerializer {
         sb.append((char) (num));
     }
 
-    public record Info(List<String> copyrights, long took, String roadDataTimestamp) {
+    /**
+     * @param timings the milliseconds spent in the different stages of the request, only written if not null
+     */
+    public record Info(List<String> copyrights, long took, String roadDataTimestamp,
+                       @JsonInclude(JsonInclude.Include.NON_NULL) Map<String, Double> timings) {
+        public Info(List<String> copyrights, long took, String roadDataTimestamp) {
+            this(copyrights, took, roadDataTimestamp, null);
+        }
     }
 
     public static ObjectNode jsonObject(GHResponse ghRsp, Info info, boolean enableInstructions,
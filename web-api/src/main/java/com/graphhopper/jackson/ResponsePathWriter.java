@@ -0,0 +1,256 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.jackson;
+
+import com.fasterxml.jackson.core.JsonGenerationException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.graphhopper.GHResponse;
+import com.graphhopper.ResponsePath;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.Instruction;
+import com.graphhopper.util.InstructionList;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.details.PathDetail;
+import org.locationtech.jts.geom.Envelope;
+
+import java.io.IOException;
+import java.text.NumberFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static com.graphhopper.util.Parameters.Details.STREET_NAME;
+
+/**
+ * Writes the JSON response of the routing API directly to a JsonGenerator. The output is the same as the one of
+ * {@link ResponsePathSerializer#jsonObject}, but no intermediate tree of JSON nodes is created, the polylines are
+ * encoded into a buffer that is reused for all point lists and path details are written without going through
+ * the ObjectMapper. Use one instance per thread, e.g. one for every response or for every stream of responses.
+ * <p>
+ * The generator needs a codec that knows the GraphHopper types, i.e. it should be created from an ObjectMapper
+ * configured via {@link Jackson#initObjectMapper}.
+ */
+public class ResponsePathWriter {
+    // an encoded int needs at most 7 characters
+    private static final int MAX_NUMBER_LENGTH = 7;
+    private char[] polylineBuffer = new char[256];
+    private int polylineLength;
+
+    public void writeJson(JsonGenerator gen, GHResponse ghRsp, ResponsePathSerializer.Info info, boolean enableInstructions,
+                          boolean calcPoints, boolean enableElevation, boolean pointsEncoded, double pointsMultiplier) throws IOException {
+        gen.writeStartObject();
+        writeFields(gen, ghRsp, info, enableInstructions, calcPoints, enableElevation, pointsEncoded, pointsMultiplier);
+        gen.writeEndObject();
+    }
+
+    /**
+     * Writes the fields of the response into the current JSON object, which allows adding further fields.
+     */
+    public void writeFields(JsonGenerator gen, GHResponse ghRsp, ResponsePathSerializer.Info info, boolean enableInstructions,
+                            boolean calcPoints, boolean enableElevation, boolean pointsEncoded, double pointsMultiplier) throws IOException {
+        gen.writeObjectField("hints", ghRsp.getHints().toMap());
+        gen.writeObjectField("info", info);
+        gen.writeArrayFieldStart("paths");
+        for (ResponsePath p : ghRsp.getAll())
+            writePath(gen, p, enableInstructions, calcPoints, enableElevation, pointsEncoded, pointsMultiplier);
+        gen.writeEndArray();
+    }
+
+    private void writePath(JsonGenerator gen, ResponsePath p, boolean enableInstructions, boolean calcPoints,
+                           boolean enableElevation, boolean pointsEncoded, double pointsMultiplier) throws IOException {
+        gen.writeStartObject();
+        gen.writeNumberField("distance", Helper.round(p.getDistance(), 3));
+        gen.writeNumberField("weight", Helper.round6(p.getRouteWeight()));
+        gen.writeNumberField("time", p.getTime());
+        gen.writeNumberField("transfers", p.getNumChanges());
+        gen.writeObjectField("legs", p.getLegs());
+        if (!p.getDescription().isEmpty())
+            gen.writeObjectField("description", p.getDescription());
+
+        // for points and snapped_waypoints:
+        gen.writeBooleanField("points_encoded", pointsEncoded);
+        if (pointsEncoded)
+            gen.writeNumberField("points_encoded_multiplier", pointsMultiplier);
+
+        if (calcPoints) {
+            gen.writeFieldName("bbox");
+            writeBBox(gen, p.calcBBox2D());
+            gen.writeFieldName("points");
+            writePoints(gen, p.getPoints(), enableElevation, pointsEncoded, pointsMultiplier);
+            if (enableInstructions) {
+                gen.writeFieldName("instructions");
+                writeInstructions(gen, p.getInstructions());
+            }
+            gen.writeObjectFieldStart("details");
+            for (Map.Entry<String, List<PathDetail>> entry : p.getPathDetails().entrySet()) {
+                gen.writeArrayFieldStart(entry.getKey());
+                for (PathDetail detail : entry.getValue())
+                    writePathDetail(gen, detail);
+                gen.writeEndArray();
+            }
+            gen.writeEndObject();
+            gen.writeNumberField("ascend", p.getAscend());
+            gen.writeNumberField("descend", p.getDescend());
+        }
+        gen.writeFieldName("snapped_waypoints");
+        writePoints(gen, p.getWaypoints(), enableElevation, pointsEncoded, pointsMultiplier);
+        if (p.getFare() != null)
+            gen.writeStringField("fare", NumberFormat.getCurrencyInstance(Locale.ROOT).format(p.getFare()));
+        gen.writeEndObject();
+    }
+
+    private void writePoints(JsonGenerator gen, PointList points, boolean includeElevation, boolean pointsEncoded, double multiplier) throws IOException {
+        if (pointsEncoded) {
+            encodePolyline(points, includeElevation, multiplier);
+            gen.writeString(polylineBuffer, 0, polylineLength);
+        } else {
+            writeLineString(gen, points, includeElevation);
+        }
+    }
+
+    /**
+     * Encodes the given points into the reusable buffer, see {@link ResponsePathSerializer#encodePolyline}.
+     */
+    private void encodePolyline(PointList poly, boolean includeElevation, double multiplier) {
+        if (multiplier < 1)
+            throw new IllegalArgumentException("multiplier cannot be smaller than 1 but was " + multiplier + " for polyline");
+
+        polylineLength = 0;
+        int size = poly.size();
+        int prevLat = 0;
+        int prevLon = 0;
+        int prevEle = 0;
+        for (int i = 0; i < size; i++) {
+            ensurePolylineCapacity((includeElevation ? 3 : 2) * MAX_NUMBER_LENGTH);
+            int num = (int) Math.round(poly.getLat(i) * multiplier);
+            encodeNumber(num - prevLat);
+            prevLat = num;
+            num = (int) Math.round(poly.getLon(i) * multiplier);
+            encodeNumber(num - prevLon);
+            prevLon = num;
+            if (includeElevation) {
+                num = (int) Math.round(poly.getEle(i) * 100);
+                encodeNumber(num - prevEle);
+                prevEle = num;
+            }
+        }
+    }
+
+    private void ensurePolylineCapacity(int additional) {
+        if (polylineLength + additional > polylineBuffer.length) {
+            char[] tmp = new char[Math.max(polylineBuffer.length * 2, polylineLength + additional)];
+            System.arraycopy(polylineBuffer, 0, tmp, 0, polylineLength);
+            polylineBuffer = tmp;
+        }
+    }
+
+    private void encodeNumber(int num) {
+        num = num << 1;
+        if (num < 0) {
+            num = ~num;
+        }
+        while (num >= 0x20) {
+            int nextValue = (0x20 | (num & 0x1f)) + 63;
+            polylineBuffer[polylineLength++] = (char) nextValue;
+            num >>= 5;
+        }
+        num += 63;
+        polylineBuffer[polylineLength++] = (char) num;
+    }
+
+    /**
+     * Writes the points as GeoJSON LineString in the same way as it is done for {@link PointList#toLineString}.
+     */
+    private static void writeLineString(JsonGenerator gen, PointList points, boolean includeElevation) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("type", "LineString");
+        gen.writeArrayFieldStart("coordinates");
+        // special case as just 1 point is not supported in the specification #1412
+        int size = points.size() == 1 ? 2 : points.size();
+        for (int i = 0; i < size; i++) {
+            int index = Math.min(i, points.size() - 1);
+            gen.writeStartArray();
+            gen.writeNumber(Helper.round6(points.getLon(index)));
+            gen.writeNumber(Helper.round6(points.getLat(index)));
+            if (includeElevation)
+                gen.writeNumber(Helper.round2(points.getEle(index)));
+            gen.writeEndArray();
+        }
+        gen.writeEndArray();
+        gen.writeEndObject();
+    }
+
+    private static void writeBBox(JsonGenerator gen, Envelope bBox) throws IOException {
+        gen.writeStartArray();
+        gen.writeNumber(Helper.round6(bBox.getMinX()));
+        gen.writeNumber(Helper.round6(bBox.getMinY()));
+        gen.writeNumber(Helper.round6(bBox.getMaxX()));
+        gen.writeNumber(Helper.round6(bBox.getMaxY()));
+        gen.writeEndArray();
+    }
+
+    static void writeInstructions(JsonGenerator gen, InstructionList instructions) throws IOException {
+        gen.writeStartArray();
+        int pointsIndex = 0;
+        for (Instruction instruction : instructions) {
+            gen.writeStartObject();
+            gen.writeStringField("text", Helper.firstBig(instruction.getTurnDescription(instructions.getTr())));
+            gen.writeStringField(STREET_NAME, instruction.getName());
+            gen.writeNumberField("time", instruction.getTime());
+            gen.writeNumberField("distance", Helper.round(instruction.getDistance(), 3));
+            gen.writeNumberField("sign", instruction.getSign());
+            for (Map.Entry<String, Object> entry : instruction.getExtraInfoJSON().entrySet())
+                gen.writeObjectField(entry.getKey(), entry.getValue());
+
+            int tmpIndex = pointsIndex + instruction.getLength();
+            gen.writeArrayFieldStart("interval");
+            gen.writeNumber(pointsIndex);
+            gen.writeNumber(tmpIndex);
+            gen.writeEndArray();
+            pointsIndex = tmpIndex;
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+    }
+
+    static void writePathDetail(JsonGenerator gen, PathDetail detail) throws IOException {
+        gen.writeStartArray();
+        gen.writeNumber(detail.getFirst());
+        gen.writeNumber(detail.getLast());
+
+        Object value = detail.getValue();
+        if (value instanceof Double d)
+            gen.writeNumber(d.doubleValue());
+        else if (value instanceof Long l)
+            gen.writeNumber(l.longValue());
+        else if (value instanceof Integer i)
+            gen.writeNumber(i.intValue());
+        else if (value instanceof Boolean b)
+            gen.writeBoolean(b.booleanValue());
+        else if (value instanceof String s)
+            gen.writeString(s);
+        else if (value instanceof Map)
+            gen.writeObject(value);
+        else if (value == null)
+            gen.writeNull();
+        else
+            throw new JsonGenerationException("Unsupported type for PathDetail.value" + value.getClass(), gen);
+
+        gen.writeEndArray();
+    }
+}
@@ -99,6 +99,12 @@ public class Parameters {
         public static final String INIT_MAX_VISITED_NODES = ROUTING_INIT_PREFIX + "max_visited_nodes";
         public static final String TIMEOUT_MS = "timeout_ms";
         public static final String INIT_TIMEOUT_MS = ROUTING_INIT_PREFIX + "timeout_ms";
+        /**
+         * the maximum number of sources and targets (each) that a single matrix request may contain
+         */
+        public static final String INIT_MAX_MATRIX_POINTS = ROUTING_INIT_PREFIX + "max_matrix_points";
+        public static final String INIT_MAX_BATCH_SIZE = ROUTING_INIT_PREFIX + "max_batch_size";
+        public static final String INIT_BATCH_THREADS = ROUTING_INIT_PREFIX + "batch_threads";
         /**
          * if true the response will contain turn instructions
          */
@@ -149,6 +155,19 @@ public class Parameters {
          * This property name in HintsMap configures at runtime if CH routing should be ignored.
          */
         public static final String DISABLE = "ch.disable";
+        /**
+         * the number of node-based CH query states that are kept for reuse, 0 means no pooling
+         */
+        public static final String INIT_QUERY_STATE_POOL_SIZE = ROUTING_INIT_PREFIX + "ch.query_state_pool_size";
+        /**
+         * This property name in HintsMap makes /isochrone and /spt requests use a PHAST sweep over the contraction
+         * hierarchy of the profile
+         */
+        public static final String PHAST = "ch.phast";
+        /**
+         * the number of PHAST states that are kept for reuse, 0 means no pooling
+         */
+        public static final String INIT_PHAST_STATE_POOL_SIZE = ROUTING_INIT_PREFIX + "ch.phast_state_pool_size";
     }
 
     /**
@@ -172,6 +191,10 @@ public class Parameters {
          * Specifies how many landmarks should be created
          */
         public static final String COUNT = PREPARE + "landmarks";
+        /**
+         * Specifies if the landmark weights should be copied to the heap after loading or preparing them
+         */
+        public static final String HEAP_WEIGHTS = ROUTING_INIT_PREFIX + "lm.heap_weights";
     }
 
     /**
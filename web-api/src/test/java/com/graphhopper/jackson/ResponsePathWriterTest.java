@@ -0,0 +1,133 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.jackson;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphhopper.GHResponse;
+import com.graphhopper.ResponsePath;
+import com.graphhopper.util.*;
+import com.graphhopper.util.details.PathDetail;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ResponsePathWriterTest {
+    private final ObjectMapper objectMapper = Jackson.newObjectMapper();
+
+    @ParameterizedTest
+    @CsvSource({
+            "true,true,false,true",
+            "true,true,true,true",
+            "true,false,false,false",
+            "false,true,true,false",
+            "true,true,false,false",
+    })
+    public void sameOutputAsTree(boolean pointsEncoded, boolean calcPoints, boolean elevation, boolean instructions) throws IOException {
+        GHResponse rsp = new GHResponse();
+        rsp.getHints().putObject("visited_nodes.sum", 42);
+        rsp.add(createPath(elevation, 120));
+        rsp.add(createPath(elevation, 1));
+        ResponsePathSerializer.Info info = new ResponsePathSerializer.Info(List.of("GraphHopper", "OpenStreetMap contributors"), 12, "2024-01-01T00:00:00Z");
+
+        JsonNode expected = objectMapper.readTree(objectMapper.writeValueAsBytes(
+                ResponsePathSerializer.jsonObject(rsp, info, instructions, calcPoints, elevation, pointsEncoded, 1e5)));
+        ResponsePathWriter writer = new ResponsePathWriter();
+        // write twice to make sure the reused polyline buffer does not leak state
+        for (int run = 0; run < 2; run++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (JsonGenerator gen = objectMapper.createGenerator(out)) {
+                writer.writeJson(gen, rsp, info, instructions, calcPoints, elevation, pointsEncoded, 1e5);
+            }
+            assertEquals(expected, objectMapper.readTree(out.toByteArray()));
+        }
+    }
+
+    private static ResponsePath createPath(boolean elevation, int size) {
+        Random rnd = new Random(size);
+        PointList points = new PointList(size, elevation);
+        for (int i = 0; i < size; i++) {
+            if (elevation)
+                points.add(50 + rnd.nextDouble(), 10 + rnd.nextDouble(), rnd.nextDouble() * 1000);
+            else
+                points.add(50 + rnd.nextDouble(), 10 + rnd.nextDouble());
+        }
+        ResponsePath path = new ResponsePath();
+        path.setPoints(points);
+        path.setWaypoints(points.copy(0, Math.min(2, size)));
+        path.setDistance(rnd.nextDouble() * 10_000).setTime(rnd.nextInt(1_000_000)).setRouteWeight(rnd.nextDouble() * 100);
+        path.setAscend(12.5).setDescend(3.25);
+        path.setDescription(List.of("via somewhere"));
+
+        InstructionList instructions = new InstructionList(null) {
+            @Override
+            public Translation getTr() {
+                return TR;
+            }
+        };
+        instructions.add(new Instruction(Instruction.CONTINUE_ON_STREET, "main street", points.copy(0, size > 1 ? size - 1 : 1)));
+        instructions.add(new RoundaboutInstruction(Instruction.USE_ROUNDABOUT, "ring", new PointList()).setRadian(1).setExitNumber(2).setExited());
+        instructions.add(new FinishInstruction("end", points, size - 1));
+        path.setInstructions(instructions);
+
+        Map<String, List<PathDetail>> details = new HashMap<>();
+        details.put("max_speed", List.of(detail(50.0, 0, 1), detail(null, 1, size)));
+        details.put("osm_way_id", List.of(detail(123456789012L, 0, size)));
+        details.put("lanes", List.of(detail(2, 0, size)));
+        details.put("toll", List.of(detail(false, 0, size)));
+        details.put("road_class", List.of(detail("primary", 0, size)));
+        details.put("intersection", List.of(detail(Map.of("bearings", List.of(10, 190)), 0, size)));
+        path.addPathDetails(details);
+        return path;
+    }
+
+    private static PathDetail detail(Object value, int first, int last) {
+        PathDetail detail = new PathDetail(value);
+        detail.setFirst(first);
+        detail.setLast(last);
+        return detail;
+    }
+
+    private static final Translation TR = new Translation() {
+        @Override
+        public String tr(String key, Object... params) {
+            return key;
+        }
+
+        @Override
+        public Map<String, String> asMap() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public Locale getLocale() {
+            return Locale.US;
+        }
+
+        @Override
+        public String getLanguage() {
+            return "en";
+        }
+    };
+}
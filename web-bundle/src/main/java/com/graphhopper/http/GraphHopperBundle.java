@@ -275,11 +275,25 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
         final GraphHopperManaged graphHopperManaged = new GraphHopperManaged(configuration.getGraphHopperConfiguration());
         environment.lifecycle().manage(graphHopperManaged);
         final GraphHopper graphHopper = graphHopperManaged.getGraphHopper();
+        GraphHopperConfig ghConfig = configuration.getGraphHopperConfiguration();
+        final RouteResponseCache routeResponseCache = new RouteResponseCache(graphHopper,
+                ghConfig.getLong("routing.cache.max_size", 0), ghConfig.getLong("routing.cache.ttl_ms", 60_000), environment.metrics());
+        // registered after the GraphHopperManaged, so it is emptied after the graph was loaded and before it is closed
+        environment.lifecycle().manage(routeResponseCache);
+        final StageTimingMetrics stageTimingMetrics = new StageTimingMetrics(environment.metrics());
+        final MVTTileCache mvtTileCache = new MVTTileCache(graphHopper, new MVTTileRenderer(graphHopper),
+                ghConfig.getLong("mvt.cache.max_bytes", 0), ghConfig.getString("mvt.tile_store.location", ""),
+                ghConfig.getString("mvt.tile_store.zooms", "10-12"), ghConfig.getBool("mvt.tile_store.prerender", false),
+                environment.metrics());
+        environment.lifecycle().manage(mvtTileCache);
         environment.jersey().register(new AbstractBinder() {
             @Override
             protected void configure() {
                 bind(configuration.getGraphHopperConfiguration()).to(GraphHopperConfig.class);
                 bind(graphHopper).to(GraphHopper.class);
+                bind(routeResponseCache).to(RouteResponseCache.class);
+                bind(stageTimingMetrics).to(StageTimingMetrics.class);
+                bind(mvtTileCache).to(MVTTileCache.class);
 
                 bind(new JTSTriangulator(graphHopper.getRouterConfig())).to(Triangulator.class);
                 bindFactory(MapMatchingRouterFactoryFactory.class).to(MapMatchingResource.MapMatchingRouterFactory.class);
@@ -298,6 +312,7 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
         environment.jersey().register(MVTResource.class);
         environment.jersey().register(NearestResource.class);
         environment.jersey().register(RouteResource.class);
+        environment.jersey().register(MatrixResource.class);
         environment.jersey().register(IsochroneResource.class);
         environment.jersey().register(MapMatchingResource.class);
 
@@ -312,12 +327,15 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
                         bind(PtRouterFreeWalkImpl.class).to(PtRouter.class);
                     } else if (configuration.getGraphHopperConfiguration().getBool("gtfs.trip_based", false)) {
                         bind(PtRouterTripBasedImpl.class).to(PtRouter.class);
+                    } else if (configuration.getGraphHopperConfiguration().getBool("gtfs.raptor", false)) {
+                        bind(PtRouterRaptorImpl.class).to(PtRouter.class);
                     } else {
                         bind(PtRouterImpl.class).to(PtRouter.class);
                     }
                     bind(PtRouterImpl.class).to(PtRouter.class).named("classic");
                     bind(PtRouterFreeWalkImpl.class).to(PtRouter.class).named("free_walk");
                     bind(PtRouterTripBasedImpl.class).to(PtRouter.class).named("trip_based");
+                    bind(PtRouterRaptorImpl.class).to(PtRouter.class).named("raptor");
                 }
             });
             environment.jersey().register(PtRouteResource.class);
@@ -0,0 +1,288 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.StopWatch;
+import com.graphhopper.util.shapes.BBox;
+import io.dropwizard.lifecycle.Managed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Caches the vector tiles rendered by {@link MVTTileRenderer} in memory, bounded by the total size of the tiles in
+ * bytes. Optionally the tiles of a zoom range are also kept in an on-disk tile store with one z/x/y.mvt file per
+ * tile, which can be filled in the background when the server starts. The store remembers the import date of the
+ * graph and is emptied if the graph was imported again. Every tile comes with an ETag derived from its content, so
+ * clients can revalidate tiles they already have.
+ */
+public class MVTTileCache implements Managed {
+    private static final Logger logger = LoggerFactory.getLogger(MVTTileCache.class);
+    private static final String VERSION_FILE = "graph_version";
+    // the z and z/x directories and the z/x/y.mvt files of the tile store, plus the temporary files of write
+    private static final Pattern STORE_DIR = Pattern.compile("\\d+");
+    private static final Pattern STORE_DIRS = Pattern.compile("\\d+(/\\d+)?");
+    private static final Pattern STORE_FILE = Pattern.compile("\\d+/\\d+/(\\d+\\.mvt|tile\\d*\\.tmp)");
+
+    // roughly the memory of a cache entry besides the tile bytes: the key, the Tile, the etag and the entry itself
+    private static final int ENTRY_OVERHEAD_BYTES = 200;
+
+    public record Tile(byte[] bytes, String etag) {
+        // the CRC32 of no bytes is 0
+        static final Tile EMPTY = new Tile(new byte[0], "0-0");
+
+        static Tile of(byte[] bytes) {
+            if (bytes.length == 0)
+                return EMPTY;
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            return new Tile(bytes, Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(bytes.length));
+        }
+    }
+
+    private final GraphHopper graphHopper;
+    private final MVTTileRenderer renderer;
+    private final Cache<String, Tile> cache;
+    private final Path storeLocation;
+    private final int storeMinZoom;
+    private final int storeMaxZoom;
+    private final boolean prerender;
+    private final Meter hits;
+    private final Meter misses;
+    private ExecutorService prerenderExecutor;
+
+    /**
+     * @param maxBytes      the maximum total size of the tiles kept in memory, 0 disables the in-memory cache
+     * @param storeLocation the directory of the on-disk tile store or empty to disable it
+     * @param storeZooms    the zoom range like "10-12" whose tiles are kept in the tile store
+     * @param prerender     true if all tiles of the graph within the zoom range should be written to the tile store
+     *                      in the background
+     */
+    public MVTTileCache(GraphHopper graphHopper, MVTTileRenderer renderer, long maxBytes, String storeLocation,
+                        String storeZooms, boolean prerender, MetricRegistry metrics) {
+        if (maxBytes < 0)
+            throw new IllegalArgumentException("mvt.cache.max_bytes must not be negative, was: " + maxBytes);
+        this.graphHopper = graphHopper;
+        this.renderer = renderer;
+        cache = maxBytes == 0 ? null : CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .<String, Tile>weigher((key, tile) -> ENTRY_OVERHEAD_BYTES + tile.bytes().length)
+                .build();
+        this.storeLocation = Helper.isEmpty(storeLocation) ? null : Paths.get(storeLocation);
+        String[] zooms = storeZooms.split("-");
+        if (zooms.length != 2)
+            throw new IllegalArgumentException("mvt.tile_store.zooms must be a range like 10-12, was: " + storeZooms);
+        storeMinZoom = Integer.parseInt(zooms[0].trim());
+        storeMaxZoom = Integer.parseInt(zooms[1].trim());
+        if (storeMinZoom < 0 || storeMinZoom > storeMaxZoom)
+            throw new IllegalArgumentException("invalid mvt.tile_store.zooms: " + storeZooms);
+        if (prerender && this.storeLocation == null)
+            throw new IllegalArgumentException("mvt.tile_store.prerender requires mvt.tile_store.location");
+        this.prerender = prerender;
+        hits = metrics.meter(MetricRegistry.name(MVTTileCache.class, "hits"));
+        misses = metrics.meter(MetricRegistry.name(MVTTileCache.class, "misses"));
+    }
+
+    /**
+     * Returns the tile from the cache, the tile store or renders it.
+     */
+    public Tile get(int z, int x, int y, boolean renderAll) {
+        if (cache == null)
+            return load(z, x, y, renderAll);
+        String key = z + "/" + x + "/" + y + (renderAll ? "/all" : "");
+        Tile tile = cache.getIfPresent(key);
+        if (tile != null) {
+            hits.mark();
+            return tile;
+        }
+        misses.mark();
+        tile = load(z, x, y, renderAll);
+        // empty tiles are cheap to render, and caching them would let requests for arbitrary tiles fill the cache
+        if (tile != Tile.EMPTY)
+            cache.put(key, tile);
+        return tile;
+    }
+
+    private Tile load(int z, int x, int y, boolean renderAll) {
+        if (renderAll || !isStored(z))
+            return Tile.of(renderer.render(z, x, y, renderAll));
+        Path file = getStoreFile(z, x, y);
+        try {
+            if (Files.exists(file))
+                return Tile.of(Files.readAllBytes(file));
+            byte[] bytes = renderer.render(z, x, y, false);
+            if (bytes.length > 0)
+                write(file, bytes);
+            return Tile.of(bytes);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private boolean isStored(int z) {
+        return storeLocation != null && z >= storeMinZoom && z <= storeMaxZoom;
+    }
+
+    private Path getStoreFile(int z, int x, int y) {
+        return storeLocation.resolve(z + "/" + x + "/" + y + ".mvt");
+    }
+
+    private static void write(Path file, byte[] bytes) throws IOException {
+        Files.createDirectories(file.getParent());
+        // write to a temporary file first, so no other request or server reads a partially written tile
+        Path tmp = Files.createTempFile(file.getParent(), "tile", ".tmp");
+        Files.write(tmp, bytes);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Empties the tile store if it was created for another import of the graph. To not remove anything else by
+     * accident, an existing directory without version file must contain nothing but tiles, and only the zoom
+     * directories are removed.
+     */
+    private void checkStoreVersion() throws IOException {
+        String version = graphHopper.getProperties().get("datareader.import.date");
+        Path versionFile = storeLocation.resolve(VERSION_FILE);
+        if (Files.exists(versionFile) && Files.readString(versionFile, StandardCharsets.UTF_8).equals(version))
+            return;
+        if (Files.exists(storeLocation)) {
+            if (!Files.exists(versionFile) && !containsOnlyTiles(storeLocation))
+                throw new IllegalArgumentException("mvt.tile_store.location must be empty or a tile store, but "
+                        + storeLocation + " contains other files");
+            logger.info("removing the tiles in " + storeLocation + " as they were created for another graph");
+            try (DirectoryStream<Path> children = Files.newDirectoryStream(storeLocation)) {
+                for (Path child : children) {
+                    if (Files.isDirectory(child) && STORE_DIR.matcher(child.getFileName().toString()).matches())
+                        Helper.removeDir(child.toFile());
+                }
+            }
+        }
+        Files.createDirectories(storeLocation);
+        Files.writeString(versionFile, version, StandardCharsets.UTF_8);
+    }
+
+    private static boolean containsOnlyTiles(Path location) throws IOException {
+        if (!Files.isDirectory(location))
+            return false;
+        try (Stream<Path> paths = Files.walk(location)) {
+            return paths.filter(path -> !path.equals(location)).allMatch(path -> {
+                String relative = location.relativize(path).toString().replace(File.separatorChar, '/');
+                return (Files.isDirectory(path) ? STORE_DIRS : STORE_FILE).matcher(relative).matches();
+            });
+        }
+    }
+
+    private void prerender() {
+        BBox bounds = graphHopper.getBaseGraph().getBounds();
+        StopWatch sw = new StopWatch().start();
+        int tiles = 0;
+        for (int z = storeMinZoom; z <= storeMaxZoom; z++) {
+            int minX = lon2x(bounds.minLon, z), maxX = lon2x(bounds.maxLon, z);
+            int minY = lat2y(bounds.maxLat, z), maxY = lat2y(bounds.minLat, z);
+            for (int x = minX; x <= maxX; x++) {
+                for (int y = minY; y <= maxY; y++) {
+                    if (Thread.currentThread().isInterrupted())
+                        return;
+                    Path file = getStoreFile(z, x, y);
+                    if (Files.exists(file))
+                        continue;
+                    try {
+                        byte[] bytes = renderer.render(z, x, y, false);
+                        if (bytes.length == 0)
+                            continue;
+                        write(file, bytes);
+                    } catch (IOException ex) {
+                        logger.warn("could not write tile " + file, ex);
+                        return;
+                    }
+                    tiles++;
+                }
+            }
+        }
+        logger.info("prerendered " + tiles + " tiles for zoom " + storeMinZoom + " to " + storeMaxZoom + " in " + sw.stop().getSeconds() + "s");
+    }
+
+    static int lon2x(double lon, int zoom) {
+        int n = 1 << zoom;
+        return Math.max(0, Math.min(n - 1, (int) Math.floor((lon + 180) / 360 * n)));
+    }
+
+    static int lat2y(double lat, int zoom) {
+        int n = 1 << zoom;
+        double latRad = Math.toRadians(lat);
+        double y = (1 - Math.log(Math.tan(latRad) + 1 / Math.cos(latRad)) / Math.PI) / 2 * n;
+        return Math.max(0, Math.min(n - 1, (int) Math.floor(y)));
+    }
+
+    public void invalidateAll() {
+        if (cache != null)
+            cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache == null ? 0 : cache.size();
+    }
+
+    @Override
+    public void start() throws IOException {
+        invalidateAll();
+        if (storeLocation == null)
+            return;
+        checkStoreVersion();
+        if (prerender) {
+            prerenderExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "mvt-prerender");
+                thread.setDaemon(true);
+                return thread;
+            });
+            prerenderExecutor.execute(this::prerender);
+        }
+    }
+
+    @Override
+    public void stop() throws InterruptedException {
+        if (prerenderExecutor != null) {
+            prerenderExecutor.shutdownNow();
+            prerenderExecutor.awaitTermination(10, TimeUnit.SECONDS);
+            prerenderExecutor = null;
+        }
+        invalidateAll();
+        renderer.close();
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.routing.ev.*;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.search.KVStorage;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.FetchMode;
+import com.graphhopper.util.StopWatch;
+import com.graphhopper.util.shapes.BBox;
+import org.locationtech.jts.geom.Coordinate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders the road network of a tile as Mapbox vector tile. Tiles up to zoom 9 are empty and up to zoom 13 only
+ * contain the major roads. For zoom 10 to 12 the edges are taken from location indices that only contain the road
+ * classes shown at these zooms, so such a tile does not have to look at the many minor roads it would drop anyway.
+ * These indices are created when they are needed first.
+ */
+public class MVTTileRenderer {
+    private static final Logger logger = LoggerFactory.getLogger(MVTTileRenderer.class);
+    // the road classes that are added at zoom 10, 11 and 12, from zoom 13 on all road classes are shown
+    private static final int MIN_ROAD_CLASS_ZOOM = 10;
+    private static final List<EnumSet<RoadClass>> ROAD_CLASSES_PER_ZOOM = List.of(
+            EnumSet.of(RoadClass.MOTORWAY),
+            EnumSet.of(RoadClass.TRUNK, RoadClass.PRIMARY),
+            EnumSet.of(RoadClass.SECONDARY)
+    );
+    // the writers keep their buffers, so we use one per thread
+    private static final ThreadLocal<VectorTileWriter> WRITER = ThreadLocal.withInitial(() -> new VectorTileWriter("roads"));
+    private final GraphHopper graphHopper;
+    private volatile LocationIndexTree[] roadClassIndices;
+
+    public MVTTileRenderer(GraphHopper graphHopper) {
+        this.graphHopper = graphHopper;
+    }
+
+    public byte[] render(int zInfo, int xInfo, int yInfo, boolean renderAll) {
+        if (zInfo < MIN_ROAD_CLASS_ZOOM)
+            return new byte[0];
+
+        StopWatch totalSW = new StopWatch().start();
+        EncodingManager encodingManager = graphHopper.getEncodingManager();
+        BaseGraph graph = graphHopper.getBaseGraph();
+        Coordinate nw = num2deg(xInfo, yInfo, zInfo);
+        Coordinate se = num2deg(xInfo + 1, yInfo + 1, zInfo);
+        final NodeAccess na = graph.getNodeAccess();
+        BBox bbox = new BBox(nw.x, se.x, se.y, nw.y);
+        if (!bbox.isValid())
+            throw new IllegalStateException("Invalid bbox " + bbox);
+
+        if (!encodingManager.hasEncodedValue(RoadClass.KEY))
+            throw new IllegalStateException("You need to configure GraphHopper to store road_class, e.g. graph.encoded_values: road_class,max_speed,... ");
+
+        final AtomicInteger edgeCounter = new AtomicInteger(0);
+        List<EncodedValue> encodedValues = encodingManager.getEncodedValues();
+        VectorTileWriter writer = WRITER.get().reset(bbox);
+        LocationIndex.Visitor visitor = edgeId -> {
+            EdgeIteratorState edge = graph.getEdgeIteratorStateForKey(edgeId * 2);
+            writer.startFeature(edge.getEdge());
+            if (renderAll || zInfo >= 14) {
+                writer.line(edge.fetchWayGeometry(FetchMode.ALL));
+            } else {
+                writer.lineTo(na.getLat(edge.getBaseNode()), na.getLon(edge.getBaseNode()));
+                writer.lineTo(na.getLat(edge.getAdjNode()), na.getLon(edge.getAdjNode()));
+            }
+
+            for (Map.Entry<String, KVStorage.KValue> e : edge.getKeyValues().entrySet()) {
+                writer.attribute(e.getKey(), e.getValue().toString());
+            }
+            writer.attribute("edge_id", edge.getEdge());
+            writer.attribute("edge_key", edge.getEdgeKey());
+            writer.attribute("base_node", edge.getBaseNode());
+            writer.attribute("adj_node", edge.getAdjNode());
+            writer.attribute("distance", edge.getDistance());
+            for (EncodedValue ev : encodedValues) {
+                if (ev instanceof EnumEncodedValue)
+                    writer.attribute(ev.getName(), edge.get((EnumEncodedValue) ev).toString() + (ev.isStoreTwoDirections() ? " | " + edge.getReverse((EnumEncodedValue) ev).toString() : ""));
+                else if (ev instanceof DecimalEncodedValue)
+                    writer.attribute(ev.getName(), edge.get((DecimalEncodedValue) ev) + (ev.isStoreTwoDirections() ? " | " + edge.getReverse((DecimalEncodedValue) ev) : ""));
+                else if (ev instanceof BooleanEncodedValue)
+                    writer.attribute(ev.getName(), edge.get((BooleanEncodedValue) ev) + (ev.isStoreTwoDirections() ? " | " + edge.getReverse((BooleanEncodedValue) ev) : ""));
+                else if (ev instanceof StringEncodedValue)
+                    writer.attribute(ev.getName(), edge.get((StringEncodedValue) ev) + (ev.isStoreTwoDirections() ? " | " + edge.getReverse((StringEncodedValue) ev) : ""));
+                else if (ev instanceof IntEncodedValue)
+                    writer.attribute(ev.getName(), edge.get((IntEncodedValue) ev) + (ev.isStoreTwoDirections() ? " | " + edge.getReverse((IntEncodedValue) ev) : ""));
+            }
+            if (writer.endFeature())
+                edgeCounter.incrementAndGet();
+        };
+
+        if (renderAll || zInfo - MIN_ROAD_CLASS_ZOOM >= ROAD_CLASSES_PER_ZOOM.size()) {
+            graphHopper.getLocationIndex().query(bbox, visitor);
+        } else {
+            LocationIndexTree[] indices = getRoadClassIndices();
+            for (int i = 0; i <= zInfo - MIN_ROAD_CLASS_ZOOM; i++)
+                indices[i].query(bbox, visitor);
+        }
+
+        byte[] bytes = writer.encode();
+        logger.debug("took: " + totalSW.stop().getMillis() + "ms, edges:" + edgeCounter.get());
+        return bytes;
+    }
+
+    private LocationIndexTree[] getRoadClassIndices() {
+        LocationIndexTree[] indices = roadClassIndices;
+        if (indices == null) {
+            synchronized (this) {
+                indices = roadClassIndices;
+                if (indices == null) {
+                    indices = createRoadClassIndices();
+                    roadClassIndices = indices;
+                }
+            }
+        }
+        return indices;
+    }
+
+    private LocationIndexTree[] createRoadClassIndices() {
+        EnumEncodedValue<RoadClass> roadClassEnc = graphHopper.getEncodingManager().getEnumEncodedValue(RoadClass.KEY, RoadClass.class);
+        LocationIndexTree[] indices = new LocationIndexTree[ROAD_CLASSES_PER_ZOOM.size()];
+        for (int i = 0; i < indices.length; i++) {
+            EnumSet<RoadClass> roadClasses = ROAD_CLASSES_PER_ZOOM.get(i);
+            EdgeFilter filter = edge -> roadClasses.contains(edge.get(roadClassEnc));
+            indices[i] = new LocationIndexTree(graphHopper.getBaseGraph(), new RAMDirectory());
+            // these roads are sparse, so we can use a coarser resolution than for the full index
+            indices[i].setMinResolutionInMeter(1000);
+            indices[i].prepareIndex(filter);
+        }
+        return indices;
+    }
+
+    /**
+     * Releases the road class indices, they are created again for the next tile that needs them.
+     */
+    public synchronized void close() {
+        if (roadClassIndices != null)
+            for (LocationIndexTree index : roadClassIndices)
+                index.close();
+        roadClassIndices = null;
+    }
+
+    public static Coordinate num2deg(int xInfo, int yInfo, int zoom) {
+        // inverse web mercator projection
+        double n = Math.pow(2, zoom);
+        double lonDeg = xInfo / n * 360.0 - 180.0;
+        // unfortunately latitude numbers goes from north to south
+        double latRad = Math.atan(Math.sinh(Math.PI * (1 - 2 * yInfo / n)));
+        double latDeg = Math.toDegrees(latRad);
+        return new Coordinate(lonDeg, latDeg);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.shapes.GHPoint3D;
+import io.dropwizard.lifecycle.Managed;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.graphhopper.util.Parameters.Algorithms.ROUND_TRIP;
+
+/**
+ * Caches the responses of route requests. The key consists of the profile, the custom model, all the hints (which
+ * include the output flags like instructions or calc_points) and the other request parameters, but instead of the
+ * requested coordinates it uses the positions the points were snapped to. So requests whose points differ only a bit,
+ * e.g. because of GPS jitter, get the same response, which might then contain the snapped waypoints of the previous
+ * request. Only successful responses are cached. The cache is emptied whenever the graph is (re)loaded or closed.
+ * <p>
+ * The points are snapped once per request: on a miss the route is calculated with the snaps of the key.
+ */
+public class RouteResponseCache implements Managed {
+    // points snapped onto the same edge segment share their key if they are within about 10m of each other
+    private static final double SNAPPED_POINT_PRECISION = 1e4;
+    private final GraphHopper graphHopper;
+    private final Cache<String, GHResponse> cache;
+    private final Meter hits;
+    private final Meter misses;
+
+    /**
+     * @param maxSize   the maximum number of cached responses, 0 disables the cache
+     * @param ttlMillis the time after which a cached response expires
+     */
+    public RouteResponseCache(GraphHopper graphHopper, long maxSize, long ttlMillis, MetricRegistry metrics) {
+        if (maxSize < 0)
+            throw new IllegalArgumentException("routing.cache.max_size must not be negative, was: " + maxSize);
+        if (ttlMillis <= 0)
+            throw new IllegalArgumentException("routing.cache.ttl_ms must be positive, was: " + ttlMillis);
+        this.graphHopper = graphHopper;
+        cache = maxSize == 0 ? null : CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+                .build();
+        hits = metrics.meter(MetricRegistry.name(RouteResponseCache.class, "hits"));
+        misses = metrics.meter(MetricRegistry.name(RouteResponseCache.class, "misses"));
+    }
+
+    /**
+     * Returns the cached response for the given request or calculates it using
+     * {@link GraphHopper#route(GHRequest, List)}.
+     */
+    public GHResponse route(GHRequest request) {
+        if (cache == null || ROUND_TRIP.equalsIgnoreCase(request.getAlgorithm()))
+            return graphHopper.route(request);
+        List<Snap> snaps;
+        String key;
+        try {
+            snaps = graphHopper.snap(request);
+            // the key must be created before routing, because the QueryGraph moves the snaps to virtual nodes
+            key = createKey(request, snaps);
+        } catch (IllegalArgumentException ex) {
+            // let the router create the error response
+            return graphHopper.route(request);
+        }
+        GHResponse response = cache.getIfPresent(key);
+        if (response != null) {
+            hits.mark();
+            return copyWithoutTimings(response);
+        }
+        misses.mark();
+        response = graphHopper.route(request, snaps);
+        if (!response.hasErrors())
+            cache.put(key, response);
+        return response;
+    }
+
+    /**
+     * The stage timings of the cached response belong to the request that calculated it, so we do not return them.
+     */
+    private static GHResponse copyWithoutTimings(GHResponse response) {
+        GHResponse copy = new GHResponse();
+        copy.setHints(response.getHints());
+        response.getAll().forEach(copy::add);
+        return copy;
+    }
+
+    static String createKey(GHRequest request, List<Snap> snaps) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(request.getProfile()).append('|');
+        sb.append(request.getCustomModel()).append('|');
+        sb.append(request.getAlgorithm()).append('|');
+        sb.append(request.getLocale()).append('|');
+        sb.append(request.getHints()).append('|');
+        sb.append(request.getPathDetails()).append('|');
+        sb.append(request.getHeadings()).append('|');
+        sb.append(request.getCurbsides()).append('|');
+        sb.append(request.getPointHints()).append('|');
+        sb.append(request.getSnapPreventions());
+        for (Snap snap : snaps) {
+            sb.append('|');
+            switch (snap.getSnappedPosition()) {
+                case TOWER:
+                    sb.append('n').append(snap.getClosestNode());
+                    break;
+                case PILLAR:
+                    sb.append('p').append(snap.getClosestEdge().getEdgeKey()).append(',').append(snap.getWayIndex());
+                    break;
+                default:
+                    GHPoint3D point = snap.getSnappedPoint();
+                    sb.append('e').append(snap.getClosestEdge().getEdgeKey()).append(',').append(snap.getWayIndex())
+                            .append(',').append(Math.round(point.lat * SNAPPED_POINT_PRECISION))
+                            .append(',').append(Math.round(point.lon * SNAPPED_POINT_PRECISION));
+            }
+        }
+        return sb.toString();
+    }
+
+    public void invalidateAll() {
+        if (cache != null)
+            cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache == null ? 0 : cache.size();
+    }
+
+    @Override
+    public void start() {
+        invalidateAll();
+    }
+
+    @Override
+    public void stop() {
+        invalidateAll();
+    }
+}
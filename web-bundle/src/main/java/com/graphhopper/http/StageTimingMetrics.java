@@ -0,0 +1,78 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.codahale.metrics.MetricRegistry;
+import com.graphhopper.util.Helper;
+
+import java.util.*;
+
+import static com.graphhopper.util.Parameters.Algorithms.*;
+
+/**
+ * Publishes the time spent in the different stages of a request, like snapping, the search or the path extraction,
+ * as histograms in microseconds. There is one histogram per endpoint, profile, algorithm and stage, e.g.
+ * "graphhopper.route.car.astarbi.search", so slow stages can be spotted for the profile and algorithm that cause them.
+ * Map matching is recorded with the algorithm "hmm".
+ */
+public class StageTimingMetrics {
+    /**
+     * The request parameter that adds the stage timings in milliseconds to the info of the response.
+     */
+    public static final String TIMINGS = "timings";
+    // the algorithm names come from the request, so only known ones get their own histograms
+    private static final Set<String> ALGORITHMS = new HashSet<>(Arrays.asList(
+            DIJKSTRA_BI, DIJKSTRA, DIJKSTRA_ONE_TO_MANY, ASTAR, ASTAR_BI, ALT_ROUTE, ROUND_TRIP));
+    private final MetricRegistry metrics;
+
+    public StageTimingMetrics(MetricRegistry metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param algorithm    one of a fixed set of names, because every name creates new histograms. Use
+     *                     {@link #normalizeAlgorithm(String)} for the algorithm of a request.
+     * @param nanosByStage the nanoseconds spent in every stage
+     */
+    public void record(String endpoint, String profile, String algorithm, Map<String, Long> nanosByStage) {
+        for (Map.Entry<String, Long> e : nanosByStage.entrySet())
+            metrics.histogram(MetricRegistry.name("graphhopper", endpoint, profile, algorithm, e.getKey()))
+                    .update(e.getValue() / 1_000);
+    }
+
+    /**
+     * @return the routing algorithm of a request in lower case, "default" if none was given or "other" for unknown
+     * algorithms
+     */
+    public static String normalizeAlgorithm(String algorithm) {
+        if (Helper.isEmpty(algorithm))
+            return "default";
+        String algo = Helper.toLowerCase(algorithm);
+        return ALGORITHMS.contains(algo) ? algo : "other";
+    }
+
+    /**
+     * @return the given timings converted to milliseconds, rounded to microseconds
+     */
+    public static Map<String, Double> toMillis(Map<String, Long> nanosByStage) {
+        Map<String, Double> result = new LinkedHashMap<>(nanosByStage.size());
+        for (Map.Entry<String, Long> e : nanosByStage.entrySet())
+            result.put(e.getKey(), e.getValue() / 1_000 / 1_000.0);
+        return result;
+    }
+}
@@ -0,0 +1,414 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.ObjectIntHashMap;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.shapes.BBox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a Mapbox vector tile with a single layer of points or lines directly from coordinates, without creating JTS
+ * geometries or protobuf message objects for the features. The coordinates are quantized to the integer tile space
+ * right away and lines are clipped there, using the same buffer around the tile as the no.ecc VectorTileEncoder.
+ * <p>
+ * A feature is written by {@link #startFeature}, adding its geometry and attributes and {@link #endFeature}. Features
+ * whose geometry is outside the tile are skipped. A writer can be reused for the next tile with {@link #reset}, which
+ * keeps its buffers.
+ */
+public class VectorTileWriter {
+    private static final int EXTENT = 4096;
+    // 8 pixels of a 256 pixel tile
+    private static final int BUFFER = 8 * EXTENT / 256;
+    private static final int MIN = -BUFFER, MAX = EXTENT + BUFFER;
+    private static final int MOVE_TO = 1, LINE_TO = 2;
+    private static final int POINT = 1, LINESTRING = 2;
+    // the field numbers of vector_tile.proto
+    private static final int TILE_LAYERS = 3;
+    private static final int LAYER_NAME = 1, LAYER_FEATURES = 2, LAYER_KEYS = 3, LAYER_VALUES = 4, LAYER_EXTENT = 5, LAYER_VERSION = 15;
+    private static final int FEATURE_ID = 1, FEATURE_TAGS = 2, FEATURE_TYPE = 3, FEATURE_GEOMETRY = 4;
+    private static final int VALUE_STRING = 1, VALUE_DOUBLE = 3, VALUE_SINT = 6;
+
+    private final String layerName;
+    private final ObjectIntHashMap<String> keyIndices = new ObjectIntHashMap<>();
+    private final List<String> keys = new ArrayList<>();
+    private final ObjectIntHashMap<Object> valueIndices = new ObjectIntHashMap<>();
+    private final List<Object> values = new ArrayList<>();
+    private final ByteArrayOutputStream featureBytes = new ByteArrayOutputStream();
+    private final CodedOutputStream featureOut = CodedOutputStream.newInstance(featureBytes);
+    private final ByteArrayOutputStream tileBytes = new ByteArrayOutputStream();
+    private final CodedOutputStream tileOut = CodedOutputStream.newInstance(tileBytes);
+    private int features;
+
+    private double minLon, maxLat, scaleX, scaleY;
+    // the current feature
+    private long id;
+    private int type;
+    private final IntArrayList tags = new IntArrayList();
+    private final IntArrayList geometry = new IntArrayList();
+    // the position of the geometry cursor, all geometry commands are relative to it
+    private int cursorX, cursorY;
+    // the start of the current line part in the geometry, or -1 if there is none
+    private int partStart = -1;
+    private int partCursorX, partCursorY;
+    // the previous point of the current line in tile coordinates, not clipped
+    private boolean hasPrevious;
+    private long prevX, prevY;
+    // the segment that is left after clipping
+    private long clipX0, clipY0, clipX1, clipY1;
+
+    public VectorTileWriter(String layerName) {
+        this.layerName = layerName;
+    }
+
+    /**
+     * Clears all features and prepares the writer for a tile with the given bounds.
+     */
+    public VectorTileWriter reset(BBox tileBounds) {
+        if (!tileBounds.isValid())
+            throw new IllegalArgumentException("Invalid bbox " + tileBounds);
+        minLon = tileBounds.minLon;
+        maxLat = tileBounds.maxLat;
+        scaleX = EXTENT / (tileBounds.maxLon - tileBounds.minLon);
+        scaleY = EXTENT / (tileBounds.maxLat - tileBounds.minLat);
+        keyIndices.clear();
+        keys.clear();
+        valueIndices.clear();
+        values.clear();
+        try {
+            // drop what a previous, unfinished tile might have left in the buffer of the stream
+            featureOut.flush();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        featureBytes.reset();
+        features = 0;
+        type = 0;
+        return this;
+    }
+
+    /**
+     * @param id the id of the feature or -1 if it has none
+     */
+    public VectorTileWriter startFeature(long id) {
+        this.id = id;
+        type = 0;
+        tags.clear();
+        geometry.clear();
+        cursorX = cursorY = 0;
+        partStart = -1;
+        hasPrevious = false;
+        return this;
+    }
+
+    /**
+     * Sets the geometry of the current feature to the given point. Points outside the tile are ignored.
+     */
+    public VectorTileWriter point(double lat, double lon) {
+        type = POINT;
+        long x = toX(lon), y = toY(lat);
+        if (x >= MIN && x <= MAX && y >= MIN && y <= MAX) {
+            geometry.add(command(MOVE_TO, 1), zigZag((int) x), zigZag((int) y));
+            cursorX = (int) x;
+            cursorY = (int) y;
+        }
+        return this;
+    }
+
+    /**
+     * Adds all points of the given list to the line of the current feature.
+     */
+    public VectorTileWriter line(PointList pointList) {
+        for (int i = 0; i < pointList.size(); i++)
+            lineTo(pointList.getLat(i), pointList.getLon(i));
+        return this;
+    }
+
+    /**
+     * Adds the next point to the line of the current feature. The parts of the line outside the tile are removed, so
+     * the line might be split into several parts.
+     */
+    public VectorTileWriter lineTo(double lat, double lon) {
+        type = LINESTRING;
+        long x = toX(lon), y = toY(lat);
+        if (!hasPrevious) {
+            hasPrevious = true;
+        } else if (clip(prevX, prevY, x, y)) {
+            if (partStart < 0 || clipX0 != cursorX || clipY0 != cursorY) {
+                endPart();
+                startPart((int) clipX0, (int) clipY0);
+            }
+            addToPart((int) clipX1, (int) clipY1);
+        } else {
+            endPart();
+        }
+        prevX = x;
+        prevY = y;
+        return this;
+    }
+
+    public VectorTileWriter attribute(String key, String value) {
+        if (value != null)
+            tags.add(keyIndex(key), valueIndex(value));
+        return this;
+    }
+
+    public VectorTileWriter attribute(String key, long value) {
+        tags.add(keyIndex(key), valueIndex(value));
+        return this;
+    }
+
+    public VectorTileWriter attribute(String key, double value) {
+        tags.add(keyIndex(key), valueIndex(value));
+        return this;
+    }
+
+    /**
+     * Writes the current feature, unless nothing of its geometry is inside the tile.
+     *
+     * @return true if the feature was written
+     */
+    public boolean endFeature() {
+        endPart();
+        if (geometry.isEmpty())
+            return false;
+        try {
+            int tagsSize = packedSize(tags);
+            int geometrySize = packedSize(geometry);
+            int size = (id >= 0 ? CodedOutputStream.computeUInt64Size(FEATURE_ID, id) : 0)
+                    + (tags.isEmpty() ? 0 : CodedOutputStream.computeTagSize(FEATURE_TAGS) + CodedOutputStream.computeUInt32SizeNoTag(tagsSize) + tagsSize)
+                    + CodedOutputStream.computeEnumSize(FEATURE_TYPE, type)
+                    + CodedOutputStream.computeTagSize(FEATURE_GEOMETRY) + CodedOutputStream.computeUInt32SizeNoTag(geometrySize) + geometrySize;
+            featureOut.writeTag(LAYER_FEATURES, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            featureOut.writeUInt32NoTag(size);
+            if (id >= 0)
+                featureOut.writeUInt64(FEATURE_ID, id);
+            if (!tags.isEmpty())
+                writePacked(featureOut, FEATURE_TAGS, tags, tagsSize);
+            featureOut.writeEnum(FEATURE_TYPE, type);
+            writePacked(featureOut, FEATURE_GEOMETRY, geometry, geometrySize);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        features++;
+        return true;
+    }
+
+    /**
+     * @return the tile with all features written so far, an empty tile has no layer
+     */
+    public byte[] encode() {
+        if (features == 0)
+            return new byte[0];
+        try {
+            featureOut.flush();
+            int size = CodedOutputStream.computeStringSize(LAYER_NAME, layerName)
+                    + featureBytes.size()
+                    + CodedOutputStream.computeUInt32Size(LAYER_EXTENT, EXTENT)
+                    + CodedOutputStream.computeUInt32Size(LAYER_VERSION, 2);
+            for (String key : keys)
+                size += CodedOutputStream.computeStringSize(LAYER_KEYS, key);
+            for (Object value : values) {
+                int valueSize = valueSize(value);
+                size += CodedOutputStream.computeTagSize(LAYER_VALUES) + CodedOutputStream.computeUInt32SizeNoTag(valueSize) + valueSize;
+            }
+
+            tileBytes.reset();
+            tileOut.writeTag(TILE_LAYERS, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            tileOut.writeUInt32NoTag(size);
+            tileOut.writeString(LAYER_NAME, layerName);
+            tileOut.flush();
+            featureBytes.writeTo(tileBytes);
+            for (String key : keys)
+                tileOut.writeString(LAYER_KEYS, key);
+            for (Object value : values) {
+                tileOut.writeTag(LAYER_VALUES, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+                tileOut.writeUInt32NoTag(valueSize(value));
+                if (value instanceof String)
+                    tileOut.writeString(VALUE_STRING, (String) value);
+                else if (value instanceof Long)
+                    tileOut.writeSInt64(VALUE_SINT, (Long) value);
+                else
+                    tileOut.writeDouble(VALUE_DOUBLE, (Double) value);
+            }
+            tileOut.writeUInt32(LAYER_EXTENT, EXTENT);
+            tileOut.writeUInt32(LAYER_VERSION, 2);
+            tileOut.flush();
+            return tileBytes.toByteArray();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private long toX(double lon) {
+        return Math.round((lon - minLon) * scaleX);
+    }
+
+    private long toY(double lat) {
+        return Math.round((maxLat - lat) * scaleY);
+    }
+
+    private void startPart(int x, int y) {
+        partStart = geometry.size();
+        partCursorX = cursorX;
+        partCursorY = cursorY;
+        geometry.add(command(MOVE_TO, 1), zigZag(x - cursorX), zigZag(y - cursorY));
+        // the number of LineTo points is set when the part is finished
+        geometry.add(0);
+        cursorX = x;
+        cursorY = y;
+    }
+
+    private void addToPart(int x, int y) {
+        if (x == cursorX && y == cursorY)
+            return;
+        geometry.add(zigZag(x - cursorX), zigZag(y - cursorY));
+        cursorX = x;
+        cursorY = y;
+    }
+
+    private void endPart() {
+        if (partStart < 0)
+            return;
+        int points = (geometry.size() - partStart - 4) / 2;
+        if (points == 0) {
+            // a single point is not a valid line
+            geometry.elementsCount = partStart;
+            cursorX = partCursorX;
+            cursorY = partCursorY;
+        } else {
+            geometry.set(partStart + 3, command(LINE_TO, points));
+        }
+        partStart = -1;
+    }
+
+    private static final int INSIDE = 0, LEFT = 1, RIGHT = 2, TOP = 4, BOTTOM = 8;
+
+    private static int outCode(long x, long y) {
+        int code = INSIDE;
+        if (x < MIN) code |= LEFT;
+        else if (x > MAX) code |= RIGHT;
+        if (y < MIN) code |= TOP;
+        else if (y > MAX) code |= BOTTOM;
+        return code;
+    }
+
+    /**
+     * Clips the segment to the tile including the buffer (Cohen-Sutherland) and stores the result in clipX0 etc.
+     *
+     * @return false if no part of the segment is inside
+     */
+    private boolean clip(long x0, long y0, long x1, long y1) {
+        int code0 = outCode(x0, y0), code1 = outCode(x1, y1);
+        while (true) {
+            if ((code0 | code1) == 0) {
+                clipX0 = x0;
+                clipY0 = y0;
+                clipX1 = x1;
+                clipY1 = y1;
+                return true;
+            }
+            if ((code0 & code1) != 0)
+                return false;
+            int code = code0 != 0 ? code0 : code1;
+            // at high zoom levels the coordinates of long edges get so large that the products would overflow a
+            // long, so we interpolate in double. The fraction is in [0, 1], so the result stays between the ends.
+            long x, y;
+            if ((code & TOP) != 0) {
+                x = x0 + Math.round((x1 - x0) * ((double) (MIN - y0) / (y1 - y0)));
+                y = MIN;
+            } else if ((code & BOTTOM) != 0) {
+                x = x0 + Math.round((x1 - x0) * ((double) (MAX - y0) / (y1 - y0)));
+                y = MAX;
+            } else if ((code & LEFT) != 0) {
+                y = y0 + Math.round((y1 - y0) * ((double) (MIN - x0) / (x1 - x0)));
+                x = MIN;
+            } else {
+                y = y0 + Math.round((y1 - y0) * ((double) (MAX - x0) / (x1 - x0)));
+                x = MAX;
+            }
+            if (code == code0) {
+                x0 = x;
+                y0 = y;
+                code0 = outCode(x0, y0);
+            } else {
+                x1 = x;
+                y1 = y;
+                code1 = outCode(x1, y1);
+            }
+        }
+    }
+
+    private int keyIndex(String key) {
+        int index = keyIndices.getOrDefault(key, -1);
+        if (index < 0) {
+            index = keys.size();
+            keyIndices.put(key, index);
+            keys.add(key);
+        }
+        return index;
+    }
+
+    private int valueIndex(Object value) {
+        int index = valueIndices.getOrDefault(value, -1);
+        if (index < 0) {
+            index = values.size();
+            valueIndices.put(value, index);
+            values.add(value);
+        }
+        return index;
+    }
+
+    private static int valueSize(Object value) {
+        if (value instanceof String)
+            return CodedOutputStream.computeStringSize(VALUE_STRING, (String) value);
+        if (value instanceof Long)
+            return CodedOutputStream.computeSInt64Size(VALUE_SINT, (Long) value);
+        return CodedOutputStream.computeDoubleSize(VALUE_DOUBLE, (Double) value);
+    }
+
+    private static int packedSize(IntArrayList list) {
+        int size = 0;
+        for (int i = 0; i < list.size(); i++)
+            size += CodedOutputStream.computeUInt32SizeNoTag(list.get(i));
+        return size;
+    }
+
+    private static void writePacked(CodedOutputStream out, int field, IntArrayList list, int size) throws IOException {
+        out.writeTag(field, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        out.writeUInt32NoTag(size);
+        for (int i = 0; i < list.size(); i++)
+            out.writeUInt32NoTag(list.get(i));
+    }
+
+    private static int command(int command, int repeat) {
+        return repeat << 3 | command;
+    }
+
+    private static int zigZag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+}
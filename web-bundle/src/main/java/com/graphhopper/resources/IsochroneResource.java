@@ -8,15 +8,21 @@ import com.graphhopper.config.Profile;
 import com.graphhopper.http.GHPointParam;
 import com.graphhopper.http.ProfileResolver;
 import com.graphhopper.isochrone.algorithm.ContourBuilder;
+import com.graphhopper.isochrone.algorithm.ArrayShortestPathTree;
 import com.graphhopper.isochrone.algorithm.ShortestPathTree;
+import com.graphhopper.isochrone.algorithm.ShortestPathTreeCH;
+import com.graphhopper.isochrone.algorithm.ShortestPathTreeSearch;
 import com.graphhopper.isochrone.algorithm.Triangulator;
 import com.graphhopper.routing.ev.BooleanEncodedValue;
 import com.graphhopper.routing.ev.Subnetwork;
+import com.graphhopper.http.StageTimingMetrics;
 import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.QueryRoutingCHGraph;
 import com.graphhopper.routing.util.DefaultSnapFilter;
 import com.graphhopper.routing.util.TraversalMode;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.RoutingCHGraph;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.storage.index.Snap;
 import com.graphhopper.util.*;
@@ -34,10 +40,13 @@ import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.UriInfo;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.OptionalInt;
 import java.util.OptionalLong;
 import java.util.function.ToDoubleFunction;
 
+import static com.graphhopper.http.StageTimingMetrics.TIMINGS;
 import static com.graphhopper.resources.IsochroneResource.ResponseType.geojson;
 import static com.graphhopper.resources.RouteResource.removeLegacyParameters;
 import static com.graphhopper.routing.util.TraversalMode.EDGE_BASED;
@@ -52,14 +61,17 @@ public class IsochroneResource {
     private final GraphHopper graphHopper;
     private final Triangulator triangulator;
     private final ProfileResolver profileResolver;
+    private final StageTimingMetrics stageTimingMetrics;
     private final String osmDate;
 
     @Inject
-    public IsochroneResource(GraphHopperConfig config, GraphHopper graphHopper, Triangulator triangulator, ProfileResolver profileResolver) {
+    public IsochroneResource(GraphHopperConfig config, GraphHopper graphHopper, Triangulator triangulator, ProfileResolver profileResolver,
+                             StageTimingMetrics stageTimingMetrics) {
         this.config = config;
         this.graphHopper = graphHopper;
         this.triangulator = triangulator;
         this.profileResolver = profileResolver;
+        this.stageTimingMetrics = stageTimingMetrics;
         this.osmDate = graphHopper.getProperties().get("datareader.data.date");
     }
 
@@ -82,6 +94,7 @@ public class IsochroneResource {
         StopWatch sw = new StopWatch().start();
         PMap hintsMap = new PMap();
         RouteResource.initHints(hintsMap, uriInfo.getQueryParameters());
+        boolean phast = hintsMap.getBool(Parameters.CH.PHAST, false);
         hintsMap.putObject(Parameters.CH.DISABLE, true);
         hintsMap.putObject(Parameters.Landmark.DISABLE, true);
 
@@ -95,14 +108,26 @@ public class IsochroneResource {
             throw new IllegalArgumentException("The requested profile '" + profileName + "' does not exist");
         LocationIndex locationIndex = graphHopper.getLocationIndex();
         BaseGraph graph = graphHopper.getBaseGraph();
-        Weighting weighting = graphHopper.createWeighting(profile, hintsMap);
+        // a PHAST sweep over the contraction hierarchy is faster for large limits, but it always covers the entire
+        // graph, so we only use it if the request asks for it
+        RoutingCHGraph chGraph = phast ? graphHopper.getCHGraphs().get(profileName) : null;
+        if (phast && chGraph == null)
+            throw new IllegalArgumentException("The requested profile '" + profileName + "' has no CH preparation, which is required for " + Parameters.CH.PHAST);
+        Weighting weighting = chGraph == null ? graphHopper.createWeighting(profile, hintsMap) : chGraph.getWeighting();
         BooleanEncodedValue inSubnetworkEnc = graphHopper.getEncodingManager().getBooleanEncodedValue(Subnetwork.key(profileName));
+        Map<String, Long> timings = new LinkedHashMap<>();
+        StopWatch stageSW = new StopWatch().start();
         Snap snap = locationIndex.findClosest(point.get().lat, point.get().lon, new DefaultSnapFilter(weighting, inSubnetworkEnc));
         if (!snap.isValid())
             throw new IllegalArgumentException("Point not found:" + point);
+        timings.put("snap", stageSW.stop().getNanos());
+        stageSW = new StopWatch().start();
         QueryGraph queryGraph = QueryGraph.create(graph, snap);
+        timings.put("query_graph", stageSW.stop().getNanos());
         TraversalMode traversalMode = profile.hasTurnCosts() ? EDGE_BASED : NODE_BASED;
-        ShortestPathTree shortestPathTree = new ShortestPathTree(queryGraph, queryGraph.wrapWeighting(weighting), reverseFlow, traversalMode);
+        ShortestPathTreeSearch shortestPathTree = chGraph == null
+                ? new ArrayShortestPathTree(queryGraph, queryGraph.wrapWeighting(weighting), reverseFlow, traversalMode)
+                : new ShortestPathTreeCH(new QueryRoutingCHGraph(chGraph, queryGraph), reverseFlow, graphHopper.getPhastStatePool());
 
         double limit;
         ToDoubleFunction<ShortestPathTree.IsoLabel> fz;
@@ -125,7 +150,11 @@ public class IsochroneResource {
             zs.add((i + 1) * delta);
         }
 
+        // the triangulation runs the search and collects the labels at the same time
+        stageSW = new StopWatch().start();
         Triangulator.Result result = triangulator.triangulate(snap, queryGraph, shortestPathTree, fz, degreesFromMeters(toleranceInMeter));
+        timings.put("search", stageSW.stop().getNanos());
+        stageSW = new StopWatch().start();
 
         ContourBuilder contourBuilder = new ContourBuilder(result.triangulation);
         ArrayList<Geometry> isochrones = new ArrayList<>();
@@ -151,6 +180,8 @@ public class IsochroneResource {
             feature.setGeometry(isochrone);
             features.add(feature);
         }
+        timings.put("contours", stageSW.stop().getNanos());
+        stageTimingMetrics.record("isochrone", profileName, chGraph == null ? "reachability" : "phast", timings);
         ObjectNode json = JsonNodeFactory.instance.objectNode();
 
         sw.stop();
@@ -165,6 +196,8 @@ public class IsochroneResource {
             info.putPOJO("copyrights", config.getCopyrights());
             info.put("took", Math.round((float) sw.getMillis()));
             if (!osmDate.isEmpty()) info.put("road_data_timestamp", osmDate);
+            if (hintsMap.getBool(TIMINGS, false))
+                info.putPOJO(TIMINGS, StageTimingMetrics.toMillis(timings));
             finalJson = json;
         }
 
@@ -17,6 +17,7 @@
  */
 package com.graphhopper.resources;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
@@ -28,12 +29,15 @@ import com.graphhopper.GraphHopperConfig;
 import com.graphhopper.ResponsePath;
 import com.graphhopper.gpx.GpxConversions;
 import com.graphhopper.http.ProfileResolver;
+import com.graphhopper.http.StageTimingMetrics;
 import com.graphhopper.jackson.Gpx;
 import com.graphhopper.jackson.Jackson;
+import com.graphhopper.jackson.MultiException;
 import com.graphhopper.jackson.ResponsePathSerializer;
 import com.graphhopper.matching.*;
 import com.graphhopper.storage.index.LocationIndexTree;
 import com.graphhopper.util.*;
+import com.graphhopper.util.shapes.GHPoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,9 +47,16 @@ import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
 import jakarta.ws.rs.core.UriInfo;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
+import static com.graphhopper.http.StageTimingMetrics.TIMINGS;
 import static com.graphhopper.resources.RouteResource.removeLegacyParameters;
 import static com.graphhopper.util.Parameters.Details.PATH_DETAILS;
 import static com.graphhopper.util.Parameters.Routing.*;
@@ -63,22 +74,26 @@ public class MapMatchingResource {
     }
 
     private static final Logger logger = LoggerFactory.getLogger(MapMatchingResource.class);
+    private static final String NDJSON = "application/x-ndjson";
 
     private final GraphHopperConfig config;
     private final GraphHopper graphHopper;
     private final ProfileResolver profileResolver;
     private final TranslationMap trMap;
     private final MapMatchingRouterFactory mapMatchingRouterFactory;
+    private final StageTimingMetrics stageTimingMetrics;
     private final ObjectMapper objectMapper = Jackson.newObjectMapper();
     private final String osmDate;
 
     @Inject
-    public MapMatchingResource(GraphHopperConfig config, GraphHopper graphHopper, ProfileResolver profileResolver, TranslationMap trMap, MapMatchingRouterFactory mapMatchingRouterFactory) {
+    public MapMatchingResource(GraphHopperConfig config, GraphHopper graphHopper, ProfileResolver profileResolver, TranslationMap trMap, MapMatchingRouterFactory mapMatchingRouterFactory,
+                               StageTimingMetrics stageTimingMetrics) {
         this.config = config;
         this.graphHopper = graphHopper;
         this.profileResolver = profileResolver;
         this.trMap = trMap;
         this.mapMatchingRouterFactory = mapMatchingRouterFactory;
+        this.stageTimingMetrics = stageTimingMetrics;
         this.osmDate = graphHopper.getProperties().getAll().get("datareader.data.date");
     }
 
@@ -114,23 +129,15 @@ public class MapMatchingResource {
 
         StopWatch sw = new StopWatch().start();
 
-        PMap hints = new PMap();
-        RouteResource.initHints(hints, uriInfo.getQueryParameters());
-
-        // resolve profile and remove legacy vehicle/weighting parameters
-        // we need to explicitly disable CH here because map matching does not use it
-        PMap profileResolverHints = new PMap(hints);
-        profileResolverHints.putObject("profile", profile);
-        profileResolverHints.putObject(Parameters.CH.DISABLE, true);
-        profile = profileResolver.resolveProfile(profileResolverHints);
-        hints.putObject("profile", profile);
-        removeLegacyParameters(hints);
+        PMap hints = createHints(uriInfo, profile);
+        profile = hints.getString("profile", "");
 
         MapMatching matching = new MapMatching(graphHopper.getBaseGraph(), (LocationIndexTree) graphHopper.getLocationIndex(), mapMatchingRouterFactory.createMapMatchingRouter(hints));
         matching.setMeasurementErrorSigma(gpsAccuracy);
 
         List<Observation> measurements = GpxConversions.getEntries(gpx.trk.get(0));
         MatchResult matchResult = matching.match(measurements);
+        Map<String, Long> timings = new LinkedHashMap<>(matching.getTimings());
 
         sw.stop();
         logger.info(objectMapper.createObjectNode()
@@ -140,6 +147,7 @@ public class MapMatchingResource {
                 .putPOJO("mapmatching", matching.getStatistics()).toString());
 
         if ("extended_json".equals(outType)) {
+            stageTimingMetrics.record("match", profile, "hmm", timings);
             return Response.ok(convertToTree(matchResult, enableElevation, pointsEncoded, pointsEncodedMultiplier)).
                     header("X-GH-Took", "" + Math.round(sw.getMillisDouble())).
                     build();
@@ -153,6 +161,9 @@ public class MapMatchingResource {
                     setSimplifyResponse(minPathPrecision > 0);
             ResponsePath responsePath = pathMerger.doWork(PointList.EMPTY, Collections.singletonList(matchResult.getMergedPath()),
                     graphHopper.getEncodingManager(), tr);
+            timings.put("instructions", pathMerger.getInstructionsNanos());
+            timings.put("path_details", pathMerger.getPathDetailsNanos());
+            stageTimingMetrics.record("match", profile, "hmm", timings);
 
             // GraphHopper thinks an empty path is an invalid path, and further that an invalid path is still a path but
             // marked with a non-empty list of Exception objects. I disagree, so I clear it.
@@ -168,7 +179,9 @@ public class MapMatchingResource {
                         header("X-GH-Took", "" + Math.round(sw.getMillisDouble())).
                         build();
             } else {
-                ObjectNode map = ResponsePathSerializer.jsonObject(rsp, new ResponsePathSerializer.Info(config.getCopyrights(), Math.round(sw.getMillisDouble()), osmDate), instructions,
+                ResponsePathSerializer.Info info = new ResponsePathSerializer.Info(config.getCopyrights(), Math.round(sw.getMillisDouble()), osmDate,
+                        hints.getBool(TIMINGS, false) ? StageTimingMetrics.toMillis(timings) : null);
+                ObjectNode map = ResponsePathSerializer.jsonObject(rsp, info, instructions,
                         calcPoints, enableElevation, pointsEncoded, pointsEncodedMultiplier);
 
                 Map<String, Object> matchStatistics = new HashMap<>();
@@ -193,6 +206,125 @@ public class MapMatchingResource {
         }
     }
 
+    /**
+     * Matches a trace while it is still being recorded, see {@link MapMatchingSession}. The request body is newline
+     * delimited JSON where every line is an observation like {"lat": 51.34, "lon": 12.36} or an array of them. The
+     * response is streamed as newline delimited JSON too: a line for every link as soon as it is final, in the format
+     * of the links of the extended_json output, and a last line with the "map_matching" distance and time. An
+     * observation that cannot be matched is reported by an error line and otherwise ignored.
+     */
+    @POST
+    @jakarta.ws.rs.Path("stream")
+    @Consumes(NDJSON)
+    @Produces(NDJSON)
+    public Response matchStream(
+            @NotNull InputStream body,
+            @Context UriInfo uriInfo,
+            @QueryParam("elevation") @DefaultValue("false") boolean enableElevation,
+            @QueryParam("points_encoded") @DefaultValue("true") boolean pointsEncoded,
+            @QueryParam("points_encoded_multiplier") @DefaultValue("1e5") double pointsEncodedMultiplier,
+            @QueryParam("profile") String profile,
+            @QueryParam("gps_accuracy") @DefaultValue("10") double gpsAccuracy,
+            @QueryParam("max_window") @DefaultValue("50") int maxWindowSize) {
+        PMap hints = createHints(uriInfo, profile);
+        MapMatching matching = new MapMatching(graphHopper.getBaseGraph(), (LocationIndexTree) graphHopper.getLocationIndex(), mapMatchingRouterFactory.createMapMatchingRouter(hints));
+        matching.setMeasurementErrorSigma(gpsAccuracy);
+        MapMatchingSession session = matching.createSession().setMaxWindowSize(maxWindowSize);
+
+        StreamingOutput out = output -> {
+            StopWatch sw = new StopWatch().start();
+            int observations = 0;
+            int links = 0;
+            try (JsonGenerator gen = objectMapper.createGenerator(output);
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank())
+                        continue;
+                    List<Observation> batch;
+                    try {
+                        batch = parseObservations(line);
+                    } catch (IllegalArgumentException ex) {
+                        writeStreamLine(gen, objectMapper.valueToTree(new MultiException(ex)));
+                        continue;
+                    }
+                    // add the observations one by one so that an error does not swallow the links that became final
+                    // for the observations before it
+                    for (Observation observation : batch) {
+                        observations++;
+                        List<EdgeMatch> edgeMatches;
+                        try {
+                            edgeMatches = session.addObservation(observation);
+                        } catch (IllegalArgumentException ex) {
+                            writeStreamLine(gen, objectMapper.valueToTree(new MultiException(ex)));
+                            continue;
+                        }
+                        for (EdgeMatch edgeMatch : edgeMatches)
+                            writeStreamLine(gen, convertToLink(edgeMatch, links++ == 0, enableElevation, pointsEncoded, pointsEncodedMultiplier));
+                    }
+                }
+                List<EdgeMatch> edgeMatches;
+                try {
+                    edgeMatches = session.finish();
+                } catch (IllegalArgumentException ex) {
+                    writeStreamLine(gen, objectMapper.valueToTree(new MultiException(ex)));
+                    edgeMatches = session.finish();
+                }
+                for (EdgeMatch edgeMatch : edgeMatches)
+                    writeStreamLine(gen, convertToLink(edgeMatch, links++ == 0, enableElevation, pointsEncoded, pointsEncodedMultiplier));
+                ObjectNode summary = JsonNodeFactory.instance.objectNode();
+                summary.putObject("map_matching")
+                        .put("distance", session.getMatchLength())
+                        .put("time", session.getMatchMillis());
+                writeStreamLine(gen, summary);
+            }
+            logger.info(objectMapper.createObjectNode()
+                    .put("duration", sw.stop().getNanos())
+                    .put("profile", hints.getString("profile", ""))
+                    .put("observations", observations)
+                    .put("links", links)
+                    .put("stream", true).toString());
+        };
+        return Response.ok(out).type(NDJSON).build();
+    }
+
+    private PMap createHints(UriInfo uriInfo, String profile) {
+        PMap hints = new PMap();
+        RouteResource.initHints(hints, uriInfo.getQueryParameters());
+
+        // resolve profile and remove legacy vehicle/weighting parameters
+        // we need to explicitly disable CH here because map matching does not use it
+        PMap profileResolverHints = new PMap(hints);
+        profileResolverHints.putObject("profile", profile);
+        profileResolverHints.putObject(Parameters.CH.DISABLE, true);
+        hints.putObject("profile", profileResolver.resolveProfile(profileResolverHints));
+        removeLegacyParameters(hints);
+        return hints;
+    }
+
+    private List<Observation> parseObservations(String line) {
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(line);
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Invalid observation: " + line, ex);
+        }
+        List<Observation> observations = new ArrayList<>();
+        for (JsonNode observation : node.isArray() ? node : Collections.singletonList(node)) {
+            if (!observation.has("lat") || !observation.has("lon"))
+                throw new IllegalArgumentException("Observations need a lat and lon but got: " + observation);
+            observations.add(new Observation(new GHPoint(observation.get("lat").asDouble(), observation.get("lon").asDouble())));
+        }
+        return observations;
+    }
+
+    private static void writeStreamLine(JsonGenerator gen, JsonNode node) throws IOException {
+        gen.writeTree(node);
+        gen.writeRaw('\n');
+        // flush every line so clients can follow the matched path while they are still sending observations
+        gen.flush();
+    }
+
     public static JsonNode convertToTree(MatchResult result, boolean elevation, boolean pointsEncoded, double pointsEncodedMultiplier) {
         ObjectNode root = JsonNodeFactory.instance.objectNode();
         ObjectNode diary = root.putObject("diary");
@@ -200,26 +332,30 @@ public class MapMatchingResource {
         ObjectNode route = entries.addObject();
         ArrayNode links = route.putArray("links");
         for (int emIndex = 0; emIndex < result.getEdgeMatches().size(); emIndex++) {
-            ObjectNode link = links.addObject();
-            EdgeMatch edgeMatch = result.getEdgeMatches().get(emIndex);
-            PointList pointList = edgeMatch.getEdgeState().fetchWayGeometry(emIndex == 0 ? FetchMode.ALL : FetchMode.PILLAR_AND_ADJ);
-            final ObjectNode geometry = link.putObject("geometry");
-            if (pointList.size() < 2) {
-                geometry.putPOJO("coordinates", pointsEncoded ? ResponsePathSerializer.encodePolyline(pointList, elevation, pointsEncodedMultiplier) : pointList.toLineString(elevation));
-                geometry.put("type", "Point");
-            } else {
-                geometry.putPOJO("coordinates", pointsEncoded ? ResponsePathSerializer.encodePolyline(pointList, elevation, pointsEncodedMultiplier) : pointList.toLineString(elevation));
-                geometry.put("type", "LineString");
-            }
-            link.put("id", edgeMatch.getEdgeState().getEdge());
-            ArrayNode wpts = link.putArray("wpts");
-            for (State extension : edgeMatch.getStates()) {
-                ObjectNode wpt = wpts.addObject();
-                wpt.put("x", extension.getSnap().getSnappedPoint().lon);
-                wpt.put("y", extension.getSnap().getSnappedPoint().lat);
-            }
+            links.add(convertToLink(result.getEdgeMatches().get(emIndex), emIndex == 0, elevation, pointsEncoded, pointsEncodedMultiplier));
         }
         return root;
     }
 
+    private static ObjectNode convertToLink(EdgeMatch edgeMatch, boolean first, boolean elevation, boolean pointsEncoded, double pointsEncodedMultiplier) {
+        ObjectNode link = JsonNodeFactory.instance.objectNode();
+        PointList pointList = edgeMatch.getEdgeState().fetchWayGeometry(first ? FetchMode.ALL : FetchMode.PILLAR_AND_ADJ);
+        final ObjectNode geometry = link.putObject("geometry");
+        if (pointList.size() < 2) {
+            geometry.putPOJO("coordinates", pointsEncoded ? ResponsePathSerializer.encodePolyline(pointList, elevation, pointsEncodedMultiplier) : pointList.toLineString(elevation));
+            geometry.put("type", "Point");
+        } else {
+            geometry.putPOJO("coordinates", pointsEncoded ? ResponsePathSerializer.encodePolyline(pointList, elevation, pointsEncodedMultiplier) : pointList.toLineString(elevation));
+            geometry.put("type", "LineString");
+        }
+        link.put("id", edgeMatch.getEdgeState().getEdge());
+        ArrayNode wpts = link.putArray("wpts");
+        for (State extension : edgeMatch.getStates()) {
+            ObjectNode wpt = wpts.addObject();
+            wpt.put("x", extension.getSnap().getSnappedPoint().lon);
+            wpt.put("y", extension.getSnap().getSnappedPoint().lat);
+        }
+        return link;
+    }
+
 }
@@ -0,0 +1,149 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.resources;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.graphhopper.GHMatrixRequest;
+import com.graphhopper.GHMatrixResponse;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.http.ProfileResolver;
+import com.graphhopper.jackson.MultiException;
+import com.graphhopper.jackson.ResponsePathSerializer;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PMap;
+import com.graphhopper.util.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.inject.Inject;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.constraints.NotNull;
+import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.graphhopper.resources.RouteResource.removeLegacyParameters;
+
+/**
+ * Calculates a matrix of weights, times and distances between many points on the server, so a client does not have
+ * to send one route request for every pair of points. The request and response format follow the one used by the
+ * GraphHopperMatrixWeb client: times are returned in seconds, distances in meters and disconnected pairs as null.
+ */
+@Path("matrix")
+public class MatrixResource {
+
+    private static final Logger logger = LoggerFactory.getLogger(MatrixResource.class);
+
+    private final GraphHopperConfig config;
+    private final GraphHopper graphHopper;
+    private final ProfileResolver profileResolver;
+    private final String osmDate;
+    private final List<String> snapPreventionsDefault;
+
+    @Inject
+    public MatrixResource(GraphHopperConfig config, GraphHopper graphHopper, ProfileResolver profileResolver) {
+        this.config = config;
+        this.graphHopper = graphHopper;
+        this.profileResolver = profileResolver;
+        this.osmDate = graphHopper.getProperties().getAll().get("datareader.data.date");
+        this.snapPreventionsDefault = Arrays.stream(config.getString("routing.snap_preventions_default", "")
+                .split(",")).map(String::trim).filter(s -> !s.isEmpty()).toList();
+    }
+
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response doPost(@NotNull GHMatrixRequest request, @Context HttpServletRequest httpReq) {
+        StopWatch sw = new StopWatch().start();
+        if (!request.hasSnapPreventions())
+            request.setSnapPreventions(snapPreventionsDefault);
+        PMap profileResolverHints = new PMap(request.getHints());
+        profileResolverHints.putObject("profile", request.getProfile());
+        request.setProfile(profileResolver.resolveProfile(profileResolverHints));
+        removeLegacyParameters(request.getHints());
+
+        GHMatrixResponse ghResponse = graphHopper.matrix(request);
+        double took = sw.stop().getMillisDouble();
+        String logStr = httpReq.getRemoteAddr() + " " + httpReq.getLocale() + " " + httpReq.getHeader("User-Agent")
+                + " " + request + ", took: " + String.format("%.1f", took) + " ms";
+        if (ghResponse.hasErrors()) {
+            logger.info(logStr + " " + ghResponse);
+            throw new MultiException(ghResponse.getErrors());
+        }
+        logger.info(logStr + ", visited_nodes: " + ghResponse.getHints().getInt("visited_nodes.sum", 0));
+        return Response.ok(jsonObject(ghResponse, new ResponsePathSerializer.Info(config.getCopyrights(), Math.round(took), osmDate))).
+                header("X-GH-Took", "" + Math.round(took)).
+                type(MediaType.APPLICATION_JSON).
+                build();
+    }
+
+    static ObjectNode jsonObject(GHMatrixResponse rsp, ResponsePathSerializer.Info info) {
+        ObjectNode json = JsonNodeFactory.instance.objectNode();
+        if (rsp.getWeights() != null) {
+            ArrayNode rows = json.putArray("weights");
+            for (double[] row : rsp.getWeights()) {
+                ArrayNode jsonRow = rows.addArray();
+                for (double weight : row)
+                    if (Double.isFinite(weight)) jsonRow.add(Helper.round6(weight));
+                    else jsonRow.addNull();
+            }
+        }
+        if (rsp.getTimes() != null) {
+            ArrayNode rows = json.putArray("times");
+            for (long[] row : rsp.getTimes()) {
+                ArrayNode jsonRow = rows.addArray();
+                for (long time : row)
+                    if (time != Long.MAX_VALUE) jsonRow.add(Math.round(time / 1000.0));
+                    else jsonRow.addNull();
+            }
+        }
+        if (rsp.getDistances() != null) {
+            ArrayNode rows = json.putArray("distances");
+            for (double[] row : rsp.getDistances()) {
+                ArrayNode jsonRow = rows.addArray();
+                for (double distance : row)
+                    if (Double.isFinite(distance)) jsonRow.add(Helper.round(distance, 1));
+                    else jsonRow.addNull();
+            }
+        }
+        ArrayNode hints = json.putArray("hints");
+        if (!rsp.getDisconnectedPoints().isEmpty()) {
+            ObjectNode hint = hints.addObject();
+            hint.put("message", "There are disconnected points");
+            ArrayNode pairs = hint.putArray("point_pairs");
+            for (int[] pair : rsp.getDisconnectedPoints())
+                pairs.addArray().add(pair[0]).add(pair[1]);
+        }
+        if (!rsp.getInvalidFromPoints().isEmpty() || !rsp.getInvalidToPoints().isEmpty()) {
+            ObjectNode hint = hints.addObject();
+            hint.put("message", "Cannot find some points");
+            ArrayNode from = hint.putArray("invalid_from_points");
+            rsp.getInvalidFromPoints().forEach(from::add);
+            ArrayNode to = hint.putArray("invalid_to_points");
+            rsp.getInvalidToPoints().forEach(to::add);
+        }
+        json.putPOJO("info", info);
+        return json;
+    }
+}
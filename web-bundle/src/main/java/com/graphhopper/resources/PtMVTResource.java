@@ -5,12 +5,11 @@ import com.google.protobuf.ByteString;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.gtfs.GtfsStorage;
 import com.graphhopper.gtfs.PtGraph;
+import com.graphhopper.http.VectorTileWriter;
 import com.graphhopper.matching.MatchResult;
 import com.graphhopper.util.Parameters;
 import com.graphhopper.util.shapes.BBox;
-import no.ecc.vectortile.VectorTileEncoder;
-import org.locationtech.jts.geom.*;
-import org.locationtech.jts.geom.util.AffineTransformation;
+import org.locationtech.jts.geom.Coordinate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -23,7 +22,6 @@ import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.UriInfo;
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -34,10 +32,10 @@ public class PtMVTResource {
 
     private static final Logger logger = LoggerFactory.getLogger(PtMVTResource.class);
     private static final MediaType PBF = new MediaType("application", "x-protobuf");
+    private static final ThreadLocal<VectorTileWriter> WRITER = ThreadLocal.withInitial(() -> new VectorTileWriter("stops"));
     private final GraphHopper graphHopper;
     private final GtfsStorage gtfsStorage;
     private final Map<ByteString, MatchResult> openLRCache = new ConcurrentHashMap<>();
-    private final GeometryFactory geometryFactory = new GeometryFactory();
 
     @Inject
     public PtMVTResource(GraphHopper graphHopper, GtfsStorage gtfsStorage) throws IOException {
@@ -62,31 +60,21 @@ public class PtMVTResource {
         if (!bbox.isValid())
             throw new IllegalStateException("Invalid bbox " + bbox);
 
-        VectorTileEncoder vectorTileEncoder = new VectorTileEncoder();
-        // 256x256 pixels per MVT. here we transform from the global coordinate system to the local one of the tile.
-        AffineTransformation affineTransformation = new AffineTransformation();
-        affineTransformation.translate(-nw.x, -se.y);
-        affineTransformation.scale(
-                256.0 / (se.x - nw.x),
-                -256.0 / (nw.y - se.y)
-        );
-        affineTransformation.translate(0, 256);
+        VectorTileWriter writer = WRITER.get().reset(bbox);
         gtfsStorage.getStopIndex().query(bbox, edgeId -> {
             for (PtGraph.PtEdge ptEdge : gtfsStorage.getPtGraph().backEdgesAround(edgeId)) {
                 if (ptEdge.getType() == GtfsStorage.EdgeType.EXIT_PT) {
                     GtfsStorage.PlatformDescriptor fromPlatformDescriptor = ptEdge.getAttrs().platformDescriptor;
                     Stop stop = gtfsStorage.getGtfsFeeds().get(fromPlatformDescriptor.feed_id).stops.get(fromPlatformDescriptor.stop_id);
-                    Map<String, Object> properties = new HashMap<>(2);
-                    properties.put("feed_id", fromPlatformDescriptor.feed_id);
-                    properties.put("stop_id", fromPlatformDescriptor.stop_id);
-                    Point feature = geometryFactory.createPoint(new Coordinate(stop.stop_lon, stop.stop_lat));
-                    feature.setUserData(properties);
-                    Geometry g = affineTransformation.transform(feature);
-                    vectorTileEncoder.addFeature("stops", properties, g);
+                    writer.startFeature(-1)
+                            .point(stop.stop_lat, stop.stop_lon)
+                            .attribute("feed_id", fromPlatformDescriptor.feed_id)
+                            .attribute("stop_id", fromPlatformDescriptor.stop_id)
+                            .endFeature();
                 }
             }
         });
-        return Response.ok(vectorTileEncoder.encode(), PBF).build();
+        return Response.ok(writer.encode(), PBF).build();
     }
 
     Coordinate num2deg(int xInfo, int yInfo, int zoom) {
@@ -17,6 +17,10 @@
  */
 package com.graphhopper.resources;
 
+import com.carrotsearch.hppc.IntArrayList;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
 import com.graphhopper.GraphHopper;
@@ -25,8 +29,12 @@ import com.graphhopper.gpx.GpxConversions;
 import com.graphhopper.http.GHPointParam;
 import com.graphhopper.http.GHRequestTransformer;
 import com.graphhopper.http.ProfileResolver;
+import com.graphhopper.http.RouteResponseCache;
+import com.graphhopper.http.StageTimingMetrics;
+import com.graphhopper.jackson.Jackson;
 import com.graphhopper.jackson.MultiException;
 import com.graphhopper.jackson.ResponsePathSerializer;
+import com.graphhopper.jackson.ResponsePathWriter;
 import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.GHPoint;
 import io.dropwizard.jersey.params.AbstractParam;
@@ -39,10 +47,11 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.constraints.NotNull;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.*;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Map;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static com.graphhopper.http.StageTimingMetrics.TIMINGS;
 import static com.graphhopper.util.Parameters.Details.PATH_DETAILS;
 import static com.graphhopper.util.Parameters.Routing.*;
 import static java.util.stream.Collectors.toList;
@@ -58,21 +67,28 @@ import static java.util.stream.Collectors.toList;
 public class RouteResource {
 
     private static final Logger logger = LoggerFactory.getLogger(RouteResource.class);
+    private static final String NDJSON = "application/x-ndjson";
 
     private final GraphHopperConfig config;
     private final GraphHopper graphHopper;
     private final ProfileResolver profileResolver;
     private final GHRequestTransformer ghRequestTransformer;
+    private final RouteResponseCache routeResponseCache;
+    private final StageTimingMetrics stageTimingMetrics;
     private final Boolean hasElevation;
     private final String osmDate;
     private final List<String> snapPreventionsDefault;
+    private final ObjectMapper objectMapper = Jackson.newObjectMapper();
 
     @Inject
-    public RouteResource(GraphHopperConfig config, GraphHopper graphHopper, ProfileResolver profileResolver, GHRequestTransformer ghRequestTransformer, @Named("hasElevation") Boolean hasElevation) {
+    public RouteResource(GraphHopperConfig config, GraphHopper graphHopper, ProfileResolver profileResolver, GHRequestTransformer ghRequestTransformer,
+                         RouteResponseCache routeResponseCache, StageTimingMetrics stageTimingMetrics, @Named("hasElevation") Boolean hasElevation) {
         this.config = config;
         this.graphHopper = graphHopper;
         this.profileResolver = profileResolver;
         this.ghRequestTransformer = ghRequestTransformer;
+        this.routeResponseCache = routeResponseCache;
+        this.stageTimingMetrics = stageTimingMetrics;
         this.hasElevation = hasElevation;
         this.osmDate = graphHopper.getProperties().getAll().get("datareader.data.date");
         this.snapPreventionsDefault = Arrays.stream(config.getString("routing.snap_preventions_default", "")
@@ -151,7 +167,7 @@ public class RouteResource {
         removeLegacyParameters(request.getHints());
         request.setProfile(profileName);
 
-        GHResponse ghResponse = graphHopper.route(request);
+        GHResponse ghResponse = routeResponseCache.route(request);
 
         double took = sw.stop().getMillisDouble();
         String logStr = (httpReq.getRemoteAddr() + " " + httpReq.getLocale() + " " + httpReq.getHeader("User-Agent")) + " " + points + ", took: " + String.format("%.1f", took) + "ms, algo: " + algoStr + ", profile: " + profileName;
@@ -169,12 +185,13 @@ public class RouteResource {
                     + ", time0: " + Math.round(ghResponse.getBest().getTime() / 60000f) + "min"
                     + ", points0: " + ghResponse.getBest().getPoints().size()
                     + ", debugInfo: " + ghResponse.getDebugInfo());
+            stageTimingMetrics.record("route", request.getProfile(), StageTimingMetrics.normalizeAlgorithm(request.getAlgorithm()), ghResponse.getTimings());
             return writeGPX ?
                     gpxSuccessResponseBuilder(ghResponse, timeString, trackName, enableElevation, withRoute, withTrack, withWayPoints, Constants.VERSION).
                             header("X-GH-Took", "" + Math.round(took)).
                             build()
                     :
-                    Response.ok(ResponsePathSerializer.jsonObject(ghResponse, new ResponsePathSerializer.Info(config.getCopyrights(), Math.round(took), osmDate), instructions, calcPoints, enableElevation, pointsEncoded, pointsEncodedMultiplier)).
+                    Response.ok(jsonOutput(ghResponse, createInfo(request, ghResponse, took), instructions, calcPoints, enableElevation, pointsEncoded, pointsEncodedMultiplier)).
                             header("X-GH-Took", "" + Math.round(took)).
                             type(MediaType.APPLICATION_JSON).
                             build();
@@ -185,23 +202,10 @@ public class RouteResource {
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
     public Response doPost(@NotNull GHRequest request, @Context HttpServletRequest httpReq) {
-        if (!request.hasSnapPreventions())
-            request.setSnapPreventions(snapPreventionsDefault);
-
         StopWatch sw = new StopWatch().start();
-        request = ghRequestTransformer.transformRequest(request);
+        request = prepareRequest(request);
 
-        if (Helper.isEmpty(request.getProfile()) && request.getCustomModel() != null)
-            // throw a dedicated exception here, otherwise a missing profile is still caught in Router
-            throw new IllegalArgumentException("The 'profile' parameter is required when you use the `custom_model` parameter");
-
-        PMap profileResolverHints = new PMap(request.getHints());
-        profileResolverHints.putObject("profile", request.getProfile());
-        profileResolverHints.putObject("has_curbsides", !request.getCurbsides().isEmpty());
-        request.setProfile(profileResolver.resolveProfile(profileResolverHints));
-        removeLegacyParameters(request.getHints());
-
-        GHResponse ghResponse = graphHopper.route(request);
+        GHResponse ghResponse = routeResponseCache.route(request);
         boolean instructions = request.getHints().getBool(INSTRUCTIONS, true);
         boolean enableElevation = request.getHints().getBool("elevation", false);
         boolean calcPoints = request.getHints().getBool(CALC_POINTS, true);
@@ -223,13 +227,130 @@ public class RouteResource {
                     + ", time0: " + Math.round(ghResponse.getBest().getTime() / 60000f) + "min"
                     + ", points0: " + ghResponse.getBest().getPoints().size()
                     + ", debugInfo: " + ghResponse.getDebugInfo());
-            return Response.ok(ResponsePathSerializer.jsonObject(ghResponse, new ResponsePathSerializer.Info(config.getCopyrights(), Math.round(took), osmDate), instructions, calcPoints, enableElevation, pointsEncoded, pointsEncodedMultiplier)).
+            stageTimingMetrics.record("route", request.getProfile(), StageTimingMetrics.normalizeAlgorithm(request.getAlgorithm()), ghResponse.getTimings());
+            return Response.ok(jsonOutput(ghResponse, createInfo(request, ghResponse, took), instructions, calcPoints, enableElevation, pointsEncoded, pointsEncodedMultiplier)).
                     header("X-GH-Took", "" + Math.round(took)).
                     type(MediaType.APPLICATION_JSON).
                     build();
         }
     }
 
+    /**
+     * Routes many requests at once. Requests with the same profile and hints share the snapping and the query graph,
+     * see {@link GraphHopper#routeBatch}. The result is streamed as newline delimited JSON with one line per request
+     * in the order the routes finish. Every line contains the "index" of the request and either the usual route
+     * response or the error message and hints.
+     */
+    @POST
+    @Path("batch")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces({NDJSON, MediaType.APPLICATION_JSON})
+    public Response doPostBatch(@NotNull List<GHRequest> requests, @Context HttpServletRequest httpReq) {
+        StopWatch sw = new StopWatch().start();
+        int maxBatchSize = graphHopper.getRouterConfig().getMaxBatchSize();
+        if (requests.size() > maxBatchSize)
+            throw new IllegalArgumentException("Number of requests must not exceed " + maxBatchSize + " but was " + requests.size());
+
+        // requests that cannot even be prepared are reported right away, all others are routed together
+        List<GHRequest> prepared = new ArrayList<>(requests.size());
+        IntArrayList preparedIndices = new IntArrayList(requests.size());
+        Map<Integer, Throwable> failed = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            try {
+                prepared.add(prepareRequest(requests.get(i)));
+                preparedIndices.add(i);
+            } catch (IllegalArgumentException ex) {
+                failed.put(i, ex);
+            }
+        }
+
+        StreamingOutput out = output -> {
+            try (JsonGenerator gen = objectMapper.createGenerator(output)) {
+                ResponsePathWriter writer = new ResponsePathWriter();
+                for (Map.Entry<Integer, Throwable> e : failed.entrySet())
+                    writeBatchError(gen, e.getKey(), new MultiException(e.getValue()));
+                AtomicInteger errors = new AtomicInteger(failed.size());
+                graphHopper.routeBatch(prepared, (ghResponse, index) -> {
+                    try {
+                        if (ghResponse.hasErrors()) {
+                            errors.incrementAndGet();
+                            writeBatchError(gen, preparedIndices.get(index), new MultiException(ghResponse.getErrors()));
+                            return;
+                        }
+                        PMap hints = prepared.get(index).getHints();
+                        stageTimingMetrics.record("route", prepared.get(index).getProfile(), StageTimingMetrics.normalizeAlgorithm(prepared.get(index).getAlgorithm()), ghResponse.getTimings());
+                        gen.writeStartObject();
+                        gen.writeNumberField("index", preparedIndices.get(index));
+                        writer.writeFields(gen, ghResponse, new ResponsePathSerializer.Info(config.getCopyrights(), Math.round(sw.getCurrentSeconds() * 1000), osmDate),
+                                hints.getBool(INSTRUCTIONS, true),
+                                hints.getBool(CALC_POINTS, true),
+                                hints.getBool("elevation", false),
+                                hints.getBool("points_encoded", true),
+                                hints.getDouble("points_encoded_multiplier", 1e5));
+                        gen.writeEndObject();
+                        endBatchLine(gen);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+                logger.info(httpReq.getRemoteAddr() + " " + httpReq.getLocale() + " " + httpReq.getHeader("User-Agent")
+                        + " batch of " + requests.size() + " requests, errors: " + errors.get()
+                        + ", took: " + String.format("%.1f", sw.stop().getMillisDouble()) + " ms");
+            }
+        };
+        return Response.ok(out).type(NDJSON).build();
+    }
+
+    private void writeBatchError(JsonGenerator gen, int index, MultiException ex) throws IOException {
+        gen.writeStartObject();
+        gen.writeNumberField("index", index);
+        for (Map.Entry<String, JsonNode> field : objectMapper.valueToTree(ex).properties())
+            gen.writeObjectField(field.getKey(), field.getValue());
+        gen.writeEndObject();
+        endBatchLine(gen);
+    }
+
+    private static void endBatchLine(JsonGenerator gen) throws IOException {
+        gen.writeRaw('\n');
+        // flush every line so clients can consume the results while the batch is still running
+        gen.flush();
+    }
+
+    private ResponsePathSerializer.Info createInfo(GHRequest request, GHResponse ghResponse, double took) {
+        Map<String, Double> timings = request.getHints().getBool(TIMINGS, false) ? StageTimingMetrics.toMillis(ghResponse.getTimings()) : null;
+        return new ResponsePathSerializer.Info(config.getCopyrights(), Math.round(took), osmDate, timings);
+    }
+
+    /**
+     * Writes the response directly to the output stream without creating a JSON tree first.
+     */
+    private StreamingOutput jsonOutput(GHResponse ghResponse, ResponsePathSerializer.Info info, boolean instructions, boolean calcPoints,
+                                       boolean enableElevation, boolean pointsEncoded, double pointsEncodedMultiplier) {
+        return output -> {
+            try (JsonGenerator gen = objectMapper.createGenerator(output)) {
+                new ResponsePathWriter().writeJson(gen, ghResponse, info, instructions, calcPoints, enableElevation, pointsEncoded, pointsEncodedMultiplier);
+            }
+        };
+    }
+
+    private GHRequest prepareRequest(GHRequest request) {
+        if (!request.hasSnapPreventions())
+            request.setSnapPreventions(snapPreventionsDefault);
+
+        request = ghRequestTransformer.transformRequest(request);
+
+        if (Helper.isEmpty(request.getProfile()) && request.getCustomModel() != null)
+            // throw a dedicated exception here, otherwise a missing profile is still caught in Router
+            throw new IllegalArgumentException("The 'profile' parameter is required when you use the `custom_model` parameter");
+
+        PMap profileResolverHints = new PMap(request.getHints());
+        profileResolverHints.putObject("profile", request.getProfile());
+        profileResolverHints.putObject("has_curbsides", !request.getCurbsides().isEmpty());
+        request.setProfile(profileResolver.resolveProfile(profileResolverHints));
+        removeLegacyParameters(request.getHints());
+        return request;
+    }
+
     public static void removeLegacyParameters(PMap hints) {
         // these parameters should only be used to resolve the profile, but should not be passed to GraphHopper
         hints.remove("weighting");
@@ -4,15 +4,21 @@ import com.graphhopper.GraphHopper;
 import com.graphhopper.config.Profile;
 import com.graphhopper.http.GHPointParam;
 import com.graphhopper.http.ProfileResolver;
+import com.graphhopper.isochrone.algorithm.ArrayShortestPathTree;
 import com.graphhopper.isochrone.algorithm.ShortestPathTree;
+import com.graphhopper.isochrone.algorithm.ShortestPathTreeCH;
+import com.graphhopper.isochrone.algorithm.ShortestPathTreeSearch;
 import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.QueryRoutingCHGraph;
 import com.graphhopper.routing.util.DefaultSnapFilter;
 import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.routing.util.TraversalMode;
 import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.http.StageTimingMetrics;
 import com.graphhopper.storage.BaseGraph;
 import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.RoutingCHGraph;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.storage.index.Snap;
 import com.graphhopper.util.*;
@@ -57,12 +63,15 @@ public class SPTResource {
     private final GraphHopper graphHopper;
     private final ProfileResolver profileResolver;
     private final EncodingManager encodingManager;
+    private final StageTimingMetrics stageTimingMetrics;
 
     @Inject
-    public SPTResource(GraphHopper graphHopper, ProfileResolver profileResolver, EncodingManager encodingManager) {
+    public SPTResource(GraphHopper graphHopper, ProfileResolver profileResolver, EncodingManager encodingManager,
+                       StageTimingMetrics stageTimingMetrics) {
         this.graphHopper = graphHopper;
         this.profileResolver = profileResolver;
         this.encodingManager = encodingManager;
+        this.stageTimingMetrics = stageTimingMetrics;
     }
 
     // Annotating this as application/json because errors come out as json, and
@@ -80,6 +89,7 @@ public class SPTResource {
         StopWatch sw = new StopWatch().start();
         PMap hintsMap = new PMap();
         RouteResource.initHints(hintsMap, uriInfo.getQueryParameters());
+        boolean phast = hintsMap.getBool(Parameters.CH.PHAST, false);
         hintsMap.putObject(Parameters.CH.DISABLE, true);
         hintsMap.putObject(Parameters.Landmark.DISABLE, true);
 
@@ -93,15 +103,27 @@ public class SPTResource {
             throw new IllegalArgumentException("The requested profile '" + profileName + "' does not exist");
         LocationIndex locationIndex = graphHopper.getLocationIndex();
         BaseGraph graph = graphHopper.getBaseGraph();
-        Weighting weighting = graphHopper.createWeighting(profile, hintsMap);
+        // a PHAST sweep over the contraction hierarchy is faster for large limits, but it always covers the entire
+        // graph, so we only use it if the request asks for it
+        RoutingCHGraph chGraph = phast ? graphHopper.getCHGraphs().get(profileName) : null;
+        if (phast && chGraph == null)
+            throw new IllegalArgumentException("The requested profile '" + profileName + "' has no CH preparation, which is required for " + Parameters.CH.PHAST);
+        Weighting weighting = chGraph == null ? graphHopper.createWeighting(profile, hintsMap) : chGraph.getWeighting();
         BooleanEncodedValue inSubnetworkEnc = graphHopper.getEncodingManager().getBooleanEncodedValue(Subnetwork.key(profileName));
+        Map<String, Long> timings = new LinkedHashMap<>();
+        StopWatch stageSW = new StopWatch().start();
         Snap snap = locationIndex.findClosest(point.get().lat, point.get().lon, new DefaultSnapFilter(weighting, inSubnetworkEnc));
         if (!snap.isValid())
             throw new IllegalArgumentException("Point not found:" + point);
+        timings.put("snap", stageSW.stop().getNanos());
+        stageSW = new StopWatch().start();
         QueryGraph queryGraph = QueryGraph.create(graph, snap);
+        timings.put("query_graph", stageSW.stop().getNanos());
         NodeAccess nodeAccess = queryGraph.getNodeAccess();
         TraversalMode traversalMode = profile.hasTurnCosts() ? EDGE_BASED : NODE_BASED;
-        ShortestPathTree shortestPathTree = new ShortestPathTree(queryGraph, queryGraph.wrapWeighting(weighting), reverseFlow, traversalMode);
+        ShortestPathTreeSearch shortestPathTree = chGraph == null
+                ? new ArrayShortestPathTree(queryGraph, queryGraph.wrapWeighting(weighting), reverseFlow, traversalMode)
+                : new ShortestPathTreeCH(new QueryRoutingCHGraph(chGraph, queryGraph), reverseFlow, graphHopper.getPhastStatePool());
 
         if (distanceInMeter.orElseThrow(() -> new IllegalArgumentException("query param distance_limit is not a number.")) > 0) {
             shortestPathTree.setDistanceLimit(distanceInMeter.getAsLong());
@@ -136,6 +158,8 @@ public class SPTResource {
                 }
                 sb.append(LINE_SEP);
                 writer.write(sb.toString());
+                // the search streams the labels, so this includes writing them
+                StopWatch searchSW = new StopWatch().start();
                 shortestPathTree.search(snap.getClosestNode(), l -> {
                     IsoLabelWithCoordinates label = isoLabelWithCoordinates(nodeAccess, l);
                     sb.setLength(0);
@@ -220,6 +244,8 @@ public class SPTResource {
                     }
                 });
 
+                timings.put("search", searchSW.stop().getNanos());
+                stageTimingMetrics.record("spt", profile.getName(), chGraph == null ? "reachability" : "phast", timings);
                 logger.info("took: " + sw.stop().getSeconds() + ", visited nodes:" + shortestPathTree.getVisitedNodes() + ", " + uriInfo.getQueryParameters());
             } catch (IOException e) {
                 throw new RuntimeException(e);
@@ -0,0 +1,109 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.codahale.metrics.MetricRegistry;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.storage.StorableProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MVTTileCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static MVTTileCache createCache(Path storeLocation, String importDate) {
+        StorableProperties properties = new StorableProperties(new RAMDirectory());
+        properties.put("datareader.import.date", importDate);
+        GraphHopper graphHopper = new GraphHopper() {
+            @Override
+            public StorableProperties getProperties() {
+                return properties;
+            }
+        };
+        return new MVTTileCache(graphHopper, new MVTTileRenderer(graphHopper), 0, storeLocation.toString(), "10-12", false, new MetricRegistry());
+    }
+
+    @Test
+    public void foreignDirectorySurvives() throws IOException {
+        Path storeLocation = tempDir.resolve("data");
+        Files.createDirectories(storeLocation.resolve("10/20"));
+        Files.writeString(storeLocation.resolve("10/20/30.mvt"), "tile");
+        Files.writeString(storeLocation.resolve("properties"), "not a tile");
+
+        MVTTileCache cache = createCache(storeLocation, "2024-01-01");
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, cache::start);
+        assertTrue(ex.getMessage().contains("must be empty or a tile store"), ex.getMessage());
+        assertTrue(Files.exists(storeLocation.resolve("properties")));
+        assertTrue(Files.exists(storeLocation.resolve("10/20/30.mvt")));
+        assertFalse(Files.exists(storeLocation.resolve("graph_version")));
+    }
+
+    @Test
+    public void emptyAndMissingDirectoriesBecomeTileStores() throws Exception {
+        Path empty = Files.createDirectories(tempDir.resolve("empty"));
+        Path missing = tempDir.resolve("missing");
+        for (Path storeLocation : new Path[]{empty, missing}) {
+            MVTTileCache cache = createCache(storeLocation, "2024-01-01");
+            cache.start();
+            cache.stop();
+            assertEquals("2024-01-01", Files.readString(storeLocation.resolve("graph_version"), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void outdatedTilesAreRemoved() throws Exception {
+        // a store without version file is accepted as long as it only contains tiles and temporary tiles
+        Path storeLocation = tempDir.resolve("tiles");
+        Files.createDirectories(storeLocation.resolve("10/20"));
+        Files.writeString(storeLocation.resolve("10/20/30.mvt"), "tile");
+        Files.writeString(storeLocation.resolve("10/20/tile123.tmp"), "partial tile");
+
+        MVTTileCache cache = createCache(storeLocation, "2024-01-01");
+        cache.start();
+        cache.stop();
+        assertFalse(Files.exists(storeLocation.resolve("10")));
+        assertEquals("2024-01-01", Files.readString(storeLocation.resolve("graph_version"), StandardCharsets.UTF_8));
+
+        // the tiles stay as long as the graph is the same
+        Files.createDirectories(storeLocation.resolve("11/40"));
+        Files.writeString(storeLocation.resolve("11/40/60.mvt"), "tile");
+        cache = createCache(storeLocation, "2024-01-01");
+        cache.start();
+        cache.stop();
+        assertTrue(Files.exists(storeLocation.resolve("11/40/60.mvt")));
+
+        // with a version file only the zoom directories are removed for a new graph, not the other files
+        Files.writeString(storeLocation.resolve("README"), "my notes");
+        cache = createCache(storeLocation, "2024-02-01");
+        cache.start();
+        cache.stop();
+        assertFalse(Files.exists(storeLocation.resolve("11")));
+        assertTrue(Files.exists(storeLocation.resolve("README")));
+        assertEquals("2024-02-01", Files.readString(storeLocation.resolve("graph_version"), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class StageTimingMetricsTest {
+    @Test
+    public void algorithmNamesAreNormalized() {
+        assertEquals("default", StageTimingMetrics.normalizeAlgorithm(null));
+        assertEquals("default", StageTimingMetrics.normalizeAlgorithm(""));
+        assertEquals("astarbi", StageTimingMetrics.normalizeAlgorithm("AStarBi"));
+        assertEquals("other", StageTimingMetrics.normalizeAlgorithm("anything"));
+
+        MetricRegistry registry = new MetricRegistry();
+        StageTimingMetrics metrics = new StageTimingMetrics(registry);
+        for (String algorithm : new String[]{"astarbi", "ASTARBI", "foo", "bar"})
+            metrics.record("route", "car", StageTimingMetrics.normalizeAlgorithm(algorithm), Collections.singletonMap("search", 5_000L));
+        assertEquals(2, registry.getHistograms().size());
+        assertEquals(2, registry.histogram("graphhopper.route.car.astarbi.search").getCount());
+        assertEquals(2, registry.histogram("graphhopper.route.car.other.search").getCount());
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.http;
+
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.shapes.BBox;
+import no.ecc.vectortile.VectorTileDecoder;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.MultiLineString;
+import org.locationtech.jts.geom.Point;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VectorTileWriterTest {
+    // the decoder scales the coordinates to 0..256
+    private static final BBox TILE = new BBox(0, 1, 0, 1);
+
+    @Test
+    public void lineIsClipped() throws IOException {
+        VectorTileWriter writer = new VectorTileWriter("roads").reset(TILE);
+        PointList pl = new PointList();
+        pl.add(0.5, -1);
+        pl.add(0.5, 0.5);
+        pl.add(0.25, 0.5);
+        assertTrue(writer.startFeature(3).line(pl).attribute("name", "a").endFeature());
+        List<VectorTileDecoder.Feature> features = new VectorTileDecoder().decode(writer.encode()).asList();
+        assertEquals(1, features.size());
+        assertEquals("roads", features.get(0).getLayerName());
+        assertEquals(3, features.get(0).getId());
+        LineString line = (LineString) features.get(0).getGeometry();
+        // the line is cut at the buffer of 8 pixels around the tile
+        assertArrayEquals(new Coordinate[]{new Coordinate(-8, 128), new Coordinate(128, 128), new Coordinate(128, 192)}, line.getCoordinates());
+    }
+
+    @Test
+    public void lineLeavesAndEntersTile() throws IOException {
+        VectorTileWriter writer = new VectorTileWriter("roads").reset(TILE);
+        writer.startFeature(-1)
+                .lineTo(0.5, 0.25)
+                .lineTo(0.5, 3)
+                .lineTo(3, 3)
+                .lineTo(0.25, 0.75);
+        assertTrue(writer.endFeature());
+        VectorTileDecoder.Feature feature = new VectorTileDecoder().decode(writer.encode()).asList().get(0);
+        MultiLineString lines = (MultiLineString) feature.getGeometry();
+        assertEquals(2, lines.getNumGeometries());
+        assertArrayEquals(new Coordinate[]{new Coordinate(64, 128), new Coordinate(264, 128)}, lines.getGeometryN(0).getCoordinates());
+        Coordinate[] second = lines.getGeometryN(1).getCoordinates();
+        assertEquals(new Coordinate(192, 192), second[second.length - 1]);
+    }
+
+    @Test
+    public void longLineAtHighZoom() throws IOException {
+        // a tile of zoom 30 is about 1/3,000,000 of a degree wide, so the ends of this line are about 10^10 tile
+        // units away, whose products overflow a long
+        double size = 360.0 / (1 << 30), lat = 42.5, lon = 1.5;
+        VectorTileWriter writer = new VectorTileWriter("roads").reset(new BBox(lon - size / 2, lon + size / 2, lat - size / 2, lat + size / 2));
+        assertTrue(writer.startFeature(-1).lineTo(lat - 1, lon - 1).lineTo(lat + 1, lon + 1).endFeature());
+        Coordinate[] line = new VectorTileDecoder().decode(writer.encode()).asList().get(0).getGeometry().getCoordinates();
+        assertEquals(2, line.length);
+        assertEquals(-8, line[0].x, 0.1);
+        assertEquals(264, line[0].y, 0.1);
+        assertEquals(264, line[1].x, 0.1);
+        assertEquals(-8, line[1].y, 0.1);
+    }
+
+    @Test
+    public void featuresOutsideTileAreSkipped() {
+        VectorTileWriter writer = new VectorTileWriter("stops").reset(TILE);
+        assertFalse(writer.startFeature(-1).point(2, 2).attribute("name", "a").endFeature());
+        assertFalse(writer.startFeature(-1).lineTo(2, 2).lineTo(2, 3).endFeature());
+        // a line whose points all end up at the same position is no valid line
+        assertFalse(writer.startFeature(-1).lineTo(0.5, 0.5).lineTo(0.50001, 0.50001).endFeature());
+        assertEquals(0, writer.encode().length);
+    }
+
+    @Test
+    public void attributesAndReuse() throws IOException {
+        VectorTileWriter writer = new VectorTileWriter("stops");
+        for (int i = 0; i < 2; i++) {
+            writer.reset(TILE);
+            writer.startFeature(-1).point(0.5, 0.5).attribute("name", "a").attribute("count", 5L).attribute("distance", 1.5).endFeature();
+            writer.startFeature(-1).point(0.25, 0.75).attribute("name", "a").attribute("other", (String) null).endFeature();
+            List<VectorTileDecoder.Feature> features = new VectorTileDecoder().decode(writer.encode()).asList();
+            assertEquals(2, features.size());
+            assertEquals(new Coordinate(128, 128), ((Point) features.get(0).getGeometry()).getCoordinate());
+            assertEquals("a", features.get(0).getAttributes().get("name"));
+            assertEquals(5L, features.get(0).getAttributes().get("count"));
+            assertEquals(1.5, features.get(0).getAttributes().get("distance"));
+            assertEquals(new Coordinate(192, 192), ((Point) features.get(1).getGeometry()).getCoordinate());
+            assertEquals("a", features.get(1).getAttributes().get("name"));
+            assertFalse(features.get(1).getAttributes().containsKey("other"));
+        }
+    }
+}
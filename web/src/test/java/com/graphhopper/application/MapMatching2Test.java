@@ -17,26 +17,46 @@
  */
 package com.graphhopper.application;
 
+import com.carrotsearch.hppc.IntHashSet;
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.config.LMProfile;
 import com.graphhopper.gpx.GpxConversions;
 import com.graphhopper.jackson.Gpx;
+import com.graphhopper.matching.AStarOneToMany;
 import com.graphhopper.matching.EdgeMatch;
 import com.graphhopper.matching.MapMatching;
 import com.graphhopper.matching.MatchResult;
 import com.graphhopper.matching.State;
+import com.graphhopper.routing.DijkstraBidirectionRef;
+import com.graphhopper.routing.Path;
 import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.lm.LMApproximator;
+import com.graphhopper.routing.lm.LandmarkStorage;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.index.LocationIndexTree;
 import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.PMap;
+import com.graphhopper.util.shapes.BBox;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Envelope;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Arrays;
+import java.util.*;
 
 import static com.graphhopper.application.MapMatchingTest.fetchStreets;
 import static org.junit.jupiter.api.Assertions.*;
@@ -127,6 +147,164 @@ public class MapMatching2Test {
         assertEquals(0, mr.getMatchMillis(), 50);
     }
 
+    @Test
+    public void testOneToManyPaths() {
+        GraphHopper hopper = new GraphHopper();
+        hopper.setOSMFile("../map-matching/files/map-issue13.osm.gz");
+        hopper.setGraphHopperLocation(GH_LOCATION);
+        hopper.setEncodedValuesString("car_access, car_average_speed");
+        hopper.setProfiles(TestProfiles.accessAndSpeed("my_profile", "car"));
+        hopper.getLMPreparationHandler().setLMProfiles(new LMProfile("my_profile"));
+        hopper.importOrLoad();
+
+        BaseGraph graph = hopper.getBaseGraph();
+        Weighting weighting = hopper.createWeighting(hopper.getProfile("my_profile"), new PMap());
+        LandmarkStorage landmarks = hopper.getLandmarks().get("my_profile");
+        Random rnd = new Random(42);
+        for (int run = 0; run < 100; run++) {
+            int from = rnd.nextInt(graph.getNodes());
+            int fromOutEdge = rnd.nextBoolean() ? EdgeIterator.ANY_EDGE : randomAdjacentEdge(graph, from, rnd);
+            int[] toNodes = new int[10];
+            int[] toInEdges = new int[toNodes.length];
+            for (int i = 0; i < toNodes.length; i++) {
+                // some targets are the start node or duplicates
+                toNodes[i] = i == 0 ? from : i == 1 ? toNodes[0] : rnd.nextInt(graph.getNodes());
+                toInEdges[i] = rnd.nextBoolean() ? EdgeIterator.ANY_EDGE : randomAdjacentEdge(graph, toNodes[i], rnd);
+            }
+            List<Path> dijkstraPaths = new AStarOneToMany(graph, weighting).calcPaths(from, fromOutEdge, toNodes, toInEdges);
+            List<Path> lmPaths = new AStarOneToMany(graph, weighting).setApproximation(to -> {
+                LMApproximator approximator = LMApproximator.forLandmarks(graph, weighting, landmarks, 4);
+                approximator.setTo(to);
+                return approximator;
+            }).calcPaths(from, fromOutEdge, toNodes, toInEdges);
+            for (int i = 0; i < toNodes.length; i++) {
+                Path expected = new DijkstraBidirectionRef(graph, weighting, TraversalMode.EDGE_BASED).calcPath(from, toNodes[i], fromOutEdge, toInEdges[i]);
+                String msg = from + "(" + fromOutEdge + ") -> " + toNodes[i] + "(" + toInEdges[i] + ")";
+                for (Path path : Arrays.asList(dijkstraPaths.get(i), lmPaths.get(i))) {
+                    assertEquals(expected.isFound(), path.isFound(), msg);
+                    assertEquals(expected.getWeight(), path.getWeight(), 1.e-6, msg);
+                    assertEquals(expected.getDistance(), path.getDistance(), 1.e-3, msg);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testOneToManyPathsToOneWayCandidate() {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        BaseGraph graph = new BaseGraph.Builder(EncodingManager.start().add(speedEnc).build()).create();
+        // a 20x20 grid and node 400 that can only be left via a one-way edge to node 0
+        for (int row = 0; row < 20; row++) {
+            for (int col = 0; col < 20; col++) {
+                int node = row * 20 + col;
+                graph.getNodeAccess().setNode(node, 50 + row * 0.001, 10 + col * 0.001);
+                if (col > 0)
+                    graph.edge(node - 1, node).setDistance(100).set(speedEnc, 10, 10);
+                if (row > 0)
+                    graph.edge(node - 20, node).setDistance(100).set(speedEnc, 10, 10);
+            }
+        }
+        graph.getNodeAccess().setNode(400, 49.999, 10);
+        int oneWayEdge = graph.edge(400, 0).setDistance(100).set(speedEnc, 10, 0).getEdge();
+        Weighting weighting = new SpeedWeighting(speedEnc);
+
+        // like for a virtual node both directed candidates are targets, but node 400 cannot be entered via the one-way
+        // edge. this must not make the search explore the whole graph.
+        AStarOneToMany algo = new AStarOneToMany(graph, weighting);
+        List<Path> paths = algo.calcPaths(0, EdgeIterator.ANY_EDGE, new int[]{1, 400}, new int[]{EdgeIterator.ANY_EDGE, oneWayEdge});
+        assertTrue(paths.get(0).isFound());
+        assertFalse(paths.get(1).isFound());
+        assertFalse(algo.isAborted());
+        assertTrue(algo.getVisitedNodes() < 10, "visited nodes: " + algo.getVisitedNodes());
+    }
+
+    @Test
+    public void testCandidateSnaps() {
+        GraphHopper hopper = new GraphHopper();
+        hopper.setOSMFile("../map-matching/files/map-issue13.osm.gz");
+        hopper.setGraphHopperLocation(GH_LOCATION);
+        hopper.setEncodedValuesString("car_access, car_average_speed");
+        hopper.setProfiles(TestProfiles.accessAndSpeed("my_profile", "car"));
+        hopper.importOrLoad();
+
+        LocationIndexTree index = (LocationIndexTree) hopper.getLocationIndex();
+        MapMatching.Router router = MapMatching.routerFromGraphHopper(hopper, new PMap().putObject("profile", "my_profile"));
+        BBox bounds = hopper.getBaseGraph().getBounds();
+        Random rnd = new Random(42);
+        for (double sigma : new double[]{5, 10, 50}) {
+            MapMatching mapMatching = new MapMatching(hopper.getBaseGraph(), index, router);
+            mapMatching.setMeasurementErrorSigma(sigma);
+            for (int i = 0; i < 500; i++) {
+                // some query points are outside of the graph bounds
+                double lat = bounds.minLat - 0.002 + rnd.nextDouble() * (bounds.maxLat - bounds.minLat + 0.004);
+                double lon = bounds.minLon - 0.002 + rnd.nextDouble() * (bounds.maxLon - bounds.minLon + 0.004);
+                List<Snap> expected = findCandidateSnapsInGrowingBox(hopper.getBaseGraph(), index, router.getSnapFilter(), sigma, lat, lon);
+                List<Snap> snaps = mapMatching.findCandidateSnaps(lat, lon);
+                assertEquals(snapKeys(expected), snapKeys(snaps), sigma + ", " + lat + ", " + lon);
+            }
+        }
+    }
+
+    private static Set<String> snapKeys(List<Snap> snaps) {
+        // snaps to the same tower node are only kept once, but not necessarily for the same edge
+        Set<String> keys = new HashSet<>();
+        for (Snap snap : snaps)
+            keys.add(snap.getSnappedPosition() == Snap.Position.TOWER
+                    ? "node " + snap.getClosestNode()
+                    : "edge " + snap.getClosestEdge().getEdge() + " " + snap.getSnappedPosition() + " " + snap.getWayIndex() + " " + snap.getSnappedPoint());
+        assertEquals(snaps.size(), keys.size());
+        return keys;
+    }
+
+    /**
+     * The candidate search as it was done before, by querying the index for a box that grows by sigma until it
+     * contains any snap.
+     */
+    private static List<Snap> findCandidateSnapsInGrowingBox(BaseGraph graph, LocationIndexTree index, EdgeFilter edgeFilter,
+                                                             double sigma, double queryLat, double queryLon) {
+        double rLon = sigma * 360.0 / DistanceCalcEarth.DIST_EARTH.calcCircumference(queryLat);
+        double rLat = sigma / DistanceCalcEarth.METERS_PER_DEGREE;
+        Envelope envelope = new Envelope(queryLon, queryLon, queryLat, queryLat);
+        for (int i = 0; i < 50; i++) {
+            envelope.expandBy(rLon, rLat);
+            BBox queryShape = BBox.fromEnvelope(envelope);
+            List<Snap> snaps = new ArrayList<>();
+            IntHashSet seenEdges = new IntHashSet();
+            IntHashSet seenNodes = new IntHashSet();
+            index.query(queryShape, edgeId -> {
+                EdgeIteratorState edge = graph.getEdgeIteratorStateForKey(edgeId * 2);
+                if (seenEdges.add(edgeId) && edgeFilter.accept(edge)) {
+                    Snap snap = new Snap(queryLat, queryLon);
+                    index.traverseEdge(queryLat, queryLon, edge, (node, normedDist, wayIndex, pos) -> {
+                        if (normedDist < snap.getQueryDistance()) {
+                            snap.setQueryDistance(normedDist);
+                            snap.setClosestNode(node);
+                            snap.setWayIndex(wayIndex);
+                            snap.setSnappedPosition(pos);
+                        }
+                    });
+                    snap.setClosestEdge(edge);
+                    if (snap.isValid() && (snap.getSnappedPosition() != Snap.Position.TOWER || seenNodes.add(snap.getClosestNode()))) {
+                        snap.calcSnappedPoint(DistanceCalcEarth.DIST_EARTH);
+                        if (queryShape.contains(snap.getSnappedPoint().lat, snap.getSnappedPoint().lon))
+                            snaps.add(snap);
+                    }
+                }
+            });
+            if (!snaps.isEmpty())
+                return snaps;
+        }
+        return Collections.emptyList();
+    }
+
+    private static int randomAdjacentEdge(BaseGraph graph, int node, Random rnd) {
+        List<Integer> edges = new ArrayList<>();
+        EdgeIterator iter = graph.createEdgeExplorer().setBaseNode(node);
+        while (iter.next())
+            edges.add(iter.getEdge());
+        return edges.isEmpty() ? EdgeIterator.ANY_EDGE : edges.get(rnd.nextInt(edges.size()));
+    }
+
     private void validateEdgeMatch(EdgeMatch edgeMatch) {
         for (State state : edgeMatch.getStates()) {
             if (state.getSnap().getSnappedPosition() == Snap.Position.TOWER) {
@@ -26,6 +26,7 @@ import com.graphhopper.gpx.GpxConversions;
 import com.graphhopper.jackson.Gpx;
 import com.graphhopper.matching.EdgeMatch;
 import com.graphhopper.matching.MapMatching;
+import com.graphhopper.matching.MapMatchingSession;
 import com.graphhopper.matching.MatchResult;
 import com.graphhopper.matching.Observation;
 import com.graphhopper.routing.TestProfiles;
@@ -161,6 +162,39 @@ public class MapMatchingTest {
         assertThat(Math.abs(route.getTime() - mr.getMatchMillis()), is(lessThan(1000L)));
     }
 
+    @ParameterizedTest
+    @ArgumentsSource(FixtureProvider.class)
+    public void testSession(PMap hints) {
+        MapMatching mapMatching = MapMatching.fromGraphHopper(graphHopper, hints);
+        ResponsePath route = graphHopper.route(new GHRequest(
+                new GHPoint(51.377781, 12.338333),
+                new GHPoint(51.323317, 12.387085))
+                .setProfile("my_profile")).getBest();
+        mapMatching.setMeasurementErrorSigma(20);
+        MatchResult mr = mapMatching.match(createRandomGPXEntriesAlongRoute(route));
+
+        MapMatchingSession session = mapMatching.createSession();
+        List<EdgeMatch> edgeMatches = new ArrayList<>();
+        int emittedBeforeFinish = 0;
+        for (Observation observation : createRandomGPXEntriesAlongRoute(route)) {
+            edgeMatches.addAll(session.addObservation(observation));
+            emittedBeforeFinish = edgeMatches.size();
+        }
+        edgeMatches.addAll(session.finish());
+        // most of the path is known before the trace ends
+        assertThat(mr.getEdgeMatches().size() - emittedBeforeFinish, is(lessThan(20)));
+        assertEquals(fetchEdgeKeys(mr.getEdgeMatches()), fetchEdgeKeys(edgeMatches));
+        assertEquals(mr.getMatchLength(), session.getMatchLength(), 1.e-6);
+        assertEquals(mr.getMatchMillis(), session.getMatchMillis());
+
+        // a small window forces decisions before the paths converge, which does not matter for this trace
+        MapMatchingSession smallWindow = mapMatching.createSession().setMaxWindowSize(2);
+        edgeMatches = new ArrayList<>(smallWindow.addObservations(createRandomGPXEntriesAlongRoute(route)));
+        edgeMatches.addAll(smallWindow.finish());
+        assertEquals(fetchEdgeKeys(mr.getEdgeMatches()), fetchEdgeKeys(edgeMatches));
+        assertThrows(IllegalStateException.class, smallWindow::finish);
+    }
+
     @ParameterizedTest
     @ArgumentsSource(FixtureProvider.class)
     public void testLongTrackWithTwoPoints(PMap hints) {
@@ -299,6 +333,10 @@ public class MapMatchingTest {
         assertEquals(Arrays.asList("Gustav-Adolf-Straße", "Funkenburgstraße"), fetchStreets(mr.getEdgeMatches()));
     }
 
+    private static List<Integer> fetchEdgeKeys(List<EdgeMatch> emList) {
+        return emList.stream().map(em -> em.getEdgeState().getEdgeKey()).collect(Collectors.toList());
+    }
+
     static List<String> fetchStreets(List<EdgeMatch> emList) {
         List<String> list = new ArrayList<>();
         int prevNode = -1;
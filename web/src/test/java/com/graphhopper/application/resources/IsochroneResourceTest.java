@@ -22,6 +22,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.graphhopper.application.GraphHopperApplication;
 import com.graphhopper.application.GraphHopperServerConfiguration;
 import com.graphhopper.application.util.GraphHopperServerTestConfiguration;
+import com.graphhopper.config.CHProfile;
 import com.graphhopper.routing.TestProfiles;
 import com.graphhopper.util.BodyAndStatus;
 import com.graphhopper.util.Helper;
@@ -34,6 +35,8 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryFactory;
@@ -42,6 +45,7 @@ import org.locationtech.jts.geom.Polygon;
 import jakarta.ws.rs.client.WebTarget;
 import java.io.File;
 import java.util.Arrays;
+import java.util.List;
 
 import static com.graphhopper.application.resources.Util.getWithStatus;
 import static com.graphhopper.application.util.TestUtils.clientTarget;
@@ -59,11 +63,14 @@ public class IsochroneResourceTest {
                 putObject("import.osm.ignored_highways", "").
                 putObject("graph.location", DIR).
                 putObject("graph.encoded_values", "car_access, car_average_speed").
+                putObject("routing.ch.phast_state_pool_size", 1).
                 setProfiles(Arrays.asList(
                         TestProfiles.accessAndSpeed("fast_car", "car").setTurnCostsConfig(TurnCostsConfig.car()),
                         TestProfiles.constantSpeed("short_car", 35).setTurnCostsConfig(TurnCostsConfig.car()),
                         TestProfiles.accessAndSpeed("fast_car_no_turn_restrictions", "car")
-                ));
+                )).
+                // this profile can use the shortest path tree on CH, see ch.phast
+                setCHProfiles(List.of(new CHProfile("fast_car_no_turn_restrictions")));
         return config;
     }
 
@@ -96,10 +103,12 @@ public class IsochroneResourceTest {
         assertFalse(polygon1.contains(geometryFactory.createPoint(new Coordinate(1.635246, 42.53841))));
     }
 
-    @Test
-    public void requestByTimeLimitNoTurnRestrictions() {
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void requestByTimeLimitNoTurnRestrictions(boolean phast) {
         JsonFeatureCollection featureCollection = clientTarget(app, "/isochrone")
                 .queryParam("profile", "fast_car_no_turn_restrictions")
+                .queryParam("ch.phast", phast)
                 .queryParam("point", "42.531073,1.573792")
                 .queryParam("time_limit", 5 * 60)
                 .queryParam("buckets", 2)
@@ -194,6 +203,11 @@ public class IsochroneResourceTest {
         assertTrue(error.contains("Point not found:-1.816719,51.557148"), error);
     }
 
+    @Test
+    public void phastWithoutCH() {
+        assertNotAllowed("&profile=fast_car&time_limit=130&ch.phast=true", "The requested profile 'fast_car' has no CH preparation, which is required for ch.phast");
+    }
+
     @Test
     public void profileWithLegacyParametersNotAllowed() {
         assertNotAllowed("&profile=fast_car&weighting=fastest", "The 'weighting' parameter is no longer supported. You used 'weighting=fastest'");
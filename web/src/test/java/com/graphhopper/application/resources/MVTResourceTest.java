@@ -17,9 +17,12 @@
  */
 package com.graphhopper.application.resources;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
 import com.graphhopper.application.GraphHopperApplication;
 import com.graphhopper.application.GraphHopperServerConfiguration;
 import com.graphhopper.application.util.GraphHopperServerTestConfiguration;
+import com.graphhopper.http.MVTTileCache;
 import com.graphhopper.routing.TestProfiles;
 import com.graphhopper.util.Helper;
 import io.dropwizard.testing.junit5.DropwizardAppExtension;
@@ -29,6 +32,8 @@ import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.Response;
 import org.locationtech.jts.geom.Geometry;
 
 import java.io.ByteArrayOutputStream;
@@ -39,10 +44,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static com.graphhopper.application.util.TestUtils.clientTarget;
 import static com.graphhopper.util.Parameters.Details.STREET_NAME;
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * @author Peter Karich
@@ -60,6 +66,7 @@ public class MVTResourceTest {
                 putObject("datareader.file", "../core/files/andorra.osm.pbf").
                 putObject("import.osm.ignored_highways", "").
                 putObject("graph.location", DIR).
+                putObject("mvt.cache.max_bytes", 10_000_000).
                 setProfiles(List.of(TestProfiles.constantSpeed("car")));
         return config;
     }
@@ -96,6 +103,58 @@ public class MVTResourceTest {
         assertEquals("primary", feature.getAttributes().get("road_class"));
     }
 
+    @Test
+    public void testETag() {
+        Response response = clientTarget(app, "/mvt/15/16522/12102.mvt").request().get();
+        assertEquals(200, response.getStatus());
+        EntityTag etag = response.getEntityTag();
+        assertNotNull(etag);
+        response.close();
+
+        response = clientTarget(app, "/mvt/15/16522/12102.mvt").request().header("If-None-Match", "\"" + etag.getValue() + "\"").get();
+        assertEquals(304, response.getStatus());
+        assertEquals(etag, response.getEntityTag());
+        response.close();
+    }
+
+    @Test
+    public void testTileOutOfRange() {
+        for (String tile : new String[]{"15/32768/12102", "15/16522/-1", "-1/0/0", "31/0/0"}) {
+            Response response = clientTarget(app, "/mvt/" + tile + ".mvt").request().get();
+            assertEquals(400, response.getStatus(), tile);
+            response.close();
+        }
+    }
+
+    @Test
+    public void testEmptyTilesAreNotCached() throws IOException {
+        Meter misses = app.getEnvironment().metrics().meter(MetricRegistry.name(MVTTileCache.class, "misses"));
+        long missesBefore = misses.getCount();
+        for (int i = 0; i < 2; i++) {
+            // a tile far away from Andorra
+            InputStream is = clientTarget(app, "/mvt/15/0/0.mvt").request().get(InputStream.class);
+            assertEquals(0, readInputStream(is).length);
+        }
+        assertEquals(missesBefore + 2, misses.getCount());
+    }
+
+    @Test
+    public void testLowZoomOnlyMajorRoads() throws IOException {
+        InputStream is = clientTarget(app, "/mvt/11/1032/756.mvt").request().get(InputStream.class);
+        List<VectorTileDecoder.Feature> features = new VectorTileDecoder().decode(readInputStream(is)).asList();
+        assertFalse(features.isEmpty());
+        for (VectorTileDecoder.Feature feature : features)
+            assertTrue(Set.of("motorway", "trunk", "primary").contains((String) feature.getAttributes().get("road_class")),
+                    feature.getAttributes().toString());
+
+        is = clientTarget(app, "/mvt/12/2065/1512.mvt").request().get(InputStream.class);
+        features = new VectorTileDecoder().decode(readInputStream(is)).asList();
+        assertTrue(features.stream().anyMatch(f -> "secondary".equals(f.getAttributes().get("road_class"))));
+        for (VectorTileDecoder.Feature feature : features)
+            assertTrue(Set.of("motorway", "trunk", "primary", "secondary").contains((String) feature.getAttributes().get("road_class")),
+                    feature.getAttributes().toString());
+    }
+
     private static byte[] readInputStream(InputStream is) throws IOException {
         ByteArrayOutputStream buffer = new ByteArrayOutputStream();
         int nRead;
@@ -18,9 +18,14 @@
 package com.graphhopper.application.resources;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import com.graphhopper.application.GraphHopperApplication;
 import com.graphhopper.application.GraphHopperServerConfiguration;
+import com.graphhopper.gpx.GpxConversions;
+import com.graphhopper.jackson.Gpx;
 import com.graphhopper.jackson.ResponsePathDeserializerHelper;
+import com.graphhopper.matching.Observation;
 import com.graphhopper.routing.TestProfiles;
 import com.graphhopper.util.Helper;
 import io.dropwizard.testing.junit5.DropwizardAppExtension;
@@ -36,7 +41,11 @@ import org.locationtech.jts.io.WKTReader;
 import jakarta.ws.rs.client.Entity;
 import jakarta.ws.rs.core.Response;
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
 
 import static com.graphhopper.application.util.TestUtils.clientTarget;
 import static org.junit.jupiter.api.Assertions.*;
@@ -84,6 +93,41 @@ public class MapMatchingResourceTest {
         assertEquals(812, json.get("map_matching").get("distance").asDouble(), 1);
     }
 
+    @Test
+    public void testStream() throws IOException {
+        Gpx gpx = new XmlMapper().readValue(getClass().getResourceAsStream("/tour2-with-loop.gpx"), Gpx.class);
+        List<Observation> observations = GpxConversions.getEntries(gpx.trk.get(0));
+        StringBuilder body = new StringBuilder();
+        for (Observation observation : observations.subList(0, observations.size() - 2))
+            body.append("{\"lat\":").append(observation.getPoint().lat).append(",\"lon\":").append(observation.getPoint().lon).append("}\n");
+        body.append("{\"lat\": 51.34}\n");
+        // the last observations as one batch, with an observation far away from the road network in between. this
+        // fails on its own without losing the other observations of the batch.
+        Observation secondLast = observations.get(observations.size() - 2);
+        Observation last = observations.get(observations.size() - 1);
+        body.append("[{\"lat\":").append(secondLast.getPoint().lat).append(",\"lon\":").append(secondLast.getPoint().lon).append("},")
+                .append("{\"lat\":0,\"lon\":0},")
+                .append("{\"lat\":").append(last.getPoint().lat).append(",\"lon\":").append(last.getPoint().lon).append("}]\n");
+
+        String response = clientTarget(app, "/match/stream?profile=fast_car")
+                .request()
+                .post(Entity.entity(body.toString(), "application/x-ndjson"), String.class);
+        ObjectMapper objectMapper = new ObjectMapper();
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : response.split("\n"))
+            lines.add(objectMapper.readTree(line));
+
+        List<JsonNode> errors = lines.stream().filter(l -> l.has("message")).collect(Collectors.toList());
+        assertEquals(2, errors.size());
+        assertTrue(errors.get(0).get("message").asText().startsWith("Observations need a lat and lon"), errors.get(0).toString());
+        assertTrue(errors.get(1).get("message").asText().startsWith("Sequence is broken"), errors.get(1).toString());
+        long links = lines.stream().filter(l -> l.has("id") && l.has("geometry") && l.has("wpts")).count();
+        assertEquals(lines.size() - 3, links);
+        JsonNode mapMatching = lines.get(lines.size() - 1).get("map_matching");
+        assertEquals(812, mapMatching.get("distance").asDouble(), 1);
+        assertEquals(101, mapMatching.get("time").asLong() / 1000f, 1);
+    }
+
     @Test
     public void testBike() throws ParseException {
         WKTReader wktReader = new WKTReader();
@@ -0,0 +1,117 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.application.resources;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.graphhopper.application.GraphHopperApplication;
+import com.graphhopper.application.GraphHopperServerConfiguration;
+import com.graphhopper.application.util.GraphHopperServerTestConfiguration;
+import com.graphhopper.config.CHProfile;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.util.Helper;
+import io.dropwizard.testing.junit5.DropwizardAppExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.core.Response;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.File;
+import java.util.List;
+
+import static com.graphhopper.application.util.TestUtils.clientTarget;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class MatrixResourceTest {
+    private static final String DIR = "./target/andorra-matrix-gh/";
+    private static final DropwizardAppExtension<GraphHopperServerConfiguration> app = new DropwizardAppExtension<>(GraphHopperApplication.class, createConfig());
+
+    private static GraphHopperServerConfiguration createConfig() {
+        GraphHopperServerConfiguration config = new GraphHopperServerTestConfiguration();
+        config.getGraphHopperConfiguration().
+                putObject("datareader.file", "../core/files/andorra.osm.pbf").
+                putObject("graph.location", DIR).
+                putObject("import.osm.ignored_highways", "").
+                putObject("graph.encoded_values", "car_access, car_average_speed").
+                setProfiles(List.of(TestProfiles.accessAndSpeed("car"))).
+                setCHProfiles(List.of(new CHProfile("car")));
+        return config;
+    }
+
+    @BeforeAll
+    @AfterAll
+    public static void cleanUp() {
+        Helper.removeDir(new File(DIR));
+    }
+
+    @Test
+    public void testMatrixMatchesRoutes() {
+        String jsonStr = "{\"profile\": \"car\", \"from_points\": [[1.536198,42.554851],[1.548128,42.510071]], " +
+                "\"to_points\": [[1.548128,42.510071],[1.5217,42.5411],[1.536198,42.554851]], " +
+                "\"out_arrays\": [\"weights\", \"times\", \"distances\"]}";
+        JsonNode json = clientTarget(app, "/matrix").request().post(Entity.json(jsonStr), JsonNode.class);
+        assertEquals(2, json.get("distances").size());
+        assertEquals(3, json.get("distances").get(0).size());
+        assertEquals(0, json.get("distances").get(1).get(0).asDouble(), 1.e-6);
+
+        JsonNode route = clientTarget(app, "/route?profile=car&calc_points=false&instructions=false&" +
+                "point=42.554851,1.536198&point=42.510071,1.548128").request().get(JsonNode.class).get("paths").get(0);
+        assertEquals(route.get("distance").asDouble(), json.get("distances").get(0).get(0).asDouble(), 1);
+        assertEquals(route.get("weight").asDouble(), json.get("weights").get(0).get(0).asDouble(), 1.e-2);
+        assertEquals(route.get("time").asLong() / 1000.0, json.get("times").get(0).get(0).asDouble(), 1);
+    }
+
+    @Test
+    public void testSymmetricPointsAndErrors() {
+        String jsonStr = "{\"profile\": \"car\", \"points\": [[1.536198,42.554851],[1.548128,42.510071]]}";
+        JsonNode json = clientTarget(app, "/matrix").request().post(Entity.json(jsonStr), JsonNode.class);
+        assertTrue(json.has("weights"));
+        assertFalse(json.has("times"));
+        assertEquals(0, json.get("weights").get(1).get(1).asDouble(), 1.e-6);
+        assertTrue(json.get("weights").get(0).get(1).asDouble() > 0);
+
+        jsonStr = "{\"profile\": \"car\", \"points\": [[1.536198,42.554851],[1.548128,42.510071]], \"out_arrays\": [\"speeds\"]}";
+        try (Response response = clientTarget(app, "/matrix").request().post(Entity.json(jsonStr))) {
+            assertEquals(400, response.getStatus());
+            assertTrue(response.readEntity(JsonNode.class).get("message").asText().contains("Unknown out_arrays value 'speeds'"));
+        }
+    }
+
+    @Test
+    public void testPointsCombinedWithFromPoints() {
+        String jsonStr = "{\"profile\": \"car\", \"points\": [[1.536198,42.554851],[1.548128,42.510071]], " +
+                "\"from_points\": [[1.5217,42.5411]]}";
+        try (Response response = clientTarget(app, "/matrix").request().post(Entity.json(jsonStr))) {
+            assertEquals(400, response.getStatus());
+            assertTrue(response.readEntity(JsonNode.class).get("message").asText().contains("Use either 'points' or 'from_points' and 'to_points'"));
+        }
+    }
+
+    @Test
+    public void testUnsupportedParameters() {
+        String jsonStr = "{\"profile\": \"car\", \"points\": [[1.536198,42.554851],[1.548128,42.510071]], " +
+                "\"custom_model\": {\"priority\": [{\"if\": \"road_class == MOTORWAY\", \"multiply_by\": \"0\"}]}}";
+        try (Response response = clientTarget(app, "/matrix").request().post(Entity.json(jsonStr))) {
+            assertEquals(400, response.getStatus());
+            assertTrue(response.readEntity(JsonNode.class).get("message").asText().contains("Unsupported parameters for matrix requests: [custom_model]"));
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.application.resources;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphhopper.application.GraphHopperApplication;
+import com.graphhopper.application.GraphHopperServerConfiguration;
+import com.graphhopper.application.util.GraphHopperServerTestConfiguration;
+import com.graphhopper.config.CHProfile;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.util.Helper;
+import io.dropwizard.testing.junit5.DropwizardAppExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.core.Response;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.graphhopper.application.util.TestUtils.clientTarget;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class RouteResourceBatchTest {
+    private static final String DIR = "./target/andorra-batch-gh/";
+    private static final DropwizardAppExtension<GraphHopperServerConfiguration> app = new DropwizardAppExtension<>(GraphHopperApplication.class, createConfig());
+
+    private static GraphHopperServerConfiguration createConfig() {
+        GraphHopperServerConfiguration config = new GraphHopperServerTestConfiguration();
+        config.getGraphHopperConfiguration().
+                putObject("datareader.file", "../core/files/andorra.osm.pbf").
+                putObject("graph.location", DIR).
+                putObject("import.osm.ignored_highways", "").
+                putObject("routing.batch_threads", 2).
+                putObject("routing.max_batch_size", 5).
+                putObject("graph.encoded_values", "car_access, car_average_speed").
+                setProfiles(List.of(TestProfiles.accessAndSpeed("car"))).
+                setCHProfiles(List.of(new CHProfile("car")));
+        return config;
+    }
+
+    @BeforeAll
+    @AfterAll
+    public static void cleanUp() {
+        Helper.removeDir(new File(DIR));
+    }
+
+    @Test
+    public void testBatchMatchesRoutes() throws Exception {
+        String jsonStr = "[" +
+                "{\"profile\": \"car\", \"points\": [[1.536198,42.554851],[1.548128,42.510071]], \"instructions\": false}," +
+                "{\"profile\": \"car\", \"points\": [[1.548128,42.510071],[1.5217,42.5411]], \"points_encoded\": false}," +
+                "{\"profile\": \"car\", \"points\": [[1.536198,42.554851],[1.5217,42.5411]]}," +
+                "{\"profile\": \"car\", \"points\": [[1.536198,42.554851],[-1.536198,40.554851]]}," +
+                "{\"profile\": \"unknown\", \"points\": [[1.536198,42.554851],[1.548128,42.510071]]}" +
+                "]";
+        String body;
+        try (Response response = clientTarget(app, "/route/batch").request().post(Entity.json(jsonStr))) {
+            assertEquals(200, response.getStatus());
+            assertEquals("application/x-ndjson", response.getMediaType().toString());
+            body = response.readEntity(String.class);
+        }
+        ObjectMapper objectMapper = new ObjectMapper();
+        Map<Integer, JsonNode> lines = new HashMap<>();
+        for (String line : body.split("\n")) {
+            JsonNode json = objectMapper.readTree(line);
+            lines.put(json.get("index").asInt(), json);
+        }
+        assertEquals(5, lines.size());
+
+        JsonNode route = clientTarget(app, "/route?profile=car&instructions=false&" +
+                "point=42.554851,1.536198&point=42.510071,1.548128").request().get(JsonNode.class).get("paths").get(0);
+        JsonNode batchRoute = lines.get(0).get("paths").get(0);
+        assertEquals(route.get("distance").asDouble(), batchRoute.get("distance").asDouble(), 1);
+        assertEquals(route.get("time").asLong(), batchRoute.get("time").asLong(), 10);
+        assertFalse(batchRoute.has("instructions"));
+        assertTrue(lines.get(1).get("paths").get(0).get("points").has("coordinates"));
+        assertTrue(lines.get(2).get("paths").get(0).has("instructions"));
+
+        assertTrue(lines.get(3).get("message").asText().contains("Point 1 is out of bounds"), lines.get(3).toString());
+        assertTrue(lines.get(4).get("message").asText().contains("The requested profile 'unknown' does not exist"), lines.get(4).toString());
+    }
+
+    @Test
+    public void testTooManyRequests() {
+        String request = "{\"profile\": \"car\", \"points\": [[1.536198,42.554851],[1.548128,42.510071]]}";
+        String jsonStr = "[" + String.join(",", request, request, request, request, request, request) + "]";
+        try (Response response = clientTarget(app, "/route/batch").request().post(Entity.json(jsonStr))) {
+            assertEquals(400, response.getStatus());
+            assertTrue(response.readEntity(JsonNode.class).get("message").asText().contains("must not exceed 5"));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.application.resources;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.graphhopper.application.GraphHopperApplication;
+import com.graphhopper.application.GraphHopperServerConfiguration;
+import com.graphhopper.application.util.GraphHopperServerTestConfiguration;
+import com.graphhopper.config.CHProfile;
+import com.graphhopper.http.RouteResponseCache;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.util.Helper;
+import io.dropwizard.testing.junit5.DropwizardAppExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.core.Response;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.File;
+import java.util.List;
+
+import static com.graphhopper.application.util.TestUtils.clientTarget;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class RouteResourceCacheTest {
+    private static final String DIR = "./target/andorra-cache-gh/";
+    private static final DropwizardAppExtension<GraphHopperServerConfiguration> app = new DropwizardAppExtension<>(GraphHopperApplication.class, createConfig());
+
+    private static GraphHopperServerConfiguration createConfig() {
+        GraphHopperServerConfiguration config = new GraphHopperServerTestConfiguration();
+        config.getGraphHopperConfiguration().
+                putObject("datareader.file", "../core/files/andorra.osm.pbf").
+                putObject("graph.location", DIR).
+                putObject("import.osm.ignored_highways", "").
+                putObject("routing.cache.max_size", 10).
+                putObject("graph.encoded_values", "car_access, car_average_speed").
+                setProfiles(List.of(TestProfiles.accessAndSpeed("car"))).
+                setCHProfiles(List.of(new CHProfile("car")));
+        return config;
+    }
+
+    @BeforeAll
+    @AfterAll
+    public static void cleanUp() {
+        Helper.removeDir(new File(DIR));
+    }
+
+    @Test
+    public void testCache() {
+        long hits = getCount("hits");
+        long misses = getCount("misses");
+        JsonNode route = clientTarget(app, "/route?profile=car&point=42.554851,1.536198&point=42.510071,1.548128").request().get(JsonNode.class);
+        assertEquals(misses + 1, getCount("misses"));
+
+        // the points are moved by a few centimeters, so they are snapped to the same positions
+        JsonNode cached = clientTarget(app, "/route?profile=car&point=42.5548511,1.5361981&point=42.5100709,1.5481279").request().get(JsonNode.class);
+        assertEquals(hits + 1, getCount("hits"));
+        assertEquals(route.get("paths").get(0).get("distance").asDouble(), cached.get("paths").get(0).get("distance").asDouble(), 1.e-6);
+        assertEquals(route.get("paths").get(0).get("points"), cached.get("paths").get(0).get("points"));
+
+        // different output flags
+        JsonNode noInstructions = clientTarget(app, "/route?profile=car&instructions=false&point=42.554851,1.536198&point=42.510071,1.548128").request().get(JsonNode.class);
+        assertEquals(misses + 2, getCount("misses"));
+        assertFalse(noInstructions.get("paths").get(0).has("instructions"));
+
+        String jsonStr = "{\"profile\": \"car\", \"points\": [[1.536198,42.554851],[1.548128,42.510071]], \"instructions\": false}";
+        try (Response response = clientTarget(app, "/route").request().post(Entity.json(jsonStr))) {
+            assertEquals(200, response.getStatus());
+        }
+        assertEquals(misses + 3, getCount("misses"));
+        try (Response response = clientTarget(app, "/route").request().post(Entity.json(jsonStr))) {
+            assertEquals(200, response.getStatus());
+        }
+        assertEquals(hits + 2, getCount("hits"));
+    }
+
+    @Test
+    public void testErrorsAreNotCached() {
+        long hits = getCount("hits");
+        for (int i = 0; i < 2; i++) {
+            try (Response response = clientTarget(app, "/route?profile=car&point=42.554851,1.536198&point=40.554851,-1.536198").request().get()) {
+                assertEquals(400, response.getStatus());
+                assertTrue(response.readEntity(JsonNode.class).get("message").asText().contains("Point 1 is out of bounds"));
+            }
+        }
+        assertEquals(hits, getCount("hits"));
+    }
+
+    private static long getCount(String name) {
+        return app.getEnvironment().metrics().meter(MetricRegistry.name(RouteResponseCache.class, name)).getCount();
+    }
+}
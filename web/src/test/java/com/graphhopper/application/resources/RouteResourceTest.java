@@ -130,6 +130,20 @@ public class RouteResourceTest {
         assertEquals("[1.548191,42.510033,1.548191,42.510033]", path.get("bbox").toString());
     }
 
+    @Test
+    public void testTimings() {
+        JsonNode json = clientTarget(app, "/route?profile=my_car&" +
+                "point=42.554851,1.536198&point=42.510071,1.548128").request().get(JsonNode.class);
+        assertFalse(json.get("info").has("timings"));
+
+        json = clientTarget(app, "/route?profile=my_car&timings=true&" +
+                "point=42.554851,1.536198&point=42.510071,1.548128").request().get(JsonNode.class);
+        JsonNode timings = json.get("info").get("timings");
+        for (String stage : List.of("snap", "query_graph", "search", "path_extraction", "instructions", "path_details", "path_merging"))
+            assertTrue(timings.get(stage).asDouble() >= 0, stage + " missing in " + timings);
+        assertTrue(app.getEnvironment().metrics().getHistograms().get("graphhopper.route.my_car.default.search").getCount() >= 2);
+    }
+
     @Test
     public void testBasicPostQuery() {
         String jsonStr = "{ \"profile\": \"my_car\", \"points\": [[1.536198,42.554851], [1.548128, 42.510071]] }";